@@ -2,11 +2,14 @@ package org.sagebionetworks.client;
 
 import static org.sagebionetworks.client.Method.*;
 
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -17,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.conn.util.InetAddressUtils;
@@ -70,8 +74,16 @@ public class BaseClientImpl implements BaseClient {
 	private static final String USER_AGENT = "User-Agent";
 
 	public static final int MAX_RETRY_SERVICE_UNAVAILABLE_COUNT = 5;
+	/**
+	 * The timeouts of the byte range requests when no
+	 * {@link SimpleHttpClientConfig} is given.
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT_MS = 5 * 1000;
+	public static final int DEFAULT_READ_TIMEOUT_MS = 60 * 1000;
 
 	private SimpleHttpClient simpleHttpClient;
+	private int connectTimeoutMs = DEFAULT_CONNECT_TIMEOUT_MS;
+	private int readTimeoutMs = DEFAULT_READ_TIMEOUT_MS;
 
 	private String userAgent;
 	private String username;
@@ -90,6 +102,10 @@ public class BaseClientImpl implements BaseClient {
 	public BaseClientImpl(String userAgent, SimpleHttpClientConfig config) {
 		this.userAgent = userAgent;
 		this.simpleHttpClient = new SimpleHttpClientImpl(config);
+		if (config != null) {
+			this.connectTimeoutMs = config.getConnectTimeoutMs();
+			this.readTimeoutMs = config.getSocketTimeoutMs();
+		}
 
 		this.authEndpoint = DEFAULT_AUTH_ENDPOINT;
 		this.repoEndpoint = DEFAULT_REPO_ENDPOINT;
@@ -303,6 +319,130 @@ public class BaseClientImpl implements BaseClient {
 		}
 	}
 
+	/**
+	 * Put the passed bytes to the passed URL. The bytes are streamed from
+	 * memory so, unlike {@link #putFileToURL(URL, File, String)}, they do not
+	 * need to be written to a file first. This can be called from several
+	 * threads at once.
+	 * 
+	 * @category Upload & Download
+	 * @param url
+	 * @param bytes
+	 * @param contentType
+	 * @return
+	 * @throws SynapseException
+	 */
+	protected String putBytesToURL(URL url, byte[] bytes, String contentType) throws SynapseException {
+		ValidateArgument.required(url, "url");
+		ValidateArgument.required(bytes, "bytes");
+		ValidateArgument.required(contentType, "contentType");
+		try {
+			HttpURLConnection connection = openConnection(url);
+			connection.setRequestMethod("PUT");
+			connection.setDoOutput(true);
+			connection.setFixedLengthStreamingMode(bytes.length);
+			connection.setRequestProperty(HTTP.CONTENT_TYPE, contentType);
+			OutputStream out = connection.getOutputStream();
+			try {
+				out.write(bytes);
+			} finally {
+				out.close();
+			}
+			if (!ClientUtils.is200sStatusCode(connection.getResponseCode())) {
+				throw createServerException(connection, url);
+			}
+			InputStream in = connection.getInputStream();
+			try {
+				return IOUtils.toString(in, SYNAPSE_ENCODING_CHARSET);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new SynapseClientException(e);
+		}
+	}
+
+	/**
+	 * Get a range of the bytes at the passed URL with an HTTP range request.
+	 * This can be called from several threads at once.
+	 * 
+	 * @category Upload & Download
+	 * @param url
+	 * @param offset
+	 *            The offset of the first byte of the range.
+	 * @param length
+	 *            The number of bytes in the range.
+	 * @return
+	 * @throws SynapseException
+	 */
+	protected byte[] getBytesFromURL(URL url, long offset, int length) throws SynapseException {
+		ValidateArgument.required(url, "url");
+		ValidateArgument.requirement(offset >= 0, "offset cannot be negative");
+		ValidateArgument.requirement(length > 0, "length must be greater than zero");
+		try {
+			HttpURLConnection connection = openConnection(url);
+			connection.setRequestProperty("Range", "bytes=" + offset + "-" + (offset + length - 1));
+			int statusCode = connection.getResponseCode();
+			if (!ClientUtils.is200sStatusCode(statusCode)) {
+				throw createServerException(connection, url);
+			}
+			InputStream in = connection.getInputStream();
+			try {
+				if (statusCode != HttpStatus.SC_PARTIAL_CONTENT) {
+					throw new SynapseClientException("Range requests are not supported for " + url);
+				}
+				byte[] bytes = new byte[length];
+				new DataInputStream(in).readFully(bytes);
+				return bytes;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new SynapseClientException(e);
+		}
+	}
+
+	/**
+	 * Open a connection to the passed URL with the same timeouts as the
+	 * {@link SimpleHttpClient}.
+	 * 
+	 * @param url
+	 * @return
+	 * @throws IOException
+	 */
+	private HttpURLConnection openConnection(URL url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setConnectTimeout(connectTimeoutMs);
+		connection.setReadTimeout(readTimeoutMs);
+		return connection;
+	}
+
+	/**
+	 * Create an exception for a failed request. The error is read so the
+	 * connection can be reused.
+	 * 
+	 * @param connection
+	 * @param url
+	 * @return
+	 * @throws IOException
+	 */
+	private static SynapseServerException createServerException(HttpURLConnection connection, URL url)
+			throws IOException {
+		String error = null;
+		InputStream errorStream = connection.getErrorStream();
+		if (errorStream != null) {
+			try {
+				error = IOUtils.toString(errorStream, SYNAPSE_ENCODING_CHARSET);
+			} finally {
+				errorStream.close();
+			}
+		}
+		return new SynapseServerException(connection.getResponseCode(),
+				"Response code: " + connection.getResponseCode() + " " 
+				+ connection.getResponseMessage()
+				+ " for " + url + " " + error);
+	}
+
 	/**
 	 * Download the file at the given URL.
 	 * 
@@ -0,0 +1,121 @@
+package org.sagebionetworks.client;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.sagebionetworks.client.exceptions.SynapseClientException;
+import org.sagebionetworks.client.exceptions.SynapseException;
+
+/**
+ * Runs the parts of a multi-part transfer with at most maxInFlight parts
+ * running at the same time. When too many parts are running, submitting
+ * another part waits for the oldest part. The first part that fails stops the
+ * transfer and {@link #cancelAll()} cancels the parts that are still running.
+ *
+ */
+class BoundedParallelTasks {
+
+	/**
+	 * A single part of a transfer.
+	 */
+	interface Task {
+
+		void run() throws SynapseException, IOException;
+	}
+
+	private final ExecutorService executor;
+	private final int maxInFlight;
+	private final Deque<Future<Void>> inFlight = new ArrayDeque<Future<Void>>();
+
+	/**
+	 *
+	 * @param executor
+	 *            Runs the tasks. When null, each task is run on the caller's
+	 *            thread when it is submitted.
+	 * @param maxInFlight
+	 *            The maximum number of tasks running at the same time.
+	 */
+	BoundedParallelTasks(ExecutorService executor, int maxInFlight) {
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Run a task, first waiting for the oldest task if too many tasks are
+	 * running.
+	 *
+	 * @param task
+	 * @throws SynapseException
+	 *             If this or an earlier task failed.
+	 * @throws IOException
+	 *             If this or an earlier task failed.
+	 */
+	void submit(final Task task) throws SynapseException, IOException {
+		if (executor == null) {
+			task.run();
+			return;
+		}
+		while (inFlight.size() >= maxInFlight) {
+			waitFor(inFlight.pollFirst());
+		}
+		inFlight.addLast(executor.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				task.run();
+				return null;
+			}
+		}));
+	}
+
+	/**
+	 * Wait for all of the submitted tasks.
+	 *
+	 * @throws SynapseException
+	 *             If a task failed.
+	 * @throws IOException
+	 *             If a task failed.
+	 */
+	void awaitAll() throws SynapseException, IOException {
+		while (!inFlight.isEmpty()) {
+			waitFor(inFlight.pollFirst());
+		}
+	}
+
+	/**
+	 * Cancel the tasks that are still running. Only has tasks left if a task
+	 * failed.
+	 */
+	void cancelAll() {
+		for (Future<Void> future : inFlight) {
+			future.cancel(true);
+		}
+		inFlight.clear();
+	}
+
+	private static void waitFor(Future<Void> future) throws SynapseException, IOException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SynapseClientException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SynapseException) {
+				throw (SynapseException) cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new SynapseClientException(cause);
+		}
+	}
+}
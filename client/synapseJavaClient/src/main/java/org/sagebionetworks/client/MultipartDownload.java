@@ -0,0 +1,373 @@
+package org.sagebionetworks.client;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.sagebionetworks.client.exceptions.SynapseClientException;
+import org.sagebionetworks.client.exceptions.SynapseException;
+import org.sagebionetworks.util.Clock;
+import org.sagebionetworks.util.DefaultClock;
+import org.sagebionetworks.util.ValidateArgument;
+
+/**
+ * Business logic for a parallel download of a file.
+ * <p>
+ * The file is split into ranges that are fetched at the same time with HTTP
+ * range requests against its pre-signed URL, and each range is written to its
+ * position in a partial file next to the destination. The ranges that are done
+ * are recorded in a part map next to the partial file, so a download that is
+ * interrupted resumes where it stopped. Once all of the ranges are done the MD5
+ * of the file is checked and the partial file is moved to the destination.
+ *
+ */
+public class MultipartDownload {
+
+	/**
+	 * The default number of ranges that are downloaded at the same time.
+	 */
+	public static final int DEFAULT_DOWNLOAD_CONCURRENCY = 4;
+	public static final int RANGE_SIZE_BYTES = 8 * 1024 * 1024;
+	/**
+	 * The number of times a single range is attempted before the download
+	 * fails.
+	 */
+	public static final int MAX_RANGE_ATTEMPTS = 3;
+	public static final long RANGE_RETRY_SLEEP_MS = 1000L;
+	public static final String PARTIAL_FILE_SUFFIX = ".partial";
+	public static final String PART_MAP_SUFFIX = ".parts";
+
+	private static final String UTF8 = "UTF-8";
+
+	/**
+	 * Provides a new pre-signed URL for the file. A new URL is requested when a
+	 * range fails, as the URL might have expired.
+	 */
+	public interface UrlProvider {
+
+		URL getUrl() throws SynapseException;
+	}
+
+	// input parameters
+	final SynapseClient client;
+	final UrlProvider urlProvider;
+	final long fileSizeBytes;
+	final String contentMD5Hex;
+	final File destination;
+	final int downloadConcurrency;
+	final File partialFile;
+	final File partMapFile;
+	final String urlPath;
+
+	// sleeps between range retries.
+	Clock clock = new DefaultClock();
+
+	private URL url;
+	private OutputStream partMapOut;
+	private FileChannel channel;
+
+	/**
+	 *
+	 * @param client
+	 * @param url
+	 *            The pre-signed URL of the file.
+	 * @param urlProvider
+	 *            Provides a new URL when a range fails.
+	 * @param fileSizeBytes
+	 * @param contentMD5Hex
+	 *            The MD5 of the file. When null the file is not checked.
+	 * @param destination
+	 * @param downloadConcurrency
+	 *            The number of ranges downloaded at the same time.
+	 */
+	public MultipartDownload(SynapseClient client, URL url, UrlProvider urlProvider, long fileSizeBytes,
+			String contentMD5Hex, File destination, int downloadConcurrency) {
+		ValidateArgument.required(client, "SynapseClient");
+		ValidateArgument.required(url, "url");
+		ValidateArgument.required(urlProvider, "urlProvider");
+		ValidateArgument.requirement(fileSizeBytes > 0, "fileSizeBytes must be greater than zero");
+		ValidateArgument.required(destination, "destination");
+		ValidateArgument.requirement(downloadConcurrency > 0, "downloadConcurrency must be greater than zero");
+		this.client = client;
+		this.url = url;
+		// the query of a pre-signed URL changes each time one is requested.
+		this.urlPath = url.getHost() + url.getPath();
+		this.urlProvider = urlProvider;
+		this.fileSizeBytes = fileSizeBytes;
+		this.contentMD5Hex = contentMD5Hex;
+		this.destination = destination;
+		this.downloadConcurrency = downloadConcurrency;
+		this.partialFile = new File(destination.getPath() + PARTIAL_FILE_SUFFIX);
+		this.partMapFile = new File(partialFile.getPath() + PART_MAP_SUFFIX);
+	}
+
+	/**
+	 * Download the file. If this fails, calling it again with the same
+	 * destination only downloads the ranges that are not done.
+	 *
+	 * @return The destination.
+	 * @throws SynapseException
+	 */
+	public File download() throws SynapseException {
+		int numberOfRanges = (int) ((fileSizeBytes + RANGE_SIZE_BYTES - 1) / RANGE_SIZE_BYTES);
+		ExecutorService executor = null;
+		if (downloadConcurrency > 1) {
+			executor = Executors.newFixedThreadPool(downloadConcurrency);
+		}
+		RandomAccessFile raf = null;
+		try {
+			String header = createPartMapHeader();
+			Set<Integer> doneRanges = readPartMap(partMapFile, header);
+			if (doneRanges.isEmpty() || !partialFile.exists()) {
+				// start over with a new part map.
+				doneRanges.clear();
+				FileUtils.writeStringToFile(partMapFile, header + "\n", UTF8);
+			}
+			partMapOut = new FileOutputStream(partMapFile, true);
+			raf = new RandomAccessFile(partialFile, "rw");
+			raf.setLength(fileSizeBytes);
+			channel = raf.getChannel();
+			downloadRanges(numberOfRanges, doneRanges, executor);
+		} catch (IOException e) {
+			throw new SynapseClientException(e);
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+			IOUtils.closeQuietly(partMapOut);
+			closeQuietly(raf);
+		}
+		try {
+			if (contentMD5Hex != null) {
+				String localMD5Hex = calculateMD5Hex(partialFile, fileSizeBytes);
+				if (!contentMD5Hex.equalsIgnoreCase(localMD5Hex)) {
+					// the parts cannot be trusted so the download starts over.
+					partialFile.delete();
+					partMapFile.delete();
+					throw new SynapseClientException("md5 of downloaded file does not match the one in Synapse "
+							+ destination);
+				}
+			}
+			if (destination.exists()) {
+				destination.delete();
+			}
+			if (!partialFile.renameTo(destination)) {
+				// the destination can be on another file system.
+				FileUtils.copyFile(partialFile, destination);
+				partialFile.delete();
+			}
+			partMapFile.delete();
+			return destination;
+		} catch (IOException e) {
+			throw new SynapseClientException(e);
+		}
+	}
+
+	/**
+	 * Download each range that is not done, with up to downloadConcurrency
+	 * ranges downloaded at the same time.
+	 *
+	 * @param numberOfRanges
+	 * @param doneRanges
+	 * @param executor
+	 *            Downloads the ranges. When null, each range is downloaded on
+	 *            the caller's thread.
+	 * @throws SynapseException
+	 * @throws IOException
+	 */
+	private void downloadRanges(int numberOfRanges, Set<Integer> doneRanges, ExecutorService executor)
+			throws SynapseException, IOException {
+		BoundedParallelTasks tasks = new BoundedParallelTasks(executor, downloadConcurrency);
+		try {
+			for (int i = 0; i < numberOfRanges; i++) {
+				if (doneRanges.contains(i)) {
+					continue;
+				}
+				final int rangeIndex = i;
+				tasks.submit(new BoundedParallelTasks.Task() {
+
+					@Override
+					public void run() throws SynapseException, IOException {
+						downloadRange(rangeIndex);
+					}
+				});
+			}
+			tasks.awaitAll();
+		} finally {
+			tasks.cancelAll();
+		}
+	}
+
+	/**
+	 * Download a single range and write it to its position in the partial
+	 * file.
+	 *
+	 * @param rangeIndex
+	 * @throws SynapseException
+	 * @throws IOException
+	 */
+	void downloadRange(int rangeIndex) throws SynapseException, IOException {
+		long offset = (long) rangeIndex * RANGE_SIZE_BYTES;
+		int length = (int) Math.min(RANGE_SIZE_BYTES, fileSizeBytes - offset);
+		byte[] bytes;
+		for (int attempt = 1;; attempt++) {
+			URL current = getUrl();
+			try {
+				bytes = client.getBytesFromURL(current, offset, length);
+				break;
+			} catch (SynapseException e) {
+				if (attempt >= MAX_RANGE_ATTEMPTS) {
+					throw e;
+				}
+				expireUrl(current);
+				try {
+					clock.sleep(RANGE_RETRY_SLEEP_MS * attempt);
+				} catch (InterruptedException e1) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		long position = offset;
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		markRangeDone(rangeIndex);
+	}
+
+	private synchronized URL getUrl() throws SynapseException {
+		if (url == null) {
+			url = urlProvider.getUrl();
+		}
+		return url;
+	}
+
+	/**
+	 * A new URL is only requested once when several ranges fail with the same
+	 * URL.
+	 *
+	 * @param failed
+	 */
+	private synchronized void expireUrl(URL failed) {
+		if (url == failed) {
+			url = null;
+		}
+	}
+
+	/**
+	 * Record that a range is done. The range is forced to disk first so the
+	 * part map never lists a range that was lost.
+	 *
+	 * @param rangeIndex
+	 * @throws IOException
+	 */
+	private synchronized void markRangeDone(int rangeIndex) throws IOException {
+		channel.force(false);
+		partMapOut.write((rangeIndex + "\n").getBytes(UTF8));
+		partMapOut.flush();
+	}
+
+	/**
+	 * The first line of the part map identifies the download, so a part map
+	 * for a different file or range size is not used. The path of the URL is
+	 * included as files without an MD5 are otherwise only told apart by their
+	 * size.
+	 *
+	 * @return
+	 */
+	String createPartMapHeader() {
+		return "path=" + urlPath + " size=" + fileSizeBytes + " md5=" + contentMD5Hex + " rangeSize="
+				+ RANGE_SIZE_BYTES;
+	}
+
+	/**
+	 * Read the ranges that are done from a part map.
+	 *
+	 * @param partMapFile
+	 * @param header
+	 *            The expected first line of the part map.
+	 * @return The indices of the ranges that are done. Empty if the part map
+	 *         does not exist or is for another download.
+	 * @throws IOException
+	 */
+	public static Set<Integer> readPartMap(File partMapFile, String header) throws IOException {
+		Set<Integer> doneRanges = new HashSet<Integer>();
+		if (!partMapFile.exists()) {
+			return doneRanges;
+		}
+		List<String> lines = FileUtils.readLines(partMapFile, UTF8);
+		if (lines.isEmpty() || !header.equals(lines.get(0))) {
+			return doneRanges;
+		}
+		for (String line : lines.subList(1, lines.size())) {
+			try {
+				doneRanges.add(Integer.parseInt(line.trim()));
+			} catch (NumberFormatException e) {
+				// the last line can be cut off if the download was killed.
+			}
+		}
+		return doneRanges;
+	}
+
+	/**
+	 * Calculate the MD5 of the first fileSizeBytes of the passed file.
+	 *
+	 * @param file
+	 * @param fileSizeBytes
+	 * @return
+	 * @throws IOException
+	 */
+	public static String calculateMD5Hex(File file, long fileSizeBytes) throws IOException {
+		MessageDigest digest = MultipartUpload.createMD5Digest();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			/*
+			 * The file is not memory-mapped as a mapped file cannot be moved on
+			 * some platforms until the mapping is garbage collected.
+			 */
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+			long position = 0;
+			while (position < fileSizeBytes) {
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), fileSizeBytes - position));
+				int read = channel.read(buffer, position);
+				if (read < 0) {
+					throw new EOFException("The file is shorter than expected: " + file);
+				}
+				position += read;
+				buffer.flip();
+				digest.update(buffer);
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		return new String(Hex.encodeHex(digest.digest()));
+	}
+
+	private static void closeQuietly(RandomAccessFile raf) {
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+}
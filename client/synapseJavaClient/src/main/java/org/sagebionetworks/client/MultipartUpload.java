@@ -1,63 +1,154 @@
 package org.sagebionetworks.client;
 
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.IOUtils;
+import org.sagebionetworks.client.exceptions.SynapseClientException;
 import org.sagebionetworks.client.exceptions.SynapseException;
+import org.sagebionetworks.repo.model.file.AddPartResponse;
+import org.sagebionetworks.repo.model.file.AddPartState;
 import org.sagebionetworks.repo.model.file.BatchPresignedUploadUrlRequest;
 import org.sagebionetworks.repo.model.file.BatchPresignedUploadUrlResponse;
 import org.sagebionetworks.repo.model.file.MultipartUploadRequest;
 import org.sagebionetworks.repo.model.file.MultipartUploadStatus;
+import org.sagebionetworks.repo.model.file.PartPresignedUrl;
 import org.sagebionetworks.repo.model.file.PartUtils;
 import org.sagebionetworks.repo.model.file.S3FileHandle;
 import org.sagebionetworks.repo.model.file.TempFileProvider;
+import org.sagebionetworks.util.Clock;
+import org.sagebionetworks.util.DefaultClock;
 import org.sagebionetworks.util.ValidateArgument;
 
 /**
  * Business logic for multi-part upload.
- * 
+ * <p>
+ * A file is uploaded by reading each part directly from the file when it is
+ * uploaded, so no copy of the file is written. An InputStream can only be read
+ * once, so its parts are first written to temp files. In both cases up to
+ * uploadConcurrency parts are uploaded at the same time, and a part that fails
+ * is retried with a new pre-signed URL.
  * 
  */
 public class MultipartUpload {
 
+	/**
+	 * The default number of parts that are uploaded at the same time.
+	 */
+	public static final int DEFAULT_UPLOAD_CONCURRENCY = 4;
+	/**
+	 * The number of pre-signed URLs requested at a time.
+	 */
+	public static final int PRESIGNED_URL_BATCH_SIZE = 10;
+	/**
+	 * The number of times a single part is attempted before the upload fails.
+	 */
+	public static final int MAX_PART_ATTEMPTS = 3;
+	public static final long PART_RETRY_SLEEP_MS = 1000L;
+	/**
+	 * The server can reset parts when an upload is completed, so completing an
+	 * upload is attempted this many times before it fails.
+	 */
+	public static final int MAX_COMPLETE_ATTEMPTS = 3;
+
 	// input parameters
 	final SynapseClient client;
 	final InputStream input;
+	final File file;
 	final Boolean forceRestart;
 	final MultipartUploadRequest request;
 	final TempFileProvider fileProvider;
+	final int uploadConcurrency;
+
+	// sleeps between part retries.
+	Clock clock = new DefaultClock();
 
 	public MultipartUpload(SynapseClient client, InputStream input,
 			long fileSizeBytes, String fileName, String contentType,
 			Long storageLocationId, Boolean generatePreview, Boolean forceRestart, TempFileProvider fileProvider) {
+		this(client, input, fileSizeBytes, fileName, contentType,
+				storageLocationId, generatePreview, forceRestart, fileProvider,
+				DEFAULT_UPLOAD_CONCURRENCY);
+	}
+
+	public MultipartUpload(SynapseClient client, InputStream input,
+			long fileSizeBytes, String fileName, String contentType,
+			Long storageLocationId, Boolean generatePreview, Boolean forceRestart, TempFileProvider fileProvider,
+			int uploadConcurrency) {
 		super();
 		ValidateArgument.required(client, "SynapseClient");
 		ValidateArgument.required(input, "InputStream");
 		ValidateArgument.required(fileName, "fileName");
 		ValidateArgument.required(contentType, "contentType");
 		ValidateArgument.required(fileProvider, "fileProvider");
-		this.request = new MultipartUploadRequest();
-		this.request.setFileName(fileName);
-		this.request.setContentType(contentType);
-		this.request.setFileSizeBytes(fileSizeBytes);
-		this.request.setGeneratePreview(generatePreview);
-		this.request.setStorageLocationId(storageLocationId);
+		ValidateArgument.requirement(uploadConcurrency > 0, "uploadConcurrency must be greater than zero");
+		this.request = createRequest(fileSizeBytes, fileName, contentType, storageLocationId, generatePreview);
 		this.client = client;
 		this.input = input;
+		this.file = null;
 		this.forceRestart = forceRestart;
 		this.fileProvider = fileProvider;
+		this.uploadConcurrency = uploadConcurrency;
+	}
+
+	/**
+	 * Upload a file without making a copy of it.
+	 * 
+	 * @param client
+	 * @param file
+	 * @param contentType
+	 * @param storageLocationId
+	 * @param generatePreview
+	 * @param forceRestart
+	 * @param uploadConcurrency
+	 *            The number of parts uploaded at the same time.
+	 */
+	public MultipartUpload(SynapseClient client, File file, String contentType,
+			Long storageLocationId, Boolean generatePreview, Boolean forceRestart, int uploadConcurrency) {
+		super();
+		ValidateArgument.required(client, "SynapseClient");
+		ValidateArgument.required(file, "file");
+		ValidateArgument.required(contentType, "contentType");
+		ValidateArgument.requirement(uploadConcurrency > 0, "uploadConcurrency must be greater than zero");
+		this.request = createRequest(file.length(), file.getName(), contentType, storageLocationId, generatePreview);
+		this.client = client;
+		this.input = null;
+		this.file = file;
+		this.forceRestart = forceRestart;
+		this.fileProvider = null;
+		this.uploadConcurrency = uploadConcurrency;
+	}
+
+	private static MultipartUploadRequest createRequest(long fileSizeBytes, String fileName, String contentType,
+			Long storageLocationId, Boolean generatePreview) {
+		MultipartUploadRequest request = new MultipartUploadRequest();
+		request.setFileName(fileName);
+		request.setContentType(contentType);
+		request.setFileSizeBytes(fileSizeBytes);
+		request.setGeneratePreview(generatePreview);
+		request.setStorageLocationId(storageLocationId);
+		return request;
 	}
 
 	/**
@@ -77,30 +168,51 @@ public class MultipartUpload {
 		// metadata for each part.
 		List<PartData> partDataList = new ArrayList<PartData>(
 				(int) numberOfParts);
+		ExecutorService executor = null;
+		if (uploadConcurrency > 1) {
+			executor = Executors.newFixedThreadPool(uploadConcurrency);
+		}
 		try {
-			// All of the part files are created.
-			String fileMD5Hex = createParts(fileProvider, input, fileSizeBytes,
-					partSizeBytes, numberOfParts, partDataList);
+			String fileMD5Hex;
+			if (file != null) {
+				try {
+					fileMD5Hex = createFileParts(file, fileSizeBytes, partSizeBytes, numberOfParts, partDataList);
+				} catch (IOException e) {
+					throw new SynapseClientException(e);
+				}
+			} else {
+				// All of the part files are created.
+				fileMD5Hex = createParts(fileProvider, input, fileSizeBytes,
+						partSizeBytes, numberOfParts, partDataList);
+			}
 			
 			this.request.setPartSizeBytes(partSizeBytes);
 			this.request.setContentMD5Hex(fileMD5Hex);
 			// Ready to start the upload
 			MultipartUploadStatus status = client.startMultipartUpload(request, forceRestart);
-			// If the file upload is done then just return the FileHandle
-			if(status.getResultFileHandleId() != null){
-				return (S3FileHandle) client.getRawFileHandle(status.getResultFileHandleId());
+			// If the file upload is already done then just return the FileHandle
+			for (int attempt = 1; status.getResultFileHandleId() == null; attempt++) {
+				if (attempt > MAX_COMPLETE_ATTEMPTS) {
+					throw new SynapseClientException("Failed to complete upload: " + status.getUploadId() + " after "
+							+ MAX_COMPLETE_ATTEMPTS + " attempts. Parts state: " + status.getPartsState());
+				}
+				// Add only the parts that are needed
+				uploadMissingParts(client, status, partDataList, request.getContentType(), executor, uploadConcurrency,
+						clock);
+				// Complete the file upload. Any parts the server reset are uploaded again.
+				status = client.completeMultipartUpload(status.getUploadId());
 			}
-			// Add only the parts that are needed
-			uploadMissingParts(client, status, partDataList, request.getContentType());
-			// Complete the file upload
-			status = client.completeMultipartUpload(status.getUploadId());
 			return (S3FileHandle) client.getRawFileHandle(status.getResultFileHandleId());
 		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
 			deleteTempFiles(partDataList);
 		}
 	}
 	
 	/**
+	 * Upload the missing parts one at a time.
 	 * 
 	 * @param client
 	 * @param partsState
@@ -110,40 +222,169 @@ public class MultipartUpload {
 	public static void uploadMissingParts(final SynapseClient client,
 			final MultipartUploadStatus status, final List<PartData> partDataList,
 			final String contentType) throws SynapseException{
+		uploadMissingParts(client, status, partDataList, contentType, null, 1, new DefaultClock());
+	}
+
+	/**
+	 * Upload each part that is missing according to the status. Pre-signed
+	 * URLs are requested in batches, and up to maxPartsInFlight parts are
+	 * uploaded at the same time.
+	 * 
+	 * @param client
+	 * @param status
+	 * @param partDataList
+	 * @param contentType
+	 * @param executor
+	 *            Uploads the parts. When null, each part is uploaded on the
+	 *            caller's thread.
+	 * @param maxPartsInFlight
+	 *            The maximum number of parts uploaded at the same time.
+	 * @param clock
+	 *            Sleeps between the attempts of a part.
+	 * @throws SynapseException
+	 */
+	public static void uploadMissingParts(final SynapseClient client,
+			final MultipartUploadStatus status, final List<PartData> partDataList,
+			final String contentType, ExecutorService executor, int maxPartsInFlight, final Clock clock) throws SynapseException{
+		final String uploadId = status.getUploadId();
+		List<PartData> missingParts = new LinkedList<PartData>();
 		char[] partStateArray = status.getPartsState().toCharArray();
 		for(int i=0; i<partStateArray.length; i++){
-			char state = partStateArray[i];
-			if('0' == state){
-				// this is a missing part
-				PartData partData = partDataList.get(i);
-				// Get a URL for this part.
-				BatchPresignedUploadUrlRequest batchRequest = new BatchPresignedUploadUrlRequest();
-				batchRequest.setUploadId(status.getUploadId());
-				batchRequest.setPartNumbers(new LinkedList<Long>());
-				batchRequest.getPartNumbers().add((long) partData.getPartNumber());
-				BatchPresignedUploadUrlResponse batchResponse = client.getMultipartPresignedUrlBatch(batchRequest);
-				URL url;
-				try {
-					url = new URL(batchResponse.getPartPresignedUrls().get(0).getUploadPresignedUrl());
-					// upload the part to the url
+			if('0' == partStateArray[i]){
+				missingParts.add(partDataList.get(i));
+			}
+		}
+		BoundedParallelTasks tasks = new BoundedParallelTasks(executor, maxPartsInFlight);
+		try {
+			for (int start = 0; start < missingParts.size(); start += PRESIGNED_URL_BATCH_SIZE) {
+				List<PartData> batch = missingParts.subList(start,
+						Math.min(start + PRESIGNED_URL_BATCH_SIZE, missingParts.size()));
+				Map<Integer, URL> urls = getPresignedUrls(client, uploadId, batch);
+				for (final PartData partData : batch) {
+					final URL url = urls.get(partData.getPartNumber());
+					tasks.submit(new BoundedParallelTasks.Task() {
+
+						@Override
+						public void run() throws SynapseException {
+							uploadPart(client, uploadId, partData, url, contentType, clock);
+						}
+					});
+				}
+			}
+			tasks.awaitAll();
+		} catch (IOException e) {
+			// parts wrap their own IOExceptions so this is not expected.
+			throw new SynapseClientException(e);
+		} finally {
+			tasks.cancelAll();
+		}
+	}
+
+	/**
+	 * Upload a single part and add it to the upload. A part that fails is
+	 * retried with a new pre-signed URL, as the URL might have expired.
+	 * 
+	 * @param client
+	 * @param uploadId
+	 * @param partData
+	 * @param url
+	 *            The pre-signed URL for the part. A URL is requested when null.
+	 * @param contentType
+	 * @param clock
+	 *            Sleeps between the attempts.
+	 * @throws SynapseException
+	 */
+	public static void uploadPart(SynapseClient client, String uploadId, PartData partData, URL url,
+			String contentType, Clock clock) throws SynapseException {
+		byte[] partBytes = null;
+		if (partData.getSourceFile() != null) {
+			try {
+				partBytes = readPart(partData);
+			} catch (IOException e) {
+				throw new SynapseClientException(e);
+			}
+		}
+		for (int attempt = 1;; attempt++) {
+			try {
+				if (url == null) {
+					url = getPresignedUrls(client, uploadId, Collections.singletonList(partData)).get(
+							partData.getPartNumber());
+				}
+				if (partBytes != null) {
+					client.putBytesToURL(url, partBytes, contentType);
+				} else {
 					client.putFileToURL(url, partData.getPartFile(), contentType);
-					// Add the part to the upload
-					client.addPartToMultipartUpload(status.getUploadId(), partData.getPartNumber(), partData.getPartMD5Hex());
-				} catch (MalformedURLException e) {
-					new RuntimeException(e);
+				}
+				// Add the part to the upload
+				AddPartResponse response = client.addPartToMultipartUpload(uploadId, partData.getPartNumber(),
+						partData.getPartMD5Hex());
+				if (AddPartState.ADD_FAILED.equals(response.getAddPartState())) {
+					throw new SynapseClientException("Failed to add part: " + partData.getPartNumber() + " "
+							+ response.getErrorMessage());
+				}
+				return;
+			} catch (SynapseException e) {
+				if (attempt >= MAX_PART_ATTEMPTS) {
+					throw e;
+				}
+				url = null;
+				try {
+					clock.sleep(PART_RETRY_SLEEP_MS * attempt);
+				} catch (InterruptedException e1) {
+					Thread.currentThread().interrupt();
+					throw e;
 				}
 			}
 		}
 	}
 
 	/**
-	 * Delete all created temp files.
+	 * Get a pre-signed URL for each of the passed parts with a single request.
+	 * 
+	 * @param client
+	 * @param uploadId
+	 * @param parts
+	 * @return Map of part number to URL.
+	 * @throws SynapseException
+	 */
+	public static Map<Integer, URL> getPresignedUrls(SynapseClient client, String uploadId, List<PartData> parts)
+			throws SynapseException {
+		BatchPresignedUploadUrlRequest batchRequest = new BatchPresignedUploadUrlRequest();
+		batchRequest.setUploadId(uploadId);
+		batchRequest.setPartNumbers(new LinkedList<Long>());
+		for (PartData partData : parts) {
+			batchRequest.getPartNumbers().add((long) partData.getPartNumber());
+		}
+		BatchPresignedUploadUrlResponse batchResponse = client.getMultipartPresignedUrlBatch(batchRequest);
+		Map<Integer, URL> urls = new HashMap<Integer, URL>(parts.size());
+		try {
+			for (PartPresignedUrl partUrl : batchResponse.getPartPresignedUrls()) {
+				urls.put(partUrl.getPartNumber().intValue(), new URL(partUrl.getUploadPresignedUrl()));
+			}
+		} catch (MalformedURLException e) {
+			throw new SynapseClientException(e);
+		}
+		for (PartData partData : parts) {
+			if (!urls.containsKey(partData.getPartNumber())) {
+				throw new SynapseClientException("No pre-signed URL was returned for part: "
+						+ partData.getPartNumber());
+			}
+		}
+		return urls;
+	}
+
+	/**
+	 * Delete all created temp files. Parts read from a source file have no
+	 * temp file.
 	 * @param partDataList
 	 */
 	public static void deleteTempFiles(List<PartData> partDataList) {
 		if(partDataList != null){
 			// unconditionally delete temp files
 			for (PartData partData : partDataList) {
+				if (partData.getPartFile() == null) {
+					continue;
+				}
 				try {
 					partData.getPartFile().delete();
 				} catch (Exception e) {
@@ -152,6 +393,76 @@ public class MultipartUpload {
 		}
 	}
 
+	/**
+	 * Create the parts for a multi-part upload of a file and calculate the MD5
+	 * of the file. Each part is a range of the file, which is read when the
+	 * part is uploaded. The MD5 of each part is also calculated when it is
+	 * uploaded, so it is only calculated for parts that are uploaded and the
+	 * parts are hashed in parallel.
+	 * 
+	 * @param file
+	 * @param fileSizeBytes
+	 * @param partSizeBytes
+	 * @param numberOfParts
+	 * @param partDataList
+	 * @return
+	 * @throws IOException
+	 */
+	public static String createFileParts(File file, long fileSizeBytes, long partSizeBytes, long numberOfParts,
+			List<PartData> partDataList) throws IOException {
+		MessageDigest fileMD5Digest = createMD5Digest();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			for (long i = 0; i < numberOfParts; i++) {
+				long offset = i * partSizeBytes;
+				int length = (int) Math.min(partSizeBytes, fileSizeBytes - offset);
+				// The file is mapped so it is hashed without copying it to the heap.
+				fileMD5Digest.update(channel.map(MapMode.READ_ONLY, offset, length));
+				PartData partData = new PartData();
+				partData.setSourceFile(file);
+				partData.setSourceOffset(offset);
+				partData.setSourceLength(length);
+				partData.setPartNumber((int) (i + 1));
+				partDataList.add(partData);
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		return new String(Hex.encodeHex(fileMD5Digest.digest()));
+	}
+
+	/**
+	 * Read a part from its source file with a positional read, and calculate
+	 * the MD5 of the part if it is not known.
+	 * 
+	 * @param partData
+	 * @return
+	 * @throws IOException
+	 */
+	public static byte[] readPart(PartData partData) throws IOException {
+		byte[] bytes = new byte[partData.getSourceLength()];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		FileInputStream in = new FileInputStream(partData.getSourceFile());
+		try {
+			FileChannel channel = in.getChannel();
+			long position = partData.getSourceOffset();
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, position);
+				if (read < 0) {
+					throw new EOFException("The file is shorter than expected: " + partData.getSourceFile());
+				}
+				position += read;
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		if (partData.getPartMD5Hex() == null) {
+			partData.setPartMD5Hex(calculateMD5Hex(bytes, 0, bytes.length));
+		}
+		return bytes;
+	}
+
 	/**
 	 * Create all of the parts for a multi-part upload and calculate the MD5 of the file.
 	 * @param input
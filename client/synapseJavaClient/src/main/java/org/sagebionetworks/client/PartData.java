@@ -11,6 +11,9 @@ public class PartData {
 	File partFile;
 	int partNumber;
 	String partMD5Hex;
+	File sourceFile;
+	long sourceOffset;
+	int sourceLength;
 	
 	public File getPartFile() {
 		return partFile;
@@ -31,6 +34,31 @@ public class PartData {
 	public void setPartMD5Hex(String partMD5Hex) {
 		this.partMD5Hex = partMD5Hex;
 	}
+	
+	/**
+	 * When set, the part is read from a range of this file rather than from
+	 * its own part file.
+	 * 
+	 * @return
+	 */
+	public File getSourceFile() {
+		return sourceFile;
+	}
+	public void setSourceFile(File sourceFile) {
+		this.sourceFile = sourceFile;
+	}
+	public long getSourceOffset() {
+		return sourceOffset;
+	}
+	public void setSourceOffset(long sourceOffset) {
+		this.sourceOffset = sourceOffset;
+	}
+	public int getSourceLength() {
+		return sourceLength;
+	}
+	public void setSourceLength(int sourceLength) {
+		this.sourceLength = sourceLength;
+	}
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -40,6 +68,10 @@ public class PartData {
 		result = prime * result
 				+ ((partMD5Hex == null) ? 0 : partMD5Hex.hashCode());
 		result = prime * result + partNumber;
+		result = prime * result
+				+ ((sourceFile == null) ? 0 : sourceFile.hashCode());
+		result = prime * result + sourceLength;
+		result = prime * result + (int) (sourceOffset ^ (sourceOffset >>> 32));
 		return result;
 	}
 	@Override
@@ -63,12 +95,23 @@ public class PartData {
 			return false;
 		if (partNumber != other.partNumber)
 			return false;
+		if (sourceFile == null) {
+			if (other.sourceFile != null)
+				return false;
+		} else if (!sourceFile.equals(other.sourceFile))
+			return false;
+		if (sourceLength != other.sourceLength)
+			return false;
+		if (sourceOffset != other.sourceOffset)
+			return false;
 		return true;
 	}
 	@Override
 	public String toString() {
 		return "PartData [partFile=" + partFile + ", partNumber=" + partNumber
-				+ ", partMD5Hex=" + partMD5Hex + "]";
+				+ ", partMD5Hex=" + partMD5Hex + ", sourceFile=" + sourceFile
+				+ ", sourceOffset=" + sourceOffset + ", sourceLength="
+				+ sourceLength + "]";
 	}
 	
 }
@@ -13,6 +13,7 @@ import org.sagebionetworks.repo.model.message.ChangeMessages;
 import org.sagebionetworks.repo.model.message.FireMessagesResult;
 import org.sagebionetworks.repo.model.message.PublishResults;
 import org.sagebionetworks.repo.model.migration.AsyncMigrationRequest;
+import org.sagebionetworks.repo.model.migration.BackupFormat;
 import org.sagebionetworks.repo.model.migration.MigrationRangeChecksum;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.model.migration.MigrationTypeChecksum;
@@ -123,6 +124,16 @@ public interface SynapseAdminClient extends SynapseClient {
 	 * @throws SynapseException
 	 */
 	public BackupRestoreStatus startBackup(MigrationType migrationType, IdList ids) throws SynapseException;
+
+	/**
+	 * Start a backup daemon task that writes the backup file in the given format
+	 * @param migrationType
+	 * @param ids
+	 * @param format
+	 * @return
+	 * @throws SynapseException
+	 */
+	public BackupRestoreStatus startBackup(MigrationType migrationType, IdList ids, BackupFormat format) throws SynapseException;
 	
 	/**
 	 * Start a restore daemon task
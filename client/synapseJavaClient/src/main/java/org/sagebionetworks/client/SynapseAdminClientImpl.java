@@ -20,6 +20,7 @@ import org.sagebionetworks.repo.model.message.ChangeMessages;
 import org.sagebionetworks.repo.model.message.FireMessagesResult;
 import org.sagebionetworks.repo.model.message.PublishResults;
 import org.sagebionetworks.repo.model.migration.AsyncMigrationRequest;
+import org.sagebionetworks.repo.model.migration.BackupFormat;
 import org.sagebionetworks.repo.model.migration.MigrationRangeChecksum;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.model.migration.MigrationTypeChecksum;
@@ -168,6 +169,11 @@ public class SynapseAdminClientImpl extends SynapseClientImpl implements Synapse
 		String uri = MIGRATION_BACKUP + "?type=" + migrationType.name();
 		return postJSONEntity(getRepoEndpoint(), uri, ids, BackupRestoreStatus.class);
 	}
+
+	public BackupRestoreStatus startBackup(MigrationType migrationType, IdList ids, BackupFormat format) throws SynapseException {
+		String uri = MIGRATION_BACKUP + "?type=" + migrationType.name() + "&format=" + format.name();
+		return postJSONEntity(getRepoEndpoint(), uri, ids, BackupRestoreStatus.class);
+	}
 	
 	public BackupRestoreStatus startRestore(MigrationType migrationType, RestoreSubmission req) throws SynapseException {
 		String uri = MIGRATION_RESTORE + "?type=" + migrationType.name();
@@ -564,6 +564,12 @@ public interface SynapseClient extends BaseClient {
 	public String putFileToURL(URL url, File file, String contentType)
 			throws SynapseException;
 
+	public String putBytesToURL(URL url, byte[] bytes, String contentType)
+			throws SynapseException;
+
+	public byte[] getBytesFromURL(URL url, long offset, int length)
+			throws SynapseException;
+
 	public ExternalFileHandle createExternalFileHandle(ExternalFileHandle efh)
 			throws SynapseException;
 	
@@ -2287,6 +2293,9 @@ public interface SynapseClient extends BaseClient {
 	 * Download the specified file handle.
 	 * The associateObjectType and associateObjectId give the context of the request
 	 * and are used to perform the authorization check.
+	 * Large files are downloaded as several ranges at the same time and their MD5
+	 * is checked. If such a download fails, downloading to the same target again
+	 * resumes it.
 	 * 
 	 * @param fileHandleAssociation
 	 * @param target the location to download the File to
@@ -2537,6 +2546,22 @@ public interface SynapseClient extends BaseClient {
 	 * @throws IOException 
 	 */
 	S3FileHandle multipartUpload(File file, Long storageLocationId, Boolean generatePreview, Boolean forceRestart) throws SynapseException, FileNotFoundException, IOException;
+	
+	/**
+	 * Set the number of parts a multi-part upload will upload at the same
+	 * time. Each part being uploaded is held in memory.
+	 * 
+	 * @param concurrency
+	 */
+	void setMultipartUploadConcurrency(int concurrency);
+	
+	/**
+	 * Set the number of ranges of a large file that are downloaded at the same
+	 * time. Each range being downloaded is held in memory.
+	 * 
+	 * @param concurrency
+	 */
+	void setMultipartDownloadConcurrency(int concurrency);
 
 	/**
 	 * Subscribe to a topic
@@ -13,11 +13,11 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.utils.URIBuilder;
@@ -154,6 +154,7 @@ import org.sagebionetworks.repo.model.file.ExternalFileHandle;
 import org.sagebionetworks.repo.model.file.ExternalObjectStoreFileHandle;
 import org.sagebionetworks.repo.model.file.FileHandle;
 import org.sagebionetworks.repo.model.file.FileHandleAssociation;
+import org.sagebionetworks.repo.model.file.FileResult;
 import org.sagebionetworks.repo.model.file.FileHandleResults;
 import org.sagebionetworks.repo.model.file.MultipartUploadRequest;
 import org.sagebionetworks.repo.model.file.MultipartUploadStatus;
@@ -522,6 +523,9 @@ public class SynapseClientImpl extends BaseClientImpl implements SynapseClient {
 	private static final String DATA_ACCESS_REQUEST = "/dataAccessRequest";
 	private static final String DATA_ACCESS_SUBMISSION = "/dataAccessSubmission";
 
+	private int multipartUploadConcurrency = MultipartUpload.DEFAULT_UPLOAD_CONCURRENCY;
+	private int multipartDownloadConcurrency = MultipartDownload.DEFAULT_DOWNLOAD_CONCURRENCY;
+
 	/**
 	 * Default constructor uses the default repository and file services endpoints.
 	 */
@@ -1519,6 +1523,32 @@ public class SynapseClientImpl extends BaseClientImpl implements SynapseClient {
 		return super.putFileToURL(url, file, contentType);
 	}
 
+	/**
+	 * Put the passed bytes to the passed URL.
+	 * 
+	 * @param url
+	 * @param bytes
+	 * @param contentType
+	 * @throws SynapseException
+	 */
+	@Override
+	public String putBytesToURL(URL url, byte[] bytes, String contentType) throws SynapseException {
+		return super.putBytesToURL(url, bytes, contentType);
+	}
+
+	/**
+	 * Get a range of the bytes at the passed URL.
+	 * 
+	 * @param url
+	 * @param offset
+	 * @param length
+	 * @throws SynapseException
+	 */
+	@Override
+	public byte[] getBytesFromURL(URL url, long offset, int length) throws SynapseException {
+		return super.getBytesFromURL(url, offset, length);
+	}
+
 	/**
 	 * Create an External File Handle. This is used to references a file that is
 	 * not stored in Synpase.
@@ -4543,10 +4573,43 @@ public class SynapseClientImpl extends BaseClientImpl implements SynapseClient {
 	}
 
 	@Override
-	public void downloadFile(FileHandleAssociation fileHandleAssociation, File target)
+	public void downloadFile(final FileHandleAssociation fileHandleAssociation, File target)
 			throws SynapseException {
-		String uri = createFileDownloadUri(fileHandleAssociation, true);
-		downloadFromSynapse(getFileEndpoint() + uri, null, target);
+		BatchFileRequest request = new BatchFileRequest();
+		request.setRequestedFiles(Collections.singletonList(fileHandleAssociation));
+		request.setIncludeFileHandles(true);
+		request.setIncludePreSignedURLs(true);
+		request.setIncludePreviewPreSignedURLs(false);
+		FileResult result = getFileHandleAndUrlBatch(request).getRequestedFiles().get(0);
+		if (result.getFailureCode() != null || result.getPreSignedURL() == null) {
+			// the redirect reports why the file cannot be downloaded.
+			String uri = createFileDownloadUri(fileHandleAssociation, true);
+			downloadFromSynapse(getFileEndpoint() + uri, null, target);
+			return;
+		}
+		if (result.getFileHandle() instanceof S3FileHandle
+				&& result.getFileHandle().getContentSize() != null
+				&& result.getFileHandle().getContentSize() > MultipartDownload.RANGE_SIZE_BYTES) {
+			// Large S3 files are downloaded as ranges at the same time.
+			URL url;
+			try {
+				url = new URL(result.getPreSignedURL());
+			} catch (MalformedURLException e) {
+				throw new SynapseClientException(e);
+			}
+			MultipartDownload.UrlProvider urlProvider = new MultipartDownload.UrlProvider() {
+
+				@Override
+				public URL getUrl() throws SynapseException {
+					return getFileURL(fileHandleAssociation);
+				}
+			};
+			new MultipartDownload(this, url, urlProvider, result.getFileHandle().getContentSize(),
+					result.getFileHandle().getContentMd5(), target, multipartDownloadConcurrency).download();
+			return;
+		}
+		// the pre-signed URL is used directly rather than requested again with a redirect.
+		downloadFromSynapse(result.getPreSignedURL(), null, target);
 	}
 
 	@Override
@@ -4711,7 +4774,7 @@ public class SynapseClientImpl extends BaseClientImpl implements SynapseClient {
 	@Override
 	public S3FileHandle multipartUpload(InputStream input, long fileSize, String fileName,
 			String contentType, Long storageLocationId, Boolean generatePreview, Boolean forceRestart) throws SynapseException {
-		return new MultipartUpload(this, input, fileSize, fileName, contentType, storageLocationId, generatePreview, forceRestart, new TempFileProviderImpl()).uploadFile();
+		return new MultipartUpload(this, input, fileSize, fileName, contentType, storageLocationId, generatePreview, forceRestart, new TempFileProviderImpl(), multipartUploadConcurrency).uploadFile();
 	}
 
 
@@ -4719,16 +4782,21 @@ public class SynapseClientImpl extends BaseClientImpl implements SynapseClient {
 	public S3FileHandle multipartUpload(File file,
 			Long storageLocationId, Boolean generatePreview,
 			Boolean forceRestart) throws SynapseException, IOException {
-		InputStream fileInputStream = null;
-		try{
-			fileInputStream = new FileInputStream(file);
-			String fileName = file.getName();
-			long fileSize = file.length();
-			String contentType = guessContentTypeFromStream(file);
-			return multipartUpload(fileInputStream, fileSize, fileName, contentType, storageLocationId, generatePreview, forceRestart);
-		}finally{
-			IOUtils.closeQuietly(fileInputStream);
-		}
+		String contentType = guessContentTypeFromStream(file);
+		// The parts are read directly from the file so no temp files are needed.
+		return new MultipartUpload(this, file, contentType, storageLocationId, generatePreview, forceRestart, multipartUploadConcurrency).uploadFile();
+	}
+
+	@Override
+	public void setMultipartUploadConcurrency(int concurrency) {
+		ValidateArgument.requirement(concurrency > 0, "concurrency must be greater than zero");
+		this.multipartUploadConcurrency = concurrency;
+	}
+
+	@Override
+	public void setMultipartDownloadConcurrency(int concurrency) {
+		ValidateArgument.requirement(concurrency > 0, "concurrency must be greater than zero");
+		this.multipartDownloadConcurrency = concurrency;
 	}
 
 	@Override
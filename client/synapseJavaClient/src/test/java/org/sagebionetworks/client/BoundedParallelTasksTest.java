@@ -0,0 +1,117 @@
+package org.sagebionetworks.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.client.exceptions.SynapseClientException;
+import org.sagebionetworks.client.exceptions.SynapseException;
+
+public class BoundedParallelTasksTest {
+
+	ExecutorService executor;
+	AtomicInteger running;
+	AtomicInteger maxRunning;
+	AtomicInteger done;
+
+	@Before
+	public void before() {
+		executor = Executors.newFixedThreadPool(4);
+		running = new AtomicInteger();
+		maxRunning = new AtomicInteger();
+		done = new AtomicInteger();
+	}
+
+	@After
+	public void after() {
+		executor.shutdownNow();
+	}
+
+	private BoundedParallelTasks.Task countingTask() {
+		return new BoundedParallelTasks.Task() {
+
+			@Override
+			public void run() throws SynapseException, IOException {
+				int now = running.incrementAndGet();
+				synchronized (maxRunning) {
+					maxRunning.set(Math.max(maxRunning.get(), now));
+				}
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				running.decrementAndGet();
+				done.incrementAndGet();
+			}
+		};
+	}
+
+	@Test
+	public void testNoExecutor() throws Exception {
+		BoundedParallelTasks tasks = new BoundedParallelTasks(null, 2);
+		// call under test
+		tasks.submit(countingTask());
+		// the task ran on the caller's thread.
+		assertEquals(1, done.get());
+		tasks.awaitAll();
+	}
+
+	@Test
+	public void testMaxInFlight() throws Exception {
+		BoundedParallelTasks tasks = new BoundedParallelTasks(executor, 2);
+		for (int i = 0; i < 10; i++) {
+			// call under test
+			tasks.submit(countingTask());
+		}
+		tasks.awaitAll();
+		assertEquals(10, done.get());
+		assertTrue(maxRunning.get() <= 2);
+	}
+
+	@Test
+	public void testFailureCancelsRunningTasks() throws Exception {
+		final SynapseClientException failure = new SynapseClientException("failed");
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		BoundedParallelTasks tasks = new BoundedParallelTasks(executor, 2);
+		try {
+			tasks.submit(new BoundedParallelTasks.Task() {
+
+				@Override
+				public void run() throws SynapseException, IOException {
+					throw failure;
+				}
+			});
+			tasks.submit(new BoundedParallelTasks.Task() {
+
+				@Override
+				public void run() throws SynapseException, IOException {
+					try {
+						Thread.sleep(60000);
+					} catch (InterruptedException e) {
+						interrupted.countDown();
+					}
+				}
+			});
+			// call under test
+			tasks.awaitAll();
+			fail();
+		} catch (SynapseClientException e) {
+			assertSame(failure, e);
+		} finally {
+			tasks.cancelAll();
+		}
+		assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+	}
+}
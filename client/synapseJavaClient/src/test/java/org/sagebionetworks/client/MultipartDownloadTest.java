@@ -0,0 +1,213 @@
+package org.sagebionetworks.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sagebionetworks.client.exceptions.SynapseClientException;
+import org.sagebionetworks.util.Clock;
+
+public class MultipartDownloadTest {
+
+	@Mock
+	SynapseClient mockClient;
+	@Mock
+	MultipartDownload.UrlProvider mockUrlProvider;
+	@Mock
+	Clock mockClock;
+
+	URL url;
+	URL newUrl;
+	byte[] fileBytes;
+	String fileMD5Hex;
+	File destination;
+	File partialFile;
+	File partMapFile;
+
+	@Before
+	public void before() throws Exception {
+		MockitoAnnotations.initMocks(this);
+		url = new URL("http://amazon.com/bucket/key?signature=one");
+		newUrl = new URL("http://amazon.com/bucket/key?signature=two");
+		when(mockUrlProvider.getUrl()).thenReturn(newUrl);
+		// two ranges, the second is partial.
+		fileBytes = new byte[MultipartDownload.RANGE_SIZE_BYTES + 10];
+		new Random(123L).nextBytes(fileBytes);
+		fileMD5Hex = MultipartUpload.calculateMD5Hex(fileBytes, 0, fileBytes.length);
+
+		// serve each range from the file bytes.
+		doAnswer(new Answer<byte[]>() {
+			@Override
+			public byte[] answer(InvocationOnMock invocation) throws Throwable {
+				long offset = (Long) invocation.getArguments()[1];
+				int length = (Integer) invocation.getArguments()[2];
+				return Arrays.copyOfRange(fileBytes, (int) offset, (int) offset + length);
+			}
+		}).when(mockClient).getBytesFromURL(any(URL.class), anyLong(), anyInt());
+
+		destination = File.createTempFile("MultipartDownloadTest", ".dat");
+		destination.delete();
+		partialFile = new File(destination.getPath() + MultipartDownload.PARTIAL_FILE_SUFFIX);
+		partMapFile = new File(partialFile.getPath() + MultipartDownload.PART_MAP_SUFFIX);
+	}
+
+	@After
+	public void after() {
+		destination.delete();
+		partialFile.delete();
+		partMapFile.delete();
+	}
+
+	@Test
+	public void testDownload() throws Exception {
+		MultipartDownload download = new MultipartDownload(mockClient, url, mockUrlProvider, fileBytes.length,
+				fileMD5Hex, destination, 2);
+		// call under test
+		File result = download.download();
+		assertEquals(destination, result);
+		assertArrayEquals(fileBytes, FileUtils.readFileToByteArray(destination));
+		verify(mockClient).getBytesFromURL(url, 0L, MultipartDownload.RANGE_SIZE_BYTES);
+		verify(mockClient).getBytesFromURL(url, (long) MultipartDownload.RANGE_SIZE_BYTES, 10);
+		verify(mockUrlProvider, never()).getUrl();
+		assertFalse(partialFile.exists());
+		assertFalse(partMapFile.exists());
+	}
+
+	@Test
+	public void testDownloadResume() throws Exception {
+		MultipartDownload download = new MultipartDownload(mockClient, url, mockUrlProvider, fileBytes.length,
+				fileMD5Hex, destination, 2);
+		// The first range was downloaded before the download was interrupted.
+		byte[] partial = new byte[fileBytes.length];
+		System.arraycopy(fileBytes, 0, partial, 0, MultipartDownload.RANGE_SIZE_BYTES);
+		FileUtils.writeByteArrayToFile(partialFile, partial);
+		FileUtils.writeStringToFile(partMapFile, download.createPartMapHeader() + "\n0\n", "UTF-8");
+		// call under test
+		download.download();
+		assertArrayEquals(fileBytes, FileUtils.readFileToByteArray(destination));
+		// only the second range is downloaded.
+		verify(mockClient, times(1)).getBytesFromURL(any(URL.class), anyLong(), anyInt());
+		verify(mockClient).getBytesFromURL(url, (long) MultipartDownload.RANGE_SIZE_BYTES, 10);
+	}
+
+	@Test
+	public void testDownloadPartMapForAnotherFile() throws Exception {
+		MultipartDownload download = new MultipartDownload(mockClient, url, mockUrlProvider, fileBytes.length,
+				fileMD5Hex, destination, 1);
+		FileUtils.writeByteArrayToFile(partialFile, new byte[fileBytes.length]);
+		FileUtils.writeStringToFile(partMapFile, "path=amazon.com/bucket/other size=1 md5=other rangeSize=1\n0\n", "UTF-8");
+		// call under test
+		download.download();
+		assertArrayEquals(fileBytes, FileUtils.readFileToByteArray(destination));
+		verify(mockClient, times(2)).getBytesFromURL(any(URL.class), anyLong(), anyInt());
+	}
+
+	@Test
+	public void testDownloadPartMapForAnotherUrl() throws Exception {
+		// a file of the same size without an MD5 at another path.
+		MultipartDownload other = new MultipartDownload(mockClient, new URL("http://amazon.com/bucket/other"),
+				mockUrlProvider, fileBytes.length, null, destination, 1);
+		MultipartDownload download = new MultipartDownload(mockClient, url, mockUrlProvider, fileBytes.length,
+				null, destination, 1);
+		FileUtils.writeByteArrayToFile(partialFile, new byte[fileBytes.length]);
+		FileUtils.writeStringToFile(partMapFile, other.createPartMapHeader() + "\n0\n", "UTF-8");
+		// call under test
+		download.download();
+		assertArrayEquals(fileBytes, FileUtils.readFileToByteArray(destination));
+		verify(mockClient, times(2)).getBytesFromURL(any(URL.class), anyLong(), anyInt());
+	}
+
+	@Test
+	public void testCreatePartMapHeader() throws Exception {
+		MultipartDownload download = new MultipartDownload(mockClient, url, mockUrlProvider, fileBytes.length,
+				fileMD5Hex, destination, 1);
+		// a new pre-signed URL for the same file.
+		MultipartDownload renewed = new MultipartDownload(mockClient, newUrl, mockUrlProvider, fileBytes.length,
+				fileMD5Hex, destination, 1);
+		// call under test
+		String header = download.createPartMapHeader();
+		assertEquals("path=amazon.com/bucket/key size=" + fileBytes.length + " md5=" + fileMD5Hex + " rangeSize="
+				+ MultipartDownload.RANGE_SIZE_BYTES, header);
+		assertEquals(header, renewed.createPartMapHeader());
+	}
+
+	@Test
+	public void testDownloadMD5Mismatch() throws Exception {
+		MultipartDownload download = new MultipartDownload(mockClient, url, mockUrlProvider, fileBytes.length,
+				"not the md5", destination, 2);
+		try {
+			// call under test
+			download.download();
+			fail();
+		} catch (SynapseClientException e) {
+			// expected
+		}
+		assertFalse(destination.exists());
+		// the next attempt starts over.
+		assertFalse(partialFile.exists());
+		assertFalse(partMapFile.exists());
+	}
+
+	@Test
+	public void testDownloadRetryWithNewUrl() throws Exception {
+		byte[] smallFile = Arrays.copyOfRange(fileBytes, 0, 10);
+		when(mockClient.getBytesFromURL(url, 0L, 10)).thenThrow(new SynapseClientException("expired"));
+		when(mockClient.getBytesFromURL(newUrl, 0L, 10)).thenReturn(smallFile);
+		MultipartDownload download = new MultipartDownload(mockClient, url, mockUrlProvider, smallFile.length,
+				MultipartUpload.calculateMD5Hex(smallFile, 0, smallFile.length), destination, 1);
+		download.clock = mockClock;
+		// call under test
+		download.download();
+		assertArrayEquals(smallFile, FileUtils.readFileToByteArray(destination));
+		verify(mockUrlProvider, times(1)).getUrl();
+		verify(mockClient).getBytesFromURL(eq(newUrl), eq(0L), eq(10));
+		verify(mockClock).sleep(MultipartDownload.RANGE_RETRY_SLEEP_MS);
+	}
+
+	@Test
+	public void testReadPartMap() throws Exception {
+		String header = "path=amazon.com/bucket/key size=10 md5=abc rangeSize=5";
+		// the last line was cut off.
+		FileUtils.writeStringToFile(partMapFile, header + "\n1\n0\n\u0000", "UTF-8");
+		// call under test
+		Set<Integer> done = MultipartDownload.readPartMap(partMapFile, header);
+		assertEquals(2, done.size());
+		assertTrue(done.contains(0));
+		assertTrue(done.contains(1));
+		// call under test
+		assertEquals(Collections.emptySet(), MultipartDownload.readPartMap(partMapFile,
+				"path=amazon.com/bucket/key size=11 md5=abc rangeSize=5"));
+	}
+
+	@Test
+	public void testReadPartMapDoesNotExist() throws Exception {
+		// call under test
+		assertTrue(MultipartDownload.readPartMap(partMapFile, "header").isEmpty());
+	}
+}
@@ -2,6 +2,9 @@ package org.sagebionetworks.client;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
@@ -19,6 +22,8 @@ import java.io.OutputStream;
 import java.net.URL;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
@@ -31,7 +36,10 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.sagebionetworks.client.exceptions.SynapseClientException;
 import org.sagebionetworks.client.exceptions.SynapseException;
+import org.sagebionetworks.repo.model.file.AddPartResponse;
+import org.sagebionetworks.repo.model.file.AddPartState;
 import org.sagebionetworks.repo.model.file.BatchPresignedUploadUrlRequest;
 import org.sagebionetworks.repo.model.file.BatchPresignedUploadUrlResponse;
 import org.sagebionetworks.repo.model.file.MultipartUploadRequest;
@@ -41,6 +49,7 @@ import org.sagebionetworks.repo.model.file.PartPresignedUrl;
 import org.sagebionetworks.repo.model.file.S3FileHandle;
 import org.sagebionetworks.repo.model.file.TempFileProvider;
 import org.sagebionetworks.repo.model.file.TempFileProviderImpl;
+import org.sagebionetworks.util.Clock;
 
 public class MultipartUploadTest {
 
@@ -48,6 +57,8 @@ public class MultipartUploadTest {
 	SynapseClient mockClient;
 	@Mock
 	TempFileProvider mockFileProvider;
+	@Mock
+	Clock mockClock;
 
 	List<PartData> partDataList;
 
@@ -67,6 +78,8 @@ public class MultipartUploadTest {
 	MultipartUploadStatus startStatus;
 
 	MultipartUploadStatus completeStatus;
+	
+	File sourceFile;
 
 	@Before
 	public void before() throws Exception {
@@ -126,22 +139,34 @@ public class MultipartUploadTest {
 		fileHandle.setId(completeStatus.getResultFileHandleId());
 		when(mockClient.getRawFileHandle(anyString())).thenReturn(fileHandle);
 
-		BatchPresignedUploadUrlResponse batchResponse = new BatchPresignedUploadUrlResponse();
-		batchResponse.setPartPresignedUrls(new LinkedList<PartPresignedUrl>());
-		PartPresignedUrl partUrl = new PartPresignedUrl();
-		partUrl.setPartNumber(new Long(1));
-		partUrl.setUploadPresignedUrl("http://amazon.com/bucket/key/1");
-		batchResponse.getPartPresignedUrls().add(partUrl);
-
-		when(
-				mockClient
-						.getMultipartPresignedUrlBatch(any(BatchPresignedUploadUrlRequest.class)))
-				.thenReturn(batchResponse);
+		// return a URL for each part requested.
+		doAnswer(new Answer<BatchPresignedUploadUrlResponse>(){
+			@Override
+			public BatchPresignedUploadUrlResponse answer(InvocationOnMock invocation) throws Throwable {
+				BatchPresignedUploadUrlRequest request = (BatchPresignedUploadUrlRequest) invocation.getArguments()[0];
+				BatchPresignedUploadUrlResponse batchResponse = new BatchPresignedUploadUrlResponse();
+				batchResponse.setPartPresignedUrls(new LinkedList<PartPresignedUrl>());
+				for (Long partNumber : request.getPartNumbers()) {
+					PartPresignedUrl partUrl = new PartPresignedUrl();
+					partUrl.setPartNumber(partNumber);
+					partUrl.setUploadPresignedUrl("http://amazon.com/bucket/key/" + partNumber);
+					batchResponse.getPartPresignedUrls().add(partUrl);
+				}
+				return batchResponse;
+			}}).when(mockClient).getMultipartPresignedUrlBatch(any(BatchPresignedUploadUrlRequest.class));
+		
+		AddPartResponse addResponse = new AddPartResponse();
+		addResponse.setAddPartState(AddPartState.ADD_SUCCESS);
+		when(mockClient.addPartToMultipartUpload(anyString(), anyInt(), anyString())).thenReturn(addResponse);
+		
+		sourceFile = File.createTempFile("MultipartUploadTest", ".txt");
+		FileUtils.writeByteArrayToFile(sourceFile, fileBytes);
 	}
 
 	@After
 	public void after() {
 		MultipartUpload.deleteTempFiles(partDataList);
+		sourceFile.delete();
 	}
 
 	@Test
@@ -293,7 +318,8 @@ public class MultipartUploadTest {
 		// call under test.
 		MultipartUpload.uploadMissingParts(mockClient, status, partDataList, contentType);
 
-		verify(mockClient, times(2)).getMultipartPresignedUrlBatch(
+		// the URLs for both parts are requested at once.
+		verify(mockClient, times(1)).getMultipartPresignedUrlBatch(
 				any(BatchPresignedUploadUrlRequest.class));
 		verify(mockClient, times(2)).putFileToURL(any(URL.class),
 				any(File.class), any(String.class));
@@ -347,6 +373,132 @@ public class MultipartUploadTest {
 		verify(mockClient, never()).completeMultipartUpload(startStatus.getUploadId());
 	}
 	
+	@Test
+	public void testUploadMissingPartsConcurrent() throws SynapseException {
+		MultipartUploadStatus status = new MultipartUploadStatus();
+		status.setPartsState("000000000000");
+		status.setUploadId("uploadId");
+		List<PartData> partDataList = createTestPartList(12);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			// call under test.
+			MultipartUpload.uploadMissingParts(mockClient, status, partDataList, contentType, executor, 3, mockClock);
+		} finally {
+			executor.shutdownNow();
+		}
+		// URLs are requested in batches.
+		verify(mockClient, times(2)).getMultipartPresignedUrlBatch(
+				any(BatchPresignedUploadUrlRequest.class));
+		verify(mockClient, times(12)).putFileToURL(any(URL.class),
+				any(File.class), any(String.class));
+		for (PartData partData : partDataList) {
+			verify(mockClient).addPartToMultipartUpload(status.getUploadId(), partData.getPartNumber(),
+					partData.getPartMD5Hex());
+		}
+	}
+
+	@Test
+	public void testUploadPartRetry() throws Exception {
+		PartData partData = createTestPartList(1).get(0);
+		when(mockClient.putFileToURL(any(URL.class), any(File.class), any(String.class))).thenThrow(
+				new SynapseClientException("expired")).thenReturn("");
+		// call under test.
+		MultipartUpload.uploadPart(mockClient, "uploadId", partData, null, contentType, mockClock);
+		// a new URL is requested for the retry.
+		verify(mockClient, times(2)).getMultipartPresignedUrlBatch(
+				any(BatchPresignedUploadUrlRequest.class));
+		verify(mockClient, times(2)).putFileToURL(any(URL.class),
+				any(File.class), any(String.class));
+		verify(mockClient, times(1)).addPartToMultipartUpload("uploadId", 1, partData.getPartMD5Hex());
+		verify(mockClock).sleep(MultipartUpload.PART_RETRY_SLEEP_MS);
+	}
+
+	@Test
+	public void testCreateFileParts() throws Exception {
+		List<PartData> partDataList = new LinkedList<PartData>();
+		// call under test
+		String fileMD5Hex = MultipartUpload.createFileParts(sourceFile, fileSizeBytes, 4, 3, partDataList);
+		assertEquals(calculateMD5Hex(fileBytes, 0, 10), fileMD5Hex);
+		assertEquals(3, partDataList.size());
+		PartData last = partDataList.get(2);
+		assertEquals(3, last.getPartNumber());
+		assertEquals(sourceFile, last.getSourceFile());
+		assertEquals(8L, last.getSourceOffset());
+		assertEquals(2, last.getSourceLength());
+		// nothing is copied.
+		assertNull(last.getPartFile());
+		// part MD5s are calculated when the parts are read.
+		assertNull(last.getPartMD5Hex());
+		
+		// call under test
+		byte[] partBytes = MultipartUpload.readPart(last);
+		assertEquals("0809", new String(Hex.encodeHex(partBytes)));
+		assertEquals(calculateMD5Hex(fileBytes, 8, 2), last.getPartMD5Hex());
+	}
+
+	@Test
+	public void testUploadFileFromFile() throws Exception {
+		MultipartUpload upload = new MultipartUpload(mockClient, sourceFile,
+				contentType, storageLocationId, generatePreview, forceRestart, 2);
+		S3FileHandle result = upload.uploadFile();
+		assertEquals(fileHandle, result);
+
+		ArgumentCaptor<MultipartUploadRequest> requestCapture = ArgumentCaptor.forClass(MultipartUploadRequest.class);
+		verify(mockClient).startMultipartUpload(requestCapture.capture(), any(Boolean.class));
+		assertEquals(sourceFile.getName(), requestCapture.getValue().getFileName());
+		assertEquals(calculateMD5Hex(fileBytes, 0, 10), requestCapture.getValue().getContentMD5Hex());
+		
+		ArgumentCaptor<byte[]> bytesCapture = ArgumentCaptor.forClass(byte[].class);
+		verify(mockClient).putBytesToURL(any(URL.class), bytesCapture.capture(), eq(contentType));
+		assertEquals("00010203040506070809", new String(Hex.encodeHex(bytesCapture.getValue())));
+		verify(mockClient, never()).putFileToURL(any(URL.class), any(File.class), any(String.class));
+		verify(mockClient).addPartToMultipartUpload(startStatus.getUploadId(), 1, calculateMD5Hex(fileBytes, 0, 10));
+		verify(mockClient).completeMultipartUpload(startStatus.getUploadId());
+		// the source file must not be deleted.
+		assertTrue(sourceFile.exists());
+	}
+
+	@Test
+	public void testUploadFilePartsResetOnComplete() throws Exception {
+		// the server resets the part when the upload is first completed.
+		MultipartUploadStatus resetStatus = new MultipartUploadStatus();
+		resetStatus.setPartsState("0");
+		resetStatus.setUploadId(startStatus.getUploadId());
+		resetStatus.setState(MultipartUploadState.UPLOADING);
+		when(mockClient.completeMultipartUpload(anyString())).thenReturn(resetStatus, completeStatus);
+		
+		MultipartUpload upload = new MultipartUpload(mockClient, input,
+				fileSizeBytes, fileName, contentType, storageLocationId,
+				generatePreview, forceRestart, mockFileProvider);
+		S3FileHandle result = upload.uploadFile();
+		assertEquals(fileHandle, result);
+		// the reset part is uploaded again.
+		verify(mockClient, times(2)).putFileToURL(any(URL.class),
+				any(File.class), any(String.class));
+		verify(mockClient, times(2)).completeMultipartUpload(startStatus.getUploadId());
+		verifyMockFilesDeleted(1);
+	}
+
+	@Test
+	public void testUploadFileNeverComplete() throws Exception {
+		MultipartUploadStatus resetStatus = new MultipartUploadStatus();
+		resetStatus.setPartsState("0");
+		resetStatus.setUploadId(startStatus.getUploadId());
+		when(mockClient.completeMultipartUpload(anyString())).thenReturn(resetStatus);
+		
+		MultipartUpload upload = new MultipartUpload(mockClient, input,
+				fileSizeBytes, fileName, contentType, storageLocationId,
+				generatePreview, forceRestart, mockFileProvider);
+		try {
+			upload.uploadFile();
+			fail();
+		} catch (SynapseClientException e) {
+			// expected
+		}
+		verify(mockClient, times(MultipartUpload.MAX_COMPLETE_ATTEMPTS)).completeMultipartUpload(startStatus.getUploadId());
+		verifyMockFilesDeleted(1);
+	}
+	
 	/**
 	 * Verify the expected number of mock files were created and deleted.
 	 * @param expectedCount
@@ -5,22 +5,33 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sagebionetworks.client.exceptions.SynapseException;
 import org.sagebionetworks.client.exceptions.SynapseTermsOfUseException;
 import org.sagebionetworks.repo.model.ACCESS_TYPE;
@@ -37,6 +48,12 @@ import org.sagebionetworks.repo.model.RestrictableObjectDescriptor;
 import org.sagebionetworks.repo.model.TermsOfUseAccessRequirement;
 import org.sagebionetworks.repo.model.auth.LoginRequest;
 import org.sagebionetworks.repo.model.auth.UserEntityPermissions;
+import org.sagebionetworks.repo.model.file.BatchFileResult;
+import org.sagebionetworks.repo.model.file.FileHandleAssociateType;
+import org.sagebionetworks.repo.model.file.FileHandleAssociation;
+import org.sagebionetworks.repo.model.file.FileResult;
+import org.sagebionetworks.repo.model.file.FileResultFailureCode;
+import org.sagebionetworks.repo.model.file.S3FileHandle;
 import org.sagebionetworks.repo.model.provenance.Activity;
 import org.sagebionetworks.repo.model.versionInfo.SynapseVersionInfo;
 import org.sagebionetworks.repo.web.NotFoundException;
@@ -60,6 +77,7 @@ public class SynapseTest {
 	SimpleHttpClient mockClient;
 	
 	SynapseClientImpl synapse;
+	File target;
 	
 	@Before
 	public void before() throws Exception{
@@ -77,6 +95,12 @@ public class SynapseTest {
 		request.setUsername("foo");
 		request.setPassword("bar");
 		synapse.login(request);
+		target = File.createTempFile("SynapseTest", ".dat");
+	}
+	
+	@After
+	public void after() {
+		target.delete();
 	}
 	
 	@Test (expected=IllegalArgumentException.class)
@@ -490,9 +514,81 @@ public class SynapseTest {
 		assertEquals("file-endpoint", synapse.getEndpointForType(RestEndpointType.file));
 	}
 	
+	@Test
+	public void testDownloadFileWithPreSignedUrl() throws Exception {
+		String preSignedUrl = "https://s3.amazonaws.com/bucket/key?signature=one";
+		configureMockHttpResponse(200, createBatchFileResult(10L, preSignedUrl, null));
+		when(mockClient.getFile(any(SimpleHttpRequest.class), any(File.class))).thenReturn(mockResponse);
+		// call under test
+		synapse.downloadFile(createFileHandleAssociation(), target);
+		// the URL of the batch is downloaded without asking for it again.
+		ArgumentCaptor<SimpleHttpRequest> captor = ArgumentCaptor.forClass(SimpleHttpRequest.class);
+		verify(mockClient).getFile(captor.capture(), any(File.class));
+		assertEquals(preSignedUrl, captor.getValue().getUri());
+		verify(mockClient, never()).get(any(SimpleHttpRequest.class));
+	}
+	
+	@Test
+	public void testDownloadFileFailure() throws Exception {
+		configureMockHttpResponse(200, createBatchFileResult(10L, null, FileResultFailureCode.UNAUTHORIZED));
+		when(mockClient.getFile(any(SimpleHttpRequest.class), any(File.class))).thenReturn(mockResponse);
+		// call under test
+		synapse.downloadFile(createFileHandleAssociation(), target);
+		// the redirect reports the failure.
+		ArgumentCaptor<SimpleHttpRequest> captor = ArgumentCaptor.forClass(SimpleHttpRequest.class);
+		verify(mockClient).getFile(captor.capture(), any(File.class));
+		assertTrue(captor.getValue().getUri().startsWith(synapse.getFileEndpoint() + "/file/123?"));
+	}
+	
+	@Test
+	public void testDownloadFileMultipart() throws Exception {
+		String preSignedUrl = "https://s3.amazonaws.com/bucket/key?signature=one";
+		long size = MultipartDownload.RANGE_SIZE_BYTES + 1L;
+		configureMockHttpResponse(200, createBatchFileResult(size, preSignedUrl, null));
+		SynapseClientImpl spySynapse = spy(synapse);
+		spySynapse.setMultipartDownloadConcurrency(1);
+		doAnswer(new Answer<byte[]>() {
+			@Override
+			public byte[] answer(InvocationOnMock invocation) throws Throwable {
+				return new byte[(Integer) invocation.getArguments()[2]];
+			}
+		}).when(spySynapse).getBytesFromURL(any(URL.class), anyLong(), anyInt());
+		// call under test
+		spySynapse.downloadFile(createFileHandleAssociation(), target);
+		assertEquals(size, target.length());
+		URL url = new URL(preSignedUrl);
+		verify(spySynapse).getBytesFromURL(url, 0L, MultipartDownload.RANGE_SIZE_BYTES);
+		verify(spySynapse).getBytesFromURL(url, (long) MultipartDownload.RANGE_SIZE_BYTES, 1);
+		verify(mockClient, never()).getFile(any(SimpleHttpRequest.class), any(File.class));
+	}
+	
 	/*
 	 * Private methods
 	 */
+	private FileHandleAssociation createFileHandleAssociation() {
+		FileHandleAssociation association = new FileHandleAssociation();
+		association.setFileHandleId("123");
+		association.setAssociateObjectId("syn456");
+		association.setAssociateObjectType(FileHandleAssociateType.FileEntity);
+		return association;
+	}
+	
+	private String createBatchFileResult(long contentSize, String preSignedUrl, FileResultFailureCode failureCode)
+			throws JSONObjectAdapterException {
+		S3FileHandle handle = new S3FileHandle();
+		handle.setConcreteType(S3FileHandle.class.getName());
+		handle.setId("123");
+		handle.setContentSize(contentSize);
+		FileResult result = new FileResult();
+		result.setFileHandleId("123");
+		result.setFileHandle(handle);
+		result.setPreSignedURL(preSignedUrl);
+		result.setFailureCode(failureCode);
+		BatchFileResult batch = new BatchFileResult();
+		batch.setRequestedFiles(Collections.singletonList(result));
+		return EntityFactory.createJSONStringForEntity(batch);
+	}
+	
 	private String createActivityString(String id, Activity act)
 			throws JSONObjectAdapterException, UnsupportedEncodingException {
 		act.setId(id);
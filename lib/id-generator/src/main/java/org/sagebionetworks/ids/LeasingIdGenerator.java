@@ -0,0 +1,259 @@
+package org.sagebionetworks.ids;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An {@link IdGenerator} that reserves blocks of IDs from the database and
+ * hands them out from memory. Each JVM leases a contiguous block of IDs for a
+ * type with a single call to {@link IdGenerator#generateBatchNewIds(IdType, int)}
+ * so most calls to {@link #generateNewId(IdType)} do not touch the database
+ * at all. When a lease is running low, the next lease is fetched in the
+ * background so callers rarely wait on the database.
+ * <p>
+ * Leasing is configured per type. Types without a lease size are passed
+ * directly to the wrapped generator. IDs from a leased type are unique but are
+ * only increasing within a single JVM, and IDs that are leased but never used
+ * are lost when the JVM stops. Types where the order of IDs across machines
+ * matters (such as CHANGE_ID) must not be leased. See
+ * {@link #reserveId(Long, IdType)} for the limits of reserving a leased type.
+ *
+ */
+public class LeasingIdGenerator implements IdGenerator {
+
+	static private Log log = LogFactory.getLog(LeasingIdGenerator.class);
+
+	/**
+	 * The next lease is fetched in the background when the current lease has
+	 * less than this fraction of its IDs left.
+	 */
+	public static final double REFILL_FRACTION = 0.25;
+
+	private final IdGenerator delegate;
+	private final Map<IdType, TypeLeases> leasesByType;
+	ExecutorService refillExecutor;
+
+	/**
+	 *
+	 * @param delegate
+	 *            The database backed generator used to reserve each block of
+	 *            IDs.
+	 * @param leaseSizes
+	 *            The number of IDs to reserve in each lease for each type.
+	 *            Types that are not included, or that have a lease size less
+	 *            than two, are not leased.
+	 */
+	public LeasingIdGenerator(IdGenerator delegate, Map<IdType, Integer> leaseSizes) {
+		if (delegate == null) {
+			throw new IllegalArgumentException("Delegate cannot be null");
+		}
+		if (leaseSizes == null) {
+			leaseSizes = Collections.emptyMap();
+		}
+		this.delegate = delegate;
+		this.leasesByType = new EnumMap<IdType, TypeLeases>(IdType.class);
+		for (Map.Entry<IdType, Integer> entry : leaseSizes.entrySet()) {
+			if (entry.getValue() != null && entry.getValue() > 1) {
+				leasesByType.put(entry.getKey(), new TypeLeases(entry.getKey(), entry.getValue()));
+			}
+		}
+		this.refillExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "id-lease-refill");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public Long generateNewId(IdType type) {
+		if (type == null) {
+			throw new IllegalArgumentException("Type cannot be null");
+		}
+		TypeLeases leases = leasesByType.get(type);
+		if (leases == null) {
+			return delegate.generateNewId(type);
+		}
+		return leases.nextId();
+	}
+
+	/**
+	 * Any IDs leased for this type are discarded before the ID is reserved, so
+	 * IDs at or below the reserved ID are never handed out by this JVM.
+	 * <p>
+	 * Only the leases of this JVM are discarded. Other JVMs keep handing out
+	 * the IDs they leased before the reservation, which can include the
+	 * reserved ID. So types that are reserved while the stack is running (such
+	 * as ENTITY_ID and WIKI_ID, which are reserved when objects are created
+	 * with an existing ID) must not be leased.
+	 */
+	@Override
+	public void reserveId(Long idToLock, IdType type) {
+		TypeLeases leases = type == null ? null : leasesByType.get(type);
+		if (leases != null) {
+			leases.discard();
+		}
+		delegate.reserveId(idToLock, type);
+	}
+
+	@Override
+	public BatchOfIds generateBatchNewIds(IdType type, int count) {
+		// Batches are already a single call to the database.
+		return delegate.generateBatchNewIds(type, count);
+	}
+
+	/**
+	 * Shutdown the background refill thread.
+	 */
+	public void shutdown() {
+		refillExecutor.shutdownNow();
+	}
+
+	/**
+	 * The lease size for the given type.
+	 *
+	 * @param type
+	 * @return Null if the type is not leased.
+	 */
+	public Integer getLeaseSize(IdType type) {
+		TypeLeases leases = leasesByType.get(type);
+		return leases == null ? null : leases.leaseSize;
+	}
+
+	/**
+	 * A contiguous block of IDs that can be handed out without locking.
+	 */
+	static class IdLease {
+
+		final AtomicLong next;
+		final long lastId;
+
+		IdLease(BatchOfIds batch) {
+			this.next = new AtomicLong(batch.getFirstId());
+			this.lastId = batch.getLastId();
+		}
+
+		/**
+		 * Take the next ID from this lease.
+		 *
+		 * @return The ID or null if the lease is used up.
+		 */
+		Long take() {
+			long id = next.getAndIncrement();
+			if (id > lastId) {
+				return null;
+			}
+			return id;
+		}
+
+		long remaining() {
+			return Math.max(0L, lastId - next.get() + 1);
+		}
+	}
+
+	/**
+	 * The current and next lease for a single type.
+	 */
+	class TypeLeases {
+
+		final IdType type;
+		final int leaseSize;
+		final long refillThreshold;
+		final AtomicReference<IdLease> current = new AtomicReference<IdLease>();
+		final AtomicReference<IdLease> prefetched = new AtomicReference<IdLease>();
+		final AtomicBoolean refilling = new AtomicBoolean(false);
+		/*
+		 * Incremented each time the leases are discarded, so a background
+		 * refill that started before a discard does not publish its lease.
+		 */
+		final AtomicLong generation = new AtomicLong(0);
+
+		TypeLeases(IdType type, int leaseSize) {
+			this.type = type;
+			this.leaseSize = leaseSize;
+			this.refillThreshold = (long) (leaseSize * REFILL_FRACTION);
+		}
+
+		Long nextId() {
+			while (true) {
+				IdLease lease = current.get();
+				if (lease != null) {
+					Long id = lease.take();
+					if (id != null) {
+						if (lease.remaining() <= refillThreshold) {
+							requestRefill();
+						}
+						return id;
+					}
+				}
+				// The lease is used up so switch to the next lease.
+				synchronized (this) {
+					if (current.get() == lease) {
+						IdLease next = prefetched.getAndSet(null);
+						if (next == null) {
+							next = new IdLease(delegate.generateBatchNewIds(type, leaseSize));
+						}
+						current.set(next);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Start a background fetch of the next lease if one is not already
+		 * available or in progress.
+		 */
+		void requestRefill() {
+			if (prefetched.get() != null || !refilling.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				refillExecutor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							long startGeneration = generation.get();
+							IdLease lease = new IdLease(delegate.generateBatchNewIds(type, leaseSize));
+							synchronized (TypeLeases.this) {
+								if (generation.get() == startGeneration) {
+									prefetched.compareAndSet(null, lease);
+								}
+							}
+						} catch (Exception e) {
+							// the next caller to exhaust the lease will fetch synchronously.
+							log.error("Failed to refill ID lease for: " + type, e);
+						} finally {
+							refilling.set(false);
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				refilling.set(false);
+				log.warn("Unable to schedule ID lease refill for: " + type, e);
+			}
+		}
+
+		/**
+		 * Discard both the current and prefetched leases.
+		 */
+		synchronized void discard() {
+			generation.incrementAndGet();
+			current.set(null);
+			prefetched.set(null);
+		}
+	}
+}
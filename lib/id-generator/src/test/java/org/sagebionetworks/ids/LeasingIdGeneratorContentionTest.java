@@ -0,0 +1,99 @@
+package org.sagebionetworks.ids;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * Two leasing generators (one for each of two machines) and the database
+ * backed generator create IDs of the same type at the same time, and none of
+ * them may hand out the same ID.
+ *
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:id-generator.spb.xml", "classpath:id-generator-test-context.xml" })
+public class LeasingIdGeneratorContentionTest {
+
+	@Autowired
+	IdGenerator idGenerator;
+
+	private int threadsPerGenerator = 8;
+	private int idsPerThread = 200;
+	private int leaseSize = 100;
+
+	LeasingIdGenerator machineOne;
+	LeasingIdGenerator machineTwo;
+
+	@Before
+	public void before() {
+		Map<IdType, Integer> leaseSizes = new EnumMap<IdType, Integer>(IdType.class);
+		leaseSizes.put(IdType.ENTITY_ID, leaseSize);
+		machineOne = new LeasingIdGenerator(idGenerator, leaseSizes);
+		machineTwo = new LeasingIdGenerator(idGenerator, leaseSizes);
+	}
+
+	@After
+	public void after() {
+		machineOne.shutdown();
+		machineTwo.shutdown();
+	}
+
+	@Test
+	public void testContention() throws InterruptedException {
+		final Set<Long> unique = Collections.synchronizedSet(new HashSet<Long>());
+		final Set<Long> duplicates = Collections.synchronizedSet(new HashSet<Long>());
+		ExecutorService executor = Executors.newFixedThreadPool(threadsPerGenerator * 3);
+		// ENTITY_ID is not leased by the configured generator so each call goes to the database.
+		for (IdGenerator generator : new IdGenerator[] { machineOne, machineTwo, idGenerator }) {
+			for (int i = 0; i < threadsPerGenerator; i++) {
+				executor.execute(createIds(generator, unique, duplicates));
+			}
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+		assertEquals("Duplicate IDs were generated: " + duplicates, 0, duplicates.size());
+		assertEquals(threadsPerGenerator * 3 * idsPerThread, unique.size());
+		// Every leased ID was reserved in the database first.
+		Long next = idGenerator.generateNewId(IdType.ENTITY_ID);
+		assertTrue(next > Collections.max(unique));
+	}
+
+	@Test
+	public void testReserveIdDiscardsLocalLease() {
+		Long leased = machineOne.generateNewId(IdType.ENTITY_ID);
+		Long toReserve = leased + leaseSize / 2;
+		// call under test
+		machineOne.reserveId(toReserve, IdType.ENTITY_ID);
+		assertTrue(machineOne.generateNewId(IdType.ENTITY_ID) > toReserve);
+	}
+
+	private Runnable createIds(final IdGenerator generator, final Set<Long> unique, final Set<Long> duplicates) {
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				for (int j = 0; j < idsPerThread; j++) {
+					Long id = generator.generateNewId(IdType.ENTITY_ID);
+					if (!unique.add(id)) {
+						duplicates.add(id);
+					}
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,162 @@
+package org.sagebionetworks.ids;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LeasingIdGeneratorTest {
+
+	/**
+	 * In-memory stand-in for the database backed generator.
+	 */
+	static class StubIdGenerator implements IdGenerator {
+
+		AtomicLong last = new AtomicLong(0);
+		AtomicInteger batchCalls = new AtomicInteger(0);
+		AtomicInteger singleCalls = new AtomicInteger(0);
+
+		@Override
+		public Long generateNewId(IdType type) {
+			singleCalls.incrementAndGet();
+			return last.incrementAndGet();
+		}
+
+		@Override
+		public synchronized void reserveId(Long idToLock, IdType type) {
+			if (idToLock > last.get()) {
+				last.set(idToLock);
+			}
+		}
+
+		@Override
+		public synchronized BatchOfIds generateBatchNewIds(IdType type, int count) {
+			batchCalls.incrementAndGet();
+			long first = last.get() + 1;
+			last.set(first + count - 1);
+			return new BatchOfIds(first, first + count - 1);
+		}
+	}
+
+	StubIdGenerator stub;
+	Map<IdType, Integer> leaseSizes;
+	LeasingIdGenerator generator;
+
+	@Before
+	public void before() {
+		stub = new StubIdGenerator();
+		leaseSizes = new EnumMap<IdType, Integer>(IdType.class);
+		leaseSizes.put(IdType.FILE_IDS, 10);
+		leaseSizes.put(IdType.MESSAGE_ID, 1);
+		generator = new LeasingIdGenerator(stub, leaseSizes);
+	}
+
+	@After
+	public void after() {
+		generator.shutdown();
+	}
+
+	@Test
+	public void testLeasedType() {
+		Long first = generator.generateNewId(IdType.FILE_IDS);
+		assertEquals(new Long(1), first);
+		for (int i = 2; i <= 5; i++) {
+			assertEquals(new Long(i), generator.generateNewId(IdType.FILE_IDS));
+		}
+		assertEquals(0, stub.singleCalls.get());
+	}
+
+	@Test
+	public void testLeaseExhausted() {
+		Set<Long> unique = new HashSet<Long>();
+		for (int i = 0; i < 35; i++) {
+			assertTrue(unique.add(generator.generateNewId(IdType.FILE_IDS)));
+		}
+		// at least four leases are needed for 35 IDs.
+		assertTrue(stub.batchCalls.get() >= 4);
+		assertEquals(0, stub.singleCalls.get());
+	}
+
+	@Test
+	public void testTypeNotLeased() {
+		generator.generateNewId(IdType.ENTITY_ID);
+		generator.generateNewId(IdType.ENTITY_ID);
+		assertEquals(2, stub.singleCalls.get());
+		assertEquals(0, stub.batchCalls.get());
+		assertNull(generator.getLeaseSize(IdType.ENTITY_ID));
+	}
+
+	@Test
+	public void testLeaseSizeOfOneNotLeased() {
+		generator.generateNewId(IdType.MESSAGE_ID);
+		assertEquals(1, stub.singleCalls.get());
+		assertNull(generator.getLeaseSize(IdType.MESSAGE_ID));
+		assertEquals(new Integer(10), generator.getLeaseSize(IdType.FILE_IDS));
+	}
+
+	@Test
+	public void testReserveIdDiscardsLease() {
+		Long first = generator.generateNewId(IdType.FILE_IDS);
+		Long reserved = first + 100;
+		// call under test
+		generator.reserveId(reserved, IdType.FILE_IDS);
+		Long next = generator.generateNewId(IdType.FILE_IDS);
+		assertTrue(next > reserved);
+	}
+
+	@Test
+	public void testGenerateBatchNewIds() {
+		BatchOfIds batch = generator.generateBatchNewIds(IdType.FILE_IDS, 5);
+		assertEquals(new Long(1), batch.getFirstId());
+		assertEquals(new Long(5), batch.getLastId());
+		assertEquals(1, stub.batchCalls.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullType() {
+		generator.generateNewId(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullDelegate() {
+		new LeasingIdGenerator(null, Collections.<IdType, Integer> emptyMap());
+	}
+
+	@Test
+	public void testConcurrentUnique() throws InterruptedException {
+		final Set<Long> unique = Collections.synchronizedSet(new HashSet<Long>());
+		final AtomicInteger duplicates = new AtomicInteger(0);
+		int threads = 8;
+		final int idsPerThread = 1000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int j = 0; j < idsPerThread; j++) {
+						if (!unique.add(generator.generateNewId(IdType.FILE_IDS))) {
+							duplicates.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+		assertEquals(0, duplicates.get());
+		assertEquals(threads * idsPerThread, unique.size());
+	}
+}
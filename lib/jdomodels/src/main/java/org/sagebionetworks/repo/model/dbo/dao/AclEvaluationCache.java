@@ -0,0 +1,295 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sagebionetworks.repo.model.ACCESS_TYPE;
+import org.sagebionetworks.repo.model.ObjectType;
+import org.sagebionetworks.util.BoundedLruCache;
+import org.sagebionetworks.util.CacheStatistics;
+import org.sagebionetworks.util.Clock;
+import org.sagebionetworks.util.ValidateArgument;
+
+/**
+ * A short-lived cache of ACL evaluations. Each entry records whether a set of
+ * principals has been granted an access type on a single ACL owner
+ * (benefactor). The same checks tend to be repeated many times while serving
+ * a single request (bundles, wiki/entity/file handle chains) and by requests
+ * that arrive close together, so even a short time-to-live saves many
+ * queries.
+ * <p>
+ * Entries are grouped by owner so all evaluations for an owner can be
+ * invalidated at once when its ACL changes. Invalidation on this machine is
+ * immediate. Changes made by other machines are only seen once the entries
+ * expire, so the time-to-live is the upper bound on how stale a cached
+ * evaluation can be.
+ * <p>
+ * To prevent a stale read from being cached, a caller must capture
+ * {@link #getGeneration()} before querying the database and pass it to
+ * {@link #put(Set, ObjectType, ACCESS_TYPE, Map, long)}. The results are
+ * dropped if any ACL was invalidated while the query was running.
+ *
+ */
+public class AclEvaluationCache implements CacheStatistics {
+
+	public static final String STALE = "staleResultsDropped";
+
+	/**
+	 * Identifies an ACL by the ID and type of its owner.
+	 */
+	private static class OwnerKey {
+		final Long ownerId;
+		final ObjectType ownerType;
+
+		OwnerKey(Long ownerId, ObjectType ownerType) {
+			this.ownerId = ownerId;
+			this.ownerType = ownerType;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((ownerId == null) ? 0 : ownerId.hashCode());
+			result = prime * result + ((ownerType == null) ? 0 : ownerType.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			OwnerKey other = (OwnerKey) obj;
+			if (ownerId == null) {
+				if (other.ownerId != null)
+					return false;
+			} else if (!ownerId.equals(other.ownerId))
+				return false;
+			if (ownerType != other.ownerType)
+				return false;
+			return true;
+		}
+	}
+
+	/**
+	 * Identifies a single evaluation against an ACL.
+	 */
+	private static class EvaluationKey {
+		final Set<Long> groups;
+		final ACCESS_TYPE accessType;
+
+		EvaluationKey(Set<Long> groups, ACCESS_TYPE accessType) {
+			this.groups = groups;
+			this.accessType = accessType;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((accessType == null) ? 0 : accessType.hashCode());
+			result = prime * result + ((groups == null) ? 0 : groups.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			EvaluationKey other = (EvaluationKey) obj;
+			if (accessType != other.accessType)
+				return false;
+			if (groups == null) {
+				if (other.groups != null)
+					return false;
+			} else if (!groups.equals(other.groups))
+				return false;
+			return true;
+		}
+	}
+
+	private final BoundedLruCache<OwnerKey, Map<EvaluationKey, Boolean>> cache;
+	private final int maxEvaluationsPerOwner;
+	private final AtomicLong generation = new AtomicLong(0);
+	private final AtomicLong hitCount = new AtomicLong(0);
+	private final AtomicLong missCount = new AtomicLong(0);
+	private final AtomicLong staleCount = new AtomicLong(0);
+
+	/**
+	 *
+	 * @param maxOwners
+	 *            The maximum number of ACL owners with cached evaluations.
+	 * @param maxEvaluationsPerOwner
+	 *            The maximum number of evaluations cached for a single owner.
+	 * @param timeToLiveMS
+	 *            The evaluations of an owner expire this many MS after the
+	 *            first evaluation is cached.
+	 * @param clock
+	 */
+	public AclEvaluationCache(long maxOwners, int maxEvaluationsPerOwner, long timeToLiveMS, Clock clock) {
+		ValidateArgument.requirement(maxEvaluationsPerOwner > 0, "maxEvaluationsPerOwner must be greater than zero");
+		ValidateArgument.requirement(timeToLiveMS > 0, "timeToLiveMS must be greater than zero");
+		this.maxEvaluationsPerOwner = maxEvaluationsPerOwner;
+		this.cache = new BoundedLruCache<OwnerKey, Map<EvaluationKey, Boolean>>(maxOwners, timeToLiveMS,
+				BoundedLruCache.<OwnerKey, Map<EvaluationKey, Boolean>> countSizer(), clock);
+	}
+
+	/**
+	 * The current generation of the cache. This changes each time any ACL is
+	 * invalidated.
+	 *
+	 * @return
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Get the cached evaluations for the given owners.
+	 *
+	 * @param groups
+	 * @param ownerIds
+	 * @param ownerType
+	 * @param accessType
+	 * @return Map of owner ID to whether the groups can access the owner. Owners
+	 *         without a cached evaluation are not included.
+	 */
+	public Map<Long, Boolean> get(Set<Long> groups, Set<Long> ownerIds, ObjectType ownerType, ACCESS_TYPE accessType) {
+		EvaluationKey evaluationKey = new EvaluationKey(groups, accessType);
+		Map<Long, Boolean> results = new HashMap<Long, Boolean>(ownerIds.size());
+		for (Long ownerId : ownerIds) {
+			Map<EvaluationKey, Boolean> evaluations = cache.get(new OwnerKey(ownerId, ownerType));
+			Boolean canAccess = evaluations == null ? null : evaluations.get(evaluationKey);
+			if (canAccess == null) {
+				missCount.incrementAndGet();
+			} else {
+				hitCount.incrementAndGet();
+				results.put(ownerId, canAccess);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Cache the results of evaluations made against the database.
+	 *
+	 * @param groups
+	 * @param ownerType
+	 * @param accessType
+	 * @param results
+	 *            Map of owner ID to whether the groups can access the owner.
+	 * @param startGeneration
+	 *            The value of {@link #getGeneration()} captured before the
+	 *            database was queried. The results are not cached if the
+	 *            generation has since changed.
+	 */
+	public void put(Set<Long> groups, ObjectType ownerType, ACCESS_TYPE accessType, Map<Long, Boolean> results,
+			long startGeneration) {
+		// copy the groups so later changes by the caller cannot change the key.
+		EvaluationKey evaluationKey = new EvaluationKey(Collections.unmodifiableSet(new HashSet<Long>(groups)),
+				accessType);
+		synchronized (this) {
+			if (generation.get() != startGeneration) {
+				// An ACL changed while the query was running so the results might be stale.
+				staleCount.incrementAndGet();
+				return;
+			}
+			for (Map.Entry<Long, Boolean> result : results.entrySet()) {
+				OwnerKey ownerKey = new OwnerKey(result.getKey(), ownerType);
+				Map<EvaluationKey, Boolean> evaluations = cache.get(ownerKey);
+				if (evaluations == null) {
+					evaluations = new ConcurrentHashMap<EvaluationKey, Boolean>();
+					cache.put(ownerKey, evaluations);
+				}
+				if (evaluations.size() < maxEvaluationsPerOwner) {
+					evaluations.put(evaluationKey, result.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove all cached evaluations for the given owners. Any results that are
+	 * being computed concurrently will not be cached.
+	 *
+	 * @param ownerIds
+	 * @param ownerType
+	 */
+	public synchronized void invalidate(Iterable<Long> ownerIds, ObjectType ownerType) {
+		generation.incrementAndGet();
+		for (Long ownerId : ownerIds) {
+			cache.remove(new OwnerKey(ownerId, ownerType));
+		}
+	}
+
+	/**
+	 * Remove all cached evaluations.
+	 */
+	public synchronized void clear() {
+		generation.incrementAndGet();
+		cache.clear();
+	}
+
+	/**
+	 * The number of evaluations served from the cache.
+	 *
+	 * @return
+	 */
+	@Override
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * The number of evaluations that were not in the cache.
+	 *
+	 * @return
+	 */
+	@Override
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * The number of times query results were not cached because an ACL changed
+	 * while the query was running.
+	 *
+	 * @return
+	 */
+	public long getStaleCount() {
+		return staleCount.get();
+	}
+
+	/**
+	 * The number of ACL owners with cached evaluations.
+	 *
+	 * @return
+	 */
+	public int getOwnerCount() {
+		return cache.size();
+	}
+
+	@Override
+	public Map<String, Long> getOtherCounts() {
+		return Collections.singletonMap(STALE, getStaleCount());
+	}
+
+	@Override
+	public long getCurrentSize() {
+		return getOwnerCount();
+	}
+
+}
@@ -0,0 +1,82 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_BACKFILL_PROGRESS_COMPLETE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_BACKFILL_PROGRESS_LAST_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_BACKFILL_PROGRESS_NAME;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_BACKFILL_PROGRESS;
+
+import java.util.List;
+
+import org.sagebionetworks.repo.model.dao.BackfillProgressDao;
+import org.sagebionetworks.repo.transactions.WriteTransaction;
+import org.sagebionetworks.util.ValidateArgument;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class BackfillProgressDaoImpl implements BackfillProgressDao {
+
+	private static final String SQL_SELECT_LAST_ID = "SELECT " + COL_BACKFILL_PROGRESS_LAST_ID
+			+ " FROM " + TABLE_BACKFILL_PROGRESS + " WHERE " + COL_BACKFILL_PROGRESS_NAME + " = ?";
+
+	private static final String SQL_SELECT_COMPLETE = "SELECT " + COL_BACKFILL_PROGRESS_COMPLETE
+			+ " FROM " + TABLE_BACKFILL_PROGRESS + " WHERE " + COL_BACKFILL_PROGRESS_NAME + " = ?";
+
+	private static final String SQL_CREATE_IF_MISSING = "INSERT IGNORE INTO " + TABLE_BACKFILL_PROGRESS
+			+ " (" + COL_BACKFILL_PROGRESS_NAME + ", " + COL_BACKFILL_PROGRESS_LAST_ID + ", " + COL_BACKFILL_PROGRESS_COMPLETE + ")"
+			+ " VALUES (?, -1, FALSE)";
+
+	private static final String SQL_SET_LAST_ID = "UPDATE " + TABLE_BACKFILL_PROGRESS
+			+ " SET " + COL_BACKFILL_PROGRESS_LAST_ID + " = ?"
+			+ " WHERE " + COL_BACKFILL_PROGRESS_NAME + " = ? AND " + COL_BACKFILL_PROGRESS_LAST_ID + " = ?";
+
+	private static final String SQL_SET_COMPLETE = "UPDATE " + TABLE_BACKFILL_PROGRESS
+			+ " SET " + COL_BACKFILL_PROGRESS_COMPLETE + " = TRUE"
+			+ " WHERE " + COL_BACKFILL_PROGRESS_NAME + " = ? AND " + COL_BACKFILL_PROGRESS_LAST_ID + " = ?";
+
+	private static final String SQL_REWIND = "INSERT INTO " + TABLE_BACKFILL_PROGRESS
+			+ " (" + COL_BACKFILL_PROGRESS_NAME + ", " + COL_BACKFILL_PROGRESS_LAST_ID + ", " + COL_BACKFILL_PROGRESS_COMPLETE + ")"
+			+ " VALUES (?, -1, FALSE)"
+			+ " ON DUPLICATE KEY UPDATE " + COL_BACKFILL_PROGRESS_LAST_ID + " = LEAST(" + COL_BACKFILL_PROGRESS_LAST_ID + ", ?),"
+			+ " " + COL_BACKFILL_PROGRESS_COMPLETE + " = FALSE";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Override
+	public long getLastId(String name) {
+		ValidateArgument.required(name, "name");
+		List<Long> results = jdbcTemplate.queryForList(SQL_SELECT_LAST_ID, Long.class, name);
+		return results.isEmpty() ? -1L : results.get(0);
+	}
+
+	@WriteTransaction
+	@Override
+	public boolean setLastId(String name, long expectedLastId, long lastId) {
+		ValidateArgument.required(name, "name");
+		jdbcTemplate.update(SQL_CREATE_IF_MISSING, name);
+		return jdbcTemplate.update(SQL_SET_LAST_ID, lastId, name, expectedLastId) > 0;
+	}
+
+	@Override
+	public boolean isComplete(String name) {
+		ValidateArgument.required(name, "name");
+		List<Boolean> results = jdbcTemplate.queryForList(SQL_SELECT_COMPLETE, Boolean.class, name);
+		return !results.isEmpty() && results.get(0);
+	}
+
+	@WriteTransaction
+	@Override
+	public boolean setComplete(String name, long lastId) {
+		ValidateArgument.required(name, "name");
+		jdbcTemplate.update(SQL_CREATE_IF_MISSING, name);
+		return jdbcTemplate.update(SQL_SET_COMPLETE, name, lastId) > 0;
+	}
+
+	@WriteTransaction
+	@Override
+	public void rewind(String name, long id) {
+		ValidateArgument.required(name, "name");
+		jdbcTemplate.update(SQL_REWIND, name, id - 1);
+	}
+
+}
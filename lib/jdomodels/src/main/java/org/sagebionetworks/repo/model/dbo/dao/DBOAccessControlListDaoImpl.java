@@ -23,6 +23,7 @@ import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_RESOUR
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -49,6 +50,7 @@ import org.sagebionetworks.repo.model.dbo.persistence.DBOResourceAccess;
 import org.sagebionetworks.repo.model.dbo.persistence.DBOResourceAccessType;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
 import org.sagebionetworks.repo.model.message.ChangeType;
+import org.sagebionetworks.repo.model.message.TransactionSynchronizationProxy;
 import org.sagebionetworks.repo.model.message.TransactionalMessenger;
 import org.sagebionetworks.repo.transactions.WriteTransaction;
 import org.sagebionetworks.repo.transactions.WriteTransactionReadCommitted;
@@ -61,6 +63,7 @@ import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
 
 import com.google.common.collect.Sets;
 
@@ -216,6 +219,10 @@ public class DBOAccessControlListDaoImpl implements AccessControlListDAO {
 	private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 	@Autowired
 	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private AclEvaluationCache aclEvaluationCache;
+	@Autowired
+	private TransactionSynchronizationProxy transactionSynchronizationManager;
 
 	@WriteTransaction
 	@Override
@@ -234,6 +241,7 @@ public class DBOAccessControlListDaoImpl implements AccessControlListDAO {
 				idGenerator.generateNewId(IdType.ACL_ID), ownerType);
 		dboBasicDao.createNew(dbo);
 		populateResourceAccess(dbo.getId(), acl.getResourceAccess());
+		invalidateEvaluations(Collections.singletonList(dbo.getOwnerId()), ownerType);
 
 		transactionalMessenger.sendMessageAfterCommit(dbo.getId().toString(),
 				ObjectType.ACCESS_CONTROL_LIST, acl.getEtag(),
@@ -407,12 +415,36 @@ public class DBOAccessControlListDaoImpl implements AccessControlListDAO {
 		jdbcTemplate.update(DELETE_RESOURCE_ACCESS_SQL, dbo.getId());
 		// Now recreate it from the passed data.
 		populateResourceAccess(dbo.getId(), acl.getResourceAccess());
+		invalidateEvaluations(Collections.singletonList(ownerKey), ownerType);
 
 		transactionalMessenger.sendMessageAfterCommit(dbo.getId().toString(),
 				ObjectType.ACCESS_CONTROL_LIST, acl.getEtag(),
 				ChangeType.UPDATE);
 	}
 
+	/**
+	 * Remove any cached evaluations of the given ACLs. The evaluations are
+	 * removed immediately and again after the transaction completes, so
+	 * evaluations read by other transactions before the change is committed are
+	 * not left in the cache.
+	 * 
+	 * @param ownerIds
+	 * @param ownerType
+	 */
+	private void invalidateEvaluations(final List<Long> ownerIds,
+			final ObjectType ownerType) {
+		aclEvaluationCache.invalidate(ownerIds, ownerType);
+		if (transactionSynchronizationManager.isSynchronizationActive()) {
+			transactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+						@Override
+						public void afterCompletion(int status) {
+							aclEvaluationCache.invalidate(ownerIds, ownerType);
+						}
+					});
+		}
+	}
+
 	@WriteTransaction
 	@Override
 	public void delete(String ownerId, ObjectType ownerType)
@@ -427,6 +459,7 @@ public class DBOAccessControlListDaoImpl implements AccessControlListDAO {
 			Long dboId = getAclId(ownerId, ownerType);
 			dboBasicDao.deleteObjectByPrimaryKey(DBOAccessControlList.class,
 					params);
+			invalidateEvaluations(Collections.singletonList(ownerKey), ownerType);
 			transactionalMessenger.sendMessageAfterCommit(dboId.toString(),
 					ObjectType.ACCESS_CONTROL_LIST, UUID.randomUUID()
 							.toString(), ChangeType.DELETE);
@@ -461,8 +494,10 @@ public class DBOAccessControlListDaoImpl implements AccessControlListDAO {
 		params.addValue(IDS_PARAM_NAME, ownerIds);
 		params.addValue(DBOAccessControlList.OWNER_TYPE_FIELD_NAME,
 				ownerType.name());
-		return namedParameterJdbcTemplate
+		int count = namedParameterJdbcTemplate
 				.update(SQL_DELETE_ACLS_BY_IDS, params);
+		invalidateEvaluations(new ArrayList<Long>(ownerIds), ownerType);
+		return count;
 
 	}
 
@@ -500,6 +535,47 @@ public class DBOAccessControlListDaoImpl implements AccessControlListDAO {
 			// there will be no matches for empty inputs.
 			return new HashSet<Long>(0);
 		}
+		// Only the benefactors without a cached evaluation are queried.
+		Map<Long, Boolean> cached = aclEvaluationCache.get(groups, benefactors,
+				resourceType, accessType);
+		Set<Long> accessible = new HashSet<Long>(benefactors.size());
+		for (Map.Entry<Long, Boolean> entry : cached.entrySet()) {
+			if (entry.getValue()) {
+				accessible.add(entry.getKey());
+			}
+		}
+		Set<Long> uncached = Sets.difference(benefactors, cached.keySet())
+				.immutableCopy();
+		if (uncached.isEmpty()) {
+			return accessible;
+		}
+		// Capture the generation before the query so stale results are not cached.
+		long generation = aclEvaluationCache.getGeneration();
+		Set<Long> queried = queryAccessibleBenefactors(groups, uncached,
+				resourceType, accessType);
+		Map<Long, Boolean> evaluations = new HashMap<Long, Boolean>(
+				uncached.size());
+		for (Long benefactor : uncached) {
+			evaluations.put(benefactor, queried.contains(benefactor));
+		}
+		aclEvaluationCache.put(groups, resourceType, accessType, evaluations,
+				generation);
+		accessible.addAll(queried);
+		return accessible;
+	}
+
+	/**
+	 * Query for the benefactors that the given groups can access.
+	 * 
+	 * @param groups
+	 * @param benefactors
+	 * @param resourceType
+	 * @param accessType
+	 * @return
+	 */
+	private Set<Long> queryAccessibleBenefactors(Set<Long> groups,
+			Set<Long> benefactors, ObjectType resourceType,
+			ACCESS_TYPE accessType) {
 		Map<String, Object> namedParameters = new HashMap<String, Object>(4);
 		namedParameters.put(RESOURCE_ID_BIND_VAR,
 				benefactors);
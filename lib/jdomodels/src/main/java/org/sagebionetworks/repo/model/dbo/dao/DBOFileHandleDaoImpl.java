@@ -10,7 +10,9 @@ import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_FILES;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -30,6 +32,7 @@ import org.sagebionetworks.repo.model.file.FileHandle;
 import org.sagebionetworks.repo.model.file.FileHandleResults;
 import org.sagebionetworks.repo.model.file.HasPreviewId;
 import org.sagebionetworks.repo.model.message.ChangeType;
+import org.sagebionetworks.repo.model.message.TransactionSynchronizationProxy;
 import org.sagebionetworks.repo.model.message.TransactionalMessenger;
 import org.sagebionetworks.repo.model.query.jdo.SqlConstants;
 import org.sagebionetworks.repo.transactions.WriteTransaction;
@@ -42,6 +45,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterables;
@@ -68,6 +72,7 @@ public class DBOFileHandleDaoImpl implements FileHandleDao {
 			+ " WHERE " + COL_FILES_ID + " IN ( " + IDS_PARAM + " )";
 	private static final String SQL_SELECT_BATCH = "SELECT * FROM " + TABLE_FILES + " WHERE " + COL_FILES_ID + " IN ( " + IDS_PARAM + " )";
 	private static final String SQL_SELECT_PREVIEW_ID = "SELECT "+COL_FILES_PREVIEW_ID+" FROM "+TABLE_FILES+" WHERE "+COL_FILES_ID+" = ?";
+	private static final String SQL_SELECT_IDS_WITH_PREVIEW = "SELECT "+COL_FILES_ID+" FROM "+TABLE_FILES+" WHERE "+COL_FILES_PREVIEW_ID+" = ?";
 	private static final String UPDATE_PREVIEW_AND_ETAG = "UPDATE "+TABLE_FILES+" SET "+COL_FILES_PREVIEW_ID+" = ? ,"+COL_FILES_ETAG+" = ? WHERE "+COL_FILES_ID+" = ?";
 
 	/**
@@ -90,11 +95,25 @@ public class DBOFileHandleDaoImpl implements FileHandleDao {
 	@Autowired
 	private NamedParameterJdbcTemplate namedJdbcTemplate;
 
+	@Autowired
+	private FileHandleCache fileHandleCache;
+
+	@Autowired
+	private TransactionSynchronizationProxy transactionSynchronizationManager;
+
 	private TableMapping<DBOFileHandle> rowMapping = new DBOFileHandle().getTableMapping();
 
 	@Override
 	public FileHandle get(String id) throws DatastoreException, NotFoundException {
-		DBOFileHandle dbo = getDBO(id);
+		if(id == null) throw new IllegalArgumentException("Id cannot be null");
+		List<String> ids = Collections.singletonList(id);
+		DBOFileHandle dbo = fileHandleCache.get(ids).get(id);
+		if(dbo == null){
+			// capture the generation before the read so a concurrent change is not cached.
+			long generation = fileHandleCache.getGeneration();
+			dbo = getDBO(id);
+			fileHandleCache.put(Collections.singletonList(dbo), generation);
+		}
 		return FileMetadataUtils.createDTOFromDBO(dbo);
 	}
 
@@ -112,6 +131,11 @@ public class DBOFileHandleDaoImpl implements FileHandleDao {
 		if(id == null) throw new IllegalArgumentException("Id cannot be null");
 		MapSqlParameterSource param = new MapSqlParameterSource();
 		param.addValue(COL_FILES_ID.toLowerCase(), id);
+
+		// Deleting a preview sets the preview ID of the files that use it to null (ON DELETE SET NULL).
+		List<String> changed = new ArrayList<String>(jdbcTemplate.queryForList(SQL_SELECT_IDS_WITH_PREVIEW, String.class, id));
+		changed.add(id);
+		invalidate(changed);
 		
 		// Send the delete message
 		transactionalMessenger.sendDeleteMessageAfterCommit(id, ObjectType.FILE);
@@ -147,6 +171,7 @@ public class DBOFileHandleDaoImpl implements FileHandleDao {
 			// Change the etag
 			String newEtag = UUID.randomUUID().toString();
 			jdbcTemplate.update(UPDATE_PREVIEW_AND_ETAG, previewId, newEtag, fileId);
+			invalidate(Collections.singletonList(fileId));
 			
 			// Send the update message
 			transactionalMessenger.sendMessageAfterCommit(fileId, ObjectType.FILE, newEtag, ChangeType.UPDATE);
@@ -156,6 +181,25 @@ public class DBOFileHandleDaoImpl implements FileHandleDao {
 		}
 	}
 
+	/**
+	 * Remove the given file handles from the cache now and again once the
+	 * current transaction completes, so a read made by another thread before
+	 * the commit cannot leave the old values in the cache.
+	 * 
+	 * @param ids
+	 */
+	private void invalidate(final List<String> ids) {
+		fileHandleCache.invalidate(ids);
+		if (transactionSynchronizationManager.isSynchronizationActive()) {
+			transactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					fileHandleCache.invalidate(ids);
+				}
+			});
+		}
+	}
+
 	/**
 	 * Does the given file object exist?
 	 * @param id
@@ -249,15 +293,25 @@ public class DBOFileHandleDaoImpl implements FileHandleDao {
 	public FileHandleResults getAllFileHandles(Iterable<String> ids, boolean includePreviews) throws DatastoreException, NotFoundException {
 		List<FileHandle> handles = new LinkedList<FileHandle>();
 		if(ids != null){
+			// Fetch all of the handles with one query per batch rather than one per handle.
+			Map<String, FileHandle> handleMap = getAllFileHandlesBatch(ids);
+			if(includePreviews){
+				List<String> previewIds = new LinkedList<String>();
+				for(FileHandle handle: handleMap.values()){
+					if(handle instanceof HasPreviewId && ((HasPreviewId)handle).getPreviewId() != null){
+						previewIds.add(((HasPreviewId)handle).getPreviewId());
+					}
+				}
+				handleMap.putAll(getAllFileHandlesBatch(previewIds));
+			}
 			for(String handleId: ids){
-				// Look up each handle
-				FileHandle handle = get(handleId);
+				FileHandle handle = getFromMapOrGet(handleMap, handleId);
 				handles.add(handle);
 				// If this handle has a preview then we fetch that as well.
 				if(includePreviews && handle instanceof HasPreviewId){
 					String previewId = ((HasPreviewId)handle).getPreviewId();
 					if(previewId != null){
-						FileHandle preview = get(previewId);
+						FileHandle preview = getFromMapOrGet(handleMap, previewId);
 						handles.add(preview);
 					}
 				}
@@ -268,19 +322,53 @@ public class DBOFileHandleDaoImpl implements FileHandleDao {
 		return results;
 	}
 
+	/**
+	 * Get a handle from the given map, falling back to {@link #get(String)} so
+	 * a missing handle results in a NotFoundException.
+	 * 
+	 * @param handleMap
+	 * @param id
+	 * @return
+	 */
+	private FileHandle getFromMapOrGet(Map<String, FileHandle> handleMap, String id) {
+		FileHandle handle = handleMap.get(id);
+		if(handle == null){
+			handle = get(id);
+		}
+		return handle;
+	}
+
 	@Override
 	public Map<String, FileHandle> getAllFileHandlesBatch(Iterable<String> idsList) {
 		Map<String, FileHandle> resultMap = Maps.newHashMap();
 
+		Map<String, DBOFileHandle> cached = fileHandleCache.get(idsList);
+		Set<String> uncached = new HashSet<String>();
+		for (String id : idsList) {
+			if (!cached.containsKey(id)) {
+				uncached.add(id);
+			}
+		}
+		for (DBOFileHandle handle : cached.values()) {
+			resultMap.put(handle.getIdString(), FileMetadataUtils.createDTOFromDBO(handle));
+		}
+		if (uncached.isEmpty()) {
+			return resultMap;
+		}
+		// capture the generation before the read so a concurrent change is not cached.
+		long generation = fileHandleCache.getGeneration();
+		List<DBOFileHandle> queried = new LinkedList<DBOFileHandle>();
 		// because we are using an IN clause and the number of incoming fileHandleIds is undetermined, we need to batch
 		// the selects here
-		for (List<String> fileHandleIdsBatch : Iterables.partition(idsList, 100)) {
+		for (List<String> fileHandleIdsBatch : Iterables.partition(uncached, 100)) {
 			List<DBOFileHandle> handles = namedJdbcTemplate.query(SQL_SELECT_BATCH,
 					new SinglePrimaryKeySqlParameterSource(fileHandleIdsBatch), rowMapping);
 			for (DBOFileHandle handle : handles) {
 				resultMap.put(handle.getIdString(), FileMetadataUtils.createDTOFromDBO(handle));
 			}
+			queried.addAll(handles);
 		}
+		fileHandleCache.put(queried, generation);
 		return resultMap;
 	}
 
@@ -315,10 +403,23 @@ public class DBOFileHandleDaoImpl implements FileHandleDao {
 	@Override
 	public void createBatch(List<FileHandle> list) {
 		List<DBOFileHandle> dbos = FileMetadataUtils.createDBOsFromDTOs(list);
+		final List<String> ids = new LinkedList<String>();
 		for (DBOFileHandle dbo : dbos) {
 			transactionalMessenger.sendMessageAfterCommit(dbo, ChangeType.CREATE);
+			ids.add(dbo.getIdString());
 		}
 		basicDao.createBatch(dbos);
+		// A handle read back within this transaction must not stay cached if the transaction rolls back.
+		if (transactionSynchronizationManager.isSynchronizationActive()) {
+			transactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status == STATUS_ROLLED_BACK) {
+						fileHandleCache.invalidate(ids);
+					}
+				}
+			});
+		}
 	}
 
 }
@@ -0,0 +1,188 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sagebionetworks.repo.model.dbo.persistence.DBOFileHandle;
+import org.sagebionetworks.util.BoundedLruCache;
+import org.sagebionetworks.util.CacheStatistics;
+import org.sagebionetworks.util.Clock;
+import org.sagebionetworks.util.ValidateArgument;
+
+/**
+ * A bounded cache of file handle rows keyed by file handle ID. Almost all of
+ * the fields of a file handle are immutable after creation. Only the preview
+ * ID and etag change, and both are changed through the file handle DAO, which
+ * invalidates the handle on this machine. Changes made by other machines are
+ * only seen once the entry expires, so the time-to-live is the upper bound on
+ * how stale a cached handle can be.
+ * <p>
+ * The database rows are cached rather than the DTOs, so each caller gets its
+ * own copy of the file handle.
+ * <p>
+ * To prevent a stale read from being cached, a caller must capture
+ * {@link #getGeneration()} before querying the database and pass it to
+ * {@link #put(Iterable, long)}. The results are dropped if any handle was
+ * invalidated while the query was running.
+ *
+ */
+public class FileHandleCache implements CacheStatistics {
+
+	public static final String STALE = "staleResultsDropped";
+	public static final String EVICTIONS = "evictions";
+
+	private final BoundedLruCache<String, DBOFileHandle> cache;
+	private final AtomicLong generation = new AtomicLong(0);
+	private final AtomicLong hitCount = new AtomicLong(0);
+	private final AtomicLong missCount = new AtomicLong(0);
+	private final AtomicLong staleCount = new AtomicLong(0);
+
+	/**
+	 *
+	 * @param maxFileHandles
+	 *            The maximum number of file handles in the cache.
+	 * @param timeToLiveMS
+	 *            A handle expires this many MS after it is cached.
+	 * @param clock
+	 */
+	public FileHandleCache(long maxFileHandles, long timeToLiveMS, Clock clock) {
+		ValidateArgument.requirement(timeToLiveMS > 0, "timeToLiveMS must be greater than zero");
+		this.cache = new BoundedLruCache<String, DBOFileHandle>(maxFileHandles, timeToLiveMS,
+				BoundedLruCache.<String, DBOFileHandle> countSizer(), clock);
+	}
+
+	/**
+	 * The current generation of the cache. This changes each time any file
+	 * handle is invalidated.
+	 *
+	 * @return
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Get the cached file handles with the given IDs.
+	 *
+	 * @param ids
+	 * @return Map of file handle ID to file handle. Handles that are not in
+	 *         the cache are not included.
+	 */
+	public Map<String, DBOFileHandle> get(Iterable<String> ids) {
+		Map<String, DBOFileHandle> results = new HashMap<String, DBOFileHandle>();
+		for (String id : ids) {
+			DBOFileHandle handle = cache.get(id);
+			if (handle == null) {
+				missCount.incrementAndGet();
+			} else {
+				hitCount.incrementAndGet();
+				results.put(id, handle);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Cache file handles read from the database.
+	 *
+	 * @param handles
+	 * @param startGeneration
+	 *            The value of {@link #getGeneration()} captured before the
+	 *            database was queried. The handles are not cached if the
+	 *            generation has since changed.
+	 */
+	public synchronized void put(Iterable<DBOFileHandle> handles, long startGeneration) {
+		if (generation.get() != startGeneration) {
+			// A handle changed while the query was running so the results might be stale.
+			staleCount.incrementAndGet();
+			return;
+		}
+		for (DBOFileHandle handle : handles) {
+			cache.put(handle.getIdString(), handle);
+		}
+	}
+
+	/**
+	 * Remove the given file handles from the cache. Any handles that are being
+	 * read concurrently will not be cached.
+	 *
+	 * @param ids
+	 */
+	public synchronized void invalidate(Iterable<String> ids) {
+		generation.incrementAndGet();
+		for (String id : ids) {
+			cache.remove(id);
+		}
+	}
+
+	/**
+	 * Remove all file handles from the cache.
+	 */
+	public synchronized void clear() {
+		generation.incrementAndGet();
+		cache.clear();
+	}
+
+	/**
+	 * The number of file handles served from the cache.
+	 *
+	 * @return
+	 */
+	@Override
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * The number of file handles that were not in the cache.
+	 *
+	 * @return
+	 */
+	@Override
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * The number of times query results were not cached because a file handle
+	 * changed while the query was running.
+	 *
+	 * @return
+	 */
+	public long getStaleCount() {
+		return staleCount.get();
+	}
+
+	/**
+	 * The number of file handles evicted to stay under the maximum size.
+	 *
+	 * @return
+	 */
+	public long getEvictionCount() {
+		return cache.getEvictionCount();
+	}
+
+	/**
+	 * The number of file handles in the cache.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	@Override
+	public Map<String, Long> getOtherCounts() {
+		Map<String, Long> counts = new HashMap<String, Long>(2);
+		counts.put(STALE, getStaleCount());
+		counts.put(EVICTIONS, getEvictionCount());
+		return counts;
+	}
+
+	@Override
+	public long getCurrentSize() {
+		return size();
+	}
+
+}
@@ -0,0 +1,310 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ACL_OWNER_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ACL_OWNER_TYPE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CLOSURE_ANCESTOR_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CLOSURE_DESCENDANT_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CLOSURE_DISTANCE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_PARENT_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_TYPE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_ACCESS_CONTROL_LIST;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_NODE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_NODE_CLOSURE;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.sagebionetworks.repo.model.EntityType;
+import org.sagebionetworks.repo.model.ObjectType;
+import org.sagebionetworks.repo.model.dao.BackfillProgressDao;
+import org.sagebionetworks.repo.model.dao.NodeClosureDao;
+import org.sagebionetworks.repo.transactions.WriteTransaction;
+import org.sagebionetworks.util.ValidateArgument;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+public class NodeClosureDaoImpl implements NodeClosureDao {
+
+	private static final String SQL_IS_MATERIALIZED = "SELECT COUNT(*) FROM " + TABLE_NODE_CLOSURE
+			+ " WHERE " + COL_NODE_CLOSURE_DESCENDANT_ID + " = ? AND " + COL_NODE_CLOSURE_ANCESTOR_ID + " = ?";
+
+	private static final String SQL_SELECT_MATERIALIZED_PARENT = "SELECT " + COL_NODE_CLOSURE_ANCESTOR_ID
+			+ " FROM " + TABLE_NODE_CLOSURE
+			+ " WHERE " + COL_NODE_CLOSURE_DESCENDANT_ID + " = ? AND " + COL_NODE_CLOSURE_DISTANCE + " = 1";
+
+	private static final String SQL_INSERT_SELF = "INSERT IGNORE INTO " + TABLE_NODE_CLOSURE
+			+ " (" + COL_NODE_CLOSURE_ANCESTOR_ID + ", " + COL_NODE_CLOSURE_DESCENDANT_ID + ", " + COL_NODE_CLOSURE_DISTANCE + ")"
+			+ " VALUES (?, ?, 0)";
+
+	private static final String SQL_INSERT_FROM_PARENT = "INSERT IGNORE INTO " + TABLE_NODE_CLOSURE
+			+ " (" + COL_NODE_CLOSURE_ANCESTOR_ID + ", " + COL_NODE_CLOSURE_DESCENDANT_ID + ", " + COL_NODE_CLOSURE_DISTANCE + ")"
+			+ " SELECT " + COL_NODE_CLOSURE_ANCESTOR_ID + ", ?, " + COL_NODE_CLOSURE_DISTANCE + " + 1"
+			+ " FROM " + TABLE_NODE_CLOSURE + " WHERE " + COL_NODE_CLOSURE_DESCENDANT_ID + " = ?";
+
+	/**
+	 * Remove the links between every node in the sub-tree and every ancestor
+	 * of the root of the sub-tree.
+	 */
+	private static final String SQL_DELETE_SUBTREE_ANCESTOR_LINKS = "DELETE C FROM " + TABLE_NODE_CLOSURE + " C"
+			+ " JOIN " + TABLE_NODE_CLOSURE + " S ON (S." + COL_NODE_CLOSURE_DESCENDANT_ID + " = C." + COL_NODE_CLOSURE_DESCENDANT_ID + ")"
+			+ " JOIN " + TABLE_NODE_CLOSURE + " A ON (A." + COL_NODE_CLOSURE_ANCESTOR_ID + " = C." + COL_NODE_CLOSURE_ANCESTOR_ID + ")"
+			+ " WHERE S." + COL_NODE_CLOSURE_ANCESTOR_ID + " = ?"
+			+ " AND A." + COL_NODE_CLOSURE_DESCENDANT_ID + " = ?"
+			+ " AND A." + COL_NODE_CLOSURE_DISTANCE + " > 0";
+
+	/**
+	 * Remove all rows for every node in the sub-tree.
+	 */
+	private static final String SQL_DELETE_SUBTREE = "DELETE C FROM " + TABLE_NODE_CLOSURE + " C"
+			+ " JOIN " + TABLE_NODE_CLOSURE + " S ON (S." + COL_NODE_CLOSURE_DESCENDANT_ID + " = C." + COL_NODE_CLOSURE_DESCENDANT_ID + ")"
+			+ " WHERE S." + COL_NODE_CLOSURE_ANCESTOR_ID + " = ?";
+
+	/**
+	 * Link every node in the sub-tree to the new parent and each of its
+	 * ancestors.
+	 */
+	private static final String SQL_INSERT_SUBTREE_LINKS = "INSERT INTO " + TABLE_NODE_CLOSURE
+			+ " (" + COL_NODE_CLOSURE_ANCESTOR_ID + ", " + COL_NODE_CLOSURE_DESCENDANT_ID + ", " + COL_NODE_CLOSURE_DISTANCE + ")"
+			+ " SELECT P." + COL_NODE_CLOSURE_ANCESTOR_ID + ", S." + COL_NODE_CLOSURE_DESCENDANT_ID + ", P." + COL_NODE_CLOSURE_DISTANCE + " + S." + COL_NODE_CLOSURE_DISTANCE + " + 1"
+			+ " FROM " + TABLE_NODE_CLOSURE + " P JOIN " + TABLE_NODE_CLOSURE + " S"
+			+ " WHERE P." + COL_NODE_CLOSURE_DESCENDANT_ID + " = ? AND S." + COL_NODE_CLOSURE_ANCESTOR_ID + " = ?";
+
+	private static final String SQL_SELECT_BENEFACTOR = "SELECT C." + COL_NODE_CLOSURE_ANCESTOR_ID
+			+ " FROM " + TABLE_NODE_CLOSURE + " C JOIN " + TABLE_ACCESS_CONTROL_LIST + " A"
+			+ " ON (A." + COL_ACL_OWNER_ID + " = C." + COL_NODE_CLOSURE_ANCESTOR_ID + " AND A." + COL_ACL_OWNER_TYPE + " = '" + ObjectType.ENTITY.name() + "')"
+			+ " WHERE C." + COL_NODE_CLOSURE_DESCENDANT_ID + " = ?"
+			+ " ORDER BY C." + COL_NODE_CLOSURE_DISTANCE + " ASC LIMIT 1";
+
+	private static final String SQL_SELECT_PROJECT = "SELECT C." + COL_NODE_CLOSURE_ANCESTOR_ID
+			+ " FROM " + TABLE_NODE_CLOSURE + " C JOIN " + TABLE_NODE + " N"
+			+ " ON (N." + COL_NODE_ID + " = C." + COL_NODE_CLOSURE_ANCESTOR_ID + ")"
+			+ " WHERE C." + COL_NODE_CLOSURE_DESCENDANT_ID + " = ?"
+			+ " AND N." + COL_NODE_TYPE + " = '" + EntityType.project.name() + "'"
+			+ " ORDER BY C." + COL_NODE_CLOSURE_DISTANCE + " ASC LIMIT 1";
+
+	private static final String SQL_SELECT_ANCESTORS = "SELECT " + COL_NODE_CLOSURE_ANCESTOR_ID
+			+ " FROM " + TABLE_NODE_CLOSURE
+			+ " WHERE " + COL_NODE_CLOSURE_DESCENDANT_ID + " = ?"
+			+ " ORDER BY " + COL_NODE_CLOSURE_DISTANCE + " DESC";
+
+	/**
+	 * Lock the self row of a node. If the row does not exist the gap is locked
+	 * so the node cannot be materialized until the lock is released.
+	 */
+	private static final String SQL_LOCK_MATERIALIZED = "SELECT " + COL_NODE_CLOSURE_DESCENDANT_ID
+			+ " FROM " + TABLE_NODE_CLOSURE
+			+ " WHERE " + COL_NODE_CLOSURE_DESCENDANT_ID + " = ? AND " + COL_NODE_CLOSURE_ANCESTOR_ID + " = ? FOR UPDATE";
+
+	private static final String SQL_SELECT_MIN_SUBTREE_ID = "SELECT MIN(" + COL_NODE_CLOSURE_DESCENDANT_ID + ")"
+			+ " FROM " + TABLE_NODE_CLOSURE + " WHERE " + COL_NODE_CLOSURE_ANCESTOR_ID + " = ?";
+
+	private static final String SQL_SELECT_NODE_IDS_AFTER = "SELECT " + COL_NODE_ID
+			+ " FROM " + TABLE_NODE + " WHERE " + COL_NODE_ID + " > ?"
+			+ " ORDER BY " + COL_NODE_ID + " LIMIT ?";
+
+	/**
+	 * A locking read so a node cannot be created after the last node while the
+	 * backfill is marked complete.
+	 */
+	private static final String SQL_LOCK_NODE_IDS_AFTER = "SELECT " + COL_NODE_ID
+			+ " FROM " + TABLE_NODE + " WHERE " + COL_NODE_ID + " > ?"
+			+ " ORDER BY " + COL_NODE_ID + " LIMIT 1 FOR UPDATE";
+
+	private static final String SQL_LOCK_NODE_PARENT = "SELECT " + COL_NODE_PARENT_ID
+			+ " FROM " + TABLE_NODE + " WHERE " + COL_NODE_ID + " = ? FOR UPDATE";
+
+	private static final RowMapper<Long> ID_MAPPER = new RowMapper<Long>() {
+
+		@Override
+		public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+			return rs.getLong(1);
+		}
+	};
+
+	private static final RowMapper<Long> PARENT_ID_MAPPER = new RowMapper<Long>() {
+
+		@Override
+		public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+			long parentId = rs.getLong(COL_NODE_PARENT_ID);
+			return rs.wasNull() ? null : parentId;
+		}
+	};
+
+	/**
+	 * The name of the backfill in the backfill progress table.
+	 */
+	public static final String BACKFILL_NAME = "NODE_CLOSURE";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private BackfillProgressDao backfillProgressDao;
+
+	@WriteTransaction
+	@Override
+	public void addNode(Long nodeId, Long parentId) {
+		ValidateArgument.required(nodeId, "nodeId");
+		// Lock the parent so it cannot be removed (or added) until the node is added.
+		if (parentId != null && !lockMaterialized(parentId)) {
+			// The node will be added by the backfill once its parent is materialized.
+			backfillProgressDao.rewind(BACKFILL_NAME, nodeId);
+			return;
+		}
+		materialize(nodeId, parentId);
+	}
+
+	@WriteTransaction
+	@Override
+	public void moveNode(Long nodeId, Long newParentId) {
+		ValidateArgument.required(nodeId, "nodeId");
+		if (!isMaterialized(nodeId)) {
+			// None of the sub-tree is materialized so only this node needs to be added.
+			addNode(nodeId, newParentId);
+			return;
+		}
+		if (newParentId != null && !lockMaterialized(newParentId)) {
+			// Rows that are not complete must not exist so the entire sub-tree is removed.
+			Long minimumId = jdbcTemplate.queryForObject(SQL_SELECT_MIN_SUBTREE_ID, Long.class, nodeId);
+			jdbcTemplate.update(SQL_DELETE_SUBTREE, nodeId);
+			// The backfill adds the sub-tree back once the new parent is materialized.
+			backfillProgressDao.rewind(BACKFILL_NAME, minimumId);
+			return;
+		}
+		jdbcTemplate.update(SQL_DELETE_SUBTREE_ANCESTOR_LINKS, nodeId, nodeId);
+		if (newParentId != null) {
+			jdbcTemplate.update(SQL_INSERT_SUBTREE_LINKS, newParentId, nodeId);
+		}
+	}
+
+	@WriteTransaction
+	@Override
+	public void synchronizeNode(Long nodeId, Long parentId) {
+		ValidateArgument.required(nodeId, "nodeId");
+		if (isMaterialized(nodeId)) {
+			List<Long> currentParent = jdbcTemplate.query(SQL_SELECT_MATERIALIZED_PARENT, ID_MAPPER, nodeId);
+			Long materializedParentId = currentParent.isEmpty() ? null : currentParent.get(0);
+			if (parentId == null ? materializedParentId == null : parentId.equals(materializedParentId)) {
+				return;
+			}
+		}
+		moveNode(nodeId, parentId);
+	}
+
+	@Override
+	public boolean isMaterialized(Long nodeId) {
+		ValidateArgument.required(nodeId, "nodeId");
+		return jdbcTemplate.queryForObject(SQL_IS_MATERIALIZED, Long.class, nodeId, nodeId) > 0;
+	}
+
+	@Override
+	public Long getBenefactorId(Long nodeId) {
+		ValidateArgument.required(nodeId, "nodeId");
+		return firstOrNull(jdbcTemplate.query(SQL_SELECT_BENEFACTOR, ID_MAPPER, nodeId));
+	}
+
+	@Override
+	public Long getProjectId(Long nodeId) {
+		ValidateArgument.required(nodeId, "nodeId");
+		return firstOrNull(jdbcTemplate.query(SQL_SELECT_PROJECT, ID_MAPPER, nodeId));
+	}
+
+	@Override
+	public List<Long> getAncestorIds(Long nodeId) {
+		ValidateArgument.required(nodeId, "nodeId");
+		return jdbcTemplate.query(SQL_SELECT_ANCESTORS, ID_MAPPER, nodeId);
+	}
+
+	@WriteTransaction
+	@Override
+	public int backfillNextPage(int limit) {
+		long lastId = backfillProgressDao.getLastId(BACKFILL_NAME);
+		List<Long> nodeIds = jdbcTemplate.queryForList(SQL_SELECT_NODE_IDS_AFTER, Long.class, lastId, limit);
+		if (nodeIds.isEmpty()) {
+			if (jdbcTemplate.queryForList(SQL_LOCK_NODE_IDS_AFTER, Long.class, lastId).isEmpty()) {
+				backfillProgressDao.setComplete(BACKFILL_NAME, lastId);
+			}
+			return 0;
+		}
+		int count = 0;
+		long newLastId = lastId;
+		for (Long nodeId : nodeIds) {
+			if (!materializeWithAncestors(nodeId)) {
+				// An ancestor does not exist yet (it has not been migrated) so the pass continues from here next time.
+				break;
+			}
+			newLastId = nodeId;
+			count++;
+		}
+		if (count > 0 && !backfillProgressDao.setLastId(BACKFILL_NAME, lastId, newLastId)) {
+			// The backfill was rewound by another change so this page does not count.
+			return 0;
+		}
+		return count;
+	}
+
+	@Override
+	public boolean isBackfillComplete() {
+		return backfillProgressDao.isComplete(BACKFILL_NAME);
+	}
+
+	/**
+	 * Materialize the given node and any of its ancestors that are not
+	 * materialized, starting from the root.
+	 * 
+	 * @param nodeId
+	 * @return False if an ancestor of the node does not exist.
+	 */
+	private boolean materializeWithAncestors(Long nodeId) {
+		LinkedList<Long> missingIds = new LinkedList<Long>();
+		LinkedList<Long> missingParentIds = new LinkedList<Long>();
+		Long currentId = nodeId;
+		while (currentId != null && !lockMaterialized(currentId)) {
+			// Lock the node so its parent cannot change while it is added.
+			List<Long> parent = jdbcTemplate.query(SQL_LOCK_NODE_PARENT, PARENT_ID_MAPPER, currentId);
+			if (parent.isEmpty()) {
+				// A deleted node needs no rows, but a missing ancestor means the node cannot be added yet.
+				return currentId.equals(nodeId);
+			}
+			missingIds.addFirst(currentId);
+			missingParentIds.addFirst(parent.get(0));
+			currentId = parent.get(0);
+		}
+		for (int i = 0; i < missingIds.size(); i++) {
+			materialize(missingIds.get(i), missingParentIds.get(i));
+		}
+		return true;
+	}
+
+	/**
+	 * Is the given node materialized? The self row of the node is locked
+	 * until the end of the transaction.
+	 * 
+	 * @param nodeId
+	 * @return
+	 */
+	private boolean lockMaterialized(Long nodeId) {
+		return !jdbcTemplate.queryForList(SQL_LOCK_MATERIALIZED, Long.class, nodeId, nodeId).isEmpty();
+	}
+
+	/**
+	 * Add the rows for a single node given its parent is materialized.
+	 *
+	 * @param nodeId
+	 * @param parentId
+	 */
+	private void materialize(Long nodeId, Long parentId) {
+		jdbcTemplate.update(SQL_INSERT_SELF, nodeId, nodeId);
+		if (parentId != null) {
+			jdbcTemplate.update(SQL_INSERT_FROM_PARENT, nodeId, parentId);
+		}
+	}
+
+	private static Long firstOrNull(List<Long> results) {
+		return results.isEmpty() ? null : results.get(0);
+	}
+
+}
@@ -1,10 +1,15 @@
 package org.sagebionetworks.repo.model.dbo.dao;
 
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ACL_OWNER_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ACL_OWNER_TYPE;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CURRENT_REV;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_FILES_CONTENT_MD5;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_FILES_CONTENT_SIZE;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_FILES_ID;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_ALIAS;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CLOSURE_ANCESTOR_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CLOSURE_DESCENDANT_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CLOSURE_DISTANCE;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CREATED_BY;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CREATED_ON;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_ETAG;
@@ -33,8 +38,10 @@ import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.FUNCTION_GET
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.FUNCTION_GET_ENTITY_PROJECT_ID;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.LIMIT_PARAM_NAME;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.OFFSET_PARAM_NAME;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_ACCESS_CONTROL_LIST;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_FILES;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_NODE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_NODE_CLOSURE;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_PROJECT_STAT;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_REVISION;
 
@@ -56,6 +63,8 @@ import java.util.Set;
 import java.util.UUID;
 
 import org.apache.commons.lang.NotImplementedException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.sagebionetworks.StackConfiguration;
 import org.sagebionetworks.ids.IdGenerator;
 import org.sagebionetworks.ids.IdType;
@@ -80,9 +89,11 @@ import org.sagebionetworks.repo.model.ProjectListSortColumn;
 import org.sagebionetworks.repo.model.ProjectListType;
 import org.sagebionetworks.repo.model.Reference;
 import org.sagebionetworks.repo.model.VersionInfo;
+import org.sagebionetworks.repo.model.dao.NodeClosureDao;
 import org.sagebionetworks.repo.model.dbo.DBOBasicDao;
 import org.sagebionetworks.repo.model.dbo.persistence.DBONode;
 import org.sagebionetworks.repo.model.dbo.persistence.DBORevision;
+import org.sagebionetworks.repo.model.dbo.persistence.DBORevisionUtils;
 import org.sagebionetworks.repo.model.dbo.persistence.NodeMapper;
 import org.sagebionetworks.repo.model.entity.Direction;
 import org.sagebionetworks.repo.model.entity.SortBy;
@@ -90,6 +101,7 @@ import org.sagebionetworks.repo.model.entity.query.SortDirection;
 import org.sagebionetworks.repo.model.jdo.JDORevisionUtils;
 import org.sagebionetworks.repo.model.jdo.JDOSecondaryPropertyUtils;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
+import org.sagebionetworks.repo.model.jdo.RevisionBlobCodec;
 import org.sagebionetworks.repo.model.message.ChangeType;
 import org.sagebionetworks.repo.model.message.TransactionalMessenger;
 import org.sagebionetworks.repo.model.query.jdo.QueryUtils;
@@ -121,6 +133,8 @@ import com.google.common.collect.Sets;
  */
 public class NodeDAOImpl implements NodeDAO, InitializingBean {
 
+	static private Logger log = LogManager.getLogger(NodeDAOImpl.class);
+
 	private static final String MAXIMUM_NUMBER_OF_IDS_EXCEEDED = "Maximum number of IDs exceeded";
 	private static final String SQL_SELECT_GET_ENTITY_BENEFACTOR_ID = "SELECT "+FUNCTION_GET_ENTITY_BENEFACTOR_ID+"(?)";
 	private static final String BIND_NODE_IDS =  "bNodeIds";
@@ -205,13 +219,48 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 			+ ")";
 
 	private static final String BENEFACTOR_ALIAS = "BENEFACTOR";
-	private static final String SQL_SELECT_BENEFACTOR_N = FUNCTION_GET_ENTITY_BENEFACTOR_ID+"(N."+COL_NODE_ID+") AS "+BENEFACTOR_ALIAS;
+	private static final String PROJECT_ALIAS = "PROJECT";
+	
+	/*
+	 * The benefactor and project of each node are read from the closure table.
+	 * The recursive functions are only called for nodes that are not yet in the
+	 * closure table.
+	 */
+	private static final String SQL_CLOSURE_BENEFACTOR_N =
+			"(SELECT C."+COL_NODE_CLOSURE_ANCESTOR_ID
+			+ " FROM "+TABLE_NODE_CLOSURE+" C JOIN "+TABLE_ACCESS_CONTROL_LIST+" A"
+			+ " ON (A."+COL_ACL_OWNER_ID+" = C."+COL_NODE_CLOSURE_ANCESTOR_ID+" AND A."+COL_ACL_OWNER_TYPE+" = '"+ObjectType.ENTITY.name()+"')"
+			+ " WHERE C."+COL_NODE_CLOSURE_DESCENDANT_ID+" = N."+COL_NODE_ID
+			+ " ORDER BY C."+COL_NODE_CLOSURE_DISTANCE+" ASC LIMIT 1)";
+	private static final String SQL_CLOSURE_PROJECT_N =
+			"(SELECT C."+COL_NODE_CLOSURE_ANCESTOR_ID
+			+ " FROM "+TABLE_NODE_CLOSURE+" C JOIN "+TABLE_NODE+" P"
+			+ " ON (P."+COL_NODE_ID+" = C."+COL_NODE_CLOSURE_ANCESTOR_ID+")"
+			+ " WHERE C."+COL_NODE_CLOSURE_DESCENDANT_ID+" = N."+COL_NODE_ID
+			+ " AND P."+COL_NODE_TYPE+" = '"+EntityType.project.name()+"'"
+			+ " ORDER BY C."+COL_NODE_CLOSURE_DISTANCE+" ASC LIMIT 1)";
+	private static final String SQL_SELECT_BENEFACTOR_N = "COALESCE("+SQL_CLOSURE_BENEFACTOR_N+", "+FUNCTION_GET_ENTITY_BENEFACTOR_ID+"(N."+COL_NODE_ID+")) AS "+BENEFACTOR_ALIAS;
+	private static final String SQL_SELECT_PROJECT_N = "COALESCE("+SQL_CLOSURE_PROJECT_N+", "+FUNCTION_GET_ENTITY_PROJECT_ID+"(N."+COL_NODE_ID+")) AS "+PROJECT_ALIAS;
+	
+	private static final String SQL_SELECT_PATH_FROM_CLOSURE =
+			"SELECT N."+COL_NODE_ID+", N."+COL_NODE_NAME+", N."+COL_NODE_TYPE
+			+ " FROM "+TABLE_NODE_CLOSURE+" C JOIN "+TABLE_NODE+" N"
+			+ " ON (N."+COL_NODE_ID+" = C."+COL_NODE_CLOSURE_ANCESTOR_ID+")"
+			+ " WHERE C."+COL_NODE_CLOSURE_DESCENDANT_ID+" = ?"
+			+ " ORDER BY C."+COL_NODE_CLOSURE_DISTANCE+" DESC";
 	
 	private static final String SQL_SELECT_BENEFACTORS =
 			"SELECT N."+COL_NODE_ID+", "+SQL_SELECT_BENEFACTOR_N
 			+ " FROM "+TABLE_NODE+" N"
 			+ " WHERE N."+COL_NODE_ID+" IN (:"+BIND_NODE_IDS+")";
 	
+	private static final String SQL_SELECT_PATHS_FROM_CLOSURE =
+			"SELECT C."+COL_NODE_CLOSURE_DESCENDANT_ID+", N."+COL_NODE_ID+", N."+COL_NODE_NAME+", N."+COL_NODE_TYPE
+			+ " FROM "+TABLE_NODE_CLOSURE+" C JOIN "+TABLE_NODE+" N"
+			+ " ON (N."+COL_NODE_ID+" = C."+COL_NODE_CLOSURE_ANCESTOR_ID+")"
+			+ " WHERE C."+COL_NODE_CLOSURE_DESCENDANT_ID+" IN (:"+BIND_NODE_IDS+")"
+			+ " ORDER BY C."+COL_NODE_CLOSURE_DESCENDANT_ID+", C."+COL_NODE_CLOSURE_DISTANCE+" DESC";
+	
 	private static final String ENTITY_HEADER_SELECT = "SELECT N."+COL_NODE_ID+", R."+COL_REVISION_LABEL+", N."+COL_NODE_NAME+", N."+COL_NODE_TYPE+", "+SQL_SELECT_BENEFACTOR_N+", R."+COL_REVISION_NUMBER;
 	
 	private static final String SQL_SELECT_CHIDREN_TEMPLATE =
@@ -232,6 +281,7 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 	
 	private static final String SQL_SELECT_WITHOUT_ANNOTATIONS = "SELECT N.*, R."+COL_REVISION_OWNER_NODE+", R."+COL_REVISION_NUMBER+", R."+COL_REVISION_ACTIVITY_ID+", R."+COL_REVISION_LABEL+", R."+COL_REVISION_COMMENT+", R."+COL_REVISION_MODIFIED_BY+", R."+COL_REVISION_MODIFIED_ON+", R."+COL_REVISION_FILE_HANDLE_ID+", R."+COL_REVISION_COLUMN_MODEL_IDS+", R."+COL_REVISION_SCOPE_IDS+", R."+COL_REVISION_REF_BLOB;
 	private static final String SQL_SELECT_CURRENT_NODE = SQL_SELECT_WITHOUT_ANNOTATIONS+" FROM "+TABLE_NODE+" N, "+TABLE_REVISION+" R WHERE N."+COL_NODE_ID+"= R."+COL_REVISION_OWNER_NODE+" AND N."+COL_CURRENT_REV+" = R."+COL_REVISION_NUMBER+" AND N."+COL_NODE_ID+"= ?";
+	private static final String SQL_SELECT_CURRENT_NODES = SQL_SELECT_WITHOUT_ANNOTATIONS+" FROM "+TABLE_NODE+" N, "+TABLE_REVISION+" R WHERE N."+COL_NODE_ID+"= R."+COL_REVISION_OWNER_NODE+" AND N."+COL_CURRENT_REV+" = R."+COL_REVISION_NUMBER+" AND N."+COL_NODE_ID+" IN (:"+BIND_NODE_IDS+")";
 	private static final String SQL_SELECT_NODE_VERSION = SQL_SELECT_WITHOUT_ANNOTATIONS+" FROM "+TABLE_NODE+" N, "+TABLE_REVISION+" R WHERE N."+COL_NODE_ID+"= R."+COL_REVISION_OWNER_NODE+" AND R."+COL_REVISION_NUMBER+" = ? AND N."+COL_NODE_ID+"= ?";
 
 	private static final String SELECT_FUNCTION_PROJECT_ID = "SELECT "+FUNCTION_GET_ENTITY_PROJECT_ID+"(?)";
@@ -257,6 +307,7 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 	private static final String SQL_SELECT_REV_FILE_HANDLE_ID = "SELECT "+COL_REVISION_FILE_HANDLE_ID+" FROM "+TABLE_REVISION+" WHERE "+COL_REVISION_OWNER_NODE+" = ? AND "+COL_REVISION_NUMBER+" = ?";
 	private static final String SELECT_REVISIONS_ONLY = "SELECT R."+COL_REVISION_REF_BLOB+" FROM  "+TABLE_NODE+" N, "+TABLE_REVISION+" R WHERE N."+COL_NODE_ID+" = ? AND R."+COL_REVISION_OWNER_NODE+" = N."+COL_NODE_ID+" AND R."+COL_REVISION_NUMBER+" = N."+COL_CURRENT_REV;
 	private static final String SELECT_ANNOTATIONS_ONLY_PREFIX = "SELECT N."+COL_NODE_ID+", N."+COL_NODE_ETAG+", N."+COL_NODE_CREATED_ON+", N."+COL_NODE_CREATED_BY+", R."+COL_REVISION_ANNOS_BLOB+" FROM  "+TABLE_NODE+" N, "+TABLE_REVISION+" R WHERE N."+COL_NODE_ID+" = ? AND R."+COL_REVISION_OWNER_NODE+" = N."+COL_NODE_ID+" AND R."+COL_REVISION_NUMBER;
+	private static final String SQL_SELECT_CURRENT_ANNOTATIONS = "SELECT N."+COL_NODE_ID+", N."+COL_NODE_ETAG+", N."+COL_NODE_CREATED_ON+", N."+COL_NODE_CREATED_BY+", R."+COL_REVISION_ANNOS_BLOB+" FROM  "+TABLE_NODE+" N, "+TABLE_REVISION+" R WHERE N."+COL_NODE_ID+" IN (:"+BIND_NODE_IDS+") AND R."+COL_REVISION_OWNER_NODE+" = N."+COL_NODE_ID+" AND R."+COL_REVISION_NUMBER+" = N."+COL_CURRENT_REV;
 	private static final String CANNOT_FIND_A_NODE_WITH_ID = "Cannot find a node with id: ";
 	private static final String ERROR_RESOURCE_NOT_FOUND = "The resource you are attempting to access cannot be found";
 	private static final String GET_CURRENT_REV_NUMBER_SQL = "SELECT "+COL_CURRENT_REV+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_ID+" = ?";
@@ -268,15 +319,12 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 	private static final String SQL_GET_ALL_CHILDREN_IDS = "SELECT "+COL_NODE_ID+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_PARENT_ID+" = ? ORDER BY "+COL_NODE_ID;
 	private static final String NODE_IDS_LIST_PARAM_NAME = "NODE_IDS";
 	
-	public static final String BENEFACTOR_FUNCTION_ALIAS = FUNCTION_GET_ENTITY_BENEFACTOR_ID+"(N."+COL_NODE_ID+")";
-	public static final String PROJECT_FUNCTION_ALIAS = FUNCTION_GET_ENTITY_PROJECT_ID+"(N."+COL_NODE_ID+")";
-	
 	private static final String SQL_SELECT_ENTITY_DTO = "SELECT N."
 			+ COL_NODE_ID + ", N."+COL_CURRENT_REV+", N." + COL_NODE_CREATED_BY + ", N."
 			+ COL_NODE_CREATED_ON + ", N." + COL_NODE_ETAG + ", N."
 			+ COL_NODE_NAME + ", N." + COL_NODE_TYPE + ", N."
-			+ COL_NODE_PARENT_ID + ", " + BENEFACTOR_FUNCTION_ALIAS + ", "
-			+ PROJECT_FUNCTION_ALIAS + ", R." + COL_REVISION_MODIFIED_BY + ", R."
+			+ COL_NODE_PARENT_ID + ", " + SQL_SELECT_BENEFACTOR_N + ", "
+			+ SQL_SELECT_PROJECT_N + ", R." + COL_REVISION_MODIFIED_BY + ", R."
 			+ COL_REVISION_MODIFIED_ON + ", R." + COL_REVISION_FILE_HANDLE_ID
 			+ ", R." + COL_REVISION_ANNOS_BLOB + " FROM " + TABLE_NODE + " N, "
 			+ TABLE_REVISION + " R WHERE N." + COL_NODE_ID + " = R."
@@ -328,6 +376,24 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 			+ " AND F." + COL_FILES_CONTENT_MD5 + " = :" + COL_FILES_CONTENT_MD5
 			+ " LIMIT " + (NODE_VERSION_LIMIT_BY_FILE_MD5 + 1);
 
+	private static final String SQL_SELECT_NODE_IDS_AFTER = "SELECT " + COL_NODE_ID + " FROM " + TABLE_NODE
+			+ " WHERE " + COL_NODE_ID + " > ? ORDER BY " + COL_NODE_ID + " LIMIT ?";
+
+	private static final String SQL_SELECT_REVISION_BLOBS = "SELECT " + COL_REVISION_OWNER_NODE + ", "
+			+ COL_REVISION_NUMBER + ", " + COL_REVISION_ANNOS_BLOB + ", " + COL_REVISION_REF_BLOB + " FROM "
+			+ TABLE_REVISION + " WHERE " + COL_REVISION_OWNER_NODE + " IN (:" + BIND_NODE_IDS + ")";
+
+	/**
+	 * The blobs are only replaced if they have not changed since they were read.
+	 */
+	private static final String SQL_REPLACE_ANNOS_BLOB = "UPDATE " + TABLE_REVISION + " SET "
+			+ COL_REVISION_ANNOS_BLOB + " = ? WHERE " + COL_REVISION_OWNER_NODE + " = ? AND " + COL_REVISION_NUMBER
+			+ " = ? AND " + COL_REVISION_ANNOS_BLOB + " = ?";
+
+	private static final String SQL_REPLACE_REF_BLOB = "UPDATE " + TABLE_REVISION + " SET " + COL_REVISION_REF_BLOB
+			+ " = ? WHERE " + COL_REVISION_OWNER_NODE + " = ? AND " + COL_REVISION_NUMBER + " = ? AND "
+			+ COL_REVISION_REF_BLOB + " = ?";
+
 	// Track the trash folder.
 	public static final Long TRASH_FOLDER_ID = Long.parseLong(StackConfiguration.getTrashFolderEntityIdStatic());
 	
@@ -363,6 +429,9 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 	@Autowired
 	private DBOBasicDao dboBasicDao;
 
+	@Autowired
+	private NodeClosureDao nodeClosureDao;
+
 	private final Long ROOT_NODE_ID = Long.parseLong(StackConfiguration.getRootFolderEntityIdStatic());
 	
 	private static final String BIND_ID_KEY = "bindId";
@@ -444,7 +513,8 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 		}catch(IllegalArgumentException e){
 			checkExceptionDetails(node.getName(), node.getAlias(), KeyFactory.keyToString(node.getParentId()), e);
 		}
-		dboBasicDao.createNew(rev);		
+		dboBasicDao.createNew(rev);
+		nodeClosureDao.addNode(node.getId(), node.getParentId());
 		return getNode(""+node.getId());
 	}
 
@@ -499,6 +569,17 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 		}
 	}
 	
+	@Override
+	public List<Node> getNodes(Collection<Long> nodeIds) {
+		ValidateArgument.required(nodeIds, "nodeIds");
+		if(nodeIds.isEmpty()){
+			return new LinkedList<Node>();
+		}
+		Map<String, Object> parameters = new HashMap<String, Object>(1);
+		parameters.put(BIND_NODE_IDS, nodeIds);
+		return namedParameterJdbcTemplate.query(SQL_SELECT_CURRENT_NODES, parameters, new NodeMapper());
+	}
+	
 	@Override
 	public Node getNodeForVersion(String id, Long versionNumber) throws NotFoundException, DatastoreException {
 		if(id == null) throw new IllegalArgumentException("Id cannot be null");
@@ -641,18 +722,7 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 			NamedAnnotations namedAnnos = jdbcTemplate.queryForObject(
 					SELECT_ANNOTATIONS_ONLY_PREFIX + " = ?",
 					new AnnotationRowMapper(), KeyFactory.stringToKey(id), versionNumber);
-			// Remove the eTags (See PLFM-1420)
-			if (namedAnnos != null) {
-				namedAnnos.setEtag(NodeConstants.ZERO_E_TAG);
-			}
-			Annotations primaryAnnos = namedAnnos.getPrimaryAnnotations();
-			if (primaryAnnos != null) {
-				primaryAnnos.setEtag(NodeConstants.ZERO_E_TAG);
-			}
-			Annotations additionalAnnos = namedAnnos.getAdditionalAnnotations();
-			if (additionalAnnos != null) {
-				additionalAnnos.setEtag(NodeConstants.ZERO_E_TAG);
-			}
+			clearAnnotationEtags(namedAnnos);
 			return namedAnnos;
 		}catch (EmptyResultDataAccessException e){
 			// Occurs if there are no results
@@ -660,6 +730,44 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 		}
 	}
 	
+	/**
+	 * Remove the eTags (See PLFM-1420)
+	 * @param namedAnnos
+	 */
+	private static void clearAnnotationEtags(NamedAnnotations namedAnnos){
+		if (namedAnnos == null) {
+			return;
+		}
+		namedAnnos.setEtag(NodeConstants.ZERO_E_TAG);
+		Annotations primaryAnnos = namedAnnos.getPrimaryAnnotations();
+		if (primaryAnnos != null) {
+			primaryAnnos.setEtag(NodeConstants.ZERO_E_TAG);
+		}
+		Annotations additionalAnnos = namedAnnos.getAdditionalAnnotations();
+		if (additionalAnnos != null) {
+			additionalAnnos.setEtag(NodeConstants.ZERO_E_TAG);
+		}
+	}
+	
+	@Override
+	public Map<Long, NamedAnnotations> getAnnotationsForCurrentVersions(Collection<Long> nodeIds) {
+		ValidateArgument.required(nodeIds, "nodeIds");
+		Map<Long, NamedAnnotations> results = new HashMap<Long, NamedAnnotations>(nodeIds.size());
+		if(nodeIds.isEmpty()){
+			return results;
+		}
+		Map<String, Object> parameters = new HashMap<String, Object>(1);
+		parameters.put(BIND_NODE_IDS, nodeIds);
+		List<NamedAnnotations> annos = namedParameterJdbcTemplate.query(SQL_SELECT_CURRENT_ANNOTATIONS, parameters, new AnnotationRowMapper());
+		for(NamedAnnotations named: annos){
+			// read the id before the etags are cleared.
+			Long id = KeyFactory.stringToKey(named.getId());
+			clearAnnotationEtags(named);
+			results.put(id, named);
+		}
+		return results;
+	}
+	
 	/**
 	 * A RowMapper that extracts NamedAnnotations from a result set.
 	 * The result set must COL_REVISION_ANNOS_BLOB, COL_NODE_ETAG, COL_NODE_CREATED_ON, COL_NODE_ID, COL_NODE_CREATED_BY
@@ -802,6 +910,7 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 		Long nodeId = KeyFactory.stringToKey(updatedNode.getId());
 		DBONode jdoToUpdate = getNodeById(nodeId);
 		DBORevision revToUpdate = getCurrentRevision(jdoToUpdate);
+		Long oldParentId = jdoToUpdate.getParentId();
 		// Update is as simple as copying the values from the passed node.		
 		NodeUtils.updateFromDto(updatedNode, jdoToUpdate, revToUpdate, shouldDeleteActivityId(updatedNode));	
 
@@ -814,6 +923,12 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 		}
 		
 		dboBasicDao.update(revToUpdate);
+		
+		// A move (including to and from the trash) must update the closure table.
+		Long newParentId = jdoToUpdate.getParentId();
+		if(oldParentId == null ? newParentId != null : !oldParentId.equals(newParentId)){
+			nodeClosureDao.moveNode(nodeId, newParentId);
+		}
 	}
 
 	@WriteTransaction
@@ -943,15 +1058,20 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 	}
 
 	/**
-	 * Call the getEntityBenefactorId() function to get the node's benefactor.
+	 * Get the node's benefactor from the closure table. The
+	 * getEntityBenefactorId() function is only called when the node is not yet
+	 * in the closure table.
 	 * 
 	 * @param nodeId
 	 * @return
 	 */
 	private Long getBenefactorId(Long nodeId) {
 		ValidateArgument.required(nodeId, "nodeId");
-		Long benefactorId = this.jdbcTemplate.queryForObject(SQL_SELECT_GET_ENTITY_BENEFACTOR_ID, Long.class, nodeId);
-		return benefactorId;
+		Long benefactorId = nodeClosureDao.getBenefactorId(nodeId);
+		if(benefactorId != null){
+			return benefactorId;
+		}
+		return this.jdbcTemplate.queryForObject(SQL_SELECT_GET_ENTITY_BENEFACTOR_ID, Long.class, nodeId);
 	}
 	
 	@Override 
@@ -1141,9 +1261,63 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 	
 	@Override
 	public List<EntityHeader> getEntityPath(String nodeId) throws DatastoreException, NotFoundException {
+		Long id = KeyFactory.stringToKey(nodeId);
+		// A single read when the node is in the closure table.
+		List<EntityHeader> path = jdbcTemplate.query(SQL_SELECT_PATH_FROM_CLOSURE, new RowMapper<EntityHeader>() {
+
+			@Override
+			public EntityHeader mapRow(ResultSet rs, int rowNum) throws SQLException {
+				ParentTypeName ptn = new ParentTypeName();
+				ptn.setId(rs.getLong(COL_NODE_ID));
+				ptn.setName(rs.getString(COL_NODE_NAME));
+				ptn.setType(EntityType.valueOf(rs.getString(COL_NODE_TYPE)));
+				return createHeaderFromParentTypeName(ptn, null, null);
+			}
+		}, id);
+		if(!path.isEmpty()){
+			return path;
+		}
 		// Call the recursive method
 		LinkedList<EntityHeader> results = new LinkedList<EntityHeader>();
-		appendPathBatch(results, KeyFactory.stringToKey(nodeId));
+		appendPathBatch(results, id);
+		return results;
+	}
+	
+	@Override
+	public Map<Long, List<EntityHeader>> getEntityPaths(Collection<Long> nodeIds) throws DatastoreException {
+		ValidateArgument.required(nodeIds, "nodeIds");
+		final Map<Long, List<EntityHeader>> results = new HashMap<Long, List<EntityHeader>>(nodeIds.size());
+		if(nodeIds.isEmpty()){
+			return results;
+		}
+		Map<String, Object> parameters = new HashMap<String, Object>(1);
+		parameters.put(BIND_NODE_IDS, nodeIds);
+		// rows are ordered by node then from the root down.
+		namedParameterJdbcTemplate.query(SQL_SELECT_PATHS_FROM_CLOSURE, parameters, new RowCallbackHandler(){
+			@Override
+			public void processRow(ResultSet rs) throws SQLException {
+				Long descendantId = rs.getLong(COL_NODE_CLOSURE_DESCENDANT_ID);
+				List<EntityHeader> path = results.get(descendantId);
+				if(path == null){
+					path = new LinkedList<EntityHeader>();
+					results.put(descendantId, path);
+				}
+				ParentTypeName ptn = new ParentTypeName();
+				ptn.setId(rs.getLong(COL_NODE_ID));
+				ptn.setName(rs.getString(COL_NODE_NAME));
+				ptn.setType(EntityType.valueOf(rs.getString(COL_NODE_TYPE)));
+				path.add(createHeaderFromParentTypeName(ptn, null, null));
+			}});
+		// Nodes that are not in the closure table yet are read one at a time.
+		for(Long nodeId: nodeIds){
+			if(!results.containsKey(nodeId)){
+				try {
+					results.put(nodeId, getEntityPath(KeyFactory.keyToString(nodeId)));
+				} catch (NotFoundException e) {
+					// Nodes that do not exist are not included.
+				}
+			}
+		}
 		return results;
 	}
 	
@@ -1574,7 +1748,11 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 	public String getProjectId(String nodeId) {
 		ValidateArgument.required(nodeId, "nodeId");
 		long nodeIdLong = KeyFactory.stringToKey(nodeId);
-		Long projectId = this.jdbcTemplate.queryForObject(SELECT_FUNCTION_PROJECT_ID, Long.class, nodeIdLong);
+		Long projectId = nodeClosureDao.getProjectId(nodeIdLong);
+		if(projectId == null){
+			// The node is either not in a project or not yet in the closure table.
+			projectId = this.jdbcTemplate.queryForObject(SELECT_FUNCTION_PROJECT_ID, Long.class, nodeIdLong);
+		}
 		if(projectId == null){
 			/*
 			 * ProjectId will be null if the node does not exist or if the node
@@ -1644,11 +1822,11 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 				if(rs.wasNull()){
 					dto.setParentId(null);
 				}
-				dto.setBenefactorId(rs.getLong(BENEFACTOR_FUNCTION_ALIAS));
+				dto.setBenefactorId(rs.getLong(BENEFACTOR_ALIAS));
 				if(rs.wasNull()){
 					dto.setBenefactorId(null);
 				}
-				dto.setProjectId(rs.getLong(PROJECT_FUNCTION_ALIAS));
+				dto.setProjectId(rs.getLong(PROJECT_ALIAS));
 				if(rs.wasNull()){
 					dto.setProjectId(null);
 				}
@@ -1662,7 +1840,8 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 				if(blob != null){
 					byte[] bytes = blob.getBytes(1, (int) blob.length());
 					try {
-						NamedAnnotations annos = JDOSecondaryPropertyUtils.decompressedAnnotations(bytes);
+						// blob annotations are not replicated so they are not read.
+						NamedAnnotations annos = JDOSecondaryPropertyUtils.decompressedAnnotations(bytes, false);
 						dto.setAnnotations(JDOSecondaryPropertyUtils.translate(entityId, annos, maxAnnotationSize));
 					} catch (IOException e) {
 						throw new DatastoreException(e);
@@ -1832,4 +2011,78 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 		return results;
 	}
 
+	@Override
+	public Map<Long, Long> getBenefactors(Collection<Long> nodeIds) {
+		ValidateArgument.required(nodeIds, "nodeIds");
+		final Map<Long, Long> results = new HashMap<Long, Long>(nodeIds.size());
+		if(nodeIds.isEmpty()){
+			return results;
+		}
+		Map<String, Object> parameters = new HashMap<String, Object>(1);
+		parameters.put(BIND_NODE_IDS , nodeIds);
+		namedParameterJdbcTemplate.query(SQL_SELECT_BENEFACTORS, parameters, new RowCallbackHandler(){
+			@Override
+			public void processRow(ResultSet rs) throws SQLException {
+				Long id = rs.getLong(COL_NODE_ID);
+				Long benefactorId = rs.getLong(BENEFACTOR_ALIAS);
+				if(!rs.wasNull()){
+					results.put(id, benefactorId);
+				}
+			}});
+		return results;
+	}
+
+	@WriteTransaction
+	@Override
+	public long reencodeLegacyRevisionBlobs(long afterNodeId, long limit) {
+		List<Long> nodeIds = jdbcTemplate.queryForList(SQL_SELECT_NODE_IDS_AFTER, Long.class, afterNodeId, limit);
+		if(nodeIds.isEmpty()){
+			return -1L;
+		}
+		final List<Object[]> annotationUpdates = new LinkedList<Object[]>();
+		final List<Object[]> referenceUpdates = new LinkedList<Object[]>();
+		Map<String, Object> parameters = new HashMap<String, Object>(1);
+		parameters.put(BIND_NODE_IDS, nodeIds);
+		namedParameterJdbcTemplate.query(SQL_SELECT_REVISION_BLOBS, parameters, new RowCallbackHandler(){
+			@Override
+			public void processRow(ResultSet rs) throws SQLException {
+				long ownerId = rs.getLong(COL_REVISION_OWNER_NODE);
+				long number = rs.getLong(COL_REVISION_NUMBER);
+				byte[] annos = rs.getBytes(COL_REVISION_ANNOS_BLOB);
+				byte[] reference = rs.getBytes(COL_REVISION_REF_BLOB);
+				try {
+					if(annos != null && !RevisionBlobCodec.isBinary(annos)){
+						byte[] encoded = JDOSecondaryPropertyUtils.compressAnnotations(JDOSecondaryPropertyUtils.decompressedAnnotations(annos), true);
+						annotationUpdates.add(new Object[]{encoded, ownerId, number, annos});
+					}
+				} catch (IOException e) {
+					throw new DatastoreException(e);
+				}
+				if(reference != null && !RevisionBlobCodec.isBinary(reference)){
+					Reference ref;
+					try {
+						ref = DBORevisionUtils.convertBlobToReference(reference);
+					} catch (IllegalArgumentException e) {
+						// Legacy reference maps with more than one reference cannot be converted so they are left as is.
+						log.warn("Cannot re-encode the reference of revision "+number+" of node "+ownerId+": "+e.getMessage());
+						return;
+					}
+					if(ref != null){
+						try {
+							referenceUpdates.add(new Object[]{JDOSecondaryPropertyUtils.compressReference(ref, true), ownerId, number, reference});
+						} catch (IOException e) {
+							throw new DatastoreException(e);
+						}
+					}
+				}
+			}});
+		if(!annotationUpdates.isEmpty()){
+			jdbcTemplate.batchUpdate(SQL_REPLACE_ANNOS_BLOB, annotationUpdates);
+		}
+		if(!referenceUpdates.isEmpty()){
+			jdbcTemplate.batchUpdate(SQL_REPLACE_REF_BLOB, referenceUpdates);
+		}
+		return nodeIds.get(nodeIds.size()-1);
+	}
+
 }
@@ -0,0 +1,188 @@
+package org.sagebionetworks.repo.model.dbo.dao.table;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.sagebionetworks.util.CacheStatistics;
+import org.sagebionetworks.util.LocalFileCache;
+import org.sagebionetworks.util.ValidateArgument;
+
+/**
+ * A bounded cache of table change set files on the local disk. Change sets
+ * are never modified once they are written to S3, so a copy of the compressed
+ * S3 object can be reused for as long as it is on disk.
+ * <p>
+ * The files are kept in a {@link LocalFileCache} keyed by the bucket and key
+ * of each S3 object. It is bounded by the total bytes of the files, deletes
+ * the least recently used files first and checks the MD5 of each file each
+ * time it is read, so a truncated or corrupt file is treated as a miss.
+ * <p>
+ * Change sets can be streamed in and out of the cache with
+ * {@link #put(String, String, InputStream, String)} and
+ * {@link #open(String, String)} so a large change set is never held in
+ * memory.
+ * <p>
+ * The index of the cache is only held in memory, so any files already in the
+ * directory are deleted when the cache is created.
+ *
+ */
+public class LocalChangeSetCache implements CacheStatistics {
+
+	private final LocalFileCache files;
+
+	/**
+	 *
+	 * @param directory
+	 *            The directory where the files are stored. Any existing files
+	 *            in this directory will be deleted.
+	 * @param maxBytes
+	 *            The maximum number of bytes of all files in the cache.
+	 * @throws IOException
+	 */
+	public LocalChangeSetCache(File directory, long maxBytes) throws IOException {
+		this(new LocalFileCache(directory, maxBytes));
+	}
+
+	private LocalChangeSetCache(LocalFileCache files) {
+		this.files = files;
+	}
+
+	/**
+	 * Create a cache in a new temporary directory that is deleted when the JVM
+	 * exits. Each process gets its own directory so processes on the same
+	 * machine cannot delete each other's files.
+	 *
+	 * @param maxBytes
+	 *            The maximum number of bytes of all files in the cache.
+	 * @return
+	 * @throws IOException
+	 */
+	public static LocalChangeSetCache createInTempDirectory(long maxBytes) throws IOException {
+		return new LocalChangeSetCache(LocalFileCache.createInTempDirectory("table-change-sets", maxBytes));
+	}
+
+	/**
+	 * Get the bytes of a change set.
+	 *
+	 * @param bucket
+	 * @param key
+	 * @return The bytes of the S3 object or null if the object is not in the
+	 *         cache.
+	 */
+	public byte[] get(String bucket, String key) {
+		return files.get(createCacheKey(bucket, key));
+	}
+
+	/**
+	 * Open a stream on a cached change set. The file is checked against its
+	 * MD5 before the stream is opened.
+	 *
+	 * @param bucket
+	 * @param key
+	 * @return A stream of the S3 object, which the caller must close, or null
+	 *         if the object is not in the cache.
+	 */
+	public InputStream open(String bucket, String key) {
+		return files.open(createCacheKey(bucket, key));
+	}
+
+	/**
+	 * Stream a change set into the cache, evicting the least recently used
+	 * change sets as needed. The content is only kept if its MD5 matches the
+	 * expected MD5 and it is not larger than the cache. The stream is not
+	 * closed.
+	 *
+	 * @param bucket
+	 * @param key
+	 * @param in
+	 *            The content of the S3 object.
+	 * @param expectedMD5Hex
+	 *            The hex MD5 of the S3 object.
+	 * @return True if the change set is in the cache.
+	 */
+	public boolean put(String bucket, String key, InputStream in, String expectedMD5Hex) {
+		return files.put(createCacheKey(bucket, key), in, expectedMD5Hex);
+	}
+
+	/**
+	 * Add the bytes of a change set to the cache, evicting the least recently
+	 * used change sets as needed. Change sets larger than the cache are not
+	 * cached.
+	 *
+	 * @param bucket
+	 * @param key
+	 * @param bytes
+	 *            The bytes of the S3 object.
+	 */
+	public void put(String bucket, String key, byte[] bytes) {
+		files.put(createCacheKey(bucket, key), bytes);
+	}
+
+	private static String createCacheKey(String bucket, String key) {
+		ValidateArgument.required(bucket, "bucket");
+		ValidateArgument.required(key, "key");
+		return bucket + "/" + key;
+	}
+
+	/**
+	 * The number of change sets read from the cache.
+	 *
+	 * @return
+	 */
+	@Override
+	public long getHitCount() {
+		return files.getHitCount();
+	}
+
+	/**
+	 * The number of change sets that were not in the cache.
+	 *
+	 * @return
+	 */
+	@Override
+	public long getMissCount() {
+		return files.getMissCount();
+	}
+
+	/**
+	 * The number of files that failed the integrity check.
+	 *
+	 * @return
+	 */
+	public long getCorruptCount() {
+		return files.getCorruptCount();
+	}
+
+	@Override
+	public Map<String, Long> getOtherCounts() {
+		return files.getOtherCounts();
+	}
+
+	/**
+	 * The total bytes of all files in the cache.
+	 *
+	 * @return
+	 */
+	public long getCurrentBytes() {
+		return files.getCurrentBytes();
+	}
+
+	/**
+	 * The total bytes of all files in the cache.
+	 */
+	@Override
+	public long getCurrentSize() {
+		return files.getCurrentSize();
+	}
+
+	/**
+	 * The number of change sets in the cache.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return files.size();
+	}
+}
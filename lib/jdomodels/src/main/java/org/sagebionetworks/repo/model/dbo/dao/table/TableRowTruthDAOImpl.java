@@ -2,6 +2,9 @@ package org.sagebionetworks.repo.model.dbo.dao.table;
 
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ID_SEQUENCE;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ID_SEQUENCE_TABLE_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ROW_VERSION_INDEX_ROW_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ROW_VERSION_INDEX_TABLE_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ROW_VERSION_INDEX_VERSION;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_TABLE_ROW_KEY;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_TABLE_ROW_KEY_NEW;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_TABLE_ROW_TABLE_ETAG;
@@ -9,16 +12,22 @@ import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_TABLE_RO
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_TABLE_ROW_TYPE;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_TABLE_ROW_VERSION;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_ROW_CHANGE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_ROW_VERSION_INDEX;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_TABLE_ID_SEQUENCE;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.logging.log4j.LogManager;
@@ -36,6 +45,7 @@ import org.sagebionetworks.repo.model.table.RawRowSet;
 import org.sagebionetworks.repo.model.table.Row;
 import org.sagebionetworks.repo.model.table.RowSet;
 import org.sagebionetworks.repo.model.table.SparseChangeSetDto;
+import org.sagebionetworks.repo.model.table.SparseRowDto;
 import org.sagebionetworks.repo.model.table.TableChangeType;
 import org.sagebionetworks.repo.model.table.TableRowChange;
 import org.sagebionetworks.repo.transactions.WriteTransactionReadCommitted;
@@ -46,6 +56,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
@@ -123,14 +134,50 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 			+ " WHERE "
 			+ COL_ID_SEQUENCE_TABLE_ID
 			+ " = ? FOR UPDATE";
+	
+	/**
+	 * The row version index of each table has one extra row with this ID.
+	 * Its version is the version after which all row changes are indexed.
+	 */
+	public static final long ROW_VERSION_INDEX_START_ROW_ID = -1L;
+	
+	private static final String SQL_INSERT_ROW_VERSION_INDEX_START = "INSERT IGNORE INTO "
+			+ TABLE_ROW_VERSION_INDEX + " (" + COL_ROW_VERSION_INDEX_TABLE_ID + ", " + COL_ROW_VERSION_INDEX_ROW_ID
+			+ ", " + COL_ROW_VERSION_INDEX_VERSION + ") VALUES (?, " + ROW_VERSION_INDEX_START_ROW_ID + ", ?)";
+	
+	private static final String SQL_UPSERT_ROW_VERSION_INDEX = "INSERT INTO " + TABLE_ROW_VERSION_INDEX + " ("
+			+ COL_ROW_VERSION_INDEX_TABLE_ID + ", " + COL_ROW_VERSION_INDEX_ROW_ID + ", "
+			+ COL_ROW_VERSION_INDEX_VERSION + ") VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE "
+			+ COL_ROW_VERSION_INDEX_VERSION + " = GREATEST(" + COL_ROW_VERSION_INDEX_VERSION + ", VALUES("
+			+ COL_ROW_VERSION_INDEX_VERSION + "))";
+	
+	private static final String SQL_SELECT_ROW_VERSION_INDEX_START = "SELECT " + COL_ROW_VERSION_INDEX_VERSION
+			+ " FROM " + TABLE_ROW_VERSION_INDEX + " WHERE " + COL_ROW_VERSION_INDEX_TABLE_ID + " = ? AND "
+			+ COL_ROW_VERSION_INDEX_ROW_ID + " = " + ROW_VERSION_INDEX_START_ROW_ID;
+	
+	private static final String SQL_SELECT_ROW_CHANGED_AFTER_VERSION = "SELECT " + COL_ROW_VERSION_INDEX_ROW_ID
+			+ " FROM " + TABLE_ROW_VERSION_INDEX + " WHERE " + COL_ROW_VERSION_INDEX_TABLE_ID + " = :tableId AND "
+			+ COL_ROW_VERSION_INDEX_ROW_ID + " IN (:rowIds) AND " + COL_ROW_VERSION_INDEX_VERSION
+			+ " > :version LIMIT 1";
+	
 	@Autowired
 	private DBOBasicDao basicDao;
 	@Autowired
 	private JdbcTemplate jdbcTemplate;
 	@Autowired
+	private NamedParameterJdbcTemplate namedJdbcTemplate;
+	@Autowired
 	private AmazonS3Client s3Client;
 
 	private String s3Bucket;
+	
+	/**
+	 * Local copies of the change sets read from S3. The cache is only defined
+	 * in the contexts that read many change sets (the workers). When null,
+	 * every read goes to S3.
+	 */
+	@Autowired(required = false)
+	private LocalChangeSetCache changeSetCache;
 
 	RowMapper<DBOTableIdSequence> sequenceRowMapper = new DBOTableIdSequence()
 			.getTableMapping();
@@ -223,9 +270,37 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 		changeDBO.setRowCount(new Long(delta.getRows().size()));
 		changeDBO.setChangeType(TableChangeType.ROW.name());
 		basicDao.createNew(changeDBO);
+		List<Long> rowIds = new ArrayList<Long>(delta.getRows().size());
+		for (SparseRowDto row : delta.getRows()) {
+			rowIds.add(row.getRowId());
+		}
+		updateRowVersionIndex(changeDBO.getTableId(), versionNumber, rowIds);
 		return key;
 	}
 	
+	/**
+	 * Record the given version as the latest version of each row. Called in
+	 * the same transaction that appends the change, so the index is never
+	 * ahead of or behind the committed changes.
+	 * 
+	 * @param tableId
+	 * @param versionNumber
+	 * @param rowIds
+	 */
+	private void updateRowVersionIndex(long tableId, long versionNumber, List<Long> rowIds) {
+		// The first change indexed for a table marks the start of its index.
+		jdbcTemplate.update(SQL_INSERT_ROW_VERSION_INDEX_START, tableId, versionNumber - 1);
+		List<Object[]> batch = new ArrayList<Object[]>(rowIds.size());
+		for (Long rowId : rowIds) {
+			if (rowId != null) {
+				batch.add(new Object[] { tableId, rowId, versionNumber });
+			}
+		}
+		if (!batch.isEmpty()) {
+			jdbcTemplate.batchUpdate(SQL_UPSERT_ROW_VERSION_INDEX, batch);
+		}
+	}
+	
 	@WriteTransactionReadCommitted
 	@Override
 	public TableRowChange upgradeToNewChangeSet(String tableIdString, long rowVersion, final SparseChangeSetDto newDto) throws IOException {
@@ -263,6 +338,11 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 		changeDBO.setRowCount(new Long(delta.getRows().size()));
 		changeDBO.setChangeType(TableChangeType.ROW.name());
 		basicDao.createNew(changeDBO);
+		List<Long> rowIds = new ArrayList<Long>(delta.getRows().size());
+		for (Row row : delta.getRows()) {
+			rowIds.add(row.getRowId());
+		}
+		updateRowVersionIndex(changeDBO.getTableId(), versionNumber, rowIds);
 	}
 	
 	@Override
@@ -331,12 +411,12 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 			long versionNumber) throws IOException {
 		TableRowChange dto = getTableRowChange(tableId, versionNumber);
 		// Download the file from S3
-		S3Object object = s3Client.getObject(dto.getBucket(), dto.getKey());
+		InputStream in = openChangeSet(dto.getBucket(), dto.getKey());
 		try {
-			return ColumnModelUtils.readSchemaChangeFromGz(object.getObjectContent());
+			return ColumnModelUtils.readSchemaChangeFromGz(in);
 		} finally {
 			// Need to close the stream unconditionally.
-			object.getObjectContent().close();
+			in.close();
 		}
 	}
 
@@ -460,6 +540,32 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 		return TableRowChangeUtils.ceateDTOFromDBO(dboList);
 	}
 
+	@Override
+	public Long getRowVersionIndexStart(String tableIdString) {
+		ValidateArgument.required(tableIdString, "tableId");
+		long tableId = KeyFactory.stringToKey(tableIdString);
+		try {
+			return jdbcTemplate.queryForObject(SQL_SELECT_ROW_VERSION_INDEX_START, Long.class, tableId);
+		} catch (EmptyResultDataAccessException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public Long findRowChangedAfterVersion(String tableIdString, Set<Long> rowIds, long version) {
+		ValidateArgument.required(tableIdString, "tableId");
+		ValidateArgument.required(rowIds, "rowIds");
+		if (rowIds.isEmpty()) {
+			return null;
+		}
+		Map<String, Object> params = new HashMap<String, Object>(3);
+		params.put("tableId", KeyFactory.stringToKey(tableIdString));
+		params.put("rowIds", rowIds);
+		params.put("version", version);
+		List<Long> changed = namedJdbcTemplate.queryForList(SQL_SELECT_ROW_CHANGED_AFTER_VERSION, params, Long.class);
+		return changed.isEmpty() ? null : changed.get(0);
+	}
+
 	@Override
 	public TableRowChange getTableRowChange(String tableIdString,
 			long rowVersion) throws NotFoundException {
@@ -489,10 +595,10 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 			throws IOException, NotFoundException {
 		TableRowChange dto = getTableRowChange(tableId, rowVersion);
 		// Download the file from S3
-		S3Object object = s3Client.getObject(dto.getBucket(), dto.getKey());
+		InputStream in = openChangeSet(dto.getBucket(), dto.getKey());
 		try {
 			RowSet set = new RowSet();
-			List<Row> rows = TableModelUtils.readFromCSVgzStream(object.getObjectContent());
+			List<Row> rows = TableModelUtils.readFromCSVgzStream(in);
 			set.setTableId(tableId);
 			set.setHeaders(TableModelUtils.getSelectColumnsFromColumnIds(dto.getIds(), columns));
 			set.setRows(rows);
@@ -500,7 +606,7 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 			return set;
 		} finally {
 			// Need to close the stream unconditionally.
-			object.getObjectContent().close();
+			in.close();
 		}
 	}
 	
@@ -513,13 +619,73 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 	@Override
 	public SparseChangeSetDto getRowSet(TableRowChange dto) throws IOException {
 		// Download the file from S3
-		S3Object object = s3Client.getObject(dto.getBucket(), dto.getKeyNew());
+		InputStream in = openChangeSet(dto.getBucket(), dto.getKeyNew());
+		try {
+			return TableModelUtils.readSparseChangeSetDtoFromGzStream(in);
+		} finally {
+			// Need to close the stream unconditionally.
+			in.close();
+		}
+	}
+	
+	/**
+	 * Open a change set file. Change sets are never modified once written to
+	 * S3 so a copy from the local cache is used when available. Objects read
+	 * from S3 are streamed to the cache and only kept when their MD5 matches
+	 * the S3 etag, so a change set is never held in memory.
+	 * 
+	 * @param bucket
+	 * @param key
+	 * @return The caller must close the stream.
+	 * @throws IOException
+	 */
+	InputStream openChangeSet(String bucket, String key) throws IOException {
+		if (changeSetCache == null) {
+			return s3Client.getObject(bucket, key).getObjectContent();
+		}
+		InputStream in = changeSetCache.open(bucket, key);
+		if (in != null) {
+			return in;
+		}
+		S3Object object = s3Client.getObject(bucket, key);
+		String md5Hex = getMD5HexFromETag(object.getObjectMetadata().getETag());
+		if (md5Hex == null) {
+			log.warn("Change set not cached as its etag is not an MD5: " + key);
+			return object.getObjectContent();
+		}
+		boolean cached;
 		try {
-			return TableModelUtils.readSparseChangeSetDtoFromGzStream(object.getObjectContent());
+			cached = changeSetCache.put(bucket, key, object.getObjectContent(), md5Hex);
 		} finally {
 			// Need to close the stream unconditionally.
 			object.getObjectContent().close();
 		}
+		if (cached) {
+			in = changeSetCache.open(bucket, key);
+			if (in != null) {
+				return in;
+			}
+		}
+		// Too large for the cache or the download did not match the etag.
+		return s3Client.getObject(bucket, key).getObjectContent();
+	}
+	
+	/**
+	 * The etag of an object uploaded with a single put is the hex MD5 of the
+	 * object. The etag of a multi-part upload is not an MD5.
+	 * 
+	 * @param etag
+	 * @return The hex MD5 or null if the etag is not an MD5.
+	 */
+	static String getMD5HexFromETag(String etag) {
+		if (etag == null) {
+			return null;
+		}
+		String md5Hex = etag.replace("\"", "");
+		if (md5Hex.length() != 32 || md5Hex.contains("-")) {
+			return null;
+		}
+		return md5Hex;
 	}
 
 	@Override
@@ -588,5 +754,14 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 	public void setS3Bucket(String s3Bucket) {
 		this.s3Bucket = s3Bucket;
 	}
+
+	/**
+	 * Injected.
+	 * 
+	 * @param changeSetCache
+	 */
+	public void setChangeSetCache(LocalChangeSetCache changeSetCache) {
+		this.changeSetCache = changeSetCache;
+	}
 	
 }
@@ -0,0 +1,133 @@
+package org.sagebionetworks.repo.model.dbo.persistence;
+
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_BACKFILL_PROGRESS_COMPLETE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_BACKFILL_PROGRESS_LAST_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_BACKFILL_PROGRESS_NAME;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.DDL_FILE_BACKFILL_PROGRESS;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_BACKFILL_PROGRESS;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.sagebionetworks.repo.model.dbo.DatabaseObject;
+import org.sagebionetworks.repo.model.dbo.FieldColumn;
+import org.sagebionetworks.repo.model.dbo.TableMapping;
+
+/**
+ * The progress of a single backfill. This table describes work done on the
+ * data of this stack so it is not migrated.
+ *
+ */
+public class DBOBackfillProgress implements DatabaseObject<DBOBackfillProgress> {
+
+	private static FieldColumn[] FIELDS = new FieldColumn[] {
+			new FieldColumn("name", COL_BACKFILL_PROGRESS_NAME, true),
+			new FieldColumn("lastId", COL_BACKFILL_PROGRESS_LAST_ID),
+			new FieldColumn("complete", COL_BACKFILL_PROGRESS_COMPLETE) };
+
+	private String name;
+	private Long lastId;
+	private Boolean complete;
+
+	@Override
+	public TableMapping<DBOBackfillProgress> getTableMapping() {
+		return new TableMapping<DBOBackfillProgress>() {
+
+			@Override
+			public DBOBackfillProgress mapRow(ResultSet rs, int rowNum) throws SQLException {
+				DBOBackfillProgress dbo = new DBOBackfillProgress();
+				dbo.setName(rs.getString(COL_BACKFILL_PROGRESS_NAME));
+				dbo.setLastId(rs.getLong(COL_BACKFILL_PROGRESS_LAST_ID));
+				dbo.setComplete(rs.getBoolean(COL_BACKFILL_PROGRESS_COMPLETE));
+				return dbo;
+			}
+
+			@Override
+			public String getTableName() {
+				return TABLE_BACKFILL_PROGRESS;
+			}
+
+			@Override
+			public String getDDLFileName() {
+				return DDL_FILE_BACKFILL_PROGRESS;
+			}
+
+			@Override
+			public FieldColumn[] getFieldColumns() {
+				return FIELDS;
+			}
+
+			@Override
+			public Class<? extends DBOBackfillProgress> getDBOClass() {
+				return DBOBackfillProgress.class;
+			}
+		};
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Long getLastId() {
+		return lastId;
+	}
+
+	public void setLastId(Long lastId) {
+		this.lastId = lastId;
+	}
+
+	public Boolean getComplete() {
+		return complete;
+	}
+
+	public void setComplete(Boolean complete) {
+		this.complete = complete;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((complete == null) ? 0 : complete.hashCode());
+		result = prime * result + ((lastId == null) ? 0 : lastId.hashCode());
+		result = prime * result + ((name == null) ? 0 : name.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		DBOBackfillProgress other = (DBOBackfillProgress) obj;
+		if (complete == null) {
+			if (other.complete != null)
+				return false;
+		} else if (!complete.equals(other.complete))
+			return false;
+		if (lastId == null) {
+			if (other.lastId != null)
+				return false;
+		} else if (!lastId.equals(other.lastId))
+			return false;
+		if (name == null) {
+			if (other.name != null)
+				return false;
+		} else if (!name.equals(other.name))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "DBOBackfillProgress [name=" + name + ", lastId=" + lastId + ", complete=" + complete + "]";
+	}
+
+}
@@ -6,6 +6,7 @@ import java.util.Set;
 
 import org.sagebionetworks.repo.model.Reference;
 import org.sagebionetworks.repo.model.jdo.JDOSecondaryPropertyUtils;
+import org.sagebionetworks.repo.model.jdo.RevisionBlobCodec;
 
 public class DBORevisionUtils {
 	
@@ -24,6 +25,9 @@ public class DBORevisionUtils {
 		if (blob == null) {
 			return null;
 		}
+		if (RevisionBlobCodec.isBinary(blob)) {
+			return JDOSecondaryPropertyUtils.decompressedReference(blob);
+		}
 		try {
 			Map<String, Set<Reference>> map = JDOSecondaryPropertyUtils.decompressedReferences(blob);
 			if (map.isEmpty()) {
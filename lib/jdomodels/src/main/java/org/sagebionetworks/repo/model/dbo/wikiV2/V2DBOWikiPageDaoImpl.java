@@ -111,6 +111,9 @@ public class V2DBOWikiPageDaoImpl implements V2WikiPageDao {
 	@Autowired
 	private FileHandleDao fileMetadataDao;	
 
+	@Autowired
+	private WikiMarkdownCache markdownCache;
+
 	/**
 	 * Used to detect if a wiki object already exists.
 	 */
@@ -519,15 +522,23 @@ public class V2DBOWikiPageDaoImpl implements V2WikiPageDao {
 	@Override
 	public String getMarkdown(WikiPageKey key, Long version) throws IOException, NotFoundException {
 		V2WikiPage wiki = get(key, version);
+		// The markdown of a file handle never changes.
+		Long markdownFileHandleId = Long.parseLong(wiki.getMarkdownFileHandleId());
+		String markdown = markdownCache.get(markdownFileHandleId);
+		if(markdown != null){
+			return markdown;
+		}
 		S3FileHandle markdownHandle = (S3FileHandle) fileMetadataDao.get(wiki.getMarkdownFileHandleId());
 		S3Object s3Object = s3Client.getObject(markdownHandle.getBucketName(), markdownHandle.getKey());
 		InputStream in = s3Object.getObjectContent();
 		Charset charset = ContentTypeUtil.getCharsetFromS3Object(s3Object);
 		try{
-			return FileUtils.readStreamAsString(in, charset, /*gunzip*/true);
+			markdown = FileUtils.readStreamAsString(in, charset, /*gunzip*/true);
 		}finally{
 			in.close();
 		}
+		markdownCache.put(markdownFileHandleId, markdown);
+		return markdown;
 	}
 	
 	@Override
@@ -0,0 +1,189 @@
+package org.sagebionetworks.repo.model.dbo.wikiV2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sagebionetworks.util.BoundedLruCache;
+import org.sagebionetworks.util.CacheStatistics;
+import org.sagebionetworks.util.LocalFileCache;
+import org.sagebionetworks.util.ValidateArgument;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * A bounded, in-memory cache of decompressed wiki markdown keyed by the ID of
+ * the markdown file handle. A file handle is never modified, so the markdown
+ * of a file handle can be reused until it is evicted and there is nothing to
+ * invalidate. An update to a wiki always creates a new markdown file handle.
+ * <p>
+ * The markdown is held in a {@link BoundedLruCache} bounded by the estimated
+ * bytes of the cached markdown. Markdown can also be kept in an optional
+ * {@link LocalFileCache} on the local disk, which is checked before going back
+ * to S3 after the markdown has been evicted from memory.
+ *
+ */
+public class WikiMarkdownCache implements CacheStatistics {
+
+	public static final String DISK_HITS = "diskHits";
+	public static final String EVICTIONS = "evictions";
+
+	/**
+	 * The estimated bytes used by each entry in addition to the characters.
+	 */
+	public static final long ENTRY_OVERHEAD_BYTES = 64L;
+
+	private final BoundedLruCache<Long, String> memory;
+	private LocalFileCache diskCache;
+	private final AtomicLong diskHitCount = new AtomicLong(0);
+	private final AtomicLong missCount = new AtomicLong(0);
+
+	/**
+	 *
+	 * @param maxBytes
+	 *            The maximum estimated bytes of all markdown held in memory.
+	 */
+	public WikiMarkdownCache(long maxBytes) {
+		this.memory = new BoundedLruCache<Long, String>(maxBytes, new BoundedLruCache.Sizer<Long, String>() {
+
+			@Override
+			public long sizeOf(Long key, String value) {
+				return estimateBytes(value);
+			}
+		});
+	}
+
+	/**
+	 * Injected (optional). Only the repository defines a disk cache for wiki
+	 * markdown.
+	 *
+	 * @param diskCache
+	 *            Used to keep markdown on the local disk once it has been
+	 *            evicted from memory.
+	 */
+	@Autowired(required = false)
+	public void setDiskCache(LocalFileCache diskCache) {
+		this.diskCache = diskCache;
+	}
+
+	/**
+	 * Get the markdown of the given file handle.
+	 *
+	 * @param markdownFileHandleId
+	 * @return The markdown or null if the markdown is not in the cache.
+	 */
+	public String get(Long markdownFileHandleId) {
+		ValidateArgument.required(markdownFileHandleId, "markdownFileHandleId");
+		String markdown = memory.get(markdownFileHandleId);
+		if (markdown != null) {
+			return markdown;
+		}
+		if (diskCache != null) {
+			byte[] bytes = diskCache.get(markdownFileHandleId.toString());
+			if (bytes != null) {
+				markdown = new String(bytes, StandardCharsets.UTF_8);
+				memory.put(markdownFileHandleId, markdown);
+				diskHitCount.incrementAndGet();
+				return markdown;
+			}
+		}
+		missCount.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Add the markdown of the given file handle to the cache, evicting the
+	 * least recently used markdown as needed. Markdown larger than the cache
+	 * is only kept on disk.
+	 *
+	 * @param markdownFileHandleId
+	 * @param markdown
+	 */
+	public void put(Long markdownFileHandleId, String markdown) {
+		ValidateArgument.required(markdownFileHandleId, "markdownFileHandleId");
+		ValidateArgument.required(markdown, "markdown");
+		memory.put(markdownFileHandleId, markdown);
+		if (diskCache != null) {
+			diskCache.put(markdownFileHandleId.toString(), markdown.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Strings hold two bytes per character.
+	 *
+	 * @param markdown
+	 * @return
+	 */
+	static long estimateBytes(String markdown) {
+		return ENTRY_OVERHEAD_BYTES + 2L * markdown.length();
+	}
+
+	/**
+	 * The number of reads served from memory or the local disk.
+	 *
+	 * @return
+	 */
+	@Override
+	public long getHitCount() {
+		return memory.getHitCount() + diskHitCount.get();
+	}
+
+	/**
+	 * The number of reads served from the local disk.
+	 *
+	 * @return
+	 */
+	public long getDiskHitCount() {
+		return diskHitCount.get();
+	}
+
+	/**
+	 * The number of reads that were not in the cache.
+	 *
+	 * @return
+	 */
+	@Override
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * The number of markdown entries evicted from memory.
+	 *
+	 * @return
+	 */
+	public long getEvictionCount() {
+		return memory.getEvictionCount();
+	}
+
+	/**
+	 * The estimated bytes of all markdown held in memory.
+	 *
+	 * @return
+	 */
+	public long getCurrentBytes() {
+		return memory.getCurrentSize();
+	}
+
+	/**
+	 * The number of markdown entries held in memory.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return memory.size();
+	}
+
+	@Override
+	public Map<String, Long> getOtherCounts() {
+		Map<String, Long> counts = new HashMap<String, Long>(2);
+		counts.put(DISK_HITS, getDiskHitCount());
+		counts.put(EVICTIONS, getEvictionCount());
+		return counts;
+	}
+
+	@Override
+	public long getCurrentSize() {
+		return getCurrentBytes();
+	}
+}
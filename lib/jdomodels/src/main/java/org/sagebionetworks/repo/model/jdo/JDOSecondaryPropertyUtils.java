@@ -23,6 +23,7 @@ import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.io.IOUtils;
+import org.sagebionetworks.StackConfiguration;
 import org.sagebionetworks.repo.model.AnnotationNameSpace;
 import org.sagebionetworks.repo.model.Annotations;
 import org.sagebionetworks.repo.model.NamedAnnotations;
@@ -174,12 +175,29 @@ public class JDOSecondaryPropertyUtils {
 	}
 	
 	/**
-	 * Convert the passed annotations to a compressed (zip) byte array
+	 * Convert the passed annotations to a compressed byte array. The compact
+	 * binary format of {@link RevisionBlobCodec} is only used when enabled in
+	 * the stack configuration, otherwise the annotations are zipped XML.
 	 * @param dto
 	 * @return compressed annotations
 	 * @throws IOException 
 	 */
 	public static byte[] compressAnnotations(NamedAnnotations dto) throws IOException{
+		return compressAnnotations(dto, StackConfiguration.singleton().getRevisionBlobBinaryEnabled());
+	}
+	
+	/**
+	 * Convert the passed annotations to a compressed byte array.
+	 * @param dto
+	 * @param binary When true the compact binary format of {@link RevisionBlobCodec} is used, otherwise zipped XML.
+	 * @return compressed annotations
+	 * @throws IOException 
+	 */
+	public static byte[] compressAnnotations(NamedAnnotations dto, boolean binary) throws IOException{
+		if(dto == null) return null;
+		if(binary){
+			return RevisionBlobCodec.encodeAnnotations(dto);
+		}
 		return compressObject(dto);
 	}
 	
@@ -215,13 +233,29 @@ public class JDOSecondaryPropertyUtils {
 	}
 	
 	/**
-	 * Convert the passed reference to a compressed (zip) byte array
+	 * Convert the passed reference to a compressed byte array. The compact
+	 * binary format of {@link RevisionBlobCodec} is only used when enabled in
+	 * the stack configuration, otherwise the reference is zipped XML.
 	 * @param dto
 	 * @return the compressed reference
 	 * @throws IOException 
 	 */
 	public static byte[] compressReference(Reference dto) throws IOException{
+		return compressReference(dto, StackConfiguration.singleton().getRevisionBlobBinaryEnabled());
+	}
+	
+	/**
+	 * Convert the passed reference to a compressed byte array.
+	 * @param dto
+	 * @param binary When true the compact binary format of {@link RevisionBlobCodec} is used, otherwise zipped XML.
+	 * @return the compressed reference
+	 * @throws IOException 
+	 */
+	public static byte[] compressReference(Reference dto, boolean binary) throws IOException{
 		if(dto == null) return null;
+		if(binary){
+			return RevisionBlobCodec.encodeReference(dto);
+		}
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		BufferedOutputStream buff = new BufferedOutputStream(out);
 		GZIPOutputStream zipper = new GZIPOutputStream(buff);
@@ -297,12 +331,28 @@ public class JDOSecondaryPropertyUtils {
 	}
 	
 	/**
-	 * Read the compressed (zip) byte array into the Annotations.
+	 * Read the compressed byte array into the Annotations. Both the binary
+	 * format and legacy compressed (zip) XML are supported.
 	 * @param zippedByes
 	 * @return the resurrected Annotations
 	 * @throws IOException 
 	 */
 	public static NamedAnnotations decompressedAnnotations(byte[] zippedByes) throws IOException{
+		return decompressedAnnotations(zippedByes, true);
+	}
+	
+	/**
+	 * Read the compressed byte array into the Annotations.
+	 * @param zippedByes
+	 * @param includeBlobs When false, the blob annotations of a binary blob are
+	 *            skipped without being read. Legacy XML is always fully read.
+	 * @return the resurrected Annotations
+	 * @throws IOException
+	 */
+	public static NamedAnnotations decompressedAnnotations(byte[] zippedByes, boolean includeBlobs) throws IOException{
+		if(RevisionBlobCodec.isBinary(zippedByes)){
+			return RevisionBlobCodec.decodeAnnotations(zippedByes, includeBlobs);
+		}
 		Object o = decompressedObject(zippedByes);
 		if (o==null) return new NamedAnnotations();
 		return (NamedAnnotations)o;
@@ -349,12 +399,16 @@ public class JDOSecondaryPropertyUtils {
 	}
 
 	/**
-	 * Read the compressed (zip) byte array into the Reference.
+	 * Read the compressed byte array into the Reference. Both the binary
+	 * format and legacy compressed (zip) XML are supported.
 	 * @param zippedByes
 	 * @return the resurrected Reference
 	 * @throws IOException 
 	 */
 	public static Reference decompressedReference(byte[] zippedByes) throws IOException{
+		if(RevisionBlobCodec.isBinary(zippedByes)){
+			return RevisionBlobCodec.decodeReference(zippedByes);
+		}
 		if(zippedByes != null){
 			ByteArrayInputStream in = new ByteArrayInputStream(zippedByes);
 			GZIPInputStream unZipper = new GZIPInputStream(in);
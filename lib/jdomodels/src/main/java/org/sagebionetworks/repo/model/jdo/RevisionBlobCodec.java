@@ -0,0 +1,419 @@
+package org.sagebionetworks.repo.model.jdo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.sagebionetworks.repo.model.AnnotationNameSpace;
+import org.sagebionetworks.repo.model.Annotations;
+import org.sagebionetworks.repo.model.NamedAnnotations;
+import org.sagebionetworks.repo.model.Reference;
+import org.sagebionetworks.util.VarLongUtils;
+
+/**
+ * A compact, versioned binary encoding of the annotations and reference blobs
+ * of a revision.
+ *
+ * Each blob starts with a header of the two magic bytes, the format version,
+ * the type of the blob and a flags byte. The magic bytes can never start a
+ * legacy gzip blob so {@link #isBinary(byte[])} tells the two formats apart.
+ * Payloads larger than {@link #DEFLATE_THRESHOLD_BYTES} are deflated.
+ *
+ * The blob annotations of each name-space are written last as a length
+ * prefixed section, so readers that do not need blobs can skip them without
+ * allocating them.
+ *
+ */
+public class RevisionBlobCodec {
+
+	public static final int MAGIC_0 = 0x53;
+	public static final int MAGIC_1 = 0x42;
+	public static final int FORMAT_VERSION = 1;
+	public static final int TYPE_NAMED_ANNOTATIONS = 1;
+	public static final int TYPE_REFERENCE = 2;
+	public static final int FLAG_DEFLATED = 1;
+	public static final int HEADER_SIZE = 5;
+	/**
+	 * Smaller payloads are stored as is since deflate only adds overhead.
+	 */
+	public static final int DEFLATE_THRESHOLD_BYTES = 256;
+
+	/**
+	 * Is the given blob in the binary format?
+	 *
+	 * @param bytes
+	 * @return False for null and for legacy gzip XML blobs.
+	 */
+	public static boolean isBinary(byte[] bytes) {
+		return bytes != null && bytes.length >= HEADER_SIZE && (bytes[0] & 0xFF) == MAGIC_0
+				&& (bytes[1] & 0xFF) == MAGIC_1;
+	}
+
+	/**
+	 * Encode the passed annotations.
+	 *
+	 * @param named
+	 * @return
+	 * @throws IOException
+	 */
+	public static byte[] encodeAnnotations(NamedAnnotations named) throws IOException {
+		if (named == null) throw new IllegalArgumentException("Annotations cannot be null");
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payload);
+		writeString(out, named.getId());
+		writeString(out, named.getEtag());
+		writeDate(out, named.getCreationDate());
+		writeLong(out, named.getCreatedBy());
+		Map<String, Annotations> map = named.getMap();
+		writeSize(out, map.size());
+		for (Map.Entry<String, Annotations> entry : map.entrySet()) {
+			writeString(out, entry.getKey());
+			writeAnnotations(out, entry.getValue());
+		}
+		out.flush();
+		return wrap(TYPE_NAMED_ANNOTATIONS, payload.toByteArray());
+	}
+
+	/**
+	 * Decode annotations written by {@link #encodeAnnotations(NamedAnnotations)}.
+	 *
+	 * @param bytes
+	 * @param includeBlobs
+	 *            When false the blob annotations are skipped and every
+	 *            name-space is returned with an empty blob map.
+	 * @return
+	 * @throws IOException
+	 */
+	public static NamedAnnotations decodeAnnotations(byte[] bytes, boolean includeBlobs) throws IOException {
+		DataInputStream in = unwrap(TYPE_NAMED_ANNOTATIONS, bytes);
+		NamedAnnotations named = new NamedAnnotations();
+		named.setId(readString(in));
+		named.setEtag(readString(in));
+		named.setCreationDate(readDate(in));
+		named.setCreatedBy(readLong(in));
+		int count = readSize(in);
+		for (int i = 0; i < count; i++) {
+			String name = readString(in);
+			Annotations annos = readAnnotations(in, includeBlobs);
+			named.put(AnnotationNameSpace.valueOf(name), annos);
+		}
+		return named;
+	}
+
+	/**
+	 * Encode the passed reference.
+	 *
+	 * @param reference
+	 * @return
+	 * @throws IOException
+	 */
+	public static byte[] encodeReference(Reference reference) throws IOException {
+		if (reference == null) throw new IllegalArgumentException("Reference cannot be null");
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payload);
+		writeString(out, reference.getTargetId());
+		writeLong(out, reference.getTargetVersionNumber());
+		out.flush();
+		return wrap(TYPE_REFERENCE, payload.toByteArray());
+	}
+
+	/**
+	 * Decode a reference written by {@link #encodeReference(Reference)}.
+	 *
+	 * @param bytes
+	 * @return
+	 * @throws IOException
+	 */
+	public static Reference decodeReference(byte[] bytes) throws IOException {
+		DataInputStream in = unwrap(TYPE_REFERENCE, bytes);
+		Reference reference = new Reference();
+		reference.setTargetId(readString(in));
+		reference.setTargetVersionNumber(readLong(in));
+		return reference;
+	}
+
+	private static byte[] wrap(int type, byte[] payload) throws IOException {
+		boolean deflate = payload.length > DEFLATE_THRESHOLD_BYTES;
+		ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_SIZE + payload.length);
+		out.write(MAGIC_0);
+		out.write(MAGIC_1);
+		out.write(FORMAT_VERSION);
+		out.write(type);
+		out.write(deflate ? FLAG_DEFLATED : 0);
+		if (deflate) {
+			DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+			deflater.write(payload);
+			deflater.finish();
+		} else {
+			out.write(payload);
+		}
+		return out.toByteArray();
+	}
+
+	private static DataInputStream unwrap(int expectedType, byte[] bytes) throws IOException {
+		if (!isBinary(bytes)) {
+			throw new IOException("Not a binary revision blob");
+		}
+		int version = bytes[2] & 0xFF;
+		if (version > FORMAT_VERSION) {
+			throw new IOException("Unsupported revision blob version: " + version);
+		}
+		int type = bytes[3] & 0xFF;
+		if (type != expectedType) {
+			throw new IOException("Expected a revision blob of type: " + expectedType + " but found: " + type);
+		}
+		ByteArrayInputStream payload = new ByteArrayInputStream(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+		if ((bytes[4] & FLAG_DEFLATED) != 0) {
+			// Inflate up front so the blob sections can be skipped reliably.
+			InflaterInputStream inflater = new InflaterInputStream(payload);
+			try {
+				payload = new ByteArrayInputStream(IOUtils.toByteArray(inflater));
+			} finally {
+				inflater.close();
+			}
+		}
+		return new DataInputStream(payload);
+	}
+
+	private static void writeAnnotations(DataOutputStream out, Annotations annos) throws IOException {
+		writeString(out, annos.getId());
+		writeString(out, annos.getUri());
+		writeString(out, annos.getEtag());
+		writeDate(out, annos.getCreationDate());
+		Map<String, List<String>> strings = annos.getStringAnnotations();
+		writeSize(out, strings == null ? 0 : strings.size());
+		if (strings != null) {
+			for (Map.Entry<String, List<String>> entry : strings.entrySet()) {
+				writeString(out, entry.getKey());
+				writeSize(out, entry.getValue() == null ? -1 : entry.getValue().size());
+				if (entry.getValue() != null) {
+					for (String value : entry.getValue()) {
+						writeString(out, value);
+					}
+				}
+			}
+		}
+		Map<String, List<Double>> doubles = annos.getDoubleAnnotations();
+		writeSize(out, doubles == null ? 0 : doubles.size());
+		if (doubles != null) {
+			for (Map.Entry<String, List<Double>> entry : doubles.entrySet()) {
+				writeString(out, entry.getKey());
+				writeSize(out, entry.getValue() == null ? -1 : entry.getValue().size());
+				if (entry.getValue() != null) {
+					for (Double value : entry.getValue()) {
+						out.writeBoolean(value != null);
+						if (value != null) {
+							out.writeDouble(value);
+						}
+					}
+				}
+			}
+		}
+		Map<String, List<Long>> longs = annos.getLongAnnotations();
+		writeSize(out, longs == null ? 0 : longs.size());
+		if (longs != null) {
+			for (Map.Entry<String, List<Long>> entry : longs.entrySet()) {
+				writeString(out, entry.getKey());
+				writeSize(out, entry.getValue() == null ? -1 : entry.getValue().size());
+				if (entry.getValue() != null) {
+					for (Long value : entry.getValue()) {
+						writeLong(out, value);
+					}
+				}
+			}
+		}
+		Map<String, List<Date>> dates = annos.getDateAnnotations();
+		writeSize(out, dates == null ? 0 : dates.size());
+		if (dates != null) {
+			for (Map.Entry<String, List<Date>> entry : dates.entrySet()) {
+				writeString(out, entry.getKey());
+				writeSize(out, entry.getValue() == null ? -1 : entry.getValue().size());
+				if (entry.getValue() != null) {
+					for (Date value : entry.getValue()) {
+						writeDate(out, value);
+					}
+				}
+			}
+		}
+		// The blobs are a length prefixed section so they can be skipped.
+		ByteArrayOutputStream blobSection = new ByteArrayOutputStream();
+		DataOutputStream blobOut = new DataOutputStream(blobSection);
+		Map<String, List<byte[]>> blobs = annos.getBlobAnnotations();
+		writeSize(blobOut, blobs == null ? 0 : blobs.size());
+		if (blobs != null) {
+			for (Map.Entry<String, List<byte[]>> entry : blobs.entrySet()) {
+				writeString(blobOut, entry.getKey());
+				writeSize(blobOut, entry.getValue() == null ? -1 : entry.getValue().size());
+				if (entry.getValue() != null) {
+					for (byte[] value : entry.getValue()) {
+						writeSize(blobOut, value == null ? -1 : value.length);
+						if (value != null) {
+							blobOut.write(value);
+						}
+					}
+				}
+			}
+		}
+		blobOut.flush();
+		writeSize(out, blobSection.size());
+		blobSection.writeTo(out);
+	}
+
+	private static Annotations readAnnotations(DataInputStream in, boolean includeBlobs) throws IOException {
+		Annotations annos = new Annotations();
+		annos.setId(readString(in));
+		annos.setUri(readString(in));
+		annos.setEtag(readString(in));
+		annos.setCreationDate(readDate(in));
+		int count = readSize(in);
+		Map<String, List<String>> strings = new HashMap<String, List<String>>(count);
+		for (int i = 0; i < count; i++) {
+			String key = readString(in);
+			int size = readSize(in);
+			List<String> values = null;
+			if (size >= 0) {
+				values = new ArrayList<String>(size);
+				for (int j = 0; j < size; j++) {
+					values.add(readString(in));
+				}
+			}
+			strings.put(key, values);
+		}
+		annos.setStringAnnotations(strings);
+		count = readSize(in);
+		Map<String, List<Double>> doubles = new HashMap<String, List<Double>>(count);
+		for (int i = 0; i < count; i++) {
+			String key = readString(in);
+			int size = readSize(in);
+			List<Double> values = null;
+			if (size >= 0) {
+				values = new ArrayList<Double>(size);
+				for (int j = 0; j < size; j++) {
+					values.add(in.readBoolean() ? in.readDouble() : null);
+				}
+			}
+			doubles.put(key, values);
+		}
+		annos.setDoubleAnnotations(doubles);
+		count = readSize(in);
+		Map<String, List<Long>> longs = new HashMap<String, List<Long>>(count);
+		for (int i = 0; i < count; i++) {
+			String key = readString(in);
+			int size = readSize(in);
+			List<Long> values = null;
+			if (size >= 0) {
+				values = new ArrayList<Long>(size);
+				for (int j = 0; j < size; j++) {
+					values.add(readLong(in));
+				}
+			}
+			longs.put(key, values);
+		}
+		annos.setLongAnnotations(longs);
+		count = readSize(in);
+		Map<String, List<Date>> dates = new HashMap<String, List<Date>>(count);
+		for (int i = 0; i < count; i++) {
+			String key = readString(in);
+			int size = readSize(in);
+			List<Date> values = null;
+			if (size >= 0) {
+				values = new ArrayList<Date>(size);
+				for (int j = 0; j < size; j++) {
+					values.add(readDate(in));
+				}
+			}
+			dates.put(key, values);
+		}
+		annos.setDateAnnotations(dates);
+		int blobSectionSize = readSize(in);
+		Map<String, List<byte[]>> blobs = new HashMap<String, List<byte[]>>();
+		if (!includeBlobs) {
+			if (in.skipBytes(blobSectionSize) != blobSectionSize) {
+				throw new IOException("Truncated revision blob");
+			}
+		} else {
+			count = readSize(in);
+			for (int i = 0; i < count; i++) {
+				String key = readString(in);
+				int size = readSize(in);
+				List<byte[]> values = null;
+				if (size >= 0) {
+					values = new ArrayList<byte[]>(size);
+					for (int j = 0; j < size; j++) {
+						int length = readSize(in);
+						byte[] value = null;
+						if (length >= 0) {
+							value = new byte[length];
+							in.readFully(value);
+						}
+						values.add(value);
+					}
+				}
+				blobs.put(key, values);
+			}
+		}
+		annos.setBlobAnnotations(blobs);
+		return annos;
+	}
+
+	/**
+	 * A size of -1 is used for null.
+	 */
+	private static void writeSize(DataOutputStream out, int size) throws IOException {
+		VarLongUtils.writeVarLong(out, size + 1L);
+	}
+
+	private static int readSize(DataInputStream in) throws IOException {
+		return (int) (VarLongUtils.readVarLong(in) - 1L);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			writeSize(out, -1);
+			return;
+		}
+		byte[] bytes = value.getBytes(JDOSecondaryPropertyUtils.UTF8);
+		writeSize(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = readSize(in);
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, JDOSecondaryPropertyUtils.UTF8);
+	}
+
+	private static void writeLong(DataOutputStream out, Long value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			VarLongUtils.writeVarLong(out, value);
+		}
+	}
+
+	private static Long readLong(DataInputStream in) throws IOException {
+		return in.readBoolean() ? VarLongUtils.readVarLong(in) : null;
+	}
+
+	private static void writeDate(DataOutputStream out, Date value) throws IOException {
+		writeLong(out, value == null ? null : value.getTime());
+	}
+
+	private static Date readDate(DataInputStream in) throws IOException {
+		Long time = readLong(in);
+		return time == null ? null : new Date(time);
+	}
+}
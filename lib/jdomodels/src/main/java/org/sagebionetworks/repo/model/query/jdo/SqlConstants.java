@@ -26,6 +26,20 @@ public class SqlConstants {
 	public static final String COL_CURRENT_REV			= "CURRENT_REV_NUM";
 	public static final String COL_NODE_ALIAS 			= "ALIAS";
 	public static final String DDL_FILE_NODE			="schema/Node-ddl.sql";
+
+	// The node closure table.  One row for each node and each of its ancestors (including itself).
+	public static final String TABLE_NODE_CLOSURE						= "NODE_CLOSURE";
+	public static final String COL_NODE_CLOSURE_ANCESTOR_ID				= "ANCESTOR_ID";
+	public static final String COL_NODE_CLOSURE_DESCENDANT_ID			= "DESCENDANT_ID";
+	public static final String COL_NODE_CLOSURE_DISTANCE				= "DISTANCE";
+	public static final String DDL_FILE_NODE_CLOSURE					= "schema/NodeClosure-ddl.sql";
+
+	// The progress of each backfill that makes a single pass over a table.
+	public static final String TABLE_BACKFILL_PROGRESS					= "BACKFILL_PROGRESS";
+	public static final String COL_BACKFILL_PROGRESS_NAME				= "NAME";
+	public static final String COL_BACKFILL_PROGRESS_LAST_ID			= "LAST_ID";
+	public static final String COL_BACKFILL_PROGRESS_COMPLETE			= "COMPLETE";
+	public static final String DDL_FILE_BACKFILL_PROGRESS				= "schema/BackfillProgress-ddl.sql";
 	
 	// The Revision table
 	public static final String TABLE_REVISION 				= "JDOREVISION";
@@ -431,6 +445,13 @@ public class SqlConstants {
 	public static final String COL_TABLE_ROW_TYPE			= "CHANGE_TYPE";
 	public static final String DDL_TABLE_ROW_CHANGE = "schema/TableRowChange-ddl.sql";
 	
+	// The latest version of each row of a table.
+	public static final String TABLE_ROW_VERSION_INDEX		= "TABLE_ROW_VERSION_INDEX";
+	public static final String COL_ROW_VERSION_INDEX_TABLE_ID	= "TABLE_ID";
+	public static final String COL_ROW_VERSION_INDEX_ROW_ID	= "ROW_ID";
+	public static final String COL_ROW_VERSION_INDEX_VERSION	= "ROW_VERSION";
+	public static final String DDL_TABLE_ROW_VERSION_INDEX = "schema/TableRowVersionIndex-ddl.sql";
+	
 	// Tracks view scope.
 	public static final String TABLE_VIEW_TYPE				= "VIEW_TYPE";
 	public static final String COL_VIEW_TYPE_VIEW_ID		= "VIEW_ID";
@@ -0,0 +1,6 @@
+CREATE TABLE IF NOT EXISTS `BACKFILL_PROGRESS` (
+  `NAME` varchar(100) CHARACTER SET latin1 COLLATE latin1_bin NOT NULL,
+  `LAST_ID` bigint(20) NOT NULL,
+  `COMPLETE` boolean NOT NULL,
+  PRIMARY KEY (`NAME`)
+)
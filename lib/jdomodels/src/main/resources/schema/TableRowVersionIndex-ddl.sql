@@ -0,0 +1,7 @@
+CREATE TABLE IF NOT EXISTS `TABLE_ROW_VERSION_INDEX` (
+  `TABLE_ID` bigint(20) NOT NULL,
+  `ROW_ID` bigint(20) NOT NULL,
+  `ROW_VERSION` bigint(20) NOT NULL,
+  PRIMARY KEY (`TABLE_ID`,`ROW_ID`),
+  CONSTRAINT `TABLE_ROW_VERSION_INDEX_TABLE_ID_FK` FOREIGN KEY (`TABLE_ID`) REFERENCES `TABLE_ID_SEQUENCE` (`TABLE_ID`) ON DELETE CASCADE
+)
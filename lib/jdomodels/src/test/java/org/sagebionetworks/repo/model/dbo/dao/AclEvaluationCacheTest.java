@@ -0,0 +1,126 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sagebionetworks.repo.model.ACCESS_TYPE;
+import org.sagebionetworks.repo.model.ObjectType;
+import org.sagebionetworks.util.Clock;
+
+import com.google.common.collect.Sets;
+
+public class AclEvaluationCacheTest {
+
+	@Mock
+	Clock mockClock;
+
+	AclEvaluationCache cache;
+	Set<Long> groups;
+	Set<Long> owners;
+	Map<Long, Boolean> results;
+	long ttlMS;
+
+	@Before
+	public void before() {
+		MockitoAnnotations.initMocks(this);
+		when(mockClock.currentTimeMillis()).thenReturn(0L);
+		ttlMS = 1000L;
+		cache = new AclEvaluationCache(10, 2, ttlMS, mockClock);
+		groups = Sets.newHashSet(1L, 2L);
+		owners = Sets.newHashSet(100L, 101L);
+		results = new HashMap<Long, Boolean>();
+		results.put(100L, true);
+		results.put(101L, false);
+	}
+
+	@Test
+	public void testMissThenHit() {
+		assertTrue(cache.get(groups, owners, ObjectType.ENTITY, ACCESS_TYPE.READ).isEmpty());
+		assertEquals(2, cache.getMissCount());
+		cache.put(groups, ObjectType.ENTITY, ACCESS_TYPE.READ, results, cache.getGeneration());
+		// call under test
+		Map<Long, Boolean> cached = cache.get(groups, owners, ObjectType.ENTITY, ACCESS_TYPE.READ);
+		assertEquals(results, cached);
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getOwnerCount());
+	}
+
+	@Test
+	public void testKeyIncludesGroupsTypeAndAccess() {
+		cache.put(groups, ObjectType.ENTITY, ACCESS_TYPE.READ, results, cache.getGeneration());
+		assertTrue(cache.get(Sets.newHashSet(1L), owners, ObjectType.ENTITY, ACCESS_TYPE.READ).isEmpty());
+		assertTrue(cache.get(groups, owners, ObjectType.EVALUATION, ACCESS_TYPE.READ).isEmpty());
+		assertTrue(cache.get(groups, owners, ObjectType.ENTITY, ACCESS_TYPE.DELETE).isEmpty());
+	}
+
+	@Test
+	public void testGroupsCopied() {
+		cache.put(groups, ObjectType.ENTITY, ACCESS_TYPE.READ, results, cache.getGeneration());
+		// changing the caller's set must not change the cached key.
+		groups.add(3L);
+		assertEquals(results, cache.get(Sets.newHashSet(1L, 2L), owners, ObjectType.ENTITY, ACCESS_TYPE.READ));
+	}
+
+	@Test
+	public void testInvalidate() {
+		cache.put(groups, ObjectType.ENTITY, ACCESS_TYPE.READ, results, cache.getGeneration());
+		// call under test
+		cache.invalidate(Collections.singletonList(100L), ObjectType.ENTITY);
+		Map<Long, Boolean> cached = cache.get(groups, owners, ObjectType.ENTITY, ACCESS_TYPE.READ);
+		assertEquals(Collections.singletonMap(101L, false), cached);
+	}
+
+	@Test
+	public void testOtherCounts() {
+		assertEquals(Collections.singletonMap(AclEvaluationCache.STALE, 0L), cache.getOtherCounts());
+	}
+
+	@Test
+	public void testStaleResultsNotCached() {
+		long generation = cache.getGeneration();
+		// An ACL changes while the query is running.
+		cache.invalidate(Collections.singletonList(555L), ObjectType.ENTITY);
+		// call under test
+		cache.put(groups, ObjectType.ENTITY, ACCESS_TYPE.READ, results, generation);
+		assertTrue(cache.get(groups, owners, ObjectType.ENTITY, ACCESS_TYPE.READ).isEmpty());
+		assertEquals(1, cache.getStaleCount());
+	}
+
+	@Test
+	public void testExpired() {
+		cache.put(groups, ObjectType.ENTITY, ACCESS_TYPE.READ, results, cache.getGeneration());
+		when(mockClock.currentTimeMillis()).thenReturn(ttlMS);
+		// call under test
+		assertTrue(cache.get(groups, owners, ObjectType.ENTITY, ACCESS_TYPE.READ).isEmpty());
+	}
+
+	@Test
+	public void testMaxEvaluationsPerOwner() {
+		cache.put(Sets.newHashSet(1L), ObjectType.ENTITY, ACCESS_TYPE.READ, results, cache.getGeneration());
+		cache.put(Sets.newHashSet(2L), ObjectType.ENTITY, ACCESS_TYPE.READ, results, cache.getGeneration());
+		// the limit of two per owner has been reached.
+		cache.put(Sets.newHashSet(3L), ObjectType.ENTITY, ACCESS_TYPE.READ, results, cache.getGeneration());
+		assertTrue(cache.get(Sets.newHashSet(3L), owners, ObjectType.ENTITY, ACCESS_TYPE.READ).isEmpty());
+		assertEquals(results, cache.get(Sets.newHashSet(2L), owners, ObjectType.ENTITY, ACCESS_TYPE.READ));
+	}
+
+	@Test
+	public void testClear() {
+		cache.put(groups, ObjectType.ENTITY, ACCESS_TYPE.READ, results, cache.getGeneration());
+		long generation = cache.getGeneration();
+		// call under test
+		cache.clear();
+		assertEquals(0, cache.getOwnerCount());
+		assertTrue(cache.getGeneration() > generation);
+	}
+}
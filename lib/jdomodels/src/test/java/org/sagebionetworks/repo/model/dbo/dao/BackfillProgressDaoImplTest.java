@@ -0,0 +1,97 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sagebionetworks.repo.model.dao.BackfillProgressDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:jdomodels-test-context.xml" })
+public class BackfillProgressDaoImplTest {
+
+	@Autowired
+	private BackfillProgressDao backfillProgressDao;
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private String name;
+
+	@Before
+	public void before() {
+		name = "BackfillProgressDaoImplTest";
+		after();
+	}
+
+	@After
+	public void after() {
+		jdbcTemplate.update("DELETE FROM BACKFILL_PROGRESS WHERE NAME = ?", name);
+	}
+
+	@Test
+	public void testNotStarted() {
+		assertEquals(-1L, backfillProgressDao.getLastId(name));
+		assertFalse(backfillProgressDao.isComplete(name));
+	}
+
+	@Test
+	public void testSetLastId() {
+		// call under test
+		assertTrue(backfillProgressDao.setLastId(name, -1L, 100L));
+		assertEquals(100L, backfillProgressDao.getLastId(name));
+		assertTrue(backfillProgressDao.setLastId(name, 100L, 200L));
+		assertEquals(200L, backfillProgressDao.getLastId(name));
+	}
+
+	@Test
+	public void testSetLastIdAfterRewind() {
+		backfillProgressDao.setLastId(name, -1L, 100L);
+		backfillProgressDao.rewind(name, 50L);
+		// call under test
+		assertFalse(backfillProgressDao.setLastId(name, 100L, 200L));
+		assertEquals(49L, backfillProgressDao.getLastId(name));
+	}
+
+	@Test
+	public void testSetComplete() {
+		backfillProgressDao.setLastId(name, -1L, 100L);
+		// call under test
+		assertTrue(backfillProgressDao.setComplete(name, 100L));
+		assertTrue(backfillProgressDao.isComplete(name));
+	}
+
+	@Test
+	public void testSetCompleteAfterRewind() {
+		backfillProgressDao.setLastId(name, -1L, 100L);
+		backfillProgressDao.rewind(name, 50L);
+		// call under test
+		assertFalse(backfillProgressDao.setComplete(name, 100L));
+		assertFalse(backfillProgressDao.isComplete(name));
+	}
+
+	@Test
+	public void testRewindComplete() {
+		backfillProgressDao.setLastId(name, -1L, 100L);
+		backfillProgressDao.setComplete(name, 100L);
+		// call under test
+		backfillProgressDao.rewind(name, 101L);
+		assertFalse(backfillProgressDao.isComplete(name));
+		assertEquals(100L, backfillProgressDao.getLastId(name));
+	}
+
+	@Test
+	public void testRewindNotStarted() {
+		// call under test
+		backfillProgressDao.rewind(name, 50L);
+		assertEquals(-1L, backfillProgressDao.getLastId(name));
+		assertFalse(backfillProgressDao.isComplete(name));
+	}
+}
@@ -427,6 +427,21 @@ public class DBOAccessControlListDAOImplTest {
 	}
 	
 	
+	@Test
+	public void testUpdateInvalidatesCachedEvaluations() throws Exception {
+		Set<Long> gs = new HashSet<Long>();
+		gs.add(Long.parseLong(group.getId()));
+		// cache the evaluations before the update.
+		assertTrue(aclDAO.canAccess(gs, node.getId(), ObjectType.ENTITY, ACCESS_TYPE.READ));
+		assertFalse(aclDAO.canAccess(gs, node.getId(), ObjectType.ENTITY, ACCESS_TYPE.UPDATE));
+		AccessControlList acl = aclDAO.get(node.getId(), ObjectType.ENTITY);
+		acl.getResourceAccess().iterator().next().setAccessType(Sets.newHashSet(ACCESS_TYPE.UPDATE));
+		aclDAO.update(acl, ObjectType.ENTITY);
+		// the cached evaluations must not be used after the update.
+		assertFalse(aclDAO.canAccess(gs, node.getId(), ObjectType.ENTITY, ACCESS_TYPE.READ));
+		assertTrue(aclDAO.canAccess(gs, node.getId(), ObjectType.ENTITY, ACCESS_TYPE.UPDATE));
+	}
+
 	@Test
 	public void testUpdateMultipleGroups() throws Exception {
 		Node node = nodeList.iterator().next();
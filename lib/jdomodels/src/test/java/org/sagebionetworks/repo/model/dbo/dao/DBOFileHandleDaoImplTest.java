@@ -598,6 +598,27 @@ public class DBOFileHandleDaoImplTest {
 		assertEquals(withPreview, results.get(withPreview.getId()));
 	}
 
+	/**
+	 * Deleting a preview sets the preview ID of its file to null in the database so the cached file must be invalidated.
+	 */
+	@Test
+	public void testDeletePreviewOfCachedFile() throws Exception{
+		S3FileHandle withPreview = TestUtils.createS3FileHandle(creatorUserGroupId, idGenerator.generateNewId(IdType.FILE_IDS).toString());
+		withPreview = (S3FileHandle) fileHandleDao.createFile(withPreview);
+		toDelete.add(withPreview.getId());
+		PreviewFileHandle preview = TestUtils.createPreviewFileHandle(creatorUserGroupId, idGenerator.generateNewId(IdType.FILE_IDS).toString());
+		preview = (PreviewFileHandle) fileHandleDao.createFile(preview);
+		fileHandleDao.setPreviewId(withPreview.getId(), preview.getId());
+		// cache the file with its preview.
+		S3FileHandle clone = (S3FileHandle) fileHandleDao.get(withPreview.getId());
+		assertEquals(preview.getId(), clone.getPreviewId());
+		// call under test
+		fileHandleDao.delete(preview.getId());
+		clone = (S3FileHandle) fileHandleDao.get(withPreview.getId());
+		assertNull(clone.getPreviewId());
+		assertTrue(fileHandleDao.getAllFileHandlesBatch(Arrays.asList(preview.getId())).isEmpty());
+	}
+
 	@Test
 	public void testCountReferences() throws Exception {
 		S3FileHandle handle1 = TestUtils.createS3FileHandle(creatorUserGroupId, idGenerator.generateNewId(IdType.FILE_IDS).toString());
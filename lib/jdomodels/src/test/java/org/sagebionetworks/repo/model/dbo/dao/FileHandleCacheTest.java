@@ -0,0 +1,113 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sagebionetworks.repo.model.dbo.persistence.DBOFileHandle;
+import org.sagebionetworks.util.Clock;
+
+public class FileHandleCacheTest {
+
+	@Mock
+	Clock mockClock;
+
+	FileHandleCache cache;
+	DBOFileHandle one;
+	DBOFileHandle two;
+	List<DBOFileHandle> handles;
+	List<String> ids;
+	long ttlMS;
+
+	@Before
+	public void before() {
+		MockitoAnnotations.initMocks(this);
+		when(mockClock.currentTimeMillis()).thenReturn(0L);
+		ttlMS = 1000L;
+		cache = new FileHandleCache(2, ttlMS, mockClock);
+		one = new DBOFileHandle();
+		one.setId(1L);
+		two = new DBOFileHandle();
+		two.setId(2L);
+		handles = Arrays.asList(one, two);
+		ids = Arrays.asList("1", "2");
+	}
+
+	@Test
+	public void testMissThenHit() {
+		assertTrue(cache.get(ids).isEmpty());
+		assertEquals(2, cache.getMissCount());
+		cache.put(handles, cache.getGeneration());
+		// call under test
+		Map<String, DBOFileHandle> cached = cache.get(ids);
+		assertEquals(2, cached.size());
+		assertEquals(one, cached.get("1"));
+		assertEquals(two, cached.get("2"));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testInvalidate() {
+		cache.put(handles, cache.getGeneration());
+		// call under test
+		cache.invalidate(Collections.singletonList("1"));
+		Map<String, DBOFileHandle> cached = cache.get(ids);
+		assertEquals(Collections.singletonMap("2", two), cached);
+	}
+
+	@Test
+	public void testStalePutDropped() {
+		long generation = cache.getGeneration();
+		// a handle changes while the query is running.
+		cache.invalidate(Collections.singletonList("1"));
+		// call under test
+		cache.put(handles, generation);
+		assertTrue(cache.get(ids).isEmpty());
+		assertEquals(1, cache.getStaleCount());
+	}
+
+	@Test
+	public void testExpires() {
+		cache.put(handles, cache.getGeneration());
+		when(mockClock.currentTimeMillis()).thenReturn(ttlMS + 1);
+		// call under test
+		assertTrue(cache.get(ids).isEmpty());
+	}
+
+	@Test
+	public void testEviction() {
+		cache.put(handles, cache.getGeneration());
+		DBOFileHandle three = new DBOFileHandle();
+		three.setId(3L);
+		// call under test
+		cache.put(Collections.singletonList(three), cache.getGeneration());
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertTrue(cache.get(Collections.singletonList("1")).isEmpty());
+	}
+
+	@Test
+	public void testClear() {
+		cache.put(handles, cache.getGeneration());
+		long generation = cache.getGeneration();
+		// call under test
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertTrue(generation != cache.getGeneration());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTimeToLiveZero() {
+		new FileHandleCache(2, 0, mockClock);
+	}
+}
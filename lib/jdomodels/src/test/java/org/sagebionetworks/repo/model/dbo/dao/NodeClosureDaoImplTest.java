@@ -0,0 +1,283 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sagebionetworks.repo.model.AccessControlList;
+import org.sagebionetworks.repo.model.AccessControlListDAO;
+import org.sagebionetworks.repo.model.AuthorizationConstants.BOOTSTRAP_PRINCIPAL;
+import org.sagebionetworks.repo.model.EntityHeader;
+import org.sagebionetworks.repo.model.EntityType;
+import org.sagebionetworks.repo.model.Node;
+import org.sagebionetworks.repo.model.NodeDAO;
+import org.sagebionetworks.repo.model.ObjectType;
+import org.sagebionetworks.repo.model.UserInfo;
+import org.sagebionetworks.repo.model.dao.BackfillProgressDao;
+import org.sagebionetworks.repo.model.dao.NodeClosureDao;
+import org.sagebionetworks.repo.model.jdo.KeyFactory;
+import org.sagebionetworks.repo.model.jdo.NodeTestUtils;
+import org.sagebionetworks.repo.model.util.AccessControlListUtil;
+import org.sagebionetworks.repo.web.NotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:jdomodels-test-context.xml" })
+public class NodeClosureDaoImplTest {
+
+	@Autowired
+	private NodeClosureDao nodeClosureDao;
+	@Autowired
+	private NodeDAO nodeDao;
+	@Autowired
+	private AccessControlListDAO accessControlListDAO;
+	@Autowired
+	private BackfillProgressDao backfillProgressDao;
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Long creatorUserGroupId;
+	private UserInfo adminUser;
+	private List<String> toDelete;
+	private List<String> aclsToDelete;
+
+	private Node project;
+	private Node folder;
+	private Node file;
+	private Long projectId;
+	private Long folderId;
+	private Long fileId;
+
+	@Before
+	public void before() {
+		creatorUserGroupId = BOOTSTRAP_PRINCIPAL.THE_ADMIN_USER.getPrincipalId();
+		adminUser = new UserInfo(true, creatorUserGroupId);
+		toDelete = new LinkedList<String>();
+		aclsToDelete = new LinkedList<String>();
+		// project -> folder -> file
+		project = createNode("project", EntityType.project, null);
+		folder = createNode("folder", EntityType.folder, project.getId());
+		file = createNode("file", EntityType.folder, folder.getId());
+		projectId = KeyFactory.stringToKey(project.getId());
+		folderId = KeyFactory.stringToKey(folder.getId());
+		fileId = KeyFactory.stringToKey(file.getId());
+	}
+
+	@After
+	public void after() {
+		for (String id : aclsToDelete) {
+			try {
+				accessControlListDAO.delete(id, ObjectType.ENTITY);
+			} catch (NotFoundException e) {
+				// already deleted
+			}
+		}
+		// delete in reverse order of creation.
+		for (int i = toDelete.size() - 1; i >= 0; i--) {
+			try {
+				nodeDao.delete(toDelete.get(i));
+			} catch (NotFoundException e) {
+				// already deleted
+			}
+		}
+	}
+
+	private Node createNode(String name, EntityType type, String parentId) {
+		Node node = NodeTestUtils.createNew(name, creatorUserGroupId);
+		node.setNodeType(type);
+		node.setParentId(parentId);
+		node = nodeDao.createNewNode(node);
+		toDelete.add(node.getId());
+		return node;
+	}
+
+	private void createAcl(String nodeId) {
+		AccessControlList acl = AccessControlListUtil.createACLToGrantEntityAdminAccess(nodeId, adminUser, new Date());
+		accessControlListDAO.create(acl, ObjectType.ENTITY);
+		aclsToDelete.add(nodeId);
+	}
+
+	/**
+	 * Remove all closure rows for the given nodes to simulate nodes that were
+	 * created before the closure table existed.
+	 */
+	private void removeFromClosure(Long... nodeIds) {
+		for (Long id : nodeIds) {
+			jdbcTemplate.update("DELETE FROM NODE_CLOSURE WHERE DESCENDANT_ID = ?", id);
+			backfillProgressDao.rewind(NodeClosureDaoImpl.BACKFILL_NAME, id);
+		}
+	}
+
+	private void materializeAll() {
+		while (nodeClosureDao.backfillNextPage(1000) > 0) {
+			// keep going until all nodes are added.
+		}
+	}
+
+	@Test
+	public void testCreate() {
+		assertTrue(nodeClosureDao.isMaterialized(projectId));
+		assertTrue(nodeClosureDao.isMaterialized(folderId));
+		assertTrue(nodeClosureDao.isMaterialized(fileId));
+		assertEquals(Arrays.asList(projectId, folderId, fileId), nodeClosureDao.getAncestorIds(fileId));
+		assertEquals(Arrays.asList(projectId), nodeClosureDao.getAncestorIds(projectId));
+	}
+
+	@Test
+	public void testGetProjectId() {
+		assertEquals(projectId, nodeClosureDao.getProjectId(fileId));
+		assertEquals(projectId, nodeClosureDao.getProjectId(folderId));
+		assertEquals(projectId, nodeClosureDao.getProjectId(projectId));
+	}
+
+	@Test
+	public void testGetProjectIdNotInProject() {
+		Node other = createNode("other", EntityType.folder, null);
+		assertNull(nodeClosureDao.getProjectId(KeyFactory.stringToKey(other.getId())));
+	}
+
+	@Test
+	public void testGetBenefactorId() {
+		// no ACL yet
+		assertNull(nodeClosureDao.getBenefactorId(fileId));
+		createAcl(project.getId());
+		assertEquals(projectId, nodeClosureDao.getBenefactorId(fileId));
+		// The closest ACL wins
+		createAcl(folder.getId());
+		assertEquals(folderId, nodeClosureDao.getBenefactorId(fileId));
+		assertEquals(projectId, nodeClosureDao.getBenefactorId(projectId));
+		// Removing an ACL requires no change to the closure table.
+		accessControlListDAO.delete(folder.getId(), ObjectType.ENTITY);
+		assertEquals(projectId, nodeClosureDao.getBenefactorId(fileId));
+	}
+
+	@Test
+	public void testMoveNode() {
+		Node otherProject = createNode("otherProject", EntityType.project, null);
+		Long otherProjectId = KeyFactory.stringToKey(otherProject.getId());
+		// move the folder (and the file) to the other project.
+		Node toMove = nodeDao.getNode(folder.getId());
+		toMove.setParentId(otherProject.getId());
+		// call under test
+		nodeDao.updateNode(toMove);
+		assertEquals(Arrays.asList(otherProjectId, folderId, fileId), nodeClosureDao.getAncestorIds(fileId));
+		assertEquals(Arrays.asList(otherProjectId, folderId), nodeClosureDao.getAncestorIds(folderId));
+		assertEquals(otherProjectId, nodeClosureDao.getProjectId(fileId));
+		// The path should match the new hierarchy.
+		List<EntityHeader> path = nodeDao.getEntityPath(file.getId());
+		assertEquals(3, path.size());
+		assertEquals(otherProject.getId(), path.get(0).getId());
+		assertEquals(file.getId(), path.get(2).getId());
+	}
+
+	@Test
+	public void testMoveNodeToUnmaterializedParent() {
+		Node other = createNode("other", EntityType.folder, null);
+		Long otherId = KeyFactory.stringToKey(other.getId());
+		removeFromClosure(otherId);
+		// call under test
+		nodeClosureDao.moveNode(folderId, otherId);
+		// the sub-tree cannot be complete so it is removed.
+		assertFalse(nodeClosureDao.isMaterialized(folderId));
+		assertFalse(nodeClosureDao.isMaterialized(fileId));
+		assertTrue(nodeClosureDao.isMaterialized(projectId));
+		// the backfill must add the sub-tree back.
+		assertFalse(nodeClosureDao.isBackfillComplete());
+		assertTrue(backfillProgressDao.getLastId(NodeClosureDaoImpl.BACKFILL_NAME) < folderId);
+	}
+
+	@Test
+	public void testMaterializeMissingNodes() {
+		removeFromClosure(fileId, folderId, projectId);
+		assertFalse(nodeClosureDao.isMaterialized(fileId));
+		assertTrue(nodeClosureDao.getAncestorIds(fileId).isEmpty());
+		assertNull(nodeClosureDao.getProjectId(fileId));
+		// The node DAO must fall back to the hierarchy.
+		assertEquals(project.getId(), nodeDao.getProjectId(file.getId()));
+		assertEquals(3, nodeDao.getEntityPath(file.getId()).size());
+		// call under test
+		materializeAll();
+		assertEquals(Arrays.asList(projectId, folderId, fileId), nodeClosureDao.getAncestorIds(fileId));
+		assertTrue(nodeClosureDao.isBackfillComplete());
+	}
+
+	@Test
+	public void testBackfillParentCreatedAfterChild() {
+		// the file is moved to a folder with a larger ID than its own.
+		Node newFolder = createNode("newFolder", EntityType.folder, project.getId());
+		Long newFolderId = KeyFactory.stringToKey(newFolder.getId());
+		Node toMove = nodeDao.getNode(file.getId());
+		toMove.setParentId(newFolder.getId());
+		nodeDao.updateNode(toMove);
+		removeFromClosure(fileId, newFolderId);
+		// call under test
+		materializeAll();
+		assertEquals(Arrays.asList(projectId, newFolderId, fileId), nodeClosureDao.getAncestorIds(fileId));
+		assertEquals(Arrays.asList(projectId, newFolderId), nodeClosureDao.getAncestorIds(newFolderId));
+	}
+
+	@Test
+	public void testBackfillCompleteRewoundByNewNode() {
+		materializeAll();
+		assertTrue(nodeClosureDao.isBackfillComplete());
+		// a parent that is not materialized without rewinding, as if it was migrated after the backfill.
+		jdbcTemplate.update("DELETE FROM NODE_CLOSURE WHERE DESCENDANT_ID = ?", folderId);
+		Node child = createNode("child", EntityType.folder, folder.getId());
+		Long childId = KeyFactory.stringToKey(child.getId());
+		// call under test
+		assertFalse(nodeClosureDao.isBackfillComplete());
+		materializeAll();
+		assertEquals(Arrays.asList(projectId, folderId, childId), nodeClosureDao.getAncestorIds(childId));
+		assertTrue(nodeClosureDao.isBackfillComplete());
+	}
+
+	@Test
+	public void testAddNodeUnmaterializedParent() {
+		removeFromClosure(fileId, folderId);
+		Node child = createNode("child", EntityType.folder, folder.getId());
+		Long childId = KeyFactory.stringToKey(child.getId());
+		// the child cannot be added until its parent is.
+		assertFalse(nodeClosureDao.isMaterialized(childId));
+		materializeAll();
+		assertEquals(Arrays.asList(projectId, folderId, childId), nodeClosureDao.getAncestorIds(childId));
+	}
+
+	@Test
+	public void testSynchronizeNodeNoChange() {
+		// call under test
+		nodeClosureDao.synchronizeNode(fileId, folderId);
+		assertEquals(Arrays.asList(projectId, folderId, fileId), nodeClosureDao.getAncestorIds(fileId));
+	}
+
+	@Test
+	public void testSynchronizeNodeNewParent() {
+		// call under test
+		nodeClosureDao.synchronizeNode(fileId, projectId);
+		assertEquals(Arrays.asList(projectId, fileId), nodeClosureDao.getAncestorIds(fileId));
+	}
+
+	@Test
+	public void testDeleteNode() {
+		nodeDao.delete(folder.getId());
+		assertFalse(nodeClosureDao.isMaterialized(folderId));
+		assertFalse(nodeClosureDao.isMaterialized(fileId));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddNodeNullId() {
+		nodeClosureDao.addNode(null, projectId);
+	}
+}
@@ -70,8 +70,10 @@ import org.sagebionetworks.repo.model.entity.Direction;
 import org.sagebionetworks.repo.model.entity.SortBy;
 import org.sagebionetworks.repo.model.entity.query.SortDirection;
 import org.sagebionetworks.repo.model.file.S3FileHandle;
+import org.sagebionetworks.repo.model.jdo.JDOSecondaryPropertyUtils;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
 import org.sagebionetworks.repo.model.jdo.NodeTestUtils;
+import org.sagebionetworks.repo.model.jdo.RevisionBlobCodec;
 import org.sagebionetworks.repo.model.message.ChangeType;
 import org.sagebionetworks.repo.model.provenance.Activity;
 import org.sagebionetworks.repo.model.table.AnnotationDTO;
@@ -3347,4 +3349,111 @@ public class NodeDAOImplTest {
 		assertFalse(availableIds.contains(twoId));
 		assertFalse(availableIds.contains(doesNotExist));
 	}
+	
+	@Test
+	public void testGetBenefactorsEmpty(){
+		Map<Long, Long> benefactors = nodeDao.getBenefactors(new LinkedList<Long>());
+		assertNotNull(benefactors);
+		assertTrue(benefactors.isEmpty());
+	}
+	
+	@Test
+	public void testGetBenefactors(){
+		Node parent = NodeTestUtils.createNew("parent", creatorUserGroupId);
+		parent = nodeDao.createNewNode(parent);
+		Long parentId = KeyFactory.stringToKey(parent.getId());
+		toDelete.add(parent.getId());
+		AccessControlList acl = AccessControlListUtil.createACLToGrantEntityAdminAccess(parent.getId(), adminUser, new Date());
+		accessControlListDAO.create(acl, ObjectType.ENTITY);
+		Node child = NodeTestUtils.createNew("child", creatorUserGroupId);
+		child.setParentId(parent.getId());
+		child = nodeDao.createNewNode(child);
+		Long childId = KeyFactory.stringToKey(child.getId());
+		toDelete.add(child.getId());
+		Long doesNotExist = -1L;
+		// call under test
+		Map<Long, Long> benefactors = nodeDao.getBenefactors(Lists.newArrayList(parentId, childId, doesNotExist));
+		assertEquals(2, benefactors.size());
+		assertEquals(parentId, benefactors.get(parentId));
+		assertEquals(parentId, benefactors.get(childId));
+		assertFalse(benefactors.containsKey(doesNotExist));
+	}
+	
+	@Test
+	public void testGetNodesAnnotationsAndPaths() throws Exception {
+		Node parent = NodeTestUtils.createNew("parent", creatorUserGroupId);
+		parent = nodeDao.createNewNode(parent);
+		Long parentId = KeyFactory.stringToKey(parent.getId());
+		toDelete.add(parent.getId());
+		Node child = NodeTestUtils.createNew("child", creatorUserGroupId);
+		child.setParentId(parent.getId());
+		child = nodeDao.createNewNode(child);
+		Long childId = KeyFactory.stringToKey(child.getId());
+		toDelete.add(child.getId());
+		NamedAnnotations named = nodeDao.getAnnotations(child.getId());
+		named.getAdditionalAnnotations().addAnnotation("aString", "foo");
+		nodeDao.updateAnnotations(child.getId(), named);
+		Long doesNotExist = -1L;
+		List<Long> ids = Lists.newArrayList(parentId, childId, doesNotExist);
+		// call under test
+		List<Node> nodes = nodeDao.getNodes(ids);
+		assertEquals(2, nodes.size());
+		Map<String, Node> byId = new HashMap<String, Node>();
+		for(Node node: nodes){
+			byId.put(node.getId(), node);
+		}
+		assertEquals(nodeDao.getNode(child.getId()), byId.get(child.getId()));
+		// call under test
+		Map<Long, NamedAnnotations> annos = nodeDao.getAnnotationsForCurrentVersions(ids);
+		assertEquals(2, annos.size());
+		assertEquals(nodeDao.getAnnotationsForVersion(child.getId(), nodeDao.getNode(child.getId()).getVersionNumber()), annos.get(childId));
+		assertEquals("foo", annos.get(childId).getAdditionalAnnotations().getSingleValue("aString"));
+		// call under test
+		Map<Long, List<EntityHeader>> paths = nodeDao.getEntityPaths(ids);
+		assertEquals(2, paths.size());
+		assertEquals(nodeDao.getEntityPath(child.getId()), paths.get(childId));
+		assertEquals(nodeDao.getEntityPath(parent.getId()), paths.get(parentId));
+		assertFalse(paths.containsKey(doesNotExist));
+	}
+	
+	@Test
+	public void testGetNodesEmpty(){
+		assertTrue(nodeDao.getNodes(new LinkedList<Long>()).isEmpty());
+		assertTrue(nodeDao.getAnnotationsForCurrentVersions(new LinkedList<Long>()).isEmpty());
+		assertTrue(nodeDao.getEntityPaths(new LinkedList<Long>()).isEmpty());
+	}
+	
+	@Test
+	public void testReencodeLegacyRevisionBlobs() throws Exception {
+		Node node = NodeTestUtils.createNew("legacy", creatorUserGroupId);
+		Reference ref = new Reference();
+		ref.setTargetId("syn123");
+		ref.setTargetVersionNumber(2L);
+		node.setReference(ref);
+		node = nodeDao.createNewNode(node);
+		Long nodeId = KeyFactory.stringToKey(node.getId());
+		toDelete.add(node.getId());
+		NamedAnnotations named = new NamedAnnotations();
+		named.getAdditionalAnnotations().addAnnotation("aString", "foo");
+		named.getAdditionalAnnotations().addAnnotation("aLong", 123L);
+		// write the blobs in the legacy format
+		jdbcTemplate.update("UPDATE JDOREVISION SET ANNOTATIONS = ?, REFERENCE = ? WHERE OWNER_NODE_ID = ?",
+				JDOSecondaryPropertyUtils.compressObject(named), JDOSecondaryPropertyUtils.compressObject(ref), nodeId);
+		// call under test
+		long last = nodeDao.reencodeLegacyRevisionBlobs(nodeId - 1, 1);
+		assertEquals(nodeId.longValue(), last);
+		byte[] annos = jdbcTemplate.queryForObject("SELECT ANNOTATIONS FROM JDOREVISION WHERE OWNER_NODE_ID = ?", byte[].class, nodeId);
+		assertTrue(RevisionBlobCodec.isBinary(annos));
+		byte[] reference = jdbcTemplate.queryForObject("SELECT REFERENCE FROM JDOREVISION WHERE OWNER_NODE_ID = ?", byte[].class, nodeId);
+		assertTrue(RevisionBlobCodec.isBinary(reference));
+		assertEquals(named.getAdditionalAnnotations().getStringAnnotations(), nodeDao.getAnnotations(node.getId()).getAdditionalAnnotations().getStringAnnotations());
+		assertEquals(named.getAdditionalAnnotations().getLongAnnotations(), nodeDao.getAnnotations(node.getId()).getAdditionalAnnotations().getLongAnnotations());
+		assertEquals(ref, nodeDao.getNodeReference(node.getId()));
+	}
+	
+	@Test
+	public void testReencodeLegacyRevisionBlobsNoMoreNodes() throws Exception {
+		// call under test
+		assertEquals(-1L, nodeDao.reencodeLegacyRevisionBlobs(Long.MAX_VALUE, 10));
+	}
 }
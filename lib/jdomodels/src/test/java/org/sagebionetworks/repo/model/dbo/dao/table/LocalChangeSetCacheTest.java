@@ -0,0 +1,84 @@
+package org.sagebionetworks.repo.model.dbo.dao.table;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalChangeSetCacheTest {
+
+	File directory;
+	LocalChangeSetCache cache;
+	String bucket;
+
+	@Before
+	public void before() throws Exception {
+		directory = Files.createTempDirectory("LocalChangeSetCacheTest").toFile();
+		cache = new LocalChangeSetCache(directory, 10);
+		bucket = "bucket";
+	}
+
+	@After
+	public void after() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void testMissThenHit() {
+		byte[] bytes = new byte[] { 1, 2, 3 };
+		assertNull(cache.get(bucket, "one"));
+		cache.put(bucket, "one", bytes);
+		// call under test
+		assertArrayEquals(bytes, cache.get(bucket, "one"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(3L, cache.getCurrentBytes());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testPutStreamThenOpen() throws Exception {
+		byte[] bytes = new byte[] { 1, 2, 3 };
+		assertNull(cache.open(bucket, "one"));
+		// call under test
+		assertTrue(cache.put(bucket, "one", new ByteArrayInputStream(bytes), DigestUtils.md5Hex(bytes)));
+		InputStream in = cache.open(bucket, "one");
+		try {
+			assertArrayEquals(bytes, IOUtils.toByteArray(in));
+		} finally {
+			in.close();
+		}
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testKeyIncludesBucket() {
+		cache.put(bucket, "one", new byte[] { 1 });
+		assertNull(cache.get("otherBucket", "one"));
+	}
+
+	@Test
+	public void testCorruptFile() throws Exception {
+		cache.put(bucket, "one", new byte[] { 1, 2, 3 });
+		File file = directory.listFiles()[0];
+		FileUtils.writeByteArrayToFile(file, new byte[] { 1, 2, 4 });
+		// call under test
+		assertNull(cache.get(bucket, "one"));
+		assertEquals(1, cache.getCorruptCount());
+		assertFalse(file.exists());
+	}
+}
@@ -11,6 +11,7 @@ import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -49,6 +50,7 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.collect.Maps;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -744,6 +746,38 @@ public class TableRowTruthDAOImplTest {
 		assertEquals(changeSet.writeToDto(), copy);
 	}
 	
+	@Test
+	public void testRowVersionIndex() throws IOException{
+		String tableId = "syn123";
+		String userId = "444";
+		ColumnModel aString = TableModelTestUtils.createColumn(202L, "aString", ColumnType.STRING);
+		List<ColumnModel> schema = Lists.newArrayList(aString);
+		assertNull(tableRowTruthDao.getRowVersionIndexStart(tableId));
+		// add two rows
+		SparseChangeSet changeSet = new SparseChangeSet(tableId, schema);
+		changeSet.addEmptyRow().setCellValue(aString.getId(), "foo");
+		changeSet.addEmptyRow().setCellValue(aString.getId(), "bar");
+		long versionOne = appendRowSetToTable(userId, tableId, schema, changeSet);
+		// update the second row
+		changeSet = new SparseChangeSet(tableId, schema);
+		SparseRow update = changeSet.addEmptyRow();
+		update.setRowId(1L);
+		update.setVersionNumber(versionOne);
+		update.setCellValue(aString.getId(), "updated");
+		long versionTwo = appendRowSetToTable(userId, tableId, schema, changeSet);
+		// All changes of a new table are indexed.
+		assertEquals(new Long(versionOne - 1), tableRowTruthDao.getRowVersionIndexStart(tableId));
+		// call under test
+		assertEquals(new Long(1L), tableRowTruthDao.findRowChangedAfterVersion(tableId, Sets.newHashSet(0L, 1L), versionOne));
+		assertNull(tableRowTruthDao.findRowChangedAfterVersion(tableId, Sets.newHashSet(0L), versionOne));
+		assertEquals(new Long(0L), tableRowTruthDao.findRowChangedAfterVersion(tableId, Sets.newHashSet(0L), versionOne - 1));
+		assertNull(tableRowTruthDao.findRowChangedAfterVersion(tableId, Sets.newHashSet(0L, 1L), versionTwo));
+		assertNull(tableRowTruthDao.findRowChangedAfterVersion(tableId, new HashSet<Long>(), -1L));
+		// the index is deleted with the table's data.
+		tableRowTruthDao.deleteAllRowDataForTable(tableId);
+		assertNull(tableRowTruthDao.getRowVersionIndexStart(tableId));
+	}
+	
 	@Test
 	public void testUpgradeToNewChangeSet() throws IOException{
 		// Create some test column models
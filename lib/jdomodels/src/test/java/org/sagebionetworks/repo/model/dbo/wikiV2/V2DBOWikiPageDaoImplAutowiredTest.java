@@ -64,6 +64,9 @@ public class V2DBOWikiPageDaoImplAutowiredTest {
 
 	@Autowired
 	private IdGenerator idGenerator;
+	
+	@Autowired
+	private WikiMarkdownCache markdownCache;
 
 	private List<WikiPageKey> toDelete;
 	private String creatorUserGroupId;
@@ -164,6 +167,30 @@ public class V2DBOWikiPageDaoImplAutowiredTest {
 		markdownTwo = (S3FileHandle) fileMetadataDao.get(markdownTwo.getId());
 	}
 	
+	/**
+	 * Markdown in the cache is read without going to S3.
+	 */
+	@Test
+	public void testGetMarkdownCached() throws Exception{
+		V2WikiPage page = new V2WikiPage();
+		String ownerId = "syn183";
+		ObjectType ownerType = ObjectType.ENTITY;
+		page.setTitle("Cached");
+		page.setCreatedBy(creatorUserGroupId);
+		page.setModifiedBy(creatorUserGroupId);
+		page.setMarkdownFileHandleId(markdownTwo.getId());
+		page.setAttachmentFileHandleIds(new LinkedList<String>());
+		V2WikiPage clone = wikiPageDao.create(page, new HashMap<String, FileHandle>(), ownerId, ownerType, new ArrayList<String>());
+		WikiPageKey key = WikiPageKeyHelper.createWikiPageKey(ownerId, ownerType, clone.getId());
+		toDelete.add(key);
+		// The markdown file handle does not exist in S3.
+		markdownCache.put(Long.parseLong(markdownTwo.getId()), "cached markdown");
+		long hits = markdownCache.getHitCount();
+		// call under test
+		assertEquals("cached markdown", wikiPageDao.getMarkdown(key, null));
+		assertEquals(hits + 1, markdownCache.getHitCount());
+	}
+	
 	/**
 	 * Create a new wiki page.
 	 * @throws NotFoundException 
@@ -0,0 +1,102 @@
+package org.sagebionetworks.repo.model.dbo.wikiV2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.util.LocalFileCache;
+
+public class WikiMarkdownCacheTest {
+
+	File directory;
+	WikiMarkdownCache cache;
+	long maxBytes;
+
+	@Before
+	public void before() throws Exception {
+		directory = Files.createTempDirectory("WikiMarkdownCacheTest").toFile();
+		// room for two entries of ten characters.
+		maxBytes = 2 * WikiMarkdownCache.estimateBytes("0123456789");
+		cache = new WikiMarkdownCache(maxBytes);
+	}
+
+	@After
+	public void after() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void testMissThenHit() {
+		assertNull(cache.get(1L));
+		cache.put(1L, "0123456789");
+		// call under test
+		assertEquals("0123456789", cache.get(1L));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.size());
+		assertEquals(WikiMarkdownCache.estimateBytes("0123456789"), cache.getCurrentBytes());
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() {
+		cache.put(1L, "0123456789");
+		cache.put(2L, "0123456789");
+		// one is now the most recently used.
+		cache.get(1L);
+		// call under test
+		cache.put(3L, "0123456789");
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals("0123456789", cache.get(1L));
+		assertNull(cache.get(2L));
+		assertEquals("0123456789", cache.get(3L));
+		assertEquals(maxBytes, cache.getCurrentBytes());
+	}
+
+	@Test
+	public void testTooLarge() {
+		// call under test
+		cache.put(1L, "012345678901234567890123456789012345678901234567890123456789");
+		assertEquals(0, cache.size());
+		assertEquals(0L, cache.getCurrentBytes());
+		assertNull(cache.get(1L));
+	}
+
+	@Test
+	public void testReplace() {
+		cache.put(1L, "0123456789");
+		// call under test
+		cache.put(1L, "01234");
+		assertEquals(1, cache.size());
+		assertEquals(WikiMarkdownCache.estimateBytes("01234"), cache.getCurrentBytes());
+	}
+
+	@Test
+	public void testDiskCache() throws Exception {
+		cache.setDiskCache(new LocalFileCache(directory, 1000));
+		cache.put(1L, "\u00e9t\u00e9");
+		cache.put(2L, "0123456789");
+		cache.put(3L, "0123456789");
+		// one was evicted from memory but is still on disk.
+		// call under test
+		assertEquals("\u00e9t\u00e9", cache.get(1L));
+		assertEquals(1, cache.getDiskHitCount());
+		assertEquals(0, cache.getMissCount());
+		// it is back in memory.
+		assertEquals("\u00e9t\u00e9", cache.get(1L));
+		// disk hits are included in the hits.
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getDiskHitCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPutNullMarkdown() {
+		cache.put(1L, null);
+	}
+}
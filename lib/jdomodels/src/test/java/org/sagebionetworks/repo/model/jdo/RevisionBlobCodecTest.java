@@ -0,0 +1,199 @@
+package org.sagebionetworks.repo.model.jdo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Test;
+import org.sagebionetworks.repo.model.AnnotationNameSpace;
+import org.sagebionetworks.repo.model.Annotations;
+import org.sagebionetworks.repo.model.NamedAnnotations;
+import org.sagebionetworks.repo.model.Reference;
+import org.sagebionetworks.repo.model.util.RandomAnnotationsUtil;
+
+public class RevisionBlobCodecTest {
+
+	@Test
+	public void testAnnotationsRoundTrip() throws IOException {
+		NamedAnnotations named = new NamedAnnotations();
+		named.setId("syn123");
+		named.setEtag("etag");
+		named.setCreationDate(new Date(123L));
+		named.setCreatedBy(456L);
+		Annotations additional = named.getAdditionalAnnotations();
+		additional.addAnnotation("aString", "one");
+		additional.addAnnotation("aString", "\u00e9t\u00e9");
+		additional.addAnnotation("aLong", 324L);
+		additional.addAnnotation("aDouble", 32.4);
+		additional.addAnnotation("aDate", new Date(999L));
+		additional.addAnnotation("aBlob", new byte[] { 1, 2, 3 });
+		named.getPrimaryAnnotations().addAnnotation("primary", "value");
+		byte[] bytes = RevisionBlobCodec.encodeAnnotations(named);
+		assertTrue(RevisionBlobCodec.isBinary(bytes));
+		// call under test
+		NamedAnnotations clone = RevisionBlobCodec.decodeAnnotations(bytes, true);
+		assertEquals(named, clone);
+		assertEquals(named.getCreatedBy(), clone.getCreatedBy());
+		assertArrayEquals(new byte[] { 1, 2, 3 }, clone.getAdditionalAnnotations().getBlobAnnotations().get("aBlob").get(0));
+	}
+
+	@Test
+	public void testAnnotationsRoundTripLarge() throws IOException {
+		NamedAnnotations named = new NamedAnnotations();
+		named.put(AnnotationNameSpace.ADDITIONAL, RandomAnnotationsUtil.generateRandom(123L, 20));
+		byte[] bytes = RevisionBlobCodec.encodeAnnotations(named);
+		// large payloads are deflated.
+		assertEquals(RevisionBlobCodec.FLAG_DEFLATED, bytes[4]);
+		// call under test
+		NamedAnnotations clone = RevisionBlobCodec.decodeAnnotations(bytes, true);
+		assertEquals(named, clone);
+	}
+
+	@Test
+	public void testAnnotationsSmallerThanLegacy() throws IOException {
+		NamedAnnotations named = new NamedAnnotations();
+		named.put(AnnotationNameSpace.ADDITIONAL, RandomAnnotationsUtil.generateRandom(789L, 10));
+		byte[] legacy = JDOSecondaryPropertyUtils.compressAnnotations(named, false);
+		// call under test
+		byte[] binary = JDOSecondaryPropertyUtils.compressAnnotations(named, true);
+		assertEquals(named, JDOSecondaryPropertyUtils.decompressedAnnotations(binary));
+		assertTrue(binary.length < legacy.length);
+	}
+
+	@Test
+	public void testAnnotationsWithoutBlobs() throws IOException {
+		NamedAnnotations named = new NamedAnnotations();
+		named.put(AnnotationNameSpace.ADDITIONAL, RandomAnnotationsUtil.generateRandom(456L, 5));
+		byte[] bytes = RevisionBlobCodec.encodeAnnotations(named);
+		// call under test
+		NamedAnnotations clone = RevisionBlobCodec.decodeAnnotations(bytes, false);
+		Annotations expected = named.getAdditionalAnnotations();
+		Annotations annos = clone.getAdditionalAnnotations();
+		assertTrue(annos.getBlobAnnotations().isEmpty());
+		assertEquals(expected.getStringAnnotations(), annos.getStringAnnotations());
+		assertEquals(expected.getLongAnnotations(), annos.getLongAnnotations());
+		assertEquals(expected.getDoubleAnnotations(), annos.getDoubleAnnotations());
+		assertEquals(expected.getDateAnnotations(), annos.getDateAnnotations());
+	}
+
+	@Test
+	public void testNullValues() throws IOException {
+		NamedAnnotations named = new NamedAnnotations();
+		Annotations additional = named.getAdditionalAnnotations();
+		additional.getStringAnnotations().put("nullList", null);
+		additional.getStringAnnotations().put("nullValue", Arrays.asList("a", null));
+		additional.getLongAnnotations().put("nullLong", Arrays.asList((Long) null));
+		additional.getDoubleAnnotations().put("nullDouble", Arrays.asList((Double) null));
+		additional.getDateAnnotations().put("nullDate", Arrays.asList((Date) null));
+		additional.getBlobAnnotations().put("nullBlob", Arrays.asList((byte[]) null));
+		byte[] bytes = RevisionBlobCodec.encodeAnnotations(named);
+		// call under test
+		Annotations clone = RevisionBlobCodec.decodeAnnotations(bytes, true).getAdditionalAnnotations();
+		assertNull(clone.getStringAnnotations().get("nullList"));
+		assertTrue(clone.getStringAnnotations().containsKey("nullList"));
+		assertEquals(Arrays.asList("a", null), clone.getStringAnnotations().get("nullValue"));
+		assertEquals(Arrays.asList((Long) null), clone.getLongAnnotations().get("nullLong"));
+		assertEquals(Arrays.asList((Double) null), clone.getDoubleAnnotations().get("nullDouble"));
+		assertEquals(Arrays.asList((Date) null), clone.getDateAnnotations().get("nullDate"));
+		assertNull(clone.getBlobAnnotations().get("nullBlob").get(0));
+	}
+
+	@Test
+	public void testReferenceRoundTrip() throws IOException {
+		Reference ref = new Reference();
+		ref.setTargetId("syn123");
+		ref.setTargetVersionNumber(3L);
+		byte[] bytes = RevisionBlobCodec.encodeReference(ref);
+		assertTrue(RevisionBlobCodec.isBinary(bytes));
+		// call under test
+		assertEquals(ref, RevisionBlobCodec.decodeReference(bytes));
+	}
+
+	@Test
+	public void testReferenceSmallerThanLegacy() throws IOException {
+		Reference ref = new Reference();
+		ref.setTargetId("syn123");
+		ref.setTargetVersionNumber(3L);
+		byte[] legacy = JDOSecondaryPropertyUtils.compressReference(ref, false);
+		// call under test
+		byte[] binary = JDOSecondaryPropertyUtils.compressReference(ref, true);
+		assertEquals(ref, JDOSecondaryPropertyUtils.decompressedReference(binary));
+		assertTrue(binary.length < legacy.length);
+	}
+
+	@Test
+	public void testReferenceNullVersion() throws IOException {
+		Reference ref = new Reference();
+		ref.setTargetId("syn123");
+		// call under test
+		assertEquals(ref, RevisionBlobCodec.decodeReference(RevisionBlobCodec.encodeReference(ref)));
+	}
+
+	@Test
+	public void testIsBinaryLegacy() throws IOException {
+		NamedAnnotations named = new NamedAnnotations();
+		named.getAdditionalAnnotations().addAnnotation("key", "value");
+		// call under test
+		assertFalse(RevisionBlobCodec.isBinary(JDOSecondaryPropertyUtils.compressObject(named)));
+		assertFalse(RevisionBlobCodec.isBinary(null));
+		assertFalse(RevisionBlobCodec.isBinary(new byte[0]));
+	}
+
+	@Test
+	public void testCompressLegacyByDefault() throws IOException {
+		NamedAnnotations named = new NamedAnnotations();
+		named.getAdditionalAnnotations().addAnnotation("key", "value");
+		Reference ref = new Reference();
+		ref.setTargetId("syn123");
+		// the binary format is disabled in the default stack configuration.
+		assertFalse(RevisionBlobCodec.isBinary(JDOSecondaryPropertyUtils.compressAnnotations(named)));
+		assertFalse(RevisionBlobCodec.isBinary(JDOSecondaryPropertyUtils.compressReference(ref)));
+		assertTrue(RevisionBlobCodec.isBinary(JDOSecondaryPropertyUtils.compressAnnotations(named, true)));
+		assertTrue(RevisionBlobCodec.isBinary(JDOSecondaryPropertyUtils.compressReference(ref, true)));
+	}
+
+	@Test
+	public void testDecompressLegacyAnnotations() throws IOException {
+		NamedAnnotations named = new NamedAnnotations();
+		named.getAdditionalAnnotations().addAnnotation("key", "value");
+		named.getAdditionalAnnotations().addAnnotation("blob", new byte[] { 4, 5 });
+		byte[] legacy = JDOSecondaryPropertyUtils.compressObject(named);
+		// call under test
+		assertEquals(named, JDOSecondaryPropertyUtils.decompressedAnnotations(legacy));
+		assertEquals(named, JDOSecondaryPropertyUtils.decompressedAnnotations(legacy, false));
+	}
+
+	@Test
+	public void testDecompressLegacyReference() throws IOException {
+		Reference ref = new Reference();
+		ref.setTargetId("syn123");
+		ref.setTargetVersionNumber(3L);
+		byte[] legacy = JDOSecondaryPropertyUtils.compressObject(ref);
+		// call under test
+		assertEquals(ref, JDOSecondaryPropertyUtils.decompressedReference(legacy));
+	}
+
+	@Test(expected = IOException.class)
+	public void testWrongType() throws IOException {
+		Reference ref = new Reference();
+		ref.setTargetId("syn123");
+		// call under test
+		RevisionBlobCodec.decodeAnnotations(RevisionBlobCodec.encodeReference(ref), true);
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnsupportedVersion() throws IOException {
+		Reference ref = new Reference();
+		ref.setTargetId("syn123");
+		byte[] bytes = RevisionBlobCodec.encodeReference(ref);
+		bytes[2] = (byte) (RevisionBlobCodec.FORMAT_VERSION + 1);
+		// call under test
+		RevisionBlobCodec.decodeReference(bytes);
+	}
+}
@@ -1,8 +1,12 @@
 package org.sagebionetworks.audit.dao;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.util.List;
 import java.util.zip.GZIPOutputStream;
@@ -15,6 +19,9 @@ import com.amazonaws.services.s3.model.ObjectMetadata;
 /**
  * A writer that writes csv.gz object files to S3.
  * 
+ * The CSV is compressed as it is written to a temporary file which is then
+ * streamed to S3, so the compressed batch is never held in memory.
+ * 
  * @param <T>
  *            For object of this type provide, a row will be written to a CSV
  *            according to the provided header mapping.
@@ -54,25 +61,51 @@ public class GzipCsvS3ObjectWriter<T> {
 	 */
 	public void write(List<T> batch, String bucket, String key)
 			throws IOException {
-		// Write the data to a gzip
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		GZIPOutputStream zipOut = new GZIPOutputStream(out);
-		OutputStreamWriter osw = new OutputStreamWriter(zipOut);
-		ObjectCSVWriter<T> writer = new ObjectCSVWriter<T>(osw, objectClass,
-				headers);
-		// Write all of the data
-		for (T ar : batch) {
-			writer.append(ar);
+		File temp = File.createTempFile("GzipCsvS3ObjectWriter", ".csv.gz");
+		try {
+			// Write the data to a gzip
+			writeGzipCsv(batch, new FileOutputStream(temp));
+			ObjectMetadata om = new ObjectMetadata();
+			om.setContentType("application/x-gzip");
+			om.setContentEncoding("gzip");
+			om.setContentDisposition("attachment; filename=" + key + ";");
+			om.setContentLength(temp.length());
+			InputStream in = new FileInputStream(temp);
+			try {
+				awsS3Client.putObject(bucket, key, in, om);
+			} finally {
+				in.close();
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Write a batch of objects as a gzip CSV to the given stream. The stream
+	 * will be closed.
+	 * 
+	 * @param batch
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeGzipCsv(List<T> batch, OutputStream out) throws IOException {
+		try {
+			GZIPOutputStream zipOut = new GZIPOutputStream(new BufferedOutputStream(out));
+			OutputStreamWriter osw = new OutputStreamWriter(zipOut);
+			ObjectCSVWriter<T> writer = new ObjectCSVWriter<T>(osw, objectClass,
+					headers);
+			try {
+				// Write all of the data
+				for (T ar : batch) {
+					writer.append(ar);
+				}
+			} finally {
+				writer.close();
+			}
+		} finally {
+			// The writer closes the stream, but not if the gzip header could not be written.
+			out.close();
 		}
-		writer.close();
-		// Create an input stream
-		byte[] bytes = out.toByteArray();
-		ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-		ObjectMetadata om = new ObjectMetadata();
-		om.setContentType("application/x-gzip");
-		om.setContentEncoding("gzip");
-		om.setContentDisposition("attachment; filename=" + key + ";");
-		om.setContentLength(bytes.length);
-		awsS3Client.putObject(bucket, key, in, om);
 	}
 }
@@ -1,26 +1,20 @@
 package org.sagebionetworks.audit.dao;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import org.sagebionetworks.aws.utils.s3.KeyGeneratorUtil;
 import org.sagebionetworks.csv.utils.ObjectCSVReader;
-import org.sagebionetworks.csv.utils.ObjectCSVWriter;
 
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
-import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 
@@ -34,6 +28,7 @@ public class ObjectCSVDAO<T> {
 	private Class<T> objectClass;
 	private String[] headers;
 	String stackInstancePrefixString;
+	private GzipCsvS3ObjectWriter<T> writer;
 
 	public ObjectCSVDAO(AmazonS3Client s3Client, int stackInstanceNumber, 
 			String bucketName, Class<T> objectClass, String[] headers) {
@@ -43,6 +38,7 @@ public class ObjectCSVDAO<T> {
 		this.objectClass = objectClass;
 		this.headers = headers;
 		this.stackInstancePrefixString = KeyGeneratorUtil.getInstancePrefix(stackInstanceNumber);
+		this.writer = new GzipCsvS3ObjectWriter<T>(s3Client, objectClass, headers);
 	}
 
 	/**
@@ -51,28 +47,10 @@ public class ObjectCSVDAO<T> {
 	 * @param rolling  Whether the batch is saved as "rolling".
 	 */
 	public String write(List<T> batch, long timestamp, boolean rolling) throws IOException {
-		// Write the data to a gzip
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		GZIPOutputStream zipOut = new GZIPOutputStream(out);
-		OutputStreamWriter osw = new OutputStreamWriter(zipOut);
-		ObjectCSVWriter<T> writer = new ObjectCSVWriter<T>(osw, objectClass, headers);
-		// Write all of the data
-		for (T ar : batch) {
-			writer.append(ar);
-		}
-		writer.close();
-		// Create an input stream
-		byte[] bytes = out.toByteArray();
-		ByteArrayInputStream in = new ByteArrayInputStream(bytes);
 		// Build a new key
 		String key = KeyGeneratorUtil.createNewKey(stackInstanceNumber,
 				timestamp, rolling);
-		ObjectMetadata om = new ObjectMetadata();
-		om.setContentType("application/x-gzip");
-		om.setContentEncoding("gzip");
-		om.setContentDisposition("attachment; filename=" + key + ";");
-		om.setContentLength(bytes.length);
-		s3Client.putObject(bucketName, key, in, om);
+		writer.write(batch, bucketName, key);
 		return key;
 	}
 
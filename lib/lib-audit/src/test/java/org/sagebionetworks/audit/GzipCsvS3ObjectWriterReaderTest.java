@@ -2,21 +2,28 @@ package org.sagebionetworks.audit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.verify;
 
 import java.io.InputStream;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sagebionetworks.audit.dao.GzipCsvS3ObjectReader;
 import org.sagebionetworks.audit.dao.GzipCsvS3ObjectWriter;
 import org.sagebionetworks.csv.utils.ExampleObject;
 
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectResult;
 
 public class GzipCsvS3ObjectWriterReaderTest {
 
@@ -47,6 +54,16 @@ public class GzipCsvS3ObjectWriterReaderTest {
 		// Build up some sample data
 		List<ExampleObject> data = ExampleObject.buildExampleObjectList(12);
 		String key = "akey";
+		// The stream is closed once the upload completes so read it during the upload.
+		final List<List<ExampleObject>> uploaded = new LinkedList<List<ExampleObject>>();
+		doAnswer(new Answer<PutObjectResult>() {
+
+			@Override
+			public PutObjectResult answer(InvocationOnMock invocation) throws Throwable {
+				uploaded.add(reader.readFromStream((InputStream) invocation.getArguments()[2]));
+				return null;
+			}
+		}).when(mockS3Client).putObject(anyString(), anyString(), any(InputStream.class), any(ObjectMetadata.class));
 		// call under test.
 		writer.write(data, bucketName, key);
 		// capture results
@@ -58,7 +75,8 @@ public class GzipCsvS3ObjectWriterReaderTest {
 		assertEquals(bucketName, bucketCapture.getValue());
 		assertEquals(key, keyCapture.getValue());
 		// Can we read the results?
-		List<ExampleObject> results = reader.readFromStream(inCapture.getValue());
+		assertEquals(1, uploaded.size());
+		List<ExampleObject> results = uploaded.get(0);
 		assertEquals(data, results);
 		assertEquals("attachment; filename="+key+";", metaCapture.getValue().getContentDisposition());
 		assertEquals("application/x-gzip", metaCapture.getValue().getContentType());
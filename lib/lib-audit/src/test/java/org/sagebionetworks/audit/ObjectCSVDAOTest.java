@@ -3,10 +3,13 @@ package org.sagebionetworks.audit;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.InputStream;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
@@ -14,6 +17,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sagebionetworks.audit.dao.ObjectCSVDAO;
 import org.sagebionetworks.csv.utils.ExampleObject;
 
@@ -21,6 +26,7 @@ import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectResult;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 public class ObjectCSVDAOTest {
@@ -53,6 +59,16 @@ public class ObjectCSVDAOTest {
 
 		// Build up some sample data
 		List<ExampleObject> data = ExampleObject.buildExampleObjectList(12);
+		// The stream is closed once the upload completes so read it during the upload.
+		final List<List<ExampleObject>> uploaded = new LinkedList<List<ExampleObject>>();
+		doAnswer(new Answer<PutObjectResult>() {
+
+			@Override
+			public PutObjectResult answer(InvocationOnMock invocation) throws Throwable {
+				uploaded.add(dao.readFromStream((InputStream) invocation.getArguments()[2]));
+				return null;
+			}
+		}).when(mockS3Client).putObject(anyString(), anyString(), any(InputStream.class), any(ObjectMetadata.class));
 		// call under test.
 		String key = dao.write(data, timestamp, rolling);
 		// capture results
@@ -64,7 +80,8 @@ public class ObjectCSVDAOTest {
 		assertEquals(bucketName, bucketCapture.getValue());
 		assertEquals(key, keyCapture.getValue());
 		// Can we read the results?
-		List<ExampleObject> results = dao.readFromStream(inCapture.getValue());
+		assertEquals(1, uploaded.size());
+		List<ExampleObject> results = uploaded.get(0);
 		assertEquals(data, results);
 		assertEquals("attachment; filename="+key+";", metaCapture.getValue().getContentDisposition());
 		assertEquals("application/x-gzip", metaCapture.getValue().getContentType());
@@ -2,6 +2,7 @@ package org.sagebionetworks.search;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.http.client.ClientProtocolException;
@@ -108,6 +109,22 @@ public interface SearchDao {
 	 */
 	boolean doesDocumentExist(String id, String etag) throws ClientProtocolException, IOException,
 			ServiceUnavailableException, CloudSearchClientException;
+
+	 /**
+	 * Which of the given documents already exist with the given etag? This
+	 * checks a batch of documents with a few queries rather than one query per
+	 * document.
+	 * 
+	 * @param idToEtag
+	 *            Maps each document id to its expected etag.
+	 * @return The ids of the documents that exist with the given etag.
+	 * @throws IOException
+	 * @throws ClientProtocolException
+	 * @throws ServiceUnavailableException
+	 * @throws CloudSearchClientException
+	 */
+	Set<String> getIdsOfDocumentsThatExist(Map<String, String> idToEtag) throws ClientProtocolException, IOException,
+			ServiceUnavailableException, CloudSearchClientException;
 	 
 	 /**
 	 * List all documents in the search index.
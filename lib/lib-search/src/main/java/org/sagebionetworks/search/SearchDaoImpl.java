@@ -4,9 +4,11 @@ import static org.sagebionetworks.search.SearchConstants.FIELD_ETAG;
 import static org.sagebionetworks.search.SearchConstants.FIELD_ID;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
@@ -39,6 +41,14 @@ import com.amazonaws.services.cloudsearchv2.model.DomainStatus;
 public class SearchDaoImpl implements SearchDao {
 
 	private static final String QUERY_BY_ID_AND_ETAG = "q.parser=structured&q=(and+"+FIELD_ID+":'%1$s'+"+FIELD_ETAG+":'%2$s')";
+
+	private static final String ID_AND_ETAG_TERM = "+(and+"+FIELD_ID+":'%1$s'+"+FIELD_ETAG+":'%2$s')";
+
+	/**
+	 * The maximum number of documents checked by a single query. Bounds the
+	 * length of the query string.
+	 */
+	public static final int MAX_DOCUMENTS_PER_EXIST_QUERY = 50;
 	
 	private static final String QUERY_LIST_ALL_DOCUMENTS_ONE_PAGE = "q.parser=structured&q="+FIELD_ID+":'*'&size=%1$s&start=%2$s";
 
@@ -247,6 +257,39 @@ public class SearchDaoImpl implements SearchDao {
 		return results.getHits().size() > 0;
 	}
 
+	@Override
+	public Set<String> getIdsOfDocumentsThatExist(Map<String, String> idToEtag) throws ClientProtocolException, IOException,
+			ServiceUnavailableException, CloudSearchClientException {
+		validateSearchEnabled();
+		Set<String> existing = new HashSet<String>();
+		List<String> ids = new ArrayList<String>(idToEtag.keySet());
+		for (int start = 0; start < ids.size(); start += MAX_DOCUMENTS_PER_EXIST_QUERY) {
+			List<String> page = ids.subList(start, Math.min(ids.size(), start + MAX_DOCUMENTS_PER_EXIST_QUERY));
+			String query = createIdsAndEtagsQuery(page, idToEtag);
+			SearchResults results = executeSearch(query);
+			for (Hit hit : results.getHits()) {
+				existing.add(hit.getId());
+			}
+		}
+		return existing;
+	}
+
+	/**
+	 * Create a query that matches any of the given documents with its etag.
+	 * 
+	 * @param ids
+	 * @param idToEtag
+	 * @return
+	 */
+	static String createIdsAndEtagsQuery(List<String> ids, Map<String, String> idToEtag) {
+		StringBuilder query = new StringBuilder("q.parser=structured&q=(or");
+		for (String id : ids) {
+			query.append(String.format(ID_AND_ETAG_TERM, id, idToEtag.get(id)));
+		}
+		query.append(")&size=").append(ids.size());
+		return query.toString();
+	}
+
 	@Override
 	public SearchResults listSearchDocuments(long limit, long offset) throws ClientProtocolException, IOException,
 			ServiceUnavailableException, CloudSearchClientException {
@@ -2,6 +2,10 @@ package org.sagebionetworks.search;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.junit.Test;
 
 import static org.mockito.Mockito.when;
@@ -43,6 +47,16 @@ public class SearchDaoImplTest {
 		assertNotNull("A version was not set.",doc.getVersion());
 	}
 	
+	@Test
+	public void testCreateIdsAndEtagsQuery(){
+		Map<String, String> idToEtag = new LinkedHashMap<String, String>();
+		idToEtag.put("syn1", "etag1");
+		idToEtag.put("syn2", "etag2");
+		// call under test
+		String query = SearchDaoImpl.createIdsAndEtagsQuery(Arrays.asList("syn1", "syn2"), idToEtag);
+		assertEquals("q.parser=structured&q=(or+(and+id:'syn1'+etag:'etag1')+(and+id:'syn2'+etag:'etag2'))&size=2", query);
+	}
+	
 	@Test(expected=ServiceUnavailableException.class)
 	public void testInitializePostInitFalse() throws Exception {
 		mockCloudSearchClient = mock(AmazonCloudSearchClient.class);
@@ -12,13 +12,25 @@ import javax.sql.DataSource;
 public interface ConnectionFactory {
 
 	/**
-	 * Get a connection used for interacting with a given table.
+	 * Get a connection used for reading the index of a given table. This is
+	 * the database that owns the table once the owner has built the index.
+	 * Until then, reads are routed to the database that still holds the
+	 * existing copy of the index (the previous owner).
 	 * 
 	 * @param tableId
 	 * @return
 	 */
 	TableIndexDAO getConnection(String tableId);
 	
+	/**
+	 * Get a connection to the database that owns the given table. Indices are
+	 * always built on the owner.
+	 * 
+	 * @param tableId
+	 * @return
+	 */
+	TableIndexDAO getOwnerConnection(String tableId);
+	
 	/**
 	 * Drop all tables in every database connections.
 	 * 
@@ -44,4 +56,18 @@ public interface ConnectionFactory {
 	 */
 	DataSource getFirstDataSource();
 	
+	/**
+	 * Find all table indices that exist on a database that does not own the
+	 * table. A table's index becomes misplaced when databases are added to or
+	 * removed from the cluster. The owning database will rebuild the index
+	 * from the truth, after which the misplaced copy can be dropped.
+	 * <p>
+	 * Returns an empty list when the databases currently in the cluster do not
+	 * match the databases this machine routes to, as this machine's view of
+	 * the owners is out-of-date.
+	 * 
+	 * @return
+	 */
+	List<MisplacedTableIndex> getMisplacedTableIndices();
+	
 }
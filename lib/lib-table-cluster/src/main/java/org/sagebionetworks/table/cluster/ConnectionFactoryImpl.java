@@ -1,8 +1,11 @@
 package org.sagebionetworks.table.cluster;
 
 import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
@@ -10,14 +13,25 @@ import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.util.BoundedLruCache;
+import org.sagebionetworks.util.DefaultClock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import com.amazonaws.services.rds.AmazonRDSClient;
 
 /**
- * Note: For the first pass at this feature we are only using one database.
- * This will be extended in the future.
+ * Routes each table to one of the databases in the table cluster. Tables are
+ * assigned to databases with a {@link ConsistentHashRing} so adding a database
+ * only moves a fraction of the existing tables. Each database has its own
+ * connection pool.
+ * <p>
+ * Indices are built on the owner, but reads are only routed to the owner once
+ * it has built the index. Until then reads go to whichever database still holds
+ * a copy, so a table stays readable while a new owner catches up, and when
+ * machines disagree about the owners during a deployment. Once a read is
+ * routed to the owner the owner is remembered for a short time, so the status
+ * of the index is not looked up on every read.
  * 
  * @author jmhill
  *
@@ -29,25 +43,91 @@ public class ConnectionFactoryImpl implements ConnectionFactory {
 	private static final String USE_DATABASE = "USE ";
 	private static final String CREATE_DATABASE = "CREATE DATABASE ";
 	private static final String DROP_DATABASE = "DROP DATABASE ";
+	/**
+	 * The maximum number of tables with a remembered owner.
+	 */
+	public static final long MAX_CACHED_OWNERS = 10000L;
+	/**
+	 * How long a table is routed to its owner before the status of the index
+	 * is checked again.
+	 */
+	public static final long CACHED_OWNER_TTL_MS = 60 * 1000L;
 	
 	@Autowired
 	AmazonRDSClient awsRDSClient;
 	@Autowired
 	InstanceDiscovery instanceDiscovery;
 	/**
-	 * Note: This field will be remove when we actually have more than one connection.
-	 * It is a simple way to get the functionality up and running without adding full
-	 * support for a load balancing.
+	 * One connection pool for each database in the cluster in the order the
+	 * databases were discovered.
 	 */
-	private BasicDataSource singleConnectionPool;
+	private Map<InstanceInfo, BasicDataSource> connectionPools = new LinkedHashMap<InstanceInfo, BasicDataSource>();
+	/**
+	 * Assigns each table to a database.
+	 */
+	private ConsistentHashRing ring;
+	/**
+	 * The tables whose reads are routed to their owner.
+	 */
+	private BoundedLruCache<String, InstanceInfo> cachedOwners = new BoundedLruCache<String, InstanceInfo>(
+			MAX_CACHED_OWNERS, CACHED_OWNER_TTL_MS, BoundedLruCache.<String, InstanceInfo> countSizer(),
+			new DefaultClock());
 
 	@Autowired
 	private StackConfiguration stackConfig;
 	
 	@Override
 	public TableIndexDAO getConnection(String tableId) {
-		// Create a new DAO for this call.
-		return new TableIndexDAOImpl(singleConnectionPool);	
+		validateEnable();
+		InstanceInfo owner = ring.getInstanceForTable(tableId);
+		TableIndexDAO ownerDao = createDAO(owner);
+		if(connectionPools.size() < 2 || owner.equals(cachedOwners.get(tableId))){
+			return ownerDao;
+		}
+		if(isIndexBuilt(ownerDao, tableId)){
+			cachedOwners.put(tableId, owner);
+			return ownerDao;
+		}
+		// The owner has not built this index yet so use any existing copy.
+		for(InstanceInfo instance: connectionPools.keySet()){
+			if(!instance.equals(owner)){
+				TableIndexDAO dao = createDAO(instance);
+				if(isIndexBuilt(dao, tableId)){
+					return dao;
+				}
+			}
+		}
+		// This is a new table so it is only ever built on the owner.
+		cachedOwners.put(tableId, owner);
+		return ownerDao;
+	}
+	
+	@Override
+	public TableIndexDAO getOwnerConnection(String tableId) {
+		validateEnable();
+		return createDAO(ring.getInstanceForTable(tableId));
+	}
+	
+	/**
+	 * Has the given database built the index of the given table?
+	 * 
+	 * @param dao
+	 * @param tableId
+	 * @return
+	 */
+	static boolean isIndexBuilt(TableIndexDAO dao, String tableId){
+		Long version = dao.getMaxCurrentCompleteVersionForTable(tableId);
+		return version != null && version >= 0L;
+	}
+	
+	/**
+	 * Create a new DAO for the given database.
+	 * 
+	 * @param instance
+	 * @return
+	 */
+	TableIndexDAO createDAO(InstanceInfo instance){
+		return new TableIndexDAOImpl(connectionPools.get(instance));
 	}
 	
 	/**
@@ -59,14 +139,14 @@ public class ConnectionFactoryImpl implements ConnectionFactory {
 			// The features is enabled so we must find all database instances that we can use
 			List<InstanceInfo> instances = instanceDiscovery.discoverAllInstances();
 			if(instances == null || instances.isEmpty()) throw new IllegalArgumentException("Did not find at least one database instances.");
-			
-			// This will be improved in the future.  For now we just use the first database we find
-			InstanceInfo instance = instances.get(0);
-			// Use the one instance to create a single connection pool
-			singleConnectionPool = InstanceUtils.createNewDatabaseConnectionPool(stackConfig, instance);
-			// ensure the index has the correct tables
-			TableIndexDAOImpl dao = new TableIndexDAOImpl(singleConnectionPool);
-			dao.createEntityReplicationTablesIfDoesNotExist();
+			for(InstanceInfo instance: instances){
+				BasicDataSource pool = InstanceUtils.createNewDatabaseConnectionPool(stackConfig, instance);
+				connectionPools.put(instance, pool);
+				// ensure each index has the correct tables
+				TableIndexDAOImpl dao = new TableIndexDAOImpl(pool);
+				dao.createEntityReplicationTablesIfDoesNotExist();
+			}
+			ring = new ConsistentHashRing(connectionPools.keySet());
 		}else{
 			log.debug("The table feature is disabled and cannot be used");
 		}
@@ -87,43 +167,67 @@ public class ConnectionFactoryImpl implements ConnectionFactory {
 	 * @throws SQLException 
 	 */
 	public void close() throws SQLException{
-		if(singleConnectionPool != null){
-			log.debug("Closing connection pool to: "+singleConnectionPool.getUrl());
-			singleConnectionPool.close();
+		for(BasicDataSource pool: connectionPools.values()){
+			log.debug("Closing connection pool to: "+pool.getUrl());
+			pool.close();
 		}
 	}
 
 	@Override
 	public void dropAllTablesForAllConnections() {
-		// For now we only have one database
-		List<InstanceInfo> instances = instanceDiscovery.discoverAllInstances();
-		if(this.singleConnectionPool != null && instances != null && !instances.isEmpty()){
-			String schema = instances.get(0).getSchema();
-			JdbcTemplate template = new JdbcTemplate(this.singleConnectionPool);
+		for(Map.Entry<InstanceInfo, BasicDataSource> entry: connectionPools.entrySet()){
+			String schema = entry.getKey().getSchema();
+			JdbcTemplate template = new JdbcTemplate(entry.getValue());
 			template.update(DROP_DATABASE+schema);
 			template.update(CREATE_DATABASE+schema);
 			template.update(USE_DATABASE+schema);
+			// ensure the index has the correct tables
+			TableIndexDAOImpl dao = new TableIndexDAOImpl(entry.getValue());
+			dao.createEntityReplicationTablesIfDoesNotExist();
 		}
-		// ensure the index has the correct tables
-		TableIndexDAOImpl dao = new TableIndexDAOImpl(singleConnectionPool);
-		dao.createEntityReplicationTablesIfDoesNotExist();
 	}
 
 	@Override
 	public List<TableIndexDAO> getAllConnections() {
 		List<TableIndexDAO> results = new LinkedList<>();
-		results.add(new TableIndexDAOImpl(singleConnectionPool));
+		for(BasicDataSource pool: connectionPools.values()){
+			results.add(new TableIndexDAOImpl(pool));
+		}
 		return results;
 	}
 
 	@Override
 	public TableIndexDAO getFirstConnection() {
-		return new TableIndexDAOImpl(singleConnectionPool);
+		return new TableIndexDAOImpl(getFirstDataSource());
 	}
 
 	@Override
 	public DataSource getFirstDataSource() {
-		return singleConnectionPool;
+		if(connectionPools.isEmpty()){
+			return null;
+		}
+		return connectionPools.values().iterator().next();
+	}
+
+	@Override
+	public List<MisplacedTableIndex> getMisplacedTableIndices() {
+		validateEnable();
+		List<MisplacedTableIndex> results = new LinkedList<>();
+		List<InstanceInfo> discovered = instanceDiscovery.discoverAllInstances();
+		if(discovered == null || !new HashSet<InstanceInfo>(discovered).equals(connectionPools.keySet())){
+			// Another machine with the current view of the cluster will move the indices.
+			log.info("The databases in the table cluster have changed since this machine started");
+			return results;
+		}
+		for(InstanceInfo instance: connectionPools.keySet()){
+			TableIndexDAO dao = createDAO(instance);
+			for(String tableId: dao.getAllTableIdsInIndex()){
+				if(!instance.equals(ring.getInstanceForTable(tableId))){
+					results.add(new MisplacedTableIndex(tableId, dao));
+				}
+			}
+		}
+		return results;
 	}
 
 }
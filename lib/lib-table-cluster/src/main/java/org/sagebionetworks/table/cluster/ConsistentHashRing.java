@@ -0,0 +1,103 @@
+package org.sagebionetworks.table.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.sagebionetworks.repo.model.jdo.KeyFactory;
+import org.sagebionetworks.util.ValidateArgument;
+
+/**
+ * Consistent hash ring used to assign each table to one of the database
+ * instances in the table cluster.
+ * <p>
+ * Each instance is placed on the ring at {@link #VIRTUAL_NODES_PER_INSTANCE}
+ * points derived from its JDBC URL. A table is owned by the first instance
+ * found walking clockwise from the hash of the table's ID. Since the ring only
+ * depends on the instance URLs, every machine in the stack will compute the
+ * same assignments. When an instance is added only about 1/N of the tables
+ * will move to a new owner.
+ *
+ * @author jmhill
+ *
+ */
+public class ConsistentHashRing {
+
+	/**
+	 * The number of points each instance occupies on the ring. More points
+	 * results in a more even distribution of tables across instances.
+	 */
+	public static final int VIRTUAL_NODES_PER_INSTANCE = 128;
+
+	private final SortedMap<Long, InstanceInfo> ring;
+
+	/**
+	 * Create a new ring for the given instances.
+	 *
+	 * @param instances
+	 */
+	public ConsistentHashRing(Collection<InstanceInfo> instances) {
+		ValidateArgument.required(instances, "instances");
+		if (instances.isEmpty()) {
+			throw new IllegalArgumentException("The ring requires at least one instance.");
+		}
+		this.ring = new TreeMap<Long, InstanceInfo>();
+		for (InstanceInfo instance : instances) {
+			for (int i = 0; i < VIRTUAL_NODES_PER_INSTANCE; i++) {
+				ring.put(hash(instance.getUrl() + "#" + i), instance);
+			}
+		}
+	}
+
+	/**
+	 * Get the instance that owns the given table.
+	 *
+	 * @param tableId
+	 *            Table ID with or without the 'syn' prefix.
+	 * @return
+	 */
+	public InstanceInfo getInstanceForTable(String tableId) {
+		ValidateArgument.required(tableId, "tableId");
+		// 'syn123' and '123' must map to the same instance.
+		Long key = hash(KeyFactory.stringToKey(tableId).toString());
+		SortedMap<Long, InstanceInfo> tail = ring.tailMap(key);
+		if (tail.isEmpty()) {
+			// wrap around to the start of the ring.
+			return ring.get(ring.firstKey());
+		}
+		return tail.get(tail.firstKey());
+	}
+
+	/**
+	 * The number of points on the ring.
+	 *
+	 * @return
+	 */
+	int size() {
+		return ring.size();
+	}
+
+	/**
+	 * Hash the given value to a point on the ring using the first eight bytes
+	 * of its MD5.
+	 *
+	 * @param value
+	 * @return
+	 */
+	static long hash(String value) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			byte[] bytes = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+			long result = 0;
+			for (int i = 0; i < 8; i++) {
+				result = (result << 8) | (bytes[i] & 0xFF);
+			}
+			return result;
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package org.sagebionetworks.table.cluster;
+
+/**
+ * A table index that exists on a database that no longer owns the table. This
+ * happens when databases are added to or removed from the table cluster.
+ * 
+ * @author jmhill
+ *
+ */
+public class MisplacedTableIndex {
+
+	private String tableId;
+	private TableIndexDAO staleConnection;
+
+	/**
+	 * 
+	 * @param tableId
+	 *            The ID of the table.
+	 * @param staleConnection
+	 *            Connection to the database holding the stale copy of the
+	 *            index.
+	 */
+	public MisplacedTableIndex(String tableId, TableIndexDAO staleConnection) {
+		super();
+		this.tableId = tableId;
+		this.staleConnection = staleConnection;
+	}
+
+	/**
+	 * The ID of the table.
+	 * 
+	 * @return
+	 */
+	public String getTableId() {
+		return tableId;
+	}
+
+	/**
+	 * Connection to the database holding the stale copy of the index.
+	 * 
+	 * @return
+	 */
+	public TableIndexDAO getStaleConnection() {
+		return staleConnection;
+	}
+
+	@Override
+	public String toString() {
+		return "MisplacedTableIndex [tableId=" + tableId + "]";
+	}
+
+}
@@ -568,7 +568,40 @@ public class SQLUtils {
 	public static String getSchemaHashSQL(String tableId) {
 		return "SELECT " + SCHEMA_HASH + " FROM " + getTableNameForId(tableId, TableType.STATUS);
 	}
+
+	/**
+	 * Create SQL used to get both the max version and the schema hash of a
+	 * table.
+	 * 
+	 * @param tableId
+	 * @return
+	 */
+	public static String getStatusVersionAndSchemaHashSQL(String tableId) {
+		return "SELECT " + ROW_VERSION + ", " + SCHEMA_HASH + " FROM " + getTableNameForId(tableId, TableType.STATUS);
+	}
 	
+	/**
+	 * SQL used to list the status table of every table index in a database.
+	 */
+	public static final String SQL_SHOW_STATUS_TABLES = "SHOW TABLES LIKE '" + TABLE_PREFIX + "%"
+			+ TableType.STATUS.getTablePostFix() + "'";
+
+	/**
+	 * Extract the table ID from the name of a table's status table.
+	 * 
+	 * @param statusTableName
+	 * @return The table ID or null if the name is not the name of a status
+	 *         table.
+	 */
+	public static String getTableIdFromStatusTableName(String statusTableName) {
+		ValidateArgument.required(statusTableName, "statusTableName");
+		if (!TableType.STATUS.getTableNamePattern().matcher(statusTableName).matches()) {
+			return null;
+		}
+		return statusTableName.substring(TABLE_PREFIX.length(),
+				statusTableName.length() - TableType.STATUS.getTablePostFix().length());
+	}
+
 	public static String selectRowValuesForRowId(Long tableId) {
 		return "SELECT * FROM " + getTableNameForId(tableId, TableType.INDEX) + " WHERE " + ROW_ID + " IN ( :" + ROW_ID_BIND + " )";
 	}
@@ -1234,10 +1267,33 @@ public class SQLUtils {
 	 */
 	public static String createSelectInsertFromEntityReplication(String viewId, ViewType viewType,
 			List<ColumnModel> currentSchema) {
+		boolean missingRowsOnly = false;
+		return createSelectInsertFromEntityReplication(viewId, viewType, currentSchema, missingRowsOnly);
+	}
+	
+	/**
+	 * Generate the SQL used to insert select data from the entity replication
+	 * tables to a view's index, for only the entities that do not already have
+	 * a row in the view.
+	 * 
+	 * @param viewId
+	 * @param viewType
+	 * @param currentSchema
+	 * @return
+	 */
+	public static String createSelectInsertMissingFromEntityReplication(String viewId, ViewType viewType,
+			List<ColumnModel> currentSchema) {
+		boolean missingRowsOnly = true;
+		return createSelectInsertFromEntityReplication(viewId, viewType, currentSchema, missingRowsOnly);
+	}
+	
+	private static String createSelectInsertFromEntityReplication(String viewId, ViewType viewType,
+			List<ColumnModel> currentSchema, boolean missingRowsOnly) {
 		List<ColumnMetadata> metadata = translateColumns(currentSchema);
+		String viewTableName = getTableNameForId(viewId, TableType.INDEX);
 		StringBuilder builder = new StringBuilder();
 		builder.append("INSERT INTO ");
-		builder.append(getTableNameForId(viewId, TableType.INDEX));
+		builder.append(viewTableName);
 		builder.append("(");
 		buildInsertValues(builder, metadata);
 		builder.append(") SELECT ");
@@ -1246,6 +1302,22 @@ public class SQLUtils {
 		builder.append(TableConstants.ENTITY_REPLICATION_TABLE);
 		builder.append(" ");
 		builder.append(TableConstants.ENTITY_REPLICATION_ALIAS);
+		if(missingRowsOnly){
+			// join the view's rows to exclude the entities already in the view.
+			builder.append(" LEFT OUTER JOIN ");
+			builder.append(viewTableName);
+			builder.append(" ");
+			builder.append(TableConstants.VIEW_ROWS_ALIAS);
+			builder.append(" ON (");
+			builder.append(TableConstants.ENTITY_REPLICATION_ALIAS);
+			builder.append(".");
+			builder.append(TableConstants.ENTITY_REPLICATION_COL_ID);
+			builder.append(" = ");
+			builder.append(TableConstants.VIEW_ROWS_ALIAS);
+			builder.append(".");
+			builder.append(ROW_ID);
+			builder.append(")");
+		}
 		buildJoins(metadata, builder);
 		builder.append(" WHERE ");
 		builder.append(TableConstants.ENTITY_REPLICATION_ALIAS);
@@ -1255,9 +1327,74 @@ public class SQLUtils {
 		builder.append(TableConstants.PARENT_ID_PARAMETER_NAME);
 		builder.append(") AND ");
 		builder.append(createViewTypeFilter(viewType));
+		if(missingRowsOnly){
+			builder.append(" AND ");
+			builder.append(TableConstants.VIEW_ROWS_ALIAS);
+			builder.append(".");
+			builder.append(ROW_ID);
+			builder.append(" IS NULL");
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Generate the SQL used to delete each row of a view that no longer
+	 * matches the entity replication tables. A row is deleted if its entity
+	 * was removed from the view's scope or if its etag or benefactor changed.
+	 * 
+	 * @param viewId
+	 * @param viewType
+	 * @return
+	 */
+	public static String createDeleteStaleRowsFromView(String viewId, ViewType viewType) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("DELETE ");
+		builder.append(TableConstants.VIEW_ROWS_ALIAS);
+		builder.append(" FROM ");
+		builder.append(getTableNameForId(viewId, TableType.INDEX));
+		builder.append(" ");
+		builder.append(TableConstants.VIEW_ROWS_ALIAS);
+		builder.append(" LEFT OUTER JOIN ");
+		builder.append(TableConstants.ENTITY_REPLICATION_TABLE);
+		builder.append(" ");
+		builder.append(TableConstants.ENTITY_REPLICATION_ALIAS);
+		builder.append(" ON (");
+		appendViewRowJoinCondition(builder, ROW_ID, TableConstants.ENTITY_REPLICATION_COL_ID);
+		builder.append(" AND ");
+		appendViewRowJoinCondition(builder, ROW_ETAG, TableConstants.ENTITY_REPLICATION_COL_ETAG);
+		builder.append(" AND ");
+		appendViewRowJoinCondition(builder, ROW_BENEFACTOR, TableConstants.ENTITY_REPLICATION_COL_BENEFACTOR_ID);
+		builder.append(" AND ");
+		builder.append(TableConstants.ENTITY_REPLICATION_ALIAS);
+		builder.append(".");
+		builder.append(getViewScopeFilterColumnForType(viewType));
+		builder.append(" IN (:");
+		builder.append(TableConstants.PARENT_ID_PARAMETER_NAME);
+		builder.append(") AND ");
+		builder.append(TableConstants.ENTITY_REPLICATION_ALIAS);
+		builder.append(".");
+		builder.append(createViewTypeFilter(viewType));
+		builder.append(") WHERE ");
+		builder.append(TableConstants.ENTITY_REPLICATION_ALIAS);
+		builder.append(".");
+		builder.append(TableConstants.ENTITY_REPLICATION_COL_ID);
+		builder.append(" IS NULL");
 		return builder.toString();
 	}
 	
+	/**
+	 * Append: V.viewColumn = R.replicationColumn
+	 */
+	private static void appendViewRowJoinCondition(StringBuilder builder, String viewColumn, String replicationColumn){
+		builder.append(TableConstants.VIEW_ROWS_ALIAS);
+		builder.append(".");
+		builder.append(viewColumn);
+		builder.append(" = ");
+		builder.append(TableConstants.ENTITY_REPLICATION_ALIAS);
+		builder.append(".");
+		builder.append(replicationColumn);
+	}
+	
 	/**
 	 * Filter for each view type.
 	 * @param type
@@ -74,7 +74,10 @@ public interface TableIndexDAO {
 	
 	/**
 	 * Provides the means to stream over query results without keeping the row data in memory.
-	 * 
+	 * Rows are read from the database one at a time as the handler consumes them, so a slow
+	 * handler will slow down the query rather than cause the results to build up in memory.
+	 * The database connection is held until the last row has been handled.
+	 *
 	 * @param query
 	 * @param handler
 	 * @return
@@ -120,6 +123,15 @@ public interface TableIndexDAO {
 	 * @return
 	 */
 	public String getCurrentSchemaMD5Hex(String tableId);
+	
+	/**
+	 * Get both the max complete version and the schema MD5 hex of a table's
+	 * index with a single query.
+	 * 
+	 * @param tableId
+	 * @return Null if the index has not been built.
+	 */
+	public TableIndexState getIndexState(String tableId);
 
 	/**
 	 * Delete all of the secondary tables used for an index if they exist.
@@ -315,6 +327,22 @@ public interface TableIndexDAO {
 	 */
 	public void copyEntityReplicationToTable(String viewId, ViewType viewType,
 			Set<Long> allContainersInScope, List<ColumnModel> currentSchema);
+	
+	/**
+	 * Bring the rows of an existing view up-to-date with the entity
+	 * replication tables without rebuilding the view. Rows for entities that
+	 * have left the scope or whose etag or benefactor changed are deleted, then
+	 * a row is copied for each entity in the scope that does not have a row.
+	 * The view's schema must already match the given schema.
+	 * 
+	 * @param viewId
+	 * @param viewType
+	 * @param allContainersInScope
+	 * @param currentSchema
+	 * @return The number of rows deleted plus the number of rows copied.
+	 */
+	public long updateViewFromEntityReplication(String viewId, ViewType viewType,
+			Set<Long> allContainersInScope, List<ColumnModel> currentSchema);
 
 	/**
 	 * Calculate the Cyclic-Redundancy-Check (CRC) of a table view's concatenation
@@ -394,4 +422,11 @@ public interface TableIndexDAO {
 	 */
 	public List<IdAndEtag> getEntityChildren(Long parentId);
 
+	/**
+	 * Get the IDs of all tables that currently have an index in this database.
+	 * 
+	 * @return
+	 */
+	public List<String> getAllTableIdsInIndex();
+
 }
@@ -24,6 +24,8 @@ import static org.sagebionetworks.repo.model.table.TableConstants.ID_PARAMETER_N
 import static org.sagebionetworks.repo.model.table.TableConstants.PARENT_ID_PARAMETER_NAME;
 import static org.sagebionetworks.repo.model.table.TableConstants.P_LIMIT;
 import static org.sagebionetworks.repo.model.table.TableConstants.P_OFFSET;
+import static org.sagebionetworks.repo.model.table.TableConstants.ROW_VERSION;
+import static org.sagebionetworks.repo.model.table.TableConstants.SCHEMA_HASH;
 import static org.sagebionetworks.repo.model.table.TableConstants.SELECT_ENTITY_CHILD_CRC;
 import static org.sagebionetworks.repo.model.table.TableConstants.SELECT_ENTITY_CHILD_ID_ETAG;
 import static org.sagebionetworks.repo.model.table.TableConstants.SELECT_NON_EXPIRED_IDS;
@@ -248,6 +250,23 @@ public class TableIndexDAOImpl implements TableIndexDAO {
 		}
 	}
 
+	@Override
+	public TableIndexState getIndexState(String tableId) {
+		String sql = SQLUtils.getStatusVersionAndSchemaHashSQL(tableId);
+		try {
+			return template.queryForObject(sql, new RowMapper<TableIndexState>() {
+
+				@Override
+				public TableIndexState mapRow(ResultSet rs, int rowNum) throws SQLException {
+					return new TableIndexState(rs.getLong(ROW_VERSION), rs.getString(SCHEMA_HASH));
+				}
+			});
+		} catch (Exception e) {
+			// Spring throws this when the table is empty
+			return null;
+		}
+	}
+
 	@Override
 	public void deleteSecondaryTables(String tableId) {
 		for(TableType type: SQLUtils.SECONDARY_TYPES){
@@ -305,7 +324,13 @@ public class TableIndexDAOImpl implements TableIndexDAO {
 	public boolean queryAsStream(final ProgressCallback callback, final SqlQuery query, final RowHandler handler) {
 		ValidateArgument.required(query, "Query");
 		final ColumnTypeInfo[] infoArray = SQLTranslatorUtils.getColumnTypeInfoArray(query.getSelectColumns());
-		// We use spring to create create the prepared statement
+		/*
+		 * We use spring to create create the prepared statement. Spring's
+		 * default statement is TYPE_FORWARD_ONLY & CONCUR_READ_ONLY and
+		 * this.template applies a fetch size of Integer.MIN_VALUE, so the
+		 * driver will stream each row to the handler rather than reading the
+		 * full result into memory (PLFM-3429).
+		 */
 		NamedParameterJdbcTemplate namedTemplate = new NamedParameterJdbcTemplate(this.template);
 		namedTemplate.query(query.getOutputSQL(), new MapSqlParameterSource(query.getParameters()), new RowCallbackHandler() {
 			@Override
@@ -757,6 +782,36 @@ public class TableIndexDAOImpl implements TableIndexDAO {
 		namedTemplate.update(sql, param);
 	}
 
+	@Override
+	public long updateViewFromEntityReplication(final String viewId, final ViewType viewType,
+			final Set<Long> allContainersInScope, final List<ColumnModel> currentSchema) {
+		ValidateArgument.required(viewId, "viewId");
+		ValidateArgument.required(viewType, "viewType");
+		ValidateArgument.required(allContainersInScope, "allContainersInScope");
+		ValidateArgument.required(currentSchema, "currentSchema");
+		if(allContainersInScope.isEmpty()){
+			// every row is stale when the scope is empty.
+			Long count = getRowCountForTable(viewId);
+			truncateTable(viewId);
+			return count == null ? 0L : count;
+		}
+		return writeTransactionTemplate.execute(new TransactionCallback<Long>() {
+
+			@Override
+			public Long doInTransaction(TransactionStatus status) {
+				NamedParameterJdbcTemplate namedTemplate = new NamedParameterJdbcTemplate(template);
+				MapSqlParameterSource param = new MapSqlParameterSource();
+				param.addValue(PARENT_ID_PARAMETER_NAME, allContainersInScope);
+				// Changed entities are deleted then copied again.
+				String deleteSql = SQLUtils.createDeleteStaleRowsFromView(viewId, viewType);
+				long deleted = namedTemplate.update(deleteSql, param);
+				String insertSql = SQLUtils.createSelectInsertMissingFromEntityReplication(viewId, viewType, currentSchema);
+				long copied = namedTemplate.update(insertSql, param);
+				return deleted + copied;
+			}
+		});
+	}
+
 	@Override
 	public List<ColumnModel> getPossibleColumnModelsForContainers(
 			Set<Long> containerIds, ViewType type, Long limit, Long offset) {
@@ -885,4 +940,17 @@ public class TableIndexDAOImpl implements TableIndexDAO {
 		template.update(TRUNCATE_REPLICATION_SYNC_EXPIRATION_TABLE);
 	}
 
+	@Override
+	public List<String> getAllTableIdsInIndex() {
+		List<String> tableNames = template.queryForList(SQLUtils.SQL_SHOW_STATUS_TABLES, String.class);
+		List<String> tableIds = new LinkedList<String>();
+		for(String tableName: tableNames){
+			String tableId = SQLUtils.getTableIdFromStatusTableName(tableName);
+			if(tableId != null){
+				tableIds.add(tableId);
+			}
+		}
+		return tableIds;
+	}
+
 }
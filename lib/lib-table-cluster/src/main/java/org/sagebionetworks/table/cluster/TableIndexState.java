@@ -0,0 +1,51 @@
+package org.sagebionetworks.table.cluster;
+
+/**
+ * The version and schema of a table index as recorded in the index's status
+ * table. Both change whenever the contents of the index change.
+ * 
+ * @author jmhill
+ *
+ */
+public class TableIndexState {
+
+	private final long version;
+	private final String schemaMD5Hex;
+
+	/**
+	 * 
+	 * @param version
+	 *            The max complete version of the index.
+	 * @param schemaMD5Hex
+	 *            The MD5 hex of the index's schema.
+	 */
+	public TableIndexState(long version, String schemaMD5Hex) {
+		super();
+		this.version = version;
+		this.schemaMD5Hex = schemaMD5Hex;
+	}
+
+	/**
+	 * The max complete version of the index.
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * The MD5 hex of the index's schema.
+	 * 
+	 * @return
+	 */
+	public String getSchemaMD5Hex() {
+		return schemaMD5Hex;
+	}
+
+	@Override
+	public String toString() {
+		return "TableIndexState [version=" + version + ", schemaMD5Hex=" + schemaMD5Hex + "]";
+	}
+
+}
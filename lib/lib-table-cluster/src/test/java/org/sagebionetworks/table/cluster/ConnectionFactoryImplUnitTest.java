@@ -0,0 +1,144 @@
+package org.sagebionetworks.table.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.sagebionetworks.StackConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ConnectionFactoryImplUnitTest {
+
+	@Mock
+	StackConfiguration mockConfig;
+	@Mock
+	InstanceDiscovery mockDiscovery;
+	@Mock
+	TableIndexDAO mockOwnerDao;
+	@Mock
+	TableIndexDAO mockOtherDao;
+
+	ConnectionFactoryImpl factory;
+	String tableId;
+	InstanceInfo owner;
+	InstanceInfo other;
+
+	@Before
+	public void before() {
+		MockitoAnnotations.initMocks(this);
+		tableId = "syn123";
+		InstanceInfo one = new InstanceInfo("endpoint0", "schema0");
+		InstanceInfo two = new InstanceInfo("endpoint1", "schema1");
+		ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList(one, two));
+		owner = ring.getInstanceForTable(tableId);
+		other = owner.equals(one) ? two : one;
+		Map<InstanceInfo, BasicDataSource> pools = new LinkedHashMap<InstanceInfo, BasicDataSource>();
+		pools.put(one, null);
+		pools.put(two, null);
+
+		factory = Mockito.spy(new ConnectionFactoryImpl());
+		ReflectionTestUtils.setField(factory, "stackConfig", mockConfig);
+		ReflectionTestUtils.setField(factory, "instanceDiscovery", mockDiscovery);
+		ReflectionTestUtils.setField(factory, "connectionPools", pools);
+		ReflectionTestUtils.setField(factory, "ring", ring);
+		when(mockConfig.getTableEnabled()).thenReturn(true);
+		when(mockDiscovery.discoverAllInstances()).thenReturn(Arrays.asList(one, two));
+		doReturn(mockOwnerDao).when(factory).createDAO(owner);
+		doReturn(mockOtherDao).when(factory).createDAO(other);
+	}
+
+	@Test
+	public void testGetConnectionBuiltOnOwner() {
+		when(mockOwnerDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(3L);
+		// call under test
+		assertEquals(mockOwnerDao, factory.getConnection(tableId));
+		verify(mockOtherDao, never()).getMaxCurrentCompleteVersionForTable(tableId);
+	}
+
+	@Test
+	public void testGetConnectionOwnerNotBuilt() {
+		when(mockOwnerDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(-1L);
+		when(mockOtherDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(3L);
+		// call under test
+		assertEquals(mockOtherDao, factory.getConnection(tableId));
+	}
+
+	@Test
+	public void testGetConnectionNewTable() {
+		when(mockOwnerDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(-1L);
+		when(mockOtherDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(-1L);
+		// call under test
+		assertEquals(mockOwnerDao, factory.getConnection(tableId));
+	}
+
+	@Test
+	public void testGetConnectionOwnerCached() {
+		when(mockOwnerDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(3L);
+		factory.getConnection(tableId);
+		// call under test
+		assertEquals(mockOwnerDao, factory.getConnection(tableId));
+		verify(mockOwnerDao, times(1)).getMaxCurrentCompleteVersionForTable(tableId);
+	}
+
+	@Test
+	public void testGetConnectionNewTableCached() {
+		when(mockOwnerDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(-1L);
+		when(mockOtherDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(-1L);
+		factory.getConnection(tableId);
+		// call under test
+		assertEquals(mockOwnerDao, factory.getConnection(tableId));
+		verify(mockOwnerDao, times(1)).getMaxCurrentCompleteVersionForTable(tableId);
+		verify(mockOtherDao, times(1)).getMaxCurrentCompleteVersionForTable(tableId);
+	}
+
+	@Test
+	public void testGetConnectionPreviousOwnerNotCached() {
+		when(mockOwnerDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(-1L, 3L);
+		when(mockOtherDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(3L);
+		assertEquals(mockOtherDao, factory.getConnection(tableId));
+		// call under test
+		assertEquals(mockOwnerDao, factory.getConnection(tableId));
+	}
+
+	@Test
+	public void testGetOwnerConnection() {
+		when(mockOtherDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(3L);
+		// call under test
+		assertEquals(mockOwnerDao, factory.getOwnerConnection(tableId));
+	}
+
+	@Test
+	public void testGetMisplacedTableIndices() {
+		when(mockOwnerDao.getAllTableIdsInIndex()).thenReturn(Arrays.asList(tableId));
+		when(mockOtherDao.getAllTableIdsInIndex()).thenReturn(Arrays.asList(tableId));
+		// call under test
+		List<MisplacedTableIndex> results = factory.getMisplacedTableIndices();
+		assertEquals(1, results.size());
+		assertEquals(tableId, results.get(0).getTableId());
+		assertEquals(mockOtherDao, results.get(0).getStaleConnection());
+	}
+
+	@Test
+	public void testGetMisplacedTableIndicesClusterChanged() {
+		when(mockDiscovery.discoverAllInstances()).thenReturn(Arrays.asList(owner));
+		when(mockOtherDao.getAllTableIdsInIndex()).thenReturn(Arrays.asList(tableId));
+		// call under test
+		assertTrue(factory.getMisplacedTableIndices().isEmpty());
+		verify(mockOtherDao, never()).getAllTableIdsInIndex();
+	}
+}
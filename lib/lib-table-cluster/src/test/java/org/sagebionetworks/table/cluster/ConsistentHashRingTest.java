@@ -0,0 +1,120 @@
+package org.sagebionetworks.table.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConsistentHashRingTest {
+
+	InstanceInfo one;
+	InstanceInfo two;
+	InstanceInfo three;
+	List<InstanceInfo> instances;
+
+	@Before
+	public void before() {
+		one = new InstanceInfo("endpoint-one", "schema");
+		two = new InstanceInfo("endpoint-two", "schema");
+		three = new InstanceInfo("endpoint-three", "schema");
+		instances = new LinkedList<InstanceInfo>();
+		instances.add(one);
+		instances.add(two);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullInstances() {
+		new ConsistentHashRing(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyInstances() {
+		new ConsistentHashRing(new LinkedList<InstanceInfo>());
+	}
+
+	@Test
+	public void testSize() {
+		ConsistentHashRing ring = new ConsistentHashRing(instances);
+		assertEquals(2 * ConsistentHashRing.VIRTUAL_NODES_PER_INSTANCE, ring.size());
+	}
+
+	@Test
+	public void testSingleInstance() {
+		instances.remove(two);
+		ConsistentHashRing ring = new ConsistentHashRing(instances);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(one, ring.getInstanceForTable("syn" + i));
+		}
+	}
+
+	@Test
+	public void testPrefixIgnored() {
+		ConsistentHashRing ring = new ConsistentHashRing(instances);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(ring.getInstanceForTable("" + i), ring.getInstanceForTable("syn" + i));
+		}
+	}
+
+	@Test
+	public void testSameAssignmentAcrossRings() {
+		ConsistentHashRing ring = new ConsistentHashRing(instances);
+		List<InstanceInfo> reversed = new LinkedList<InstanceInfo>();
+		reversed.add(two);
+		reversed.add(one);
+		ConsistentHashRing other = new ConsistentHashRing(reversed);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(ring.getInstanceForTable("syn" + i), other.getInstanceForTable("syn" + i));
+		}
+	}
+
+	@Test
+	public void testDistribution() {
+		ConsistentHashRing ring = new ConsistentHashRing(instances);
+		int count = 10000;
+		Map<InstanceInfo, Integer> counts = countAssignments(ring, count);
+		// each instance should get a reasonable share of the tables.
+		assertTrue(counts.get(one) > count / 4);
+		assertTrue(counts.get(two) > count / 4);
+	}
+
+	@Test
+	public void testAddInstanceMovesOnlyToNewInstance() {
+		ConsistentHashRing before = new ConsistentHashRing(instances);
+		instances.add(three);
+		ConsistentHashRing after = new ConsistentHashRing(instances);
+		int count = 10000;
+		int moved = 0;
+		for (int i = 0; i < count; i++) {
+			String tableId = "syn" + i;
+			InstanceInfo oldOwner = before.getInstanceForTable(tableId);
+			InstanceInfo newOwner = after.getInstanceForTable(tableId);
+			if (!oldOwner.equals(newOwner)) {
+				// tables can only move to the new instance.
+				assertEquals(three, newOwner);
+				moved++;
+			}
+		}
+		// roughly a third of the tables should move.
+		assertTrue(moved > count / 6);
+		assertTrue(moved < count / 2);
+	}
+
+	/**
+	 * Count the number of tables assigned to each instance.
+	 */
+	private static Map<InstanceInfo, Integer> countAssignments(ConsistentHashRing ring, int count) {
+		Map<InstanceInfo, Integer> counts = new HashMap<InstanceInfo, Integer>();
+		for (int i = 0; i < count; i++) {
+			InstanceInfo owner = ring.getInstanceForTable("syn" + i);
+			Integer current = counts.get(owner);
+			counts.put(owner, current == null ? 1 : current + 1);
+		}
+		return counts;
+	}
+}
@@ -294,6 +294,13 @@ public class SQLUtilsTest {
 		assertEquals(expected, result);
 	}
 	
+	@Test
+	public void testGetStatusVersionAndSchemaHashSQL(){
+		String expected = "SELECT ROW_VERSION, SCHEMA_HASH FROM T123S";
+		String result = SQLUtils.getStatusVersionAndSchemaHashSQL("123");
+		assertEquals(expected, result);
+	}
+	
 	@Test
 	public void testCreateSQLInsertIgnoreFileHandleId(){
 		String expected = "INSERT IGNORE INTO T987F (FILE_ID) VALUES(?)";
@@ -1612,6 +1619,42 @@ public class SQLUtilsTest {
 				+ " WHERE R.PARENT_ID IN (:parentIds) AND TYPE IN ('file')", sql);
 	}
 	
+	@Test
+	public void testCreateSelectInsertMissingFromEntityReplication(){
+		String viewId = "syn123";
+		ColumnModel one = TableModelTestUtils.createColumn(1L);
+		ColumnModel id = EntityField.id.getColumnModel();
+		id.setId("2");
+		List<ColumnModel> schema = Lists.newArrayList(one, id);
+		ViewType type = ViewType.file;
+		String sql = SQLUtils.createSelectInsertMissingFromEntityReplication(viewId, type, schema);
+		assertEquals("INSERT INTO T123(ROW_ID, ROW_VERSION, ROW_ETAG, ROW_BENEFACTOR, _C1_, _C2_)"
+				+ " SELECT R.ID, R.CURRENT_VERSION, R.ETAG, R.BENEFACTOR_ID, A0.STRING_VALUE AS _C1_, R.ID AS _C2_"
+				+ " FROM ENTITY_REPLICATION R"
+				+ " LEFT OUTER JOIN T123 V ON (R.ID = V.ROW_ID)"
+				+ " LEFT OUTER JOIN ANNOTATION_REPLICATION A0"
+				+ " ON (R.ID = A0.ENTITY_ID AND A0.ANNO_KEY = 'col_1')"
+				+ " WHERE R.PARENT_ID IN (:parentIds) AND TYPE IN ('file') AND V.ROW_ID IS NULL", sql);
+	}
+	
+	@Test
+	public void testCreateDeleteStaleRowsFromView(){
+		String sql = SQLUtils.createDeleteStaleRowsFromView("syn123", ViewType.file);
+		assertEquals("DELETE V FROM T123 V LEFT OUTER JOIN ENTITY_REPLICATION R"
+				+ " ON (V.ROW_ID = R.ID AND V.ROW_ETAG = R.ETAG AND V.ROW_BENEFACTOR = R.BENEFACTOR_ID"
+				+ " AND R.PARENT_ID IN (:parentIds) AND R.TYPE IN ('file'))"
+				+ " WHERE R.ID IS NULL", sql);
+	}
+	
+	@Test
+	public void testCreateDeleteStaleRowsFromViewProjectView(){
+		String sql = SQLUtils.createDeleteStaleRowsFromView("syn123", ViewType.project);
+		assertEquals("DELETE V FROM T123 V LEFT OUTER JOIN ENTITY_REPLICATION R"
+				+ " ON (V.ROW_ID = R.ID AND V.ROW_ETAG = R.ETAG AND V.ROW_BENEFACTOR = R.BENEFACTOR_ID"
+				+ " AND R.ID IN (:parentIds) AND R.TYPE IN ('project'))"
+				+ " WHERE R.ID IS NULL", sql);
+	}
+	
 	@Test
 	public void testBuildTableViewCRC32Sql(){
 		String viewId = "syn123";
@@ -2116,4 +2159,21 @@ public class SQLUtilsTest {
 		verify(mockPreparedStatement).setString(7, AbstractDouble.NEGATIVE_INFINITY.getEnumerationValue());
 		verify(mockPreparedStatement).setNull(8, Types.BOOLEAN);
 	}
+	
+	@Test
+	public void testGetTableIdFromStatusTableName(){
+		assertEquals("123", SQLUtils.getTableIdFromStatusTableName("T123S"));
+	}
+	
+	@Test
+	public void testGetTableIdFromStatusTableNameNotStatus(){
+		assertEquals(null, SQLUtils.getTableIdFromStatusTableName("T123"));
+		assertEquals(null, SQLUtils.getTableIdFromStatusTableName("T123F"));
+		assertEquals(null, SQLUtils.getTableIdFromStatusTableName("TEMPT123S"));
+	}
+	
+	@Test (expected=IllegalArgumentException.class)
+	public void testGetTableIdFromStatusTableNameNull(){
+		SQLUtils.getTableIdFromStatusTableName(null);
+	}
 }
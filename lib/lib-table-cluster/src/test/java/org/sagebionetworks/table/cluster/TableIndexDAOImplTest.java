@@ -3,11 +3,13 @@ package org.sagebionetworks.table.cluster;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.sagebionetworks.repo.model.table.TableConstants.ROW_ID;
 import static org.sagebionetworks.repo.model.table.TableConstants.ROW_VERSION;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
@@ -15,6 +17,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.After;
 import org.junit.Assume;
@@ -26,6 +29,7 @@ import org.sagebionetworks.StackConfiguration;
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.IdAndEtag;
+import org.sagebionetworks.repo.model.dao.table.RowHandler;
 import org.sagebionetworks.repo.model.dbo.dao.table.TableModelTestUtils;
 import org.sagebionetworks.repo.model.table.AnnotationDTO;
 import org.sagebionetworks.repo.model.table.AnnotationType;
@@ -392,6 +396,60 @@ public class TableIndexDAOImplTest {
 		mockProgressCallback = null;
 	}
 
+	@Test
+	public void testQueryAsStreamFetchSize(){
+		// The MySQL driver will only stream results with this fetch size (PLFM-3429).
+		assertEquals(Integer.MIN_VALUE, tableIndexDAO.getConnection().getFetchSize());
+	}
+	
+	@Test
+	public void testQueryAsStreamLargeResult() throws ParseException {
+		List<ColumnModel> allTypes = TableModelTestUtils.createOneOfEachType();
+		createOrUpdateTable(allTypes, tableId, isView);
+		int rowCount = 10000;
+		List<Row> rows = TableModelTestUtils.createRows(allTypes, rowCount);
+		RowSet set = new RowSet();
+		set.setRows(rows);
+		set.setHeaders(TableModelUtils.getSelectColumns(allTypes));
+		set.setTableId(tableId);
+		IdRange range = new IdRange();
+		range.setMinimumId(0L);
+		range.setMaximumId((long) rowCount);
+		range.setVersionNumber(1L);
+		TableModelTestUtils.assignRowIdsAndVersionNumbers(set, range);
+		createOrUpdateOrDeleteRows(set, allTypes);
+		SqlQuery query = new SqlQueryBuilder("select * from " + tableId + " order by ROW_ID", allTypes).build();
+		final AtomicLong delivered = new AtomicLong(0);
+		// call under test
+		tableIndexDAO.queryAsStream(mockProgressCallback, query, new RowHandler() {
+
+			@Override
+			public void nextRow(Row row) {
+				// each callback delivers the next row.
+				assertEquals(new Long(delivered.getAndIncrement()), row.getRowId());
+			}
+		});
+		assertEquals(rowCount, delivered.get());
+		
+		delivered.set(0);
+		try {
+			// call under test
+			tableIndexDAO.queryAsStream(mockProgressCallback, query, new RowHandler() {
+
+				@Override
+				public void nextRow(Row row) {
+					delivered.incrementAndGet();
+					throw new IllegalStateException("stop");
+				}
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("stop", e.getMessage());
+		}
+		// the handler is called while the query is running, so stopping on the first row stops the query.
+		assertEquals(1L, delivered.get());
+	}
+
 	@Test
 	public void testDoubleQuery() throws ParseException {
 		// Create the table
@@ -742,6 +800,18 @@ public class TableIndexDAOImplTest {
 		createOrUpdateTable(schema, tableId, isView);
 	}
 	
+	@Test
+	public void testGetAllTableIdsInIndex(){
+		tableIndexDAO.createSecondaryTables(tableId);
+		// call under test
+		List<String> tableIds = tableIndexDAO.getAllTableIdsInIndex();
+		assertTrue(tableIds.contains("123"));
+		tableIndexDAO.deleteSecondaryTables(tableId);
+		// call under test
+		tableIds = tableIndexDAO.getAllTableIdsInIndex();
+		assertFalse(tableIds.contains("123"));
+	}
+	
 	@Test
 	public void testCreateSecondaryTablesCreateDeleteIdempotent(){
 		// ensure the secondary tables for this index exist
@@ -839,6 +909,20 @@ public class TableIndexDAOImplTest {
 		assertEquals(version, this.tableIndexDAO.getMaxCurrentCompleteVersionForTable(tableId));
 	}
 	
+	@Test
+	public void testGetIndexState(){
+		// ensure the secondary tables for this index exist
+		this.tableIndexDAO.createSecondaryTables(tableId);
+		// call under test
+		assertNull(this.tableIndexDAO.getIndexState(tableId));
+		this.tableIndexDAO.setIndexVersionAndSchemaMD5Hex(tableId, 123L, "md5hex");
+		// call under test
+		TableIndexState state = this.tableIndexDAO.getIndexState(tableId);
+		assertNotNull(state);
+		assertEquals(123L, state.getVersion());
+		assertEquals("md5hex", state.getSchemaMD5Hex());
+	}
+	
 	@Test
 	public void testDoesIndexStateMatchTableDoesNotExist(){
 		// ensure the secondary tables for this index exist
@@ -1436,6 +1520,64 @@ public class TableIndexDAOImplTest {
 		assertEquals(-1L, crc32);
 	}
 	
+	@Test
+	public void testUpdateViewFromEntityReplication(){
+		isView = true;
+		// delete all data
+		tableIndexDAO.deleteEntityData(mockProgressCallback, Lists.newArrayList(2L,3L,4L));
+		
+		// setup some hierarchy.
+		EntityDTO file1 = createEntityDTO(2L, EntityType.file, 2);
+		file1.setParentId(333L);
+		EntityDTO file2 = createEntityDTO(3L, EntityType.file, 3);
+		file2.setParentId(222L);
+		tableIndexDAO.addEntityData(mockProgressCallback, Lists.newArrayList(file1, file2));
+		
+		Set<Long> scope = Sets.newHashSet(file1.getParentId(), file2.getParentId());
+		List<ColumnModel> schema = createSchemaFromEntityDTO(file2);
+		createOrUpdateTable(schema, tableId, isView);
+		tableIndexDAO.copyEntityReplicationToTable(tableId, ViewType.file, scope, schema);
+		
+		// file2 changes and a new file is added to the scope.
+		file2.setEtag("changedEtag");
+		EntityDTO file3 = createEntityDTO(4L, EntityType.file, 3);
+		file3.setParentId(222L);
+		tableIndexDAO.deleteEntityData(mockProgressCallback, Lists.newArrayList(3L));
+		tableIndexDAO.addEntityData(mockProgressCallback, Lists.newArrayList(file2, file3));
+		// file1 leaves the scope.
+		scope = Sets.newHashSet(file2.getParentId());
+		
+		// call under test
+		long changed = tableIndexDAO.updateViewFromEntityReplication(tableId, ViewType.file, scope, schema);
+		// file1 and the old file2 deleted, file2 and file3 copied.
+		assertEquals(4L, changed);
+		assertEquals(new Long(2), tableIndexDAO.getRowCountForTable(tableId));
+		// the view must match the replication exactly as a full copy would.
+		long expectedCRC = tableIndexDAO.calculateCRC32ofEntityReplicationScope(ViewType.file, scope);
+		assertEquals(expectedCRC, tableIndexDAO.calculateCRC32ofTableView(tableId));
+		
+		// nothing changes when the view is already up-to-date.
+		assertEquals(0L, tableIndexDAO.updateViewFromEntityReplication(tableId, ViewType.file, scope, schema));
+	}
+	
+	@Test
+	public void testUpdateViewFromEntityReplicationScopeEmpty(){
+		isView = true;
+		// delete all data
+		tableIndexDAO.deleteEntityData(mockProgressCallback, Lists.newArrayList(2L,3L));
+		EntityDTO file1 = createEntityDTO(2L, EntityType.file, 2);
+		file1.setParentId(333L);
+		tableIndexDAO.addEntityData(mockProgressCallback, Lists.newArrayList(file1));
+		List<ColumnModel> schema = createSchemaFromEntityDTO(file1);
+		createOrUpdateTable(schema, tableId, isView);
+		tableIndexDAO.copyEntityReplicationToTable(tableId, ViewType.file, Sets.newHashSet(333L), schema);
+		
+		// call under test
+		long changed = tableIndexDAO.updateViewFromEntityReplication(tableId, ViewType.file, new HashSet<Long>(), schema);
+		assertEquals(1L, changed);
+		assertEquals(new Long(0), tableIndexDAO.getRowCountForTable(tableId));
+	}
+	
 	@Test
 	public void testGetPossibleAnnotationsForContainers(){
 		// delete all data
@@ -33,6 +33,35 @@ public interface S3MultipartUploadDAO {
 	 */
 	public URL createPreSignedPutUrl(String bucket, String partKey, String contentType);
 
+	/**
+	 * Create a pre-signed URL to upload a part directly to a multi-part
+	 * upload, so the part does not need to be copied into the upload.
+	 * 
+	 * @param bucket
+	 * @param key
+	 *            The key of the file being uploaded.
+	 * @param uploadToken
+	 *            The S3 ID of the multi-part upload.
+	 * @param partNumber
+	 * @param contentType
+	 *            Optional parameter. Sets the expected content-type of the
+	 *            request. The content-type is included in the signature.
+	 * @return
+	 */
+	public URL createPreSignedUploadPartUrl(String bucket, String key, String uploadToken, int partNumber,
+			String contentType);
+
+	/**
+	 * List the parts that have been uploaded to a multi-part upload.
+	 * 
+	 * @param bucket
+	 * @param key
+	 * @param uploadToken
+	 *            The S3 ID of the multi-part upload.
+	 * @return The number and hex MD5 (etag) of each part.
+	 */
+	public List<PartMD5> listParts(String bucket, String key, String uploadToken);
+
 	/**
 	 * Add a part to a multi-part upload.s
 	 * @param bucket
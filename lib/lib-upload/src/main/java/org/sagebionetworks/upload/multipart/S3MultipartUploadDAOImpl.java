@@ -24,8 +24,11 @@ import com.amazonaws.services.s3.model.CopyPartResult;
 import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
 import com.amazonaws.util.BinaryUtils;
 
 public class S3MultipartUploadDAOImpl implements S3MultipartUploadDAO {
@@ -86,6 +89,55 @@ public class S3MultipartUploadDAOImpl implements S3MultipartUploadDAO {
 		return s3Client.generatePresignedUrl(request);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.sagebionetworks.upload.multipart.S3MultipartUploadDAO#
+	 * createPreSignedUploadPartUrl(java.lang.String, java.lang.String,
+	 * java.lang.String, int, java.lang.String)
+	 */
+	@Override
+	public URL createPreSignedUploadPartUrl(String bucket, String key, String uploadToken, int partNumber,
+			String contentType) {
+		long expiration = System.currentTimeMillis()+ PRE_SIGNED_URL_EXPIRATION_MS;
+		GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(
+				bucket, key).withMethod(HttpMethod.PUT).withExpiration(
+				new Date(expiration));
+		// These parameters make the PUT an upload part request.
+		request.addRequestParameter("uploadId", uploadToken);
+		request.addRequestParameter("partNumber", "" + partNumber);
+		// See createPreSignedPutUrl() for why 'Expires' is added.
+		request.addRequestParameter("Expires", ""+(expiration/1000));
+		if(contentType != null){
+			request.setContentType(contentType);
+		}
+		return s3Client.generatePresignedUrl(request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.sagebionetworks.upload.multipart.S3MultipartUploadDAO#listParts(java
+	 * .lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public List<PartMD5> listParts(String bucket, String key, String uploadToken) {
+		List<PartMD5> parts = new LinkedList<PartMD5>();
+		ListPartsRequest request = new ListPartsRequest(bucket, key, uploadToken);
+		PartListing listing;
+		do {
+			listing = s3Client.listParts(request);
+			for (PartSummary summary : listing.getParts()) {
+				// The etag of a part is the quoted hex MD5 of the part.
+				String partMD5Hex = summary.getETag().replace("\"", "");
+				parts.add(new PartMD5(summary.getPartNumber(), partMD5Hex));
+			}
+			request.setPartNumberMarker(listing.getNextPartNumberMarker());
+		} while (listing.isTruncated());
+		return parts;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
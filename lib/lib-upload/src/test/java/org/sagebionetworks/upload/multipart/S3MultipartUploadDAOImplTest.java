@@ -5,6 +5,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -34,8 +35,11 @@ import com.amazonaws.services.s3.model.CopyPartResult;
 import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
 import com.google.common.collect.Lists;
 
 public class S3MultipartUploadDAOImplTest {
@@ -244,5 +248,47 @@ public class S3MultipartUploadDAOImplTest {
 		// call under test
 		dao.completeMultipartUpload(request);
 	}
-
+	
+	@Test
+	public void testCreatePreSignedUploadPartUrl() throws AmazonClientException, MalformedURLException{
+		when(mockS3Client.generatePresignedUrl(any(GeneratePresignedUrlRequest.class))).thenReturn(new URL("http", "amazon.com", "bucket/key"));
+		//call under test.
+		URL url = dao.createPreSignedUploadPartUrl(bucket, key, uploadId, 3, "text/plain");
+		assertNotNull(url);
+		ArgumentCaptor<GeneratePresignedUrlRequest> capture = ArgumentCaptor.forClass(GeneratePresignedUrlRequest.class);
+		verify(mockS3Client).generatePresignedUrl(capture.capture());
+		assertEquals(bucket, capture.getValue().getBucketName());
+		assertEquals(key, capture.getValue().getKey());
+		assertEquals("text/plain", capture.getValue().getContentType());
+		assertEquals(uploadId, capture.getValue().getRequestParameters().get("uploadId"));
+		assertEquals("3", capture.getValue().getRequestParameters().get("partNumber"));
+		Date now = new Date(System.currentTimeMillis());
+		assertTrue(now.before( capture.getValue().getExpiration()));
+	}
+	
+	@Test
+	public void testListParts(){
+		PartSummary one = new PartSummary();
+		one.setPartNumber(1);
+		one.setETag("\"etagOne\"");
+		PartListing first = new PartListing();
+		first.setParts(Lists.newArrayList(one));
+		first.setTruncated(true);
+		first.setNextPartNumberMarker(1);
+		PartSummary two = new PartSummary();
+		two.setPartNumber(2);
+		two.setETag("\"etagTwo\"");
+		PartListing second = new PartListing();
+		second.setParts(Lists.newArrayList(two));
+		second.setTruncated(false);
+		when(mockS3Client.listParts(any(ListPartsRequest.class))).thenReturn(first, second);
+		//call under test.
+		List<PartMD5> parts = dao.listParts(bucket, key, uploadId);
+		List<PartMD5> expected = Lists.newArrayList(new PartMD5(1, "etagOne"), new PartMD5(2, "etagTwo"));
+		assertEquals(expected, parts);
+		ArgumentCaptor<ListPartsRequest> capture = ArgumentCaptor.forClass(ListPartsRequest.class);
+		verify(mockS3Client, times(2)).listParts(capture.capture());
+		assertEquals(uploadId, capture.getValue().getUploadId());
+		assertEquals(new Integer(1), capture.getValue().getPartNumberMarker());
+	}
 }
@@ -0,0 +1,235 @@
+package org.sagebionetworks.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe, least-recently-used cache that is bounded by the total size
+ * of its values rather than the number of entries. Entries can optionally
+ * expire after a fixed time-to-live.
+ * <p>
+ * The size of each value is provided by a {@link Sizer}, so the unit of the
+ * bound is up to the caller (typically bytes). Hit, miss and eviction counts
+ * are tracked so callers can publish hit-rate metrics.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class BoundedLruCache<K, V> {
+
+	/**
+	 * Provides the size of a value in the cache.
+	 */
+	public interface Sizer<K, V> {
+
+		/**
+		 * The size of the given value, typically in bytes.
+		 *
+		 * @param key
+		 * @param value
+		 * @return
+		 */
+		long sizeOf(K key, V value);
+	}
+
+	/**
+	 * Sizer that treats every entry as size one, so the cache is bounded by
+	 * the number of entries.
+	 */
+	public static <K, V> Sizer<K, V> countSizer() {
+		return new Sizer<K, V>() {
+
+			@Override
+			public long sizeOf(K key, V value) {
+				return 1L;
+			}
+		};
+	}
+
+	private static class Entry<V> {
+		V value;
+		long size;
+		Long expiresOn;
+	}
+
+	private final long maxSize;
+	private final Long timeToLiveMS;
+	private final Sizer<K, V> sizer;
+	private final Clock clock;
+	private final LinkedHashMap<K, Entry<V>> map;
+	private long currentSize;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	/**
+	 * Create a cache where entries never expire.
+	 *
+	 * @param maxSize
+	 *            The maximum total size of all values in the cache.
+	 * @param sizer
+	 *            Provides the size of each value.
+	 */
+	public BoundedLruCache(long maxSize, Sizer<K, V> sizer) {
+		this(maxSize, null, sizer, new DefaultClock());
+	}
+
+	/**
+	 *
+	 * @param maxSize
+	 *            The maximum total size of all values in the cache.
+	 * @param timeToLiveMS
+	 *            Entries expire this many MS after being added. When null,
+	 *            entries never expire.
+	 * @param sizer
+	 *            Provides the size of each value.
+	 * @param clock
+	 */
+	public BoundedLruCache(long maxSize, Long timeToLiveMS, Sizer<K, V> sizer, Clock clock) {
+		ValidateArgument.requirement(maxSize > 0, "maxSize must be greater than zero");
+		ValidateArgument.required(sizer, "sizer");
+		ValidateArgument.required(clock, "clock");
+		this.maxSize = maxSize;
+		this.timeToLiveMS = timeToLiveMS;
+		this.sizer = sizer;
+		this.clock = clock;
+		// access order makes the eldest entry the least recently used.
+		this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+	}
+
+	/**
+	 * Get the value for the given key.
+	 *
+	 * @param key
+	 * @return The value or null if the key is not in the cache or has
+	 *         expired.
+	 */
+	public synchronized V get(K key) {
+		Entry<V> entry = map.get(key);
+		if (entry != null && isExpired(entry)) {
+			removeEntry(key);
+			entry = null;
+		}
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.value;
+	}
+
+	/**
+	 * Add a value to the cache, evicting the least recently used values as
+	 * needed. A value that is larger than the maximum size of the cache will
+	 * not be cached.
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public synchronized void put(K key, V value) {
+		ValidateArgument.required(key, "key");
+		ValidateArgument.required(value, "value");
+		removeEntry(key);
+		long size = sizer.sizeOf(key, value);
+		if (size > maxSize) {
+			return;
+		}
+		Entry<V> entry = new Entry<V>();
+		entry.value = value;
+		entry.size = size;
+		if (timeToLiveMS != null) {
+			entry.expiresOn = clock.currentTimeMillis() + timeToLiveMS;
+		}
+		map.put(key, entry);
+		currentSize += size;
+		// evict until under the limit.
+		Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+		while (currentSize > maxSize && it.hasNext()) {
+			Map.Entry<K, Entry<V>> eldest = it.next();
+			currentSize -= eldest.getValue().size;
+			it.remove();
+			evictionCount++;
+		}
+	}
+
+	/**
+	 * Remove a single key from the cache.
+	 *
+	 * @param key
+	 * @return The removed value or null.
+	 */
+	public synchronized V remove(K key) {
+		Entry<V> entry = removeEntry(key);
+		return entry == null ? null : entry.value;
+	}
+
+	/**
+	 * Remove all entries from the cache. The hit and miss counts are not
+	 * reset.
+	 */
+	public synchronized void clear() {
+		map.clear();
+		currentSize = 0;
+	}
+
+	/**
+	 * The number of entries in the cache.
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/**
+	 * The total size of all values currently in the cache.
+	 *
+	 * @return
+	 */
+	public synchronized long getCurrentSize() {
+		return currentSize;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * The fraction of lookups that were hits.
+	 *
+	 * @return A value between zero and one. Zero when there have been no
+	 *         lookups.
+	 */
+	public synchronized double getHitRatio() {
+		long total = hitCount + missCount;
+		if (total == 0) {
+			return 0.0;
+		}
+		return ((double) hitCount) / total;
+	}
+
+	private boolean isExpired(Entry<V> entry) {
+		return entry.expiresOn != null && clock.currentTimeMillis() >= entry.expiresOn;
+	}
+
+	private Entry<V> removeEntry(K key) {
+		Entry<V> entry = map.remove(key);
+		if (entry != null) {
+			currentSize -= entry.size;
+		}
+		return entry;
+	}
+}
@@ -0,0 +1,42 @@
+package org.sagebionetworks.util;
+
+import java.util.Map;
+
+/**
+ * Statistics of a cache that are published for monitoring. All counts are
+ * totals since the cache was created, so the publisher reports the change
+ * since its last publish.
+ *
+ */
+public interface CacheStatistics {
+
+	/**
+	 * The number of reads served by the cache.
+	 *
+	 * @return
+	 */
+	public long getHitCount();
+
+	/**
+	 * The number of reads that were not in the cache.
+	 *
+	 * @return
+	 */
+	public long getMissCount();
+
+	/**
+	 * Any other totals of the cache, such as evictions, keyed by metric name.
+	 *
+	 * @return
+	 */
+	public Map<String, Long> getOtherCounts();
+
+	/**
+	 * The current size of the cache. The unit (entries or bytes) depends on
+	 * the cache.
+	 *
+	 * @return
+	 */
+	public long getCurrentSize();
+
+}
@@ -0,0 +1,427 @@
+package org.sagebionetworks.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A bounded cache of files on the local disk, for content that never changes
+ * once it is written to its source, such as an S3 object or a file handle.
+ * <p>
+ * The cache is bounded by the total bytes of the files and the least recently
+ * used files are deleted first. The MD5 of each file is kept in memory and
+ * checked each time the file is read, so a truncated or corrupt file is
+ * deleted and treated as a miss. Files are written to a temporary name and
+ * then moved into place, so concurrent readers never see a partial file.
+ * <p>
+ * Content can be streamed in and out of the cache with
+ * {@link #put(String, InputStream, String)} and {@link #open(String)} so large
+ * content is never held in memory. A file that is evicted while a stream is
+ * open on it is unlinked but remains readable until the stream is closed.
+ * <p>
+ * The index of the cache is only held in memory, so any files already in the
+ * directory are deleted when the cache is created.
+ *
+ */
+public class LocalFileCache implements CacheStatistics {
+
+	public static final String CORRUPT = "corruptFiles";
+
+	static private Logger log = LogManager.getLogger(LocalFileCache.class);
+
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * A single file in the cache.
+	 */
+	private static class Entry {
+		final File file;
+		final long size;
+		final byte[] md5;
+
+		Entry(File file, long size, byte[] md5) {
+			this.file = file;
+			this.size = size;
+			this.md5 = md5;
+		}
+	}
+
+	private final File directory;
+	private final long maxBytes;
+	// access order makes the eldest entry the least recently used.
+	private final LinkedHashMap<String, Entry> index = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long currentBytes = 0L;
+	private final AtomicLong hitCount = new AtomicLong(0);
+	private final AtomicLong missCount = new AtomicLong(0);
+	private final AtomicLong corruptCount = new AtomicLong(0);
+
+	/**
+	 *
+	 * @param directory
+	 *            The directory where the files are stored. Any existing files
+	 *            in this directory will be deleted.
+	 * @param maxBytes
+	 *            The maximum number of bytes of all files in the cache.
+	 * @throws IOException
+	 */
+	public LocalFileCache(File directory, long maxBytes) throws IOException {
+		ValidateArgument.required(directory, "directory");
+		ValidateArgument.requirement(maxBytes > 0, "maxBytes must be greater than zero");
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		if (directory.exists()) {
+			FileUtils.cleanDirectory(directory);
+		} else {
+			FileUtils.forceMkdir(directory);
+		}
+	}
+
+	/**
+	 * Create a cache in a new temporary directory that is deleted when the JVM
+	 * exits. Each process gets its own directory so processes on the same
+	 * machine cannot delete each other's files.
+	 *
+	 * @param prefix
+	 *            The prefix of the name of the directory.
+	 * @param maxBytes
+	 *            The maximum number of bytes of all files in the cache.
+	 * @return
+	 * @throws IOException
+	 */
+	public static LocalFileCache createInTempDirectory(String prefix, long maxBytes) throws IOException {
+		final File directory = Files.createTempDirectory(prefix).toFile();
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				try {
+					FileUtils.deleteDirectory(directory);
+				} catch (IOException e) {
+					// The directory is in the temporary directory of the machine.
+				}
+			}
+		});
+		return new LocalFileCache(directory, maxBytes);
+	}
+
+	/**
+	 * Get the bytes of a cached file.
+	 *
+	 * @param key
+	 * @return The bytes or null if the key is not in the cache.
+	 */
+	public byte[] get(String key) {
+		ValidateArgument.required(key, "key");
+		Entry entry;
+		synchronized (this) {
+			entry = index.get(key);
+		}
+		if (entry == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		// Read outside of the lock so readers do not block each other.
+		byte[] bytes = null;
+		try {
+			bytes = FileUtils.readFileToByteArray(entry.file);
+		} catch (IOException e) {
+			// The file was evicted by another thread while being read.
+		}
+		if (bytes == null || bytes.length != entry.size || !Arrays.equals(entry.md5, md5(bytes))) {
+			if (bytes != null) {
+				corruptCount.incrementAndGet();
+				log.warn("Deleting corrupt cache file: " + entry.file.getName());
+			}
+			remove(key, entry);
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return bytes;
+	}
+
+	/**
+	 * Open a stream on a cached file. The file is checked against its MD5
+	 * before the stream is opened.
+	 *
+	 * @param key
+	 * @return A stream of the file, which the caller must close, or null if
+	 *         the key is not in the cache.
+	 */
+	public InputStream open(String key) {
+		ValidateArgument.required(key, "key");
+		Entry entry;
+		synchronized (this) {
+			entry = index.get(key);
+		}
+		if (entry == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		InputStream in = null;
+		try {
+			in = new FileInputStream(entry.file);
+			// Open before checking so the checked file is the file that is read.
+			if (!Arrays.equals(entry.md5, md5(entry.file)) || entry.file.length() != entry.size) {
+				corruptCount.incrementAndGet();
+				log.warn("Deleting corrupt cache file: " + entry.file.getName());
+				Closer.closeQuietly(in);
+				in = null;
+			}
+		} catch (IOException e) {
+			// The file was evicted by another thread before it was opened.
+			Closer.closeQuietly(in);
+			in = null;
+		}
+		if (in == null) {
+			remove(key, entry);
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return in;
+	}
+
+	/**
+	 * Stream content into the cache, evicting the least recently used files
+	 * as needed. The content is only kept if its MD5 matches the expected MD5
+	 * and it is not larger than the cache. The stream is not closed.
+	 *
+	 * @param key
+	 * @param in
+	 *            The content to cache.
+	 * @param expectedMD5Hex
+	 *            The hex MD5 of the content.
+	 * @return True if the content is in the cache.
+	 */
+	public boolean put(String key, InputStream in, String expectedMD5Hex) {
+		ValidateArgument.required(key, "key");
+		ValidateArgument.required(in, "in");
+		ValidateArgument.required(expectedMD5Hex, "expectedMD5Hex");
+		synchronized (this) {
+			if (index.containsKey(key)) {
+				// Another thread already cached this content.
+				return true;
+			}
+		}
+		String name = UUID.randomUUID().toString();
+		File temp = new File(directory, name + TEMP_SUFFIX);
+		File file = new File(directory, name);
+		long size = 0L;
+		byte[] md5;
+		try {
+			DigestInputStream digestIn = new DigestInputStream(in, newMD5());
+			OutputStream out = FileUtils.openOutputStream(temp);
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int read;
+				while ((read = digestIn.read(buffer)) != -1) {
+					size += read;
+					if (size > maxBytes) {
+						break;
+					}
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+			if (size > maxBytes) {
+				// Too large to cache.
+				Closer.deleteQuietly(temp);
+				return false;
+			}
+			md5 = digestIn.getMessageDigest().digest();
+			if (!expectedMD5Hex.equalsIgnoreCase(Hex.encodeHexString(md5))) {
+				log.warn("Content not cached as its MD5 does not match: " + key);
+				Closer.deleteQuietly(temp);
+				return false;
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// The cache is an optimization so failing to write is not an error.
+			log.warn("Failed to cache: " + key, e);
+			Closer.deleteQuietly(temp);
+			Closer.deleteQuietly(file);
+			return false;
+		}
+		add(key, new Entry(file, size, md5));
+		return true;
+	}
+
+	/**
+	 * Add bytes to the cache, evicting the least recently used files as
+	 * needed. Bytes larger than the cache are not cached.
+	 *
+	 * @param key
+	 * @param bytes
+	 */
+	public void put(String key, byte[] bytes) {
+		ValidateArgument.required(key, "key");
+		ValidateArgument.required(bytes, "bytes");
+		if (bytes.length > maxBytes) {
+			return;
+		}
+		synchronized (this) {
+			if (index.containsKey(key)) {
+				// Another thread already cached this content.
+				return;
+			}
+		}
+		// Write to a temporary file and move it into place so no one reads a partial file.
+		String name = UUID.randomUUID().toString();
+		File temp = new File(directory, name + TEMP_SUFFIX);
+		File file = new File(directory, name);
+		try {
+			FileUtils.writeByteArrayToFile(temp, bytes);
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// The cache is an optimization so failing to write is not an error.
+			log.warn("Failed to cache: " + key, e);
+			Closer.deleteQuietly(temp);
+			Closer.deleteQuietly(file);
+			return;
+		}
+		add(key, new Entry(file, bytes.length, md5(bytes)));
+	}
+
+	/**
+	 * Add a file that has been moved into place to the index, evicting until
+	 * the cache is under the limit.
+	 *
+	 * @param key
+	 * @param entry
+	 */
+	private synchronized void add(String key, Entry entry) {
+		Entry existing = index.put(key, entry);
+		if (existing != null) {
+			currentBytes -= existing.size;
+			Closer.deleteQuietly(existing.file);
+		}
+		currentBytes += entry.size;
+		// evict until under the limit.
+		Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+		while (currentBytes > maxBytes && it.hasNext()) {
+			Entry eldest = it.next().getValue();
+			currentBytes -= eldest.size;
+			it.remove();
+			Closer.deleteQuietly(eldest.file);
+		}
+	}
+
+	/**
+	 * Remove the given entry if it is still in the cache.
+	 *
+	 * @param key
+	 * @param entry
+	 */
+	private synchronized void remove(String key, Entry entry) {
+		if (index.get(key) == entry) {
+			index.remove(key);
+			currentBytes -= entry.size;
+			Closer.deleteQuietly(entry.file);
+		}
+	}
+
+	private static byte[] md5(byte[] bytes) {
+		return newMD5().digest(bytes);
+	}
+
+	private static byte[] md5(File file) throws IOException {
+		DigestInputStream in = new DigestInputStream(new FileInputStream(file), newMD5());
+		try {
+			IOUtils.copyLarge(in, new NullOutputStream());
+		} finally {
+			in.close();
+		}
+		return in.getMessageDigest().digest();
+	}
+
+	private static MessageDigest newMD5() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * The number of reads served from the cache.
+	 *
+	 * @return
+	 */
+	@Override
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * The number of reads that were not in the cache.
+	 *
+	 * @return
+	 */
+	@Override
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * The number of files that failed the integrity check.
+	 *
+	 * @return
+	 */
+	public long getCorruptCount() {
+		return corruptCount.get();
+	}
+
+	@Override
+	public Map<String, Long> getOtherCounts() {
+		return Collections.singletonMap(CORRUPT, getCorruptCount());
+	}
+
+	/**
+	 * The total bytes of all files in the cache.
+	 *
+	 * @return
+	 */
+	public synchronized long getCurrentBytes() {
+		return currentBytes;
+	}
+
+	/**
+	 * The total bytes of all files in the cache.
+	 */
+	@Override
+	public long getCurrentSize() {
+		return getCurrentBytes();
+	}
+
+	/**
+	 * The number of files in the cache.
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+		return index.size();
+	}
+}
@@ -0,0 +1,48 @@
+package org.sagebionetworks.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Zig-zag variable length encoding of longs used by the binary formats, so
+ * small values such as IDs, counts and sizes use only a few bytes.
+ *
+ */
+public class VarLongUtils {
+
+	/**
+	 * Write a long using between one and ten bytes.
+	 * 
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	public static void writeVarLong(DataOutput out, long value) throws IOException {
+		long zigZag = (value << 1) ^ (value >> 63);
+		while ((zigZag & ~0x7FL) != 0) {
+			out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+			zigZag >>>= 7;
+		}
+		out.writeByte((int) zigZag);
+	}
+
+	/**
+	 * Read a long written by {@link #writeVarLong(DataOutput, long)}.
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static long readVarLong(DataInput in) throws IOException {
+		long zigZag = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			zigZag |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (zigZag >>> 1) ^ -(zigZag & 1);
+			}
+		}
+		throw new IOException("Malformed variable length long");
+	}
+}
@@ -0,0 +1,127 @@
+package org.sagebionetworks.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoundedLruCacheTest {
+
+	static class StubClock extends DefaultClock {
+		long now;
+
+		@Override
+		public long currentTimeMillis() {
+			return now;
+		}
+	}
+
+	StubClock stubClock;
+	BoundedLruCache.Sizer<String, String> lengthSizer;
+
+	@Before
+	public void before() {
+		stubClock = new StubClock();
+		stubClock.now = 1000L;
+		lengthSizer = new BoundedLruCache.Sizer<String, String>() {
+
+			@Override
+			public long sizeOf(String key, String value) {
+				return value.length();
+			}
+		};
+	}
+
+	@Test
+	public void testGetPutHitMiss() {
+		BoundedLruCache<String, String> cache = new BoundedLruCache<String, String>(10, lengthSizer);
+		assertNull(cache.get("a"));
+		cache.put("a", "123");
+		assertEquals("123", cache.get("a"));
+		assertEquals(1L, cache.getHitCount());
+		assertEquals(1L, cache.getMissCount());
+		assertEquals(0.5, cache.getHitRatio(), 0.0001);
+		assertEquals(3L, cache.getCurrentSize());
+	}
+
+	@Test
+	public void testHitRatioNoLookups() {
+		BoundedLruCache<String, String> cache = new BoundedLruCache<String, String>(10, lengthSizer);
+		assertEquals(0.0, cache.getHitRatio(), 0.0001);
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() {
+		BoundedLruCache<String, String> cache = new BoundedLruCache<String, String>(10, lengthSizer);
+		cache.put("a", "1234");
+		cache.put("b", "1234");
+		// touch a so b is the least recently used.
+		assertNotNull(cache.get("a"));
+		cache.put("c", "1234");
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertEquals(8L, cache.getCurrentSize());
+		assertEquals(1L, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testValueLargerThanMax() {
+		BoundedLruCache<String, String> cache = new BoundedLruCache<String, String>(10, lengthSizer);
+		cache.put("a", "1");
+		cache.put("b", "12345678901");
+		assertNull(cache.get("b"));
+		// the existing value should not be evicted.
+		assertEquals("1", cache.get("a"));
+	}
+
+	@Test
+	public void testReplaceValue() {
+		BoundedLruCache<String, String> cache = new BoundedLruCache<String, String>(10, lengthSizer);
+		cache.put("a", "12345");
+		cache.put("a", "12");
+		assertEquals("12", cache.get("a"));
+		assertEquals(2L, cache.getCurrentSize());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testRemoveAndClear() {
+		BoundedLruCache<String, String> cache = new BoundedLruCache<String, String>(10, lengthSizer);
+		cache.put("a", "12");
+		cache.put("b", "34");
+		assertEquals("12", cache.remove("a"));
+		assertNull(cache.remove("a"));
+		assertEquals(2L, cache.getCurrentSize());
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0L, cache.getCurrentSize());
+	}
+
+	@Test
+	public void testExpires() {
+		BoundedLruCache<String, String> cache = new BoundedLruCache<String, String>(10, 100L, lengthSizer, stubClock);
+		cache.put("a", "12");
+		stubClock.now = 1099L;
+		assertEquals("12", cache.get("a"));
+		stubClock.now = 1100L;
+		assertNull(cache.get("a"));
+		assertEquals(0L, cache.getCurrentSize());
+	}
+
+	@Test
+	public void testCountSizer() {
+		BoundedLruCache<String, String> cache = new BoundedLruCache<String, String>(2,
+				BoundedLruCache.<String, String> countSizer());
+		cache.put("a", "one");
+		cache.put("b", "two");
+		cache.put("c", "three");
+		assertEquals(2, cache.size());
+		assertNull(cache.get("a"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaxSizeZero() {
+		new BoundedLruCache<String, String>(0, lengthSizer);
+	}
+}
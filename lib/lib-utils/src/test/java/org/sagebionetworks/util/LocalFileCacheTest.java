@@ -0,0 +1,191 @@
+package org.sagebionetworks.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalFileCacheTest {
+
+	File directory;
+	LocalFileCache cache;
+
+	@Before
+	public void before() throws Exception {
+		directory = Files.createTempDirectory("LocalFileCacheTest").toFile();
+		cache = new LocalFileCache(directory, 10);
+	}
+
+	@After
+	public void after() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void testMissThenHit() {
+		byte[] bytes = new byte[] { 1, 2, 3 };
+		assertNull(cache.get("one"));
+		cache.put("one", bytes);
+		// call under test
+		assertArrayEquals(bytes, cache.get("one"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(3L, cache.getCurrentBytes());
+	}
+
+	@Test
+	public void testPutStreamThenOpen() throws Exception {
+		byte[] bytes = new byte[] { 1, 2, 3 };
+		assertNull(cache.open("one"));
+		// call under test
+		assertTrue(cache.put("one", new ByteArrayInputStream(bytes), DigestUtils.md5Hex(bytes)));
+		InputStream in = cache.open("one");
+		try {
+			assertArrayEquals(bytes, IOUtils.toByteArray(in));
+		} finally {
+			in.close();
+		}
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(3L, cache.getCurrentBytes());
+		// no temporary files are left behind.
+		assertEquals(1, directory.listFiles().length);
+	}
+
+	@Test
+	public void testPutStreamMD5Mismatch() throws Exception {
+		byte[] bytes = new byte[] { 1, 2, 3 };
+		// call under test
+		assertFalse(cache.put("one", new ByteArrayInputStream(bytes), DigestUtils.md5Hex(new byte[] { 1 })));
+		assertEquals(0, cache.size());
+		assertEquals(0, directory.listFiles().length);
+	}
+
+	@Test
+	public void testPutStreamTooLarge() throws Exception {
+		byte[] bytes = new byte[11];
+		// call under test
+		assertFalse(cache.put("one", new ByteArrayInputStream(bytes), DigestUtils.md5Hex(bytes)));
+		assertEquals(0, cache.size());
+		assertEquals(0, directory.listFiles().length);
+	}
+
+	@Test
+	public void testOpenCorruptFile() throws Exception {
+		cache.put("one", new byte[] { 1, 2, 3 });
+		File file = directory.listFiles()[0];
+		FileUtils.writeByteArrayToFile(file, new byte[] { 1, 2, 4 });
+		// call under test
+		assertNull(cache.open("one"));
+		assertEquals(1, cache.getCorruptCount());
+		assertEquals(0, cache.size());
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() {
+		cache.put("one", new byte[4]);
+		cache.put("two", new byte[4]);
+		// use one so two is the least recently used.
+		cache.get("one");
+		// call under test
+		cache.put("three", new byte[4]);
+		assertNull(cache.get("two"));
+		assertEquals(2, cache.size());
+		assertEquals(8L, cache.getCurrentBytes());
+		// the file of the evicted entry must be deleted.
+		assertEquals(2, directory.listFiles().length);
+	}
+
+	@Test
+	public void testTooLarge() {
+		cache.put("one", new byte[11]);
+		assertEquals(0, cache.size());
+		assertEquals(0, directory.listFiles().length);
+	}
+
+	@Test
+	public void testCorruptFile() throws Exception {
+		cache.put("one", new byte[] { 1, 2, 3 });
+		File file = directory.listFiles()[0];
+		FileUtils.writeByteArrayToFile(file, new byte[] { 1, 2, 4 });
+		// call under test
+		assertNull(cache.get("one"));
+		assertEquals(1, cache.getCorruptCount());
+		assertEquals(0, cache.size());
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testMissingFile() throws Exception {
+		cache.put("one", new byte[] { 1, 2, 3 });
+		FileUtils.cleanDirectory(directory);
+		// call under test
+		assertNull(cache.get("one"));
+		assertEquals(0, cache.getCorruptCount());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testExistingFilesDeleted() throws Exception {
+		File old = new File(directory, "old");
+		FileUtils.writeByteArrayToFile(old, new byte[] { 1 });
+		// call under test
+		new LocalFileCache(directory, 10);
+		assertFalse(old.exists());
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		cache = new LocalFileCache(directory, 1000);
+		final AtomicInteger errors = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 8; i++) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int j = 0; j < 200; j++) {
+						String key = "key" + (j % 150);
+						byte[] expected = key.getBytes();
+						byte[] bytes = cache.get(key);
+						if (bytes == null) {
+							cache.put(key, expected);
+						} else if (!new String(bytes).equals(key)) {
+							errors.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+		assertEquals(0, errors.get());
+		assertEquals(0, cache.getCorruptCount());
+		assertTrue(cache.getCurrentBytes() <= 1000);
+		// every cached entry has exactly one file.
+		Set<String> names = new HashSet<String>();
+		Collections.addAll(names, directory.list());
+		assertEquals(cache.size(), names.size());
+	}
+}
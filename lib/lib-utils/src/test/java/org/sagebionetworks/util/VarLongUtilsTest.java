@@ -0,0 +1,54 @@
+package org.sagebionetworks.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class VarLongUtilsTest {
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		long[] values = new long[] { 0, 1, -1, 63, 64, -64, -65, 127, 128, 1L << 35, Long.MAX_VALUE, Long.MIN_VALUE };
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(out);
+		for (long value : values) {
+			VarLongUtils.writeVarLong(dos, value);
+		}
+		dos.flush();
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+		for (long value : values) {
+			assertEquals(value, VarLongUtils.readVarLong(in));
+		}
+	}
+
+	@Test
+	public void testSmallValuesUseOneByte() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(out);
+		VarLongUtils.writeVarLong(dos, 63);
+		VarLongUtils.writeVarLong(dos, -64);
+		dos.flush();
+		assertEquals(2, out.size());
+	}
+
+	@Test
+	public void testMalformed() throws Exception {
+		byte[] bytes = new byte[11];
+		Arrays.fill(bytes, (byte) 0x80);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		try {
+			VarLongUtils.readVarLong(in);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -223,6 +223,34 @@ public interface NodeDAO {
 	 */
 	public Set<Long> getAvailableNodes(List<Long> nodeIds);
 	
+	/**
+	 * Get the permissions benefactor of each of the given nodes with a single
+	 * query.
+	 * 
+	 * @param nodeIds
+	 * @return Map of node ID to benefactor ID. Nodes that do not exist are not
+	 *         included.
+	 */
+	public Map<Long, Long> getBenefactors(Collection<Long> nodeIds);
+	
+	/**
+	 * Get the current version of each of the given nodes with a single query.
+	 * 
+	 * @param nodeIds
+	 * @return Nodes that do not exist are not included.
+	 */
+	public List<Node> getNodes(Collection<Long> nodeIds);
+	
+	/**
+	 * Get the annotations of the current version of each of the given nodes
+	 * with a single query.
+	 * 
+	 * @param nodeIds
+	 * @return Map of node ID to annotations. Nodes that do not exist are not
+	 *         included.
+	 */
+	public Map<Long, NamedAnnotations> getAnnotationsForCurrentVersions(Collection<Long> nodeIds);
+	
 	/**
 	 * True if the node exists and is not in the trash.
 	 * @param nodeId
@@ -277,6 +305,18 @@ public interface NodeDAO {
 	 */
 	public List<EntityHeader> getEntityPath(String nodeId) throws DatastoreException, NotFoundException;
 	
+	/**
+	 * Get the full path of each of the given entities. The paths of nodes in
+	 * the closure table are read with a single query. Any other node is read
+	 * with {@link #getEntityPath(String)}.
+	 * 
+	 * @param nodeIds
+	 * @return Map of node ID to path. Nodes that do not exist are not
+	 *         included.
+	 * @throws DatastoreException
+	 */
+	public Map<Long, List<EntityHeader>> getEntityPaths(Collection<Long> nodeIds) throws DatastoreException;
+	
 	/**
 	 * Lookup a node id using its unique path.
 	 * @param path
@@ -556,4 +596,20 @@ public interface NodeDAO {
 	 * @return
 	 */
 	public List<IdAndEtag> getChildren(long parentId);
+
+	/**
+	 * Re-encode the legacy (zipped XML) annotations and reference blobs of
+	 * every revision of the next page of nodes in the compact binary format.
+	 * A blob is only replaced if it has not changed since it was read. Legacy
+	 * reference maps with more than one reference cannot be converted and
+	 * are left as they are.
+	 * 
+	 * @param afterNodeId
+	 *            Only nodes with a larger ID are processed.
+	 * @param limit
+	 *            The maximum number of nodes to process.
+	 * @return The largest ID of the processed nodes, or -1 if there were no
+	 *         nodes after the given ID.
+	 */
+	public long reencodeLegacyRevisionBlobs(long afterNodeId, long limit);
 }
@@ -0,0 +1,61 @@
+package org.sagebionetworks.repo.model.dao;
+
+/**
+ * Abstraction for the progress of a backfill that makes a single pass over the
+ * rows of a table in ID order. The progress is stored in the database so a
+ * backfill continues where it stopped on any machine, and stops for good once
+ * its pass is complete.
+ *
+ */
+public interface BackfillProgressDao {
+
+	/**
+	 * Get the last ID processed by the given backfill.
+	 * 
+	 * @param name
+	 * @return -1 if the backfill has not started.
+	 */
+	public long getLastId(String name);
+
+	/**
+	 * Record the last ID processed by the given backfill, unless the backfill
+	 * was rewound since the expected last ID was read.
+	 * 
+	 * @param name
+	 * @param expectedLastId
+	 *            The last ID that was read before processing.
+	 * @param lastId
+	 * @return False if the last ID was changed by another caller.
+	 */
+	public boolean setLastId(String name, long expectedLastId, long lastId);
+
+	/**
+	 * Has the given backfill completed its pass?
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public boolean isComplete(String name);
+
+	/**
+	 * Record that the given backfill has completed its pass, unless the
+	 * backfill was rewound since the last ID was read.
+	 * 
+	 * @param name
+	 * @param lastId
+	 *            The last ID that was read before the pass was found to be
+	 *            complete.
+	 * @return False if the last ID was changed by another caller.
+	 */
+	public boolean setComplete(String name, long lastId);
+
+	/**
+	 * Ensure the given backfill will process the given ID again, even if its
+	 * pass was complete.
+	 * 
+	 * @param name
+	 * @param id
+	 */
+	public void rewind(String name, long id);
+
+}
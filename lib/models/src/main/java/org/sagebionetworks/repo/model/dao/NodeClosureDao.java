@@ -0,0 +1,106 @@
+package org.sagebionetworks.repo.model.dao;
+
+import java.util.List;
+
+/**
+ * Abstraction for the node closure table. The closure table contains one row
+ * for each node and each of its ancestors (including the node itself) so a
+ * node's benefactor, project and path can be found with a single indexed read
+ * rather than walking the hierarchy one level at a time.
+ * <p>
+ * A node is 'materialized' when the closure table contains its rows. A node is
+ * only materialized when its parent is materialized, so the rows of a
+ * materialized node are always complete. Nodes that are not yet materialized
+ * (for example, nodes created by migration) are added by a backfill that makes
+ * a single pass over all nodes with {@link #backfillNextPage(int)}, and callers
+ * must fall back to walking the hierarchy for such nodes. Any change that leaves
+ * a node without rows rewinds the backfill to that node.
+ *
+ */
+public interface NodeClosureDao {
+
+	/**
+	 * Add a newly created node to the closure table. The node is only added if
+	 * it has no parent or its parent is materialized.
+	 *
+	 * @param nodeId
+	 * @param parentId
+	 *            The parent of the new node. Null for the root.
+	 */
+	public void addNode(Long nodeId, Long parentId);
+
+	/**
+	 * Update the closure table for a node (and all of its descendants) that
+	 * has been moved to a new parent.
+	 *
+	 * @param nodeId
+	 * @param newParentId
+	 */
+	public void moveNode(Long nodeId, Long newParentId);
+
+	/**
+	 * Ensure the closure table matches the given parent of a node. This is a
+	 * no-op if the node is already materialized with the given parent.
+	 *
+	 * @param nodeId
+	 * @param parentId
+	 */
+	public void synchronizeNode(Long nodeId, Long parentId);
+
+	/**
+	 * Is the given node materialized in the closure table?
+	 *
+	 * @param nodeId
+	 * @return
+	 */
+	public boolean isMaterialized(Long nodeId);
+
+	/**
+	 * Get the closest ancestor of the given node (including itself) with an
+	 * ACL.
+	 *
+	 * @param nodeId
+	 * @return Null if the node is not materialized or no ancestor has an ACL.
+	 */
+	public Long getBenefactorId(Long nodeId);
+
+	/**
+	 * Get the closest ancestor of the given node (including itself) that is a
+	 * project.
+	 *
+	 * @param nodeId
+	 * @return Null if the node is not materialized or is not within a project.
+	 */
+	public Long getProjectId(Long nodeId);
+
+	/**
+	 * Get the IDs of all ancestors of the given node.
+	 *
+	 * @param nodeId
+	 * @return Ordered from the root to the node itself. Empty if the node is
+	 *         not materialized.
+	 */
+	public List<Long> getAncestorIds(Long nodeId);
+
+	/**
+	 * Materialize the next page of nodes of the backfill, in ID order, along
+	 * with any of their ancestors that are missing. The position of the
+	 * backfill is stored in the database, and the backfill is marked complete
+	 * once there are no more nodes.
+	 *
+	 * @param limit
+	 *            The maximum number of nodes in the page.
+	 * @return The number of nodes that were processed. Zero when there are no
+	 *         more nodes or the next node cannot be added until its ancestors
+	 *         exist.
+	 */
+	public int backfillNextPage(int limit);
+
+	/**
+	 * Has the backfill processed all nodes without being rewound since?
+	 *
+	 * @return
+	 */
+	public boolean isBackfillComplete();
+
+}
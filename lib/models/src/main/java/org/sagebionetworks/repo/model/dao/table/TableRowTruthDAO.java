@@ -2,6 +2,7 @@ package org.sagebionetworks.repo.model.dao.table;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
 import org.sagebionetworks.repo.model.table.ColumnChange;
 import org.sagebionetworks.repo.model.table.ColumnModel;
@@ -157,6 +158,28 @@ public interface TableRowTruthDAO {
 	 * @return
 	 */
 	public List<TableRowChange> listRowSetsKeysForTableGreaterThanVersion(String tableId, long version);
+	
+	/**
+	 * The row version index of a table includes every row change with a
+	 * version greater than the returned version. Row changes appended before
+	 * the index existed are not included.
+	 * 
+	 * @param tableId
+	 * @return Null if no rows have been indexed for the table.
+	 */
+	public Long getRowVersionIndexStart(String tableId);
+	
+	/**
+	 * Use the row version index to find one of the given rows that was changed
+	 * in a version greater than the given version (exclusive). Only changes
+	 * after {@link #getRowVersionIndexStart(String)} are considered.
+	 * 
+	 * @param tableId
+	 * @param rowIds
+	 * @param version
+	 * @return The ID of a changed row or null if none of the rows changed.
+	 */
+	public Long findRowChangedAfterVersion(String tableId, Set<Long> rowIds, long version);
 
 	/**
 	 * Get the TableRowChange for a given tableId and row version number.
@@ -1,11 +1,11 @@
 package org.sagebionetworks.repo.model.semaphore;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.sagebionetworks.common.util.Clock;
 import org.sagebionetworks.util.ValidateArgument;
@@ -13,19 +13,31 @@ import org.sagebionetworks.util.ValidateArgument;
 /**
  * An in-memory implementation of a counting semaphore. This class is designed
  * to be a thread-safe singleton.
- * 
- * 
+ *
+ * Each key is updated atomically with {@link ConcurrentHashMap#compute}, so
+ * callers only contend with other callers using the same key rather than with
+ * every caller. A key is removed as soon as it holds no locks, and keys with
+ * only expired locks are swept periodically, so the map only holds keys with
+ * active locks.
+ *
  */
 public class MemoryCountingSemaphoreImpl implements MemoryCountingSemaphore {
-	
+
+	/**
+	 * The minimum time between sweeps of keys with only expired locks.
+	 */
+	public static final long SWEEP_INTERVAL_MS = 60 * 1000;
+
 	/*
-	 * Note: This is not a synchronized map. All access to this map must occur in a synchronized method
-	 * making this singleton the lock (not the map).
+	 * Note: The lists in this map are not thread-safe. A list must only be
+	 * accessed within a compute method of the map for its key.
 	 */
-	private Map<String, List<Lock>> keyTokenMap = new HashMap<String, List<Lock>>();
+	private ConcurrentHashMap<String, List<Lock>> keyTokenMap = new ConcurrentHashMap<String, List<Lock>>();
 	// abstraction from the system clock.
 	private Clock clock;
-	
+	// the time of the next sweep.
+	private AtomicLong nextSweepMS = new AtomicLong(0L);
+
 	/**
 	 * Create a new semaphore given a clock.
 	 * @param clock
@@ -36,89 +48,122 @@ public class MemoryCountingSemaphoreImpl implements MemoryCountingSemaphore {
 	}
 
 	@Override
-	public synchronized String attemptToAcquireLock(String key, long timeoutSec,
-			int maxLockCount) {
+	public String attemptToAcquireLock(String key, final long timeoutSec,
+			final int maxLockCount) {
 		ValidateArgument.required(key, "key");
-		// Is there an entry in the map for this key?
-		List<Lock> locks = keyTokenMap.get(key);
-		if(locks == null){
-			locks = new LinkedList<Lock>();
-			keyTokenMap.put(key, locks);
-		}
-		// remove expired locks
-		long now = clock.currentTimeMillis();
-		Iterator<Lock> it = locks.iterator();
-		while(it.hasNext()){
-			Lock lock = it.next();
-			if(now > lock.getExpiresTimeMs()){
-				it.remove();
+		final long now = clock.currentTimeMillis();
+		final String[] token = new String[1];
+		keyTokenMap.compute(key, (k, locks) -> {
+			if (locks == null) {
+				locks = new LinkedList<Lock>();
 			}
-		}
-		// are we out of locks for this key?
-		if(locks.size() < maxLockCount){
-			// a new lock can be issued
-			Lock lock = new Lock();
-			lock.setExpiresTimeMs(now+(timeoutSec*1000));
-			lock.setToken(UUID.randomUUID().toString());
-			locks.add(lock);
-			return lock.getToken();
-		}
-		// a new token could not be issued.
-		return null;
+			// remove expired locks
+			removeExpiredLocks(locks, now);
+			// are we out of locks for this key?
+			if (locks.size() < maxLockCount) {
+				// a new lock can be issued
+				Lock lock = new Lock();
+				lock.setExpiresTimeMs(now + (timeoutSec * 1000));
+				lock.setToken(UUID.randomUUID().toString());
+				locks.add(lock);
+				token[0] = lock.getToken();
+			}
+			// keys without locks are removed.
+			return locks.isEmpty() ? null : locks;
+		});
+		sweepIfNeeded(now);
+		// null if a new token could not be issued.
+		return token[0];
 	}
 
 	@Override
-	public synchronized void refreshLockTimeout(String key, String tokenString, long timeoutSec) {
+	public void refreshLockTimeout(String key, final String tokenString, final long timeoutSec) {
 		ValidateArgument.required(key, "key");
 		ValidateArgument.required(tokenString, "token");
-		// Get the tokens for this key
-		List<Lock> locks = keyTokenMap.get(key);
-		boolean refreshed = false;
-		if(locks != null){
-			Iterator<Lock> it = locks.iterator();
-			while(it.hasNext()){
-				Lock lock = it.next();
-				if(lock.getToken().equals(tokenString)){
+		final boolean[] refreshed = new boolean[1];
+		keyTokenMap.computeIfPresent(key, (k, locks) -> {
+			for (Lock lock : locks) {
+				if (lock.getToken().equals(tokenString)) {
 					// found a match.
 					long now = clock.currentTimeMillis();
-					lock.setExpiresTimeMs(now+(timeoutSec*1000));
-					refreshed = true;
+					lock.setExpiresTimeMs(now + (timeoutSec * 1000));
+					refreshed[0] = true;
 					break;
 				}
 			}
-		}
-		if(!refreshed){
-			throw new LockReleaseFailedException("Key: " + key + " token: "	+ tokenString + " has expired.");
+			return locks;
+		});
+		if (!refreshed[0]) {
+			throw new LockReleaseFailedException("Key: " + key + " token: " + tokenString + " has expired.");
 		}
 	}
 
 	@Override
-	public synchronized void releaseLock(String key, String tokenString) {
+	public void releaseLock(String key, final String tokenString) {
 		ValidateArgument.required(key, "key");
 		ValidateArgument.required(tokenString, "token");
-		// Get the tokens for this key
-		List<Lock> locks = keyTokenMap.get(key);
-		boolean released = false;
-		if(locks != null){
+		final boolean[] released = new boolean[1];
+		keyTokenMap.computeIfPresent(key, (k, locks) -> {
 			Iterator<Lock> it = locks.iterator();
-			while(it.hasNext()){
+			while (it.hasNext()) {
 				Lock lock = it.next();
-				if(lock.getToken().equals(tokenString)){
+				if (lock.getToken().equals(tokenString)) {
 					// found a match.
 					it.remove();
-					released = true;
+					released[0] = true;
 					break;
 				}
 			}
-		}
-		if(!released){
-			throw new LockReleaseFailedException("Key: " + key + " token: "	+ tokenString + " has expired.");
+			// keys without locks are removed.
+			return locks.isEmpty() ? null : locks;
+		});
+		if (!released[0]) {
+			throw new LockReleaseFailedException("Key: " + key + " token: " + tokenString + " has expired.");
 		}
 	}
 
 	@Override
-	public synchronized void releaseAllLocks() {
+	public void releaseAllLocks() {
 		keyTokenMap.clear();
 	}
 
+	/**
+	 * The number of keys currently tracked.
+	 *
+	 * @return
+	 */
+	public int getKeyCount() {
+		return keyTokenMap.size();
+	}
+
+	/**
+	 * Remove the keys that only hold expired locks. Only one caller will sweep
+	 * per interval, and the time of the caller is used so the clock is not
+	 * read again.
+	 *
+	 * @param now
+	 */
+	void sweepIfNeeded(final long now) {
+		long next = nextSweepMS.get();
+		if (now < next || !nextSweepMS.compareAndSet(next, now + SWEEP_INTERVAL_MS)) {
+			return;
+		}
+		for (String key : keyTokenMap.keySet()) {
+			keyTokenMap.computeIfPresent(key, (k, locks) -> {
+				removeExpiredLocks(locks, now);
+				return locks.isEmpty() ? null : locks;
+			});
+		}
+	}
+
+	private static void removeExpiredLocks(List<Lock> locks, long now) {
+		Iterator<Lock> it = locks.iterator();
+		while (it.hasNext()) {
+			Lock lock = it.next();
+			if (now > lock.getExpiresTimeMs()) {
+				it.remove();
+			}
+		}
+	}
+
 }
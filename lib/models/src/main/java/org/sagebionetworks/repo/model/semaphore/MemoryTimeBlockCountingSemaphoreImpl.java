@@ -1,15 +1,50 @@
 package org.sagebionetworks.repo.model.semaphore;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.sagebionetworks.common.util.Clock;
+import org.sagebionetworks.common.util.ClockImpl;
 import org.sagebionetworks.util.ValidateArgument;
 
+/**
+ * Each key is updated atomically with {@link ConcurrentHashMap#compute}, so
+ * callers only contend with other callers using the same key. Keys with
+ * expired semaphores are swept periodically so the map does not grow with
+ * every key ever seen.
+ *
+ */
 public class MemoryTimeBlockCountingSemaphoreImpl implements MemoryTimeBlockCountingSemaphore{
-	private Map<String, SimpleSemaphore> keySemaphoreMap = new HashMap<String,SimpleSemaphore>();
-	
+
+	/**
+	 * The minimum time between sweeps of expired keys.
+	 */
+	public static final long SWEEP_INTERVAL_MS = 60 * 1000;
+
+	/*
+	 * Note: SimpleSemaphore is not thread-safe. A semaphore must only be
+	 * accessed within a compute method of the map for its key.
+	 */
+	private ConcurrentHashMap<String, SimpleSemaphore> keySemaphoreMap = new ConcurrentHashMap<String,SimpleSemaphore>();
+	// abstraction from the system clock.
+	private Clock clock;
+	// the time of the next sweep.
+	private AtomicLong nextSweepMS = new AtomicLong(0L);
+
+	public MemoryTimeBlockCountingSemaphoreImpl(){
+		this(new ClockImpl());
+	}
+
+	/**
+	 * Create a new semaphore given a clock.
+	 * @param clock
+	 */
+	public MemoryTimeBlockCountingSemaphoreImpl(Clock clock){
+		this.clock = clock;
+	}
+
 	@Override
-	public synchronized boolean attemptToAcquireLock(String key, long timeoutSec, long maxLockCount) {
+	public boolean attemptToAcquireLock(String key, final long timeoutSec, final long maxLockCount) {
 		ValidateArgument.required(key, "key");
 		ValidateArgument.requirement(timeoutSec >= 0, "timeoutSec must be a positive value");
 		ValidateArgument.requirement(maxLockCount >= 0, "maxLockCount must be a positive value");
@@ -18,43 +53,65 @@ public class MemoryTimeBlockCountingSemaphoreImpl implements MemoryTimeBlockCoun
 			//no need to track nor do anything if the max number of acquirable locks is 0
 			return false;
 		}
-		
-		SimpleSemaphore semaphore = keySemaphoreMap.get(key);
-		
-		if(semaphore == null){
-			//no semaphore created for key yet
-			//create new semaphore and increment
-			SimpleSemaphore newSem = new SimpleSemaphore();
-			resetAndIncrementSemaphore(newSem, timeoutSec);
-			keySemaphoreMap.put(key, newSem);
-			return true;
-		}
-		
-		if(semaphore.isExpired()){
-			//reset and increment if semaphore has expired
-			resetAndIncrementSemaphore(semaphore, timeoutSec);
-			return true;
-		}
-		
-		if(semaphore.getCount() < maxLockCount){
-			//current count not exceeding maximum. just increment
-			semaphore.increment();
-			return true;
-		}
-		
-		return false;
+		final long now = clock.currentTimeMillis();
+		final boolean[] acquired = new boolean[1];
+		keySemaphoreMap.compute(key, (k, semaphore) -> {
+			if(semaphore == null){
+				//no semaphore created for key yet
+				//create new semaphore and increment
+				semaphore = new SimpleSemaphore();
+				resetAndIncrementSemaphore(semaphore, now, timeoutSec);
+				acquired[0] = true;
+			}else if(semaphore.isExpired(now)){
+				//reset and increment if semaphore has expired
+				resetAndIncrementSemaphore(semaphore, now, timeoutSec);
+				acquired[0] = true;
+			}else if(semaphore.getCount() < maxLockCount){
+				//current count not exceeding maximum. just increment
+				semaphore.increment();
+				acquired[0] = true;
+			}
+			return semaphore;
+		});
+		sweepIfNeeded(now);
+		return acquired[0];
 	}
 	
 	//resets the semaphore, give it a new expiration and increment the count
-	private static void resetAndIncrementSemaphore(SimpleSemaphore semaphore, long timeoutSec){
-		long newExpiration = System.currentTimeMillis() + timeoutSec * 1000;
+	private static void resetAndIncrementSemaphore(SimpleSemaphore semaphore, long now, long timeoutSec){
+		long newExpiration = now + timeoutSec * 1000;
 		semaphore.setExpiration(newExpiration);
 		semaphore.resetCount();
 		semaphore.increment();
 	}
 
+	/**
+	 * Remove the keys with expired semaphores. Only one caller will sweep per
+	 * interval.
+	 * 
+	 * @param now
+	 */
+	void sweepIfNeeded(final long now){
+		long next = nextSweepMS.get();
+		if(now < next || !nextSweepMS.compareAndSet(next, now + SWEEP_INTERVAL_MS)){
+			return;
+		}
+		for(String key: keySemaphoreMap.keySet()){
+			keySemaphoreMap.computeIfPresent(key, (k, semaphore) -> semaphore.isExpired(now) ? null : semaphore);
+		}
+	}
+
+	/**
+	 * The number of keys currently tracked.
+	 * 
+	 * @return
+	 */
+	public int getKeyCount(){
+		return keySemaphoreMap.size();
+	}
+
 	@Override
-	public synchronized void releaseAllLocks() {
+	public void releaseAllLocks() {
 		keySemaphoreMap.clear();
 	}
 
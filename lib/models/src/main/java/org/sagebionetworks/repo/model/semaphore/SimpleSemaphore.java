@@ -32,6 +32,10 @@ public class SimpleSemaphore {
 	}
 	
 	public boolean isExpired(){
-		return  System.currentTimeMillis() >= this.expirationTimeMilis;
+		return isExpired(System.currentTimeMillis());
+	}
+	
+	public boolean isExpired(long now){
+		return now >= this.expirationTimeMilis;
 	}
 }
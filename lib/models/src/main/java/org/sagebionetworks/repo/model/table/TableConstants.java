@@ -187,6 +187,7 @@ public class TableConstants {
 	public static final String EXPIRES_PARAM = "bExpires";
 	public static final String ENTITY_REPLICATION_ALIAS = "R";
 	public static final String ANNOTATION_REPLICATION_ALIAS = "A";
+	public static final String VIEW_ROWS_ALIAS = "V";
 	
 	//  Select the CRC32 from the entity replication for a given type and scope
 	public static final String SQL_ENTITY_REPLICATION_CRC_32_TEMPLATE = 
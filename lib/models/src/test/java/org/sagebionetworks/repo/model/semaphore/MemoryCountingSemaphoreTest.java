@@ -96,5 +96,33 @@ public class MemoryCountingSemaphoreTest {
 			// expected
 		}
 	}
+	
+	@Test
+	public void testReleaseLastLockRemovesKey(){
+		String key = "someKey";
+		String token = memoryCountingSemaphore.attemptToAcquireLock(key, 1000, 1);
+		assertEquals(1, memoryCountingSemaphore.getKeyCount());
+		memoryCountingSemaphore.releaseLock(key, token);
+		assertEquals(0, memoryCountingSemaphore.getKeyCount());
+	}
+	
+	@Test
+	public void testExpiredKeysSwept(){
+		long afterSweep = 1000L + MemoryCountingSemaphoreImpl.SWEEP_INTERVAL_MS;
+		when(mockClock.currentTimeMillis()).thenReturn(1000L, 1000L, afterSweep);
+		String expiredToken = memoryCountingSemaphore.attemptToAcquireLock("expired", 1, 1);
+		assertNotNull(memoryCountingSemaphore.attemptToAcquireLock("active", MemoryCountingSemaphoreImpl.SWEEP_INTERVAL_MS, 1));
+		assertEquals(2, memoryCountingSemaphore.getKeyCount());
+		// call under test
+		assertNotNull(memoryCountingSemaphore.attemptToAcquireLock("new", 1, 1));
+		// only the key with expired locks is removed.
+		assertEquals(2, memoryCountingSemaphore.getKeyCount());
+		try{
+			memoryCountingSemaphore.releaseLock("expired", expiredToken);
+			fail("LockReleaseFailedException expected");
+		}catch(LockReleaseFailedException e){
+			// expected
+		}
+	}
 
 }
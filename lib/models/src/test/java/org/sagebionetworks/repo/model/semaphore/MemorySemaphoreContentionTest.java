@@ -0,0 +1,144 @@
+package org.sagebionetworks.repo.model.semaphore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.sagebionetworks.common.util.ClockImpl;
+
+/**
+ * Many threads acquire locks on a few keys at the same time, and the limit of
+ * each key must hold under contention.
+ *
+ */
+public class MemorySemaphoreContentionTest {
+
+	private int numberOfThreads = 16;
+	private int callsPerThread = 2000;
+	private int numberOfKeys = 4;
+	private int maxLockCount = 2;
+
+	@Test
+	public void testCountingSemaphoreContention() throws InterruptedException {
+		final MemoryCountingSemaphoreImpl semaphore = new MemoryCountingSemaphoreImpl(new ClockImpl());
+		final AtomicInteger[] held = new AtomicInteger[numberOfKeys];
+		final AtomicInteger[] maxHeld = new AtomicInteger[numberOfKeys];
+		for (int i = 0; i < numberOfKeys; i++) {
+			held[i] = new AtomicInteger(0);
+			maxHeld[i] = new AtomicInteger(0);
+		}
+		final AtomicInteger acquired = new AtomicInteger(0);
+		runConcurrently(new Runnable() {
+
+			@Override
+			public void run() {
+				for (int j = 0; j < callsPerThread; j++) {
+					int keyIndex = j % numberOfKeys;
+					String key = "key" + keyIndex;
+					String token = semaphore.attemptToAcquireLock(key, 60, maxLockCount);
+					if (token != null) {
+						acquired.incrementAndGet();
+						int count = held[keyIndex].incrementAndGet();
+						updateMax(maxHeld[keyIndex], count);
+						// hold the lock for a moment so the holders overlap.
+						Thread.yield();
+						held[keyIndex].decrementAndGet();
+						semaphore.releaseLock(key, token);
+					}
+				}
+			}
+		});
+		for (int i = 0; i < numberOfKeys; i++) {
+			assertTrue("More than the max locks were issued for key" + i, maxHeld[i].get() <= maxLockCount);
+		}
+		assertTrue(acquired.get() > 0);
+		assertEquals("Keys without locks should be removed", 0, semaphore.getKeyCount());
+	}
+
+	@Test
+	public void testTimeBlockSemaphoreLimitUnderContention() throws InterruptedException {
+		final MemoryTimeBlockCountingSemaphoreImpl semaphore = new MemoryTimeBlockCountingSemaphoreImpl();
+		final AtomicInteger[] acquired = new AtomicInteger[numberOfKeys];
+		for (int i = 0; i < numberOfKeys; i++) {
+			acquired[i] = new AtomicInteger(0);
+		}
+		final long maxPerKey = 100;
+		runConcurrently(new Runnable() {
+
+			@Override
+			public void run() {
+				for (int j = 0; j < callsPerThread; j++) {
+					int keyIndex = j % numberOfKeys;
+					if (semaphore.attemptToAcquireLock("key" + keyIndex, 60, maxPerKey)) {
+						acquired[keyIndex].incrementAndGet();
+					}
+				}
+			}
+		});
+		// far more attempts than the limit so each key is issued exactly the limit.
+		for (int i = 0; i < numberOfKeys; i++) {
+			assertEquals(maxPerKey, acquired[i].get());
+		}
+	}
+
+	@Test
+	public void testTimeBlockSemaphoreNoLocksLost() throws InterruptedException {
+		final MemoryTimeBlockCountingSemaphoreImpl semaphore = new MemoryTimeBlockCountingSemaphoreImpl();
+		final AtomicInteger acquired = new AtomicInteger(0);
+		final long maxPerKey = numberOfThreads * callsPerThread;
+		runConcurrently(new Runnable() {
+
+			@Override
+			public void run() {
+				for (int j = 0; j < callsPerThread; j++) {
+					if (semaphore.attemptToAcquireLock("key" + (j % numberOfKeys), 60, maxPerKey)) {
+						acquired.incrementAndGet();
+					}
+				}
+			}
+		});
+		// no lock can be lost when the limit is never reached.
+		assertEquals(numberOfThreads * callsPerThread, acquired.get());
+	}
+
+	/**
+	 * Start the given runnable on each thread at the same time and wait for
+	 * all of them to finish.
+	 */
+	private void runConcurrently(final Runnable runnable) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		final CountDownLatch start = new CountDownLatch(1);
+		for (int i = 0; i < numberOfThreads; i++) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+					runnable.run();
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+	}
+
+	private static void updateMax(AtomicInteger max, int value) {
+		int current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value)) {
+				return;
+			}
+		}
+	}
+}
@@ -5,33 +5,20 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.any;
-import static org.mockito.Mockito.verifyNoMoreInteractions;
-import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
 
-
-import java.util.Map;
-
 import org.junit.Before;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.mockito.runners.MockitoJUnitRunner;
-import org.springframework.test.util.ReflectionTestUtils;
+import org.sagebionetworks.common.util.Clock;
 
-@RunWith(MockitoJUnitRunner.class)
 public class MempryTimeBlockCountingSemaphoreTest {
 	
-	private MemoryTimeBlockCountingSemaphore memoryTimeBlockCountingSemaphore;
-	
-	@Mock
-	private Map<String, SimpleSemaphore> keySemaphoreMap;
+	private MemoryTimeBlockCountingSemaphoreImpl memoryTimeBlockCountingSemaphore;
 	
 	@Mock
-	private SimpleSemaphore mockSemaphore;
+	private Clock mockClock;
 	
 	private static String key = "some key";
 	
@@ -42,8 +29,8 @@ public class MempryTimeBlockCountingSemaphoreTest {
 	@Before
 	public void setUp() throws Exception {
 		MockitoAnnotations.initMocks(this);
-		memoryTimeBlockCountingSemaphore = new MemoryTimeBlockCountingSemaphoreImpl();
-		ReflectionTestUtils.setField(memoryTimeBlockCountingSemaphore, "keySemaphoreMap", keySemaphoreMap);
+		memoryTimeBlockCountingSemaphore = new MemoryTimeBlockCountingSemaphoreImpl(mockClock);
+		when(mockClock.currentTimeMillis()).thenReturn(1000L);
 	}
 	
 	@Test (expected = IllegalArgumentException.class)
@@ -64,72 +51,57 @@ public class MempryTimeBlockCountingSemaphoreTest {
 
 	@Test
 	public void testAcquireLockNoExistentSemaphore() {
-		when(keySemaphoreMap.get(key)).thenReturn(null);
-		
 		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
-		
-		verify(keySemaphoreMap).get(key);
-		ArgumentCaptor<SimpleSemaphore> semaphoreCaptor = ArgumentCaptor.forClass(SimpleSemaphore.class);
-		verify(keySemaphoreMap).put(eq(key), semaphoreCaptor.capture());
-		SimpleSemaphore capturedSemaphore = semaphoreCaptor.getValue();
-		assertEquals(1, capturedSemaphore.getCount());
-		verifyNoMoreInteractions(keySemaphoreMap);
+		assertEquals(1, memoryTimeBlockCountingSemaphore.getKeyCount());
 	}
 	
 	@Test
-	public void testAcquireLockExpiredSemaphore() throws InterruptedException {
-		when(keySemaphoreMap.get(key)).thenReturn(mockSemaphore);
-		when(mockSemaphore.isExpired()).thenReturn(true);
-		
+	public void testAcquireLockExpiredSemaphore() {
+		when(mockClock.currentTimeMillis()).thenReturn(1000L, 1000L + timeoutSec * 1000);
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
+		// the first block has expired so the count starts over.
 		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
-		
-		verify(keySemaphoreMap).get(key);
-		verify(mockSemaphore).isExpired();
-		verify(mockSemaphore).setExpiration(any(Long.class));
-		verify(mockSemaphore).resetCount();
-		verify(mockSemaphore).increment();
-		
-		verifyNoMoreInteractions(keySemaphoreMap,  mockSemaphore);
 	}
 	
 	@Test
 	public void testAcquireLockOverCountLimit(){
-		when(keySemaphoreMap.get(key)).thenReturn(mockSemaphore);
-		when(mockSemaphore.isExpired()).thenReturn(false);
-		when(mockSemaphore.getCount()).thenReturn(limit);
-		
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
 		assertFalse(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
-		
-		verify(keySemaphoreMap).get(key);
-		verify(mockSemaphore).isExpired();
-		verify(mockSemaphore).getCount();
-		verifyNoMoreInteractions(keySemaphoreMap,  mockSemaphore);
 	}
 	
 	@Test
 	public void testAcquireLockUnderCountLimit(){
-		when(keySemaphoreMap.get(key)).thenReturn(mockSemaphore);
-		when(mockSemaphore.isExpired()).thenReturn(false);
-		when(mockSemaphore.getCount()).thenReturn(limit - 1);
-		
-		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
-		
-		verify(keySemaphoreMap).get(key);
-		verify(mockSemaphore).isExpired();
-		verify(mockSemaphore).getCount();
-		verify(mockSemaphore).increment();
-		verifyNoMoreInteractions(keySemaphoreMap,  mockSemaphore);
-
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit + 1));
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit + 1));
+		assertFalse(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit + 1));
 	}
 	
 	@Test
 	public void testAcquireLockZeroMaxLocks(){
 		assertFalse(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, 0));
-		verify(keySemaphoreMap, never()).get(key);
-		verify(mockSemaphore, never()).isExpired();
-		verify(mockSemaphore, never()).getCount();
-		verify(mockSemaphore, never()).increment();
-		verify(mockSemaphore, never()).setExpiration(any(Long.class));
+		verify(mockClock, never()).currentTimeMillis();
+		assertEquals(0, memoryTimeBlockCountingSemaphore.getKeyCount());
+	}
+	
+	@Test
+	public void testExpiredKeysSwept(){
+		long afterSweep = 1000L + MemoryTimeBlockCountingSemaphoreImpl.SWEEP_INTERVAL_MS;
+		when(mockClock.currentTimeMillis()).thenReturn(1000L, 1000L, afterSweep);
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock("other key", MemoryTimeBlockCountingSemaphoreImpl.SWEEP_INTERVAL_MS, limit));
+		assertEquals(2, memoryTimeBlockCountingSemaphore.getKeyCount());
+		// call under test
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock("third key", timeoutSec, limit));
+		// only the expired key is removed.
+		assertEquals(2, memoryTimeBlockCountingSemaphore.getKeyCount());
+	}
+	
+	@Test
+	public void testReleaseAllLocks(){
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
+		memoryTimeBlockCountingSemaphore.releaseAllLocks();
+		assertEquals(0, memoryTimeBlockCountingSemaphore.getKeyCount());
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
 	}
 
 }
@@ -647,6 +647,17 @@ public class StackConfiguration {
 		return Boolean.parseBoolean(configuration.getProperty("org.sagebionetworks.table.allindexed.enabled"));
 	}
 
+	/**
+	 * Are revision annotations and references written in the compact binary
+	 * format? While false they are written as zipped XML, which every version
+	 * of the stack can read.
+	 * 
+	 * @return
+	 */
+	public boolean getRevisionBlobBinaryEnabled() {
+		return Boolean.parseBoolean(configuration.getProperty("org.sagebionetworks.revision.blob.binary.enabled"));
+	}
+
 	/**
 	 * Are sub folders in auto sync folders allowed
 	 * 
@@ -1204,6 +1215,19 @@ public class StackConfiguration {
 						.getProperty("org.sagebionetworks.repo.manager.file.multipart.upload.daemon.copy.part.max.threads"));
 	}
 
+	/**
+	 * Are multipart upload parts PUT directly to the S3 multi-part upload?
+	 * When false, each part is uploaded to its own object and copied into the
+	 * upload.
+	 * 
+	 * @return
+	 */
+	public boolean getFileMultipartUploadDirectPartEnabled() {
+		return Boolean
+				.parseBoolean(configuration
+						.getProperty("org.sagebionetworks.repo.manager.file.multipart.upload.direct.part.enabled"));
+	}
+
 	/**
 	 * Get credentials for the Jira service account used to create Jira issues
 	 * 
@@ -1,5 +1,6 @@
 package org.sagebionetworks.repo.manager;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -186,6 +187,21 @@ public interface AuthorizationManager {
 	 * @return
 	 */
 	Set<Long> getAccessibleBenefactors(UserInfo userInfo, Set<Long> originalBenefactors);
+	
+	/**
+	 * Get the sub-set of the given entities that the user can access with the
+	 * given access type. The benefactors of all of the entities are looked up
+	 * with one query and their ACLs are checked with one query, rather than
+	 * one of each per entity.
+	 * 
+	 * Entities that do not exist are not included in the results.
+	 * 
+	 * @param userInfo
+	 * @param entityIds
+	 * @param accessType
+	 * @return
+	 */
+	Set<Long> getAccessibleEntities(UserInfo userInfo, Collection<Long> entityIds, ACCESS_TYPE accessType);
 
 	/**
 	 * Check user access to an subscribable object
@@ -8,6 +8,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -17,6 +18,7 @@ import org.sagebionetworks.evaluation.model.Submission;
 import org.sagebionetworks.reflection.model.PaginatedResults;
 import org.sagebionetworks.repo.manager.file.FileHandleAuthorizationStatus;
 import org.sagebionetworks.repo.manager.team.TeamConstants;
+import org.sagebionetworks.repo.manager.trash.EntityInTrashCanException;
 import org.sagebionetworks.repo.model.ACCESS_TYPE;
 import org.sagebionetworks.repo.model.AccessControlListDAO;
 import org.sagebionetworks.repo.model.AccessRequirementDAO;
@@ -72,6 +74,14 @@ public class AuthorizationManagerImpl implements AuthorizationManager {
 	public static final Long TRASH_FOLDER_ID = Long.parseLong(
 			StackConfiguration.getTrashFolderEntityIdStatic());
 
+	/**
+	 * Entity access types with rules beyond the benefactor's ACL (certified
+	 * users, access requirements and upload destinations). These are checked
+	 * one entity at a time.
+	 */
+	private static final Set<ACCESS_TYPE> ENTITY_ACCESS_TYPES_CHECKED_INDIVIDUALLY = Sets.immutableEnumSet(
+			ACCESS_TYPE.CREATE, ACCESS_TYPE.UPDATE, ACCESS_TYPE.DOWNLOAD, ACCESS_TYPE.UPLOAD);
+
 	private static final String FILE_HANDLE_UNAUTHORIZED_TEMPLATE = "Only the creator of a FileHandle can assign it to an Entity.  FileHandleId = '%1$s', UserId = '%2$s'";
 	public static final String ANONYMOUS_ACCESS_DENIED_REASON = "Anonymous cannot perform this action. Please login and try again.";
 
@@ -244,16 +254,18 @@ public class AuthorizationManagerImpl implements AuthorizationManager {
 		while(remaining > 0) {			
 			PaginatedResults<Reference> generatedBy = activityDAO.getEntitiesGeneratedBy(activityId, limit, offset);
 			remaining = generatedBy.getTotalNumberOfResults() - (offset+limit);
+			List<Long> nodeIds = new ArrayList<Long>(generatedBy.getResults().size());
 			for(Reference ref : generatedBy.getResults()) {
-				String nodeId = ref.getTargetId();
 				try {
-					if(canAccess(userInfo, nodeId, ObjectType. ENTITY, ACCESS_TYPE.READ).getAuthorized()) {
-						return AuthorizationManagerUtil.AUTHORIZED;
-					}
-				} catch (Exception e) {
+					nodeIds.add(KeyFactory.stringToKey(ref.getTargetId()));
+				} catch (IllegalArgumentException e) {
 					// do nothing, same as false
 				}
 			}
+			// check the entire page at once.
+			if(!getAccessibleEntities(userInfo, nodeIds, ACCESS_TYPE.READ).isEmpty()) {
+				return AuthorizationManagerUtil.AUTHORIZED;
+			}
 			offset += limit; 
 		}
 		// no access found to generated entities, no access
@@ -458,6 +470,53 @@ public class AuthorizationManagerImpl implements AuthorizationManager {
 		return results;
 	}
 
+	@Override
+	public Set<Long> getAccessibleEntities(UserInfo userInfo, Collection<Long> entityIds, ACCESS_TYPE accessType) {
+		ValidateArgument.required(userInfo, "userInfo");
+		ValidateArgument.required(entityIds, "entityIds");
+		ValidateArgument.required(accessType, "accessType");
+		Set<Long> results = new HashSet<Long>(entityIds.size());
+		if(entityIds.isEmpty()){
+			return results;
+		}
+		if(ENTITY_ACCESS_TYPES_CHECKED_INDIVIDUALLY.contains(accessType)){
+			for(Long entityId: entityIds){
+				try {
+					if(canAccess(userInfo, KeyFactory.keyToString(entityId), ObjectType.ENTITY, accessType).getAuthorized()){
+						results.add(entityId);
+					}
+				} catch (NotFoundException | EntityInTrashCanException e) {
+					// not included in the results.
+				}
+			}
+			return results;
+		}
+		// Anonymous can at most READ
+		if(AuthorizationUtils.isUserAnonymous(userInfo) && accessType != ACCESS_TYPE.READ){
+			return results;
+		}
+		// One query for all of the benefactors
+		Map<Long, Long> entityToBenefactor = nodeDao.getBenefactors(entityIds);
+		Set<Long> benefactors = new HashSet<Long>(entityToBenefactor.values());
+		if(accessType != ACCESS_TYPE.DELETE){
+			// Entities in the trash can may only be deleted (purged).
+			benefactors.remove(TRASH_FOLDER_ID);
+		}
+		// One query for all of the ACLs
+		Set<Long> accessibleBenefactors = null;
+		if(userInfo.isAdmin()){
+			accessibleBenefactors = benefactors;
+		}else{
+			accessibleBenefactors = aclDAO.getAccessibleBenefactors(userInfo.getGroups(), benefactors, ObjectType.ENTITY, accessType);
+		}
+		for(Entry<Long, Long> entry: entityToBenefactor.entrySet()){
+			if(accessibleBenefactors.contains(entry.getValue())){
+				results.add(entry.getKey());
+			}
+		}
+		return results;
+	}
+
 	@Override
 	public AuthorizationStatus canSubscribe(UserInfo userInfo, String objectId,
 			SubscriptionObjectType objectType)
@@ -0,0 +1,153 @@
+package org.sagebionetworks.repo.manager;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.audit.utils.VirtualMachineIdProvider;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
+import org.sagebionetworks.util.CacheStatistics;
+import org.sagebionetworks.util.Clock;
+import org.sagebionetworks.util.ValidateArgument;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+
+/**
+ * Publishes the hit ratio, counts and size of a single cache to cloud watch.
+ * The ratio and counts are calculated from the change since the last publish,
+ * so they reflect the last period rather than the life of the machine.
+ *
+ */
+public class CacheMetricsPublisher {
+
+	public static final String INSTANCE = "instance";
+	public static final String ALL_INSTANCES = "all";
+	public static final String HIT_RATIO = "hitRatio";
+	public static final String HITS = "hits";
+	public static final String MISSES = "misses";
+
+	@Autowired
+	Consumer consumer;
+	@Autowired
+	Clock clock;
+	@Autowired
+	StackConfiguration stackConfig;
+
+	private final CacheStatistics cache;
+	private final String namespace;
+	private String sizeMetricName;
+	private StandardUnit sizeUnit = StandardUnit.Count;
+
+	private long lastHitCount;
+	private long lastMissCount;
+	private Map<String, Long> lastOtherCounts = new HashMap<String, Long>();
+
+	/**
+	 *
+	 * @param cache
+	 *            The cache to publish.
+	 * @param namespacePrefix
+	 *            The stack instance is appended to this prefix to create the
+	 *            cloud watch namespace.
+	 */
+	public CacheMetricsPublisher(CacheStatistics cache, String namespacePrefix) {
+		ValidateArgument.required(cache, "cache");
+		ValidateArgument.required(namespacePrefix, "namespacePrefix");
+		this.cache = cache;
+		this.namespace = namespacePrefix + StackConfiguration.getStackInstance();
+	}
+
+	/**
+	 * The name of the metric for the current size of the cache. The size is
+	 * not published if this is not set.
+	 *
+	 * @param sizeMetricName
+	 */
+	public void setSizeMetricName(String sizeMetricName) {
+		this.sizeMetricName = sizeMetricName;
+	}
+
+	/**
+	 * The unit of the size of the cache. Defaults to Count.
+	 *
+	 * @param sizeUnit
+	 */
+	public void setSizeUnit(StandardUnit sizeUnit) {
+		this.sizeUnit = sizeUnit;
+	}
+
+	public String getNamespace() {
+		return namespace;
+	}
+
+	/**
+	 * Call from a timer once per minute.
+	 */
+	public void onTimerFired() {
+		long hitCount = cache.getHitCount();
+		long missCount = cache.getMissCount();
+		long hits = hitCount - lastHitCount;
+		long misses = missCount - lastMissCount;
+		lastHitCount = hitCount;
+		lastMissCount = missCount;
+		Map<String, Long> otherCounts = cache.getOtherCounts();
+		Map<String, Long> others = new LinkedHashMap<String, Long>(otherCounts.size());
+		for (Map.Entry<String, Long> entry : otherCounts.entrySet()) {
+			Long last = lastOtherCounts.get(entry.getKey());
+			others.put(entry.getKey(), entry.getValue() - (last == null ? 0L : last));
+		}
+		lastOtherCounts = new HashMap<String, Long>(otherCounts);
+		if (hits + misses == 0) {
+			// nothing to report.
+			return;
+		}
+		double hitRatio = ((double) hits) / (hits + misses) * 100.0;
+		Long size = sizeMetricName == null ? null : cache.getCurrentSize();
+		Date date = new Date(clock.currentTimeMillis());
+		publish(date, ALL_INSTANCES, hitRatio, hits, misses, others, size);
+		// only publish for this instances if this is production.
+		if (stackConfig.isProductionStack()) {
+			publish(date, VirtualMachineIdProvider.getVMID(), hitRatio, hits, misses, others, size);
+		}
+	}
+
+	private void publish(Date date, String instance, double hitRatio, long hits, long misses,
+			Map<String, Long> others, Long size) {
+		consumer.addProfileData(createMetric(HIT_RATIO, hitRatio, StandardUnit.Percent, date, instance));
+		consumer.addProfileData(createMetric(HITS, hits, StandardUnit.Count, date, instance));
+		consumer.addProfileData(createMetric(MISSES, misses, StandardUnit.Count, date, instance));
+		for (Map.Entry<String, Long> entry : others.entrySet()) {
+			consumer.addProfileData(createMetric(entry.getKey(), entry.getValue(), StandardUnit.Count, date, instance));
+		}
+		if (size != null) {
+			consumer.addProfileData(createMetric(sizeMetricName, size, sizeUnit, date, instance));
+		}
+	}
+
+	/**
+	 * Create a metric for a single instance.
+	 *
+	 * @param name
+	 * @param value
+	 * @param unit
+	 * @param date
+	 * @param instance
+	 * @return
+	 */
+	public ProfileData createMetric(String name, double value, StandardUnit unit, Date date, String instance) {
+		ProfileData pd = new ProfileData();
+		pd.setNamespace(namespace);
+		pd.setTimestamp(date);
+		pd.setName(name);
+		pd.setValue(value);
+		pd.setUnit(unit.name());
+		pd.setDimension(Collections.singletonMap(INSTANCE, instance));
+		return pd;
+	}
+
+}
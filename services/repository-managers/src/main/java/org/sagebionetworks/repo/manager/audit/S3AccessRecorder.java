@@ -1,19 +1,41 @@
 package org.sagebionetworks.repo.manager.audit;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.sagebionetworks.repo.model.audit.AccessRecord;
 import org.sagebionetworks.repo.model.audit.AccessRecorder;
+import org.sagebionetworks.schema.adapter.JSONObjectAdapterException;
+import org.sagebionetworks.schema.adapter.org.json.EntityFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 /**
  * This implementation writes the records to S3
  * 
+ * The number of records waiting for the timer is bounded. When the bound is
+ * reached new records are dropped and counted rather than growing the heap.
+ * Batches that cannot be written to S3 are spilled to files on the local disk
+ * and written on the following timer events.
+ * 
  * @author jmhill
  * 
  */
@@ -21,6 +43,10 @@ public class S3AccessRecorder implements AccessRecorder {
 
 	static private Log log = LogFactory.getLog(S3AccessRecorder.class);
 
+	public static final int DEFAULT_MAX_QUEUE_SIZE = 100000;
+	public static final int DEFAULT_MAX_SPILL_FILES = 1000;
+	private static final String SPILL_SUFFIX = ".json.gz";
+
 	/**
 	 * At any given time, there are multiple threads creating new AccessRecords
 	 * as new web services request come in. These AccessRecords are added to
@@ -28,11 +54,19 @@ public class S3AccessRecorder implements AccessRecorder {
 	 * processed from a separate timer thread.
 	 */
 	private ConcurrentLinkedQueue<AccessRecord> recordBatch = new ConcurrentLinkedQueue<AccessRecord>();
+	// The size of the queue is tracked separately as ConcurrentLinkedQueue.size() is not constant time.
+	private AtomicInteger queueSize = new AtomicInteger(0);
+	private AtomicLong droppedCount = new AtomicLong(0);
+	private AtomicLong spilledCount = new AtomicLong(0);
+	private long lastDroppedCount = 0;
 	
 	@Autowired
 	AccessRecordManager accessRecordManager;
 
 	boolean shouldAccessRecordsBePushedToS3 = true;
+	int maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+	int maxSpillFiles = DEFAULT_MAX_SPILL_FILES;
+	File spillDirectory = new File(System.getProperty("java.io.tmpdir"), "access-record-spill");
 
 
 	/**
@@ -45,11 +79,46 @@ public class S3AccessRecorder implements AccessRecorder {
 		this.shouldAccessRecordsBePushedToS3 = shouldAccessMessagesBePushedToS3;
 	}
 
+	/**
+	 * The maximum number of records that can wait for the timer. Records
+	 * saved when the queue is full are dropped.
+	 * 
+	 * @param maxQueueSize
+	 */
+	public void setMaxQueueSize(int maxQueueSize) {
+		this.maxQueueSize = maxQueueSize;
+	}
+
+	/**
+	 * The directory where batches that failed to be written to S3 are kept.
+	 * 
+	 * @param spillDirectory
+	 */
+	public void setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * The maximum number of spilled batches to keep. When exceeded the oldest
+	 * batches are deleted.
+	 * 
+	 * @param maxSpillFiles
+	 */
+	public void setMaxSpillFiles(int maxSpillFiles) {
+		this.maxSpillFiles = maxSpillFiles;
+	}
+
 	/**
 	 * New AccessRecords will come in from 
 	 */
 	@Override
 	public void save(AccessRecord record) {
+		if(queueSize.incrementAndGet() > maxQueueSize){
+			// The timer is not keeping up so drop the record rather than fill the heap.
+			queueSize.decrementAndGet();
+			droppedCount.incrementAndGet();
+			return;
+		}
 		// add the messages to the queue;
 		recordBatch.add(record);
 	}
@@ -60,10 +129,13 @@ public class S3AccessRecorder implements AccessRecorder {
 	 * 
 	 */
 	public String timerFired() throws IOException {
+		long dropped = droppedCount.get();
+		if(dropped > lastDroppedCount){
+			log.warn((dropped - lastDroppedCount)+" AccessRecords were dropped because the queue was full.");
+			lastDroppedCount = dropped;
+		}
 		// Poll all data currently on the queue.
 		List<AccessRecord> currentBatch = pollListFromQueue();
-		// There is nothing to do if the batch is empty.
-		if(currentBatch.isEmpty()) return null;
 		// Check to see if the data should be sent to S3
 		if(!shouldAccessRecordsBePushedToS3){
 			if(log.isDebugEnabled() && currentBatch.size() > 0){
@@ -71,11 +143,20 @@ public class S3AccessRecorder implements AccessRecorder {
 			}
 			return null;
 		}
+		// Batches that failed on earlier timer events go first.
+		if(!saveSpilledBatches()){
+			// S3 is still unavailable.
+			spill(currentBatch);
+			return null;
+		}
+		// There is nothing to do if the batch is empty.
+		if(currentBatch.isEmpty()) return null;
 		try{
 			// We are now free to process the current batch with out synchronization or data loss
 			return accessRecordManager.saveBatch(currentBatch);
 		}catch(Exception e){
 			log.error("Failed to write batch", e);
+			spill(currentBatch);
 			return null;
 		}
 	}
@@ -87,12 +168,131 @@ public class S3AccessRecorder implements AccessRecorder {
 	private List<AccessRecord> pollListFromQueue(){
 		List<AccessRecord> list = new LinkedList<AccessRecord>();
 		for(AccessRecord ac = this.recordBatch.poll(); ac != null; ac = this.recordBatch.poll()){
+			queueSize.decrementAndGet();
 			// Add to the list
 			list.add(ac);
 		}
 		return list;
 	}
-	
-	
+
+	/**
+	 * Write each spilled batch to S3, oldest first, deleting the file of each
+	 * batch that is written.
+	 * 
+	 * @return False if a batch could not be written.
+	 */
+	boolean saveSpilledBatches(){
+		for(File file: listSpillFiles()){
+			List<AccessRecord> batch;
+			try{
+				batch = readSpillFile(file);
+			}catch(IOException e){
+				log.error("Deleting unreadable spilled batch: "+file.getName(), e);
+				file.delete();
+				continue;
+			}
+			try{
+				accessRecordManager.saveBatch(batch);
+			}catch(Exception e){
+				log.error("Failed to write spilled batch: "+file.getName(), e);
+				return false;
+			}
+			file.delete();
+		}
+		return true;
+	}
+
+	/**
+	 * Write a batch to a new file in the spill directory.
+	 * 
+	 * @param batch
+	 */
+	void spill(List<AccessRecord> batch){
+		if(batch.isEmpty()) return;
+		try{
+			if(!spillDirectory.isDirectory() && !spillDirectory.mkdirs()){
+				throw new IOException("Cannot create directory: "+spillDirectory.getAbsolutePath());
+			}
+			// The name starts with the time so the files sort oldest first.
+			String name = String.format("%020d-%s", System.currentTimeMillis(), UUID.randomUUID());
+			File temp = new File(spillDirectory, name+".tmp");
+			writeSpillFile(batch, temp);
+			if(!temp.renameTo(new File(spillDirectory, name+SPILL_SUFFIX))){
+				temp.delete();
+				throw new IOException("Failed to rename: "+temp.getAbsolutePath());
+			}
+			spilledCount.addAndGet(batch.size());
+		}catch(IOException e){
+			log.error("Failed to spill "+batch.size()+" AccessRecords to disk. They will be lost.", e);
+			return;
+		}
+		// Limit the disk used while S3 is unavailable.
+		File[] files = listSpillFiles();
+		for(int i=0; i<files.length-maxSpillFiles; i++){
+			log.error("Too many spilled batches. Deleting: "+files[i].getName());
+			files[i].delete();
+		}
+	}
+
+	/**
+	 * The spilled batch files sorted oldest first.
+	 * @return
+	 */
+	private File[] listSpillFiles(){
+		File[] files = spillDirectory.listFiles((File dir, String name) -> name.endsWith(SPILL_SUFFIX));
+		if(files == null){
+			return new File[0];
+		}
+		Arrays.sort(files);
+		return files;
+	}
+
+	/**
+	 * Each record is written as a line of JSON.
+	 */
+	private static void writeSpillFile(List<AccessRecord> batch, File file) throws IOException{
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8));
+		try{
+			for(AccessRecord record: batch){
+				writer.write(EntityFactory.createJSONStringForEntity(record));
+				writer.write('\n');
+			}
+		}catch(JSONObjectAdapterException e){
+			throw new IOException(e);
+		}finally{
+			writer.close();
+		}
+	}
+
+	private static List<AccessRecord> readSpillFile(File file) throws IOException{
+		List<AccessRecord> batch = new LinkedList<AccessRecord>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8));
+		try{
+			for(String line = reader.readLine(); line != null; line = reader.readLine()){
+				batch.add(EntityFactory.createEntityFromJSONString(line, AccessRecord.class));
+			}
+		}catch(JSONObjectAdapterException e){
+			throw new IOException(e);
+		}finally{
+			reader.close();
+		}
+		return batch;
+	}
+
+	/**
+	 * The total number of records dropped because the queue was full.
+	 * @return
+	 */
+	public long getDroppedCount(){
+		return droppedCount.get();
+	}
+
+	/**
+	 * The total number of records spilled to disk.
+	 * @return
+	 */
+	public long getSpilledCount(){
+		return spilledCount.get();
+	}
 	
 }
@@ -6,6 +6,7 @@ import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.daemon.BackupRestoreStatus;
+import org.sagebionetworks.repo.model.migration.BackupFormat;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.web.NotFoundException;
 
@@ -42,6 +43,17 @@ public interface BackupDaemonLauncher {
 	 * @return
 	 */
 	public BackupRestoreStatus startBackup(UserInfo username, MigrationType type, List<Long> idsToBackup);
+
+	/**
+	 * Start a backup daemon that will write the backup file using the given format.
+	 * 
+	 * @param username
+	 * @param type
+	 * @param idsToBackup
+	 * @param format
+	 * @return
+	 */
+	public BackupRestoreStatus startBackup(UserInfo username, MigrationType type, List<Long> idsToBackup, BackupFormat format);
 	
 	/**
 	 * Start a restore daemon that will read data from the passed file and write it to the database.
@@ -9,6 +9,7 @@ import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.daemon.BackupRestoreStatus;
+import org.sagebionetworks.repo.model.migration.BackupFormat;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -76,9 +77,14 @@ public class BackupDaemonLauncherImpl implements BackupDaemonLauncher {
 
 	@Override
 	public BackupRestoreStatus startBackup(UserInfo user, MigrationType type, List<Long> idsToBackup) {
+		return startBackup(user, type, idsToBackup, BackupFormat.XML);
+	}
+
+	@Override
+	public BackupRestoreStatus startBackup(UserInfo user, MigrationType type, List<Long> idsToBackup, BackupFormat format) {
 		// Create a new daemon and start it
 		AmazonS3Client client = createNewAWSClient();
-		BackupRestoreDaemon daemon = new BackupRestoreDaemon(user, backupRestoreStatusDao, backupDriver, client, backupBucket, backupDaemonThreadPool, backupDaemonThreadPool2, idsToBackup, type);
+		BackupRestoreDaemon daemon = new BackupRestoreDaemon(user, backupRestoreStatusDao, backupDriver, client, backupBucket, backupDaemonThreadPool, backupDaemonThreadPool2, idsToBackup, type, format);
 		return daemon.startBackup();
 	}
 
@@ -86,7 +92,7 @@ public class BackupDaemonLauncherImpl implements BackupDaemonLauncher {
 	public BackupRestoreStatus startRestore(UserInfo user, String fileName,
 			MigrationType type) {
 		AmazonS3Client client = createNewAWSClient();
-		BackupRestoreDaemon daemon = new BackupRestoreDaemon(user, backupRestoreStatusDao, backupDriver, client, backupBucket, backupDaemonThreadPool, backupDaemonThreadPool2, null, type);
+		BackupRestoreDaemon daemon = new BackupRestoreDaemon(user, backupRestoreStatusDao, backupDriver, client, backupBucket, backupDaemonThreadPool, backupDaemonThreadPool2, null, type, BackupFormat.XML);
 		return daemon.startRestore(fileName);
 	}
 
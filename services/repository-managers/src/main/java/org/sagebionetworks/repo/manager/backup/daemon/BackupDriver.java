@@ -6,6 +6,7 @@ import java.util.List;
 
 import org.sagebionetworks.repo.manager.backup.Progress;
 import org.sagebionetworks.repo.model.UserInfo;
+import org.sagebionetworks.repo.model.migration.BackupFormat;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 
 /**
@@ -28,6 +29,22 @@ public interface BackupDriver {
 	 * @throws InterruptedException 
 	 */
 	public boolean writeBackup(UserInfo user, File destination,	Progress progress, MigrationType type, List<Long> idsToBackup) throws IOException, InterruptedException;
+
+	/**
+	 * Write the objects identified by the passed list to the provided zip file
+	 * using the given backup format.
+	 * 
+	 * @param user
+	 * @param destination
+	 * @param progress
+	 * @param type
+	 * @param idsToBackup
+	 * @param format
+	 * @return
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public boolean writeBackup(UserInfo user, File destination,	Progress progress, MigrationType type, List<Long> idsToBackup, BackupFormat format) throws IOException, InterruptedException;
 	
 	/**
 	 * 
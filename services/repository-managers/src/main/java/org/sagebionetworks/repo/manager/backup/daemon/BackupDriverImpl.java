@@ -6,8 +6,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -18,6 +16,7 @@ import org.apache.commons.logging.LogFactory;
 import org.sagebionetworks.repo.manager.backup.Progress;
 import org.sagebionetworks.repo.manager.migration.MigrationManager;
 import org.sagebionetworks.repo.model.UserInfo;
+import org.sagebionetworks.repo.model.migration.BackupFormat;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -34,6 +33,7 @@ public class BackupDriverImpl implements BackupDriver {
 	static private Log log = LogFactory.getLog(BackupDriverImpl.class);
 
 	private static final String ZIP_ENTRY_SUFFIX = ".xml";
+	private static final String BINARY_ZIP_ENTRY_SUFFIX = ".bin";
 
 	@Autowired
 	private MigrationManager migrationManager;
@@ -51,6 +51,18 @@ public class BackupDriverImpl implements BackupDriver {
 	 */
 	@Override
 	public boolean writeBackup(UserInfo user, File destination,	Progress progress, MigrationType type, List<Long> idsToBackup) throws IOException, InterruptedException {
+		return writeBackup(user, destination, progress, type, idsToBackup, BackupFormat.XML);
+	}
+
+	/**
+	 * Write the objects identified by the passed list to the provided zip file
+	 * using the given format. The format is recorded in the name of each zip
+	 * entry so a restore does not need to be told the format.
+	 */
+	@Override
+	public boolean writeBackup(UserInfo user, File destination,	Progress progress, MigrationType type, List<Long> idsToBackup, BackupFormat format) throws IOException, InterruptedException {
+		if (format == null)
+			throw new IllegalArgumentException("Format cannot be null");
 		if (destination == null)
 			throw new IllegalArgumentException(
 					"Destination file cannot be null");
@@ -70,11 +82,9 @@ public class BackupDriverImpl implements BackupDriver {
 		try {
 //			progress.appendLog(idsToBackup.toString());
 			progress.setMessage("Backup id count: "+idsToBackup.size());
-			ZipEntry entry = new ZipEntry(type.name() + ZIP_ENTRY_SUFFIX);
+			ZipEntry entry = new ZipEntry(getFileNameForType(type, format));
 			zos.putNextEntry(entry);
-			Writer zipWriter = new OutputStreamWriter(zos, "UTF-8");
-			migrationManager.writeBackupBatch(user, type, idsToBackup, zipWriter);
-			zipWriter.flush();
+			migrationManager.writeBackupBatch(user, type, idsToBackup, format, zos);
 			progress.incrementProgress();
 			// If this type has secondary types then add them to the zip as well.
 			List<MigrationType> secondaryTypes = migrationManager.getSecondaryTypes(type);
@@ -82,15 +92,12 @@ public class BackupDriverImpl implements BackupDriver {
 				for(MigrationType secondary: secondaryTypes){
 					checkForTermination(progress);
 					Thread.yield();
-					entry = new ZipEntry(secondary.name() + ZIP_ENTRY_SUFFIX);
+					entry = new ZipEntry(getFileNameForType(secondary, format));
 					zos.putNextEntry(entry);
-					zipWriter = new OutputStreamWriter(zos, "UTF-8");
-					migrationManager.writeBackupBatch(user, secondary, idsToBackup, zipWriter);
-					zipWriter.flush();
+					migrationManager.writeBackupBatch(user, secondary, idsToBackup, format, zos);
 					progress.incrementProgress();
 				}
 			}
-			zipWriter.close();
 			zos.close();
 			progress.appendLog("Finished processing");
 		} finally {
@@ -136,7 +143,8 @@ public class BackupDriverImpl implements BackupDriver {
 					progress.appendLog("Skipping entry " + entry.getName() + ", unused migration type.");
 				} else {
 					// This is a backup file.
-					List<Long> primaryIds = migrationManager.createOrUpdateBatch(user, type, zin);
+					BackupFormat format = getFormatFromFileName(entry.getName());
+					List<Long> primaryIds = migrationManager.createOrUpdateBatch(user, type, format, zin);
 					// If this is a primary type then we must clear all data for secondary types
 					// that have these backup ids.
 					List<MigrationType> secondaryTypes = migrationManager.getSecondaryTypes(type);
@@ -170,9 +178,21 @@ public class BackupDriverImpl implements BackupDriver {
 	 * @return
 	 */
 	public static MigrationType getTypeFromFileName(String name){
-		MigrationType t = MigrationType.valueOf(name.substring(0, name.length()-ZIP_ENTRY_SUFFIX.length()));
+		MigrationType t = MigrationType.valueOf(name.substring(0, name.length()-getSuffix(getFormatFromFileName(name)).length()));
 		return t;
 	}
+
+	/**
+	 * Get the backup format of a file from its name.
+	 * @param name
+	 * @return
+	 */
+	public static BackupFormat getFormatFromFileName(String name){
+		if(name.endsWith(BINARY_ZIP_ENTRY_SUFFIX)){
+			return BackupFormat.BINARY;
+		}
+		return BackupFormat.XML;
+	}
 	
 	/**
 	 * Create a file name for a type.
@@ -180,7 +200,21 @@ public class BackupDriverImpl implements BackupDriver {
 	 * @return
 	 */
 	public static String getFileNameForType(MigrationType type){
-		return type.name() + ZIP_ENTRY_SUFFIX;
+		return getFileNameForType(type, BackupFormat.XML);
+	}
+
+	/**
+	 * Create a file name for a type and backup format.
+	 * @param type
+	 * @param format
+	 * @return
+	 */
+	public static String getFileNameForType(MigrationType type, BackupFormat format){
+		return type.name() + getSuffix(format);
+	}
+
+	private static String getSuffix(BackupFormat format){
+		return BackupFormat.BINARY == format ? BINARY_ZIP_ENTRY_SUFFIX : ZIP_ENTRY_SUFFIX;
 	}
 
 	private void checkForTermination(Progress progress)
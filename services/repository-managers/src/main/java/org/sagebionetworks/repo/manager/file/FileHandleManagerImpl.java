@@ -197,6 +197,9 @@ public class FileHandleManagerImpl implements FileHandleManager {
 	@Autowired
 	private IdGenerator idGenerator;
 
+	@Autowired
+	PresignedUrlCache presignedUrlCache;
+
 	/**
 	 * This is the maximum amount of time the upload workers are allowed to take
 	 * before timing out.
@@ -353,23 +356,36 @@ public class FileHandleManagerImpl implements FileHandleManager {
 			return ProxyUrlSignerUtils.generatePresignedUrl(proxyHandle, proxyStorage, new Date(System.currentTimeMillis() + PRESIGNED_URL_EXPIRE_TIME_MS));
 		} else if (handle instanceof S3FileHandleInterface) {
 			S3FileHandleInterface s3File = (S3FileHandleInterface) handle;
+			String contentType = null;
+			if (StringUtils.isNotEmpty(handle.getContentType()) && !NOT_SET.equals(handle.getContentType())) {
+				contentType = handle.getContentType();
+			}
+			String contentDisposition = null;
+			String fileName = handle.getFileName();
+			if (StringUtils.isNotEmpty(fileName) && !NOT_SET.equals(fileName)) {
+				contentDisposition = "attachment; filename=" + fileName;
+			}
+			// Reuse a recently signed URL for the same object and overrides.
+			String url = presignedUrlCache.get(s3File.getBucketName(), s3File.getKey(), contentType, contentDisposition);
+			if (url != null) {
+				return url;
+			}
 			// Create a pre-signed url
 			GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(s3File.getBucketName(), s3File.getKey(), HttpMethod.GET);
 			request.setExpiration(new Date(System.currentTimeMillis() + PRESIGNED_URL_EXPIRE_TIME_MS));
 
 			ResponseHeaderOverrides responseHeaderOverrides = new ResponseHeaderOverrides();
-
-			String contentType = handle.getContentType();
-			if (StringUtils.isNotEmpty(contentType) && !NOT_SET.equals(contentType)) {
+			if (contentType != null) {
 				responseHeaderOverrides.setContentType(contentType);
 			}
-			String fileName = handle.getFileName();
-			if (StringUtils.isNotEmpty(fileName) && !NOT_SET.equals(fileName)) {
-				responseHeaderOverrides.setContentDisposition("attachment; filename=" + fileName);
+			if (contentDisposition != null) {
+				responseHeaderOverrides.setContentDisposition(contentDisposition);
 			}
 
 			request.setResponseHeaders(responseHeaderOverrides);
-			return s3Client.generatePresignedUrl(request).toExternalForm();
+			url = s3Client.generatePresignedUrl(request).toExternalForm();
+			presignedUrlCache.put(s3File.getBucketName(), s3File.getKey(), contentType, contentDisposition, url);
+			return url;
 		} else if (handle instanceof ExternalObjectStoreFileHandle){
 			ExternalObjectStoreFileHandle fileHandle = (ExternalObjectStoreFileHandle) handle;
 			return StringUtils.join(new String[]{fileHandle.getEndpointUrl(), fileHandle.getBucket(), fileHandle.getFileKey()} , '/');
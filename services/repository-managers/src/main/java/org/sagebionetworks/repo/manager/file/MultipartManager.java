@@ -99,4 +99,21 @@ public interface MultipartManager {
 	 */
 	S3FileHandle multipartUploadLocalFile(Long storageLocationId, String userId, File fileToUpload, String contentType,
 			ProgressListener listener);
+
+	/**
+	 * Create a new S3FileHandle for an object that has already been uploaded
+	 * to S3.
+	 * 
+	 * @param userId
+	 * @param bucket
+	 * @param key
+	 * @param fileName
+	 * @param contentType
+	 * @param contentMd5
+	 *            The hex MD5 of the object.
+	 * @param contentSize
+	 * @return
+	 */
+	S3FileHandle createS3FileHandle(String userId, String bucket, String key, String fileName, String contentType,
+			String contentMd5, long contentSize);
 }
@@ -229,15 +229,8 @@ public class MultipartManagerImpl implements MultipartManager {
 			String md5 = MD5ChecksumHelper.getMD5Checksum(fileToUpload);
 			// Start the fileHandle
 			// We can now create a FileHandle for this upload
-			S3FileHandle handle = new S3FileHandle();
-			handle.setBucketName(MultipartUtils.getBucket(storageLocationSetting));
-			handle.setKey(key);
-			handle.setContentMd5(md5);
-			handle.setContentType(contentType);
-			handle.setCreatedBy(userId);
-			handle.setCreatedOn(new Date(System.currentTimeMillis()));
-			handle.setEtag(UUID.randomUUID().toString());
-			handle.setFileName(fileToUpload.getName());
+			S3FileHandle handle = newS3FileHandle(userId, MultipartUtils.getBucket(storageLocationSetting), key,
+					fileToUpload.getName(), contentType, md5);
 			
 			PutObjectRequest por = new PutObjectRequest(MultipartUtils.getBucket(storageLocationSetting), key, fileToUpload);
 			ObjectMetadata meta = TransferUtils.prepareObjectMetadata(handle);
@@ -249,16 +242,44 @@ public class MultipartManagerImpl implements MultipartManager {
 			UploadResult results = upload.waitForUploadResult();
 			// get the metadata for this file.
 			meta = this.s3Client.getObjectMetadata(results.getBucketName(), results.getKey());
-			handle.setContentSize(meta.getContentLength());
-
-			handle.setId(idGenerator.generateNewId(IdType.FILE_IDS).toString());
-			// Save the file handle
-			handle = (S3FileHandle) fileHandleDao.createFile(handle);
 			// done
-			return handle;
+			return saveS3FileHandle(handle, meta.getContentLength());
 		} catch (Exception e) {
 			throw new DatastoreException(e);
 		} 
 	}
 
+	@Override
+	public S3FileHandle createS3FileHandle(String userId, String bucket, String key, String fileName,
+			String contentType, String contentMd5, long contentSize) {
+		return saveS3FileHandle(newS3FileHandle(userId, bucket, key, fileName, contentType, contentMd5), contentSize);
+	}
+
+	/**
+	 * Create a new S3FileHandle that has not been saved.
+	 */
+	private static S3FileHandle newS3FileHandle(String userId, String bucket, String key, String fileName,
+			String contentType, String contentMd5) {
+		S3FileHandle handle = new S3FileHandle();
+		handle.setBucketName(bucket);
+		handle.setKey(key);
+		handle.setContentMd5(contentMd5);
+		handle.setContentType(contentType);
+		handle.setCreatedBy(userId);
+		handle.setCreatedOn(new Date(System.currentTimeMillis()));
+		handle.setEtag(UUID.randomUUID().toString());
+		handle.setFileName(fileName);
+		return handle;
+	}
+
+	/**
+	 * Issue an ID to the given file handle and save it.
+	 */
+	private S3FileHandle saveS3FileHandle(S3FileHandle handle, long contentSize) {
+		handle.setContentSize(contentSize);
+		handle.setId(idGenerator.generateNewId(IdType.FILE_IDS).toString());
+		// Save the file handle
+		return (S3FileHandle) fileHandleDao.createFile(handle);
+	}
+
 }
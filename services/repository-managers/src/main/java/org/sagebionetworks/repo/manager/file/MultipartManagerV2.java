@@ -43,6 +43,10 @@ public interface MultipartManagerV2 {
 	
 	/**
 	 * After all of the parts are uploaded, complete the multi-part upload and generate a file.
+	 * When parts are uploaded directly to the S3 upload and any of the parts
+	 * were not uploaded as added, those parts are reset and the returned
+	 * status is not complete. The reset parts must be uploaded and added again
+	 * before completing the upload.
 	 * @param user
 	 * @param uploadId
 	 * @return
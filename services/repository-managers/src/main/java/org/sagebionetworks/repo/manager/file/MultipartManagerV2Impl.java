@@ -6,8 +6,10 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.apache.commons.codec.binary.Hex;
@@ -47,6 +49,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 public class MultipartManagerV2Impl implements MultipartManagerV2 {
 
+	public static final String PART_NOT_UPLOADED_MESSAGE = "The part was not uploaded or its MD5 does not match the MD5 of the uploaded part.  Please re-upload the part.";
+
 	@Autowired
 	S3MultipartUploadDAO s3multipartUploadDAO;
 
@@ -61,6 +65,22 @@ public class MultipartManagerV2Impl implements MultipartManagerV2 {
 
 	@Autowired
 	IdGenerator idGenerator;
+	
+	/**
+	 * Injected. When true, parts are uploaded directly to the S3 multi-part
+	 * upload rather than to their own objects that are then copied into the
+	 * upload.
+	 */
+	boolean directPartUpload = false;
+
+	/**
+	 * Injected.
+	 * 
+	 * @param directPartUpload
+	 */
+	public void setDirectPartUpload(boolean directPartUpload) {
+		this.directPartUpload = directPartUpload;
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -247,9 +267,17 @@ public class MultipartManagerV2Impl implements MultipartManagerV2 {
 			ValidateArgument.required(partNumberL, "PartNumber cannot be null");
 			int partNumber = partNumberL.intValue();
 			validatePartNumber(partNumber, numberOfParts);
-			String partKey = createPartKey(status.getKey(), partNumber);
-			URL url = s3multipartUploadDAO.createPreSignedPutUrl(
-					status.getBucket(), partKey, request.getContentType());
+			URL url;
+			if (directPartUpload) {
+				url = s3multipartUploadDAO.createPreSignedUploadPartUrl(
+						status.getBucket(), status.getKey(),
+						status.getUploadToken(), partNumber,
+						request.getContentType());
+			} else {
+				String partKey = createPartKey(status.getKey(), partNumber);
+				url = s3multipartUploadDAO.createPreSignedPutUrl(
+						status.getBucket(), partKey, request.getContentType());
+			}
 			PartPresignedUrl part = new PartPresignedUrl();
 			part.setPartNumber((long) partNumber);
 			part.setUploadPresignedUrl(url.toString());
@@ -340,6 +368,16 @@ public class MultipartManagerV2Impl implements MultipartManagerV2 {
 		AddPartResponse response = new AddPartResponse();
 		response.setPartNumber(new Long(partNumber));
 		response.setUploadId(uploadId);
+		if (directPartUpload) {
+			/*
+			 * The part was uploaded directly to the S3 upload. Its MD5 is
+			 * checked against S3 for all parts at once when the upload is
+			 * completed.
+			 */
+			multipartUploadDAO.addPartToUpload(uploadId, partNumber, partMD5Hex);
+			response.setAddPartState(AddPartState.ADD_SUCCESS);
+			return response;
+		}
 		try {
 			s3multipartUploadDAO.addPart(new AddPartRequest(composite
 					.getUploadToken(), composite.getBucket(), composite
@@ -380,6 +418,25 @@ public class MultipartManagerV2Impl implements MultipartManagerV2 {
 		List<PartMD5> addedParts = multipartUploadDAO
 				.getAddedPartMD5s(uploadId);
 		validateParts(composite.getNumberOfParts(), addedParts);
+		if (directPartUpload) {
+			List<Integer> invalidParts = findInvalidParts(addedParts,
+					s3multipartUploadDAO.listParts(composite.getBucket(),
+							composite.getKey(), composite.getUploadToken()));
+			if (!invalidParts.isEmpty()) {
+				/*
+				 * The failed parts must be committed so the caller can see
+				 * which parts to upload again, so the status is returned
+				 * rather than thrown.
+				 */
+				for (Integer partNumber : invalidParts) {
+					multipartUploadDAO.setPartToFailed(uploadId, partNumber,
+							PART_NOT_UPLOADED_MESSAGE);
+				}
+				MultipartUploadStatus status = composite.getMultipartUploadStatus();
+				status.setPartsState(setupPartState(composite));
+				return status;
+			}
+		}
 		// complete the upload
 		CompleteMultipartRequest request = new CompleteMultipartRequest();
 		request.setAddedParts(addedParts);
@@ -417,6 +474,34 @@ public class MultipartManagerV2Impl implements MultipartManagerV2 {
 		}
 	}
 	
+	/**
+	 * Find the added parts that are missing from S3 or whose MD5 does not
+	 * match the etag of the part in S3.
+	 * 
+	 * @param addedParts
+	 *            The parts added to the upload.
+	 * @param uploadedParts
+	 *            The parts listed by S3.
+	 * @return The part numbers of the invalid parts.
+	 */
+	public static List<Integer> findInvalidParts(List<PartMD5> addedParts,
+			List<PartMD5> uploadedParts) {
+		Map<Integer, String> uploadedMD5s = new HashMap<Integer, String>(
+				uploadedParts.size());
+		for (PartMD5 part : uploadedParts) {
+			uploadedMD5s.put(part.getPartNumber(), part.getPartMD5Hex());
+		}
+		List<Integer> invalidParts = new LinkedList<Integer>();
+		for (PartMD5 part : addedParts) {
+			String uploadedMD5 = uploadedMD5s.get(part.getPartNumber());
+			if (uploadedMD5 == null
+					|| !uploadedMD5.equalsIgnoreCase(part.getPartMD5Hex())) {
+				invalidParts.add(part.getPartNumber());
+			}
+		}
+		return invalidParts;
+	}
+	
 	/**
 	 * Prepare a COMPLETED status for a given composite.
 	 * @param composite
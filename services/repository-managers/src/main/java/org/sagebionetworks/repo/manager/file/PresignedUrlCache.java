@@ -0,0 +1,160 @@
+package org.sagebionetworks.repo.manager.file;
+
+import org.sagebionetworks.util.BoundedLruCache;
+import org.sagebionetworks.util.Clock;
+import org.sagebionetworks.util.ValidateArgument;
+
+/**
+ * A bounded cache of pre-signed S3 GET URLs. Signing a URL costs an HMAC per
+ * call and a new URL on every request defeats browser and CDN caching, so a
+ * signed URL is reused for the same object and response header overrides
+ * until only a fraction of its lifetime remains.
+ * <p>
+ * A pre-signed URL is not tied to the user it was generated for. Callers must
+ * authorize the user before asking for a URL, exactly as they would before
+ * signing a new one.
+ *
+ */
+public class PresignedUrlCache {
+
+	/**
+	 * Identifies a pre-signed URL by the object and the response header
+	 * overrides.
+	 */
+	private static class UrlKey {
+		final String bucket;
+		final String key;
+		final String contentType;
+		final String contentDisposition;
+
+		UrlKey(String bucket, String key, String contentType, String contentDisposition) {
+			this.bucket = bucket;
+			this.key = key;
+			this.contentType = contentType;
+			this.contentDisposition = contentDisposition;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((bucket == null) ? 0 : bucket.hashCode());
+			result = prime * result + ((contentDisposition == null) ? 0 : contentDisposition.hashCode());
+			result = prime * result + ((contentType == null) ? 0 : contentType.hashCode());
+			result = prime * result + ((key == null) ? 0 : key.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			UrlKey other = (UrlKey) obj;
+			if (bucket == null) {
+				if (other.bucket != null)
+					return false;
+			} else if (!bucket.equals(other.bucket))
+				return false;
+			if (contentDisposition == null) {
+				if (other.contentDisposition != null)
+					return false;
+			} else if (!contentDisposition.equals(other.contentDisposition))
+				return false;
+			if (contentType == null) {
+				if (other.contentType != null)
+					return false;
+			} else if (!contentType.equals(other.contentType))
+				return false;
+			if (key == null) {
+				if (other.key != null)
+					return false;
+			} else if (!key.equals(other.key))
+				return false;
+			return true;
+		}
+	}
+
+	private final BoundedLruCache<UrlKey, String> cache;
+
+	/**
+	 *
+	 * @param maxUrls
+	 *            The maximum number of URLs in the cache.
+	 * @param urlExpirationMS
+	 *            The number of MS a URL is valid for after it is signed.
+	 * @param minRemainingFraction
+	 *            A URL is only reused while at least this fraction of its
+	 *            lifetime remains. It is evicted before it expires.
+	 * @param clock
+	 */
+	public PresignedUrlCache(long maxUrls, long urlExpirationMS, double minRemainingFraction, Clock clock) {
+		ValidateArgument.requirement(urlExpirationMS > 0, "urlExpirationMS must be greater than zero");
+		ValidateArgument.requirement(minRemainingFraction > 0 && minRemainingFraction < 1,
+				"minRemainingFraction must be between zero and one");
+		long timeToLiveMS = (long) (urlExpirationMS * (1 - minRemainingFraction));
+		ValidateArgument.requirement(timeToLiveMS > 0, "URLs would never be reused");
+		this.cache = new BoundedLruCache<UrlKey, String>(maxUrls, timeToLiveMS,
+				BoundedLruCache.<UrlKey, String> countSizer(), clock);
+	}
+
+	/**
+	 * Get a cached URL.
+	 *
+	 * @param bucket
+	 * @param key
+	 * @param contentType
+	 *            The content type override or null.
+	 * @param contentDisposition
+	 *            The content disposition override or null.
+	 * @return The URL or null if there is no URL that can still be reused.
+	 */
+	public String get(String bucket, String key, String contentType, String contentDisposition) {
+		return cache.get(new UrlKey(bucket, key, contentType, contentDisposition));
+	}
+
+	/**
+	 * Cache a URL that was just signed.
+	 *
+	 * @param bucket
+	 * @param key
+	 * @param contentType
+	 *            The content type override or null.
+	 * @param contentDisposition
+	 *            The content disposition override or null.
+	 * @param url
+	 */
+	public void put(String bucket, String key, String contentType, String contentDisposition, String url) {
+		cache.put(new UrlKey(bucket, key, contentType, contentDisposition), url);
+	}
+
+	/**
+	 * The number of URLs served from the cache.
+	 *
+	 * @return
+	 */
+	public long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	/**
+	 * The number of URLs that had to be signed.
+	 *
+	 * @return
+	 */
+	public long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	/**
+	 * The number of URLs in the cache.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return cache.size();
+	}
+}
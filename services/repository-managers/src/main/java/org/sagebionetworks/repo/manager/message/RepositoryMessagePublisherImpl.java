@@ -1,13 +1,20 @@
 package org.sagebionetworks.repo.manager.message;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Date;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
 import org.sagebionetworks.repo.model.ObjectType;
 import org.sagebionetworks.repo.model.message.ChangeMessage;
 import org.sagebionetworks.repo.model.message.ChangeMessages;
@@ -36,6 +43,12 @@ import com.google.common.collect.Lists;
 public class RepositoryMessagePublisherImpl implements RepositoryMessagePublisher {
 	
 	public static final String SEMAPHORE_KEY = "UNSENT_MESSAGE_WORKER";
+	public static final String METRIC_QUEUE_DEPTH = "queueDepth";
+	public static final String METRIC_PUBLISH_LATENCY = "publishBatchLatency";
+	public static final String METRIC_UNIT_COUNT = "Count";
+	public static final String METRIC_UNIT_MILLISECONDS = "Milliseconds";
+	public static final int DEFAULT_MAX_PUBLISH_ATTEMPTS = 3;
+	public static final long DEFAULT_PUBLISH_RETRY_BACKOFF_MS = 100L;
 	static private Log log = LogFactory.getLog(RepositoryMessagePublisherImpl.class);
 
 	@Autowired
@@ -43,17 +56,30 @@ public class RepositoryMessagePublisherImpl implements RepositoryMessagePublishe
 
 	@Autowired
 	AmazonSNSClient awsSNSClient;
+
+	@Autowired
+	Consumer consumer;
 	
 	private boolean shouldMessagesBePublishedToTopic;
 
+	/**
+	 * Injected via spring. Publishes the batches of a timer event
+	 * concurrently. When null, batches are published on the timer thread.
+	 */
+	ExecutorService publishExecutorService;
+
+	int maxPublishAttempts = DEFAULT_MAX_PUBLISH_ATTEMPTS;
+
+	long publishRetryBackoffMS = DEFAULT_PUBLISH_RETRY_BACKOFF_MS;
+
 	// The prefix applied to each topic.
 	private final String topicPrefix;
 
 	// The name for the modification topic.
 	private final String modificationTopicName;
 	
-	// Maps each object type to its topic
-	Map<ObjectType, TopicInfo> typeToTopicMap = new HashMap<ObjectType, TopicInfo>();;
+	// Maps each object type to its topic. Concurrent since batches are published from many threads.
+	Map<ObjectType, TopicInfo> typeToTopicMap = new ConcurrentHashMap<ObjectType, TopicInfo>();
 
 	private TopicInfo modificationTopic;
 
@@ -83,6 +109,34 @@ public class RepositoryMessagePublisherImpl implements RepositoryMessagePublishe
 		this.awsSNSClient = awsSNSClient;
 	}
 
+	/**
+	 * Injected via spring.
+	 * 
+	 * @param publishExecutorService
+	 */
+	public void setPublishExecutorService(ExecutorService publishExecutorService) {
+		this.publishExecutorService = publishExecutorService;
+	}
+
+	/**
+	 * The maximum number of times a batch will be published before giving up.
+	 * 
+	 * @param maxPublishAttempts
+	 */
+	public void setMaxPublishAttempts(int maxPublishAttempts) {
+		this.maxPublishAttempts = maxPublishAttempts;
+	}
+
+	/**
+	 * The time to wait before the first retry of a batch. The wait doubles
+	 * with each retry.
+	 * 
+	 * @param publishRetryBackoffMS
+	 */
+	public void setPublishRetryBackoffMS(long publishRetryBackoffMS) {
+		this.publishRetryBackoffMS = publishRetryBackoffMS;
+	}
+
 	/**
 	 * Used by tests to inject a mock client.
 	 * @param awsSNSClient
@@ -144,6 +198,9 @@ public class RepositoryMessagePublisherImpl implements RepositoryMessagePublishe
 	public void timerFired(){
 		// Poll all data from the queue.
 		List<Message> currentQueue = pollListFromQueue();
+		if(!currentQueue.isEmpty()){
+			recordMetric(METRIC_QUEUE_DEPTH, currentQueue.size(), METRIC_UNIT_COUNT);
+		}
 		if(!shouldMessagesBePublishedToTopic){
 			// The messages should not be broadcast
 			if(log.isDebugEnabled() && currentQueue.size() > 0){
@@ -151,20 +208,99 @@ public class RepositoryMessagePublisherImpl implements RepositoryMessagePublishe
 			}
 			return;
 		}
-		// Publish each message to the topic
+		List<ChangeMessage> changes = new LinkedList<ChangeMessage>();
 		for (Message queueItem : currentQueue) {
-			try {
-				if (queueItem instanceof ChangeMessage) {
-					ChangeMessage message = (ChangeMessage) queueItem;
-					publishToTopic(message);
+			if (queueItem instanceof ChangeMessage) {
+				changes.add((ChangeMessage) queueItem);
+			} else {
+				log.error("Failed to publish message.", new IllegalArgumentException("Unknown message type " + queueItem.getClass().getName()));
+			}
+		}
+		// Group the changes by object type and partition by max changes per message body.
+		Map<ObjectType, List<List<ChangeMessage>>> batches = ChangeMessageUtils.groupByObjectTypeAndPartitionEachGroup(
+				changes, ChangeMessageUtils.MAX_NUMBER_OF_CHANGE_MESSAGES_PER_SQS_MESSAGE);
+		List<Future<?>> futures = new LinkedList<Future<?>>();
+		for (final ObjectType type : batches.keySet()) {
+			for (final List<ChangeMessage> batch : batches.get(type)) {
+				Runnable publishBatch = new Runnable() {
+
+					@Override
+					public void run() {
+						publishBatchWithRetry(type, batch);
+					}
+				};
+				if (publishExecutorService == null) {
+					publishBatch.run();
 				} else {
-					throw new IllegalArgumentException("Unknown message type " + queueItem.getClass().getName());
+					futures.add(publishExecutorService.submit(publishBatch));
 				}
+			}
+		}
+		// Wait for all batches so the next timer event does not overlap with this one.
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				log.error("Failed to publish batch.", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Publish a batch, retrying with an exponential backoff. A batch is only
+	 * registered as sent after it is published, so if all attempts fail the
+	 * messages remain unsent and will be sent by the worker that synchronizes
+	 * the sent messages with the changes.
+	 * 
+	 * @param type
+	 * @param batch
+	 */
+	void publishBatchWithRetry(ObjectType type, List<ChangeMessage> batch) {
+		long backoffMS = publishRetryBackoffMS;
+		for (int attempt = 1; ; attempt++) {
+			try {
+				long start = System.currentTimeMillis();
+				publishBatchToTopic(type, batch);
+				recordMetric(METRIC_PUBLISH_LATENCY, System.currentTimeMillis() - start, METRIC_UNIT_MILLISECONDS);
+				return;
 			} catch (Throwable e) {
-				// If one messages fails, we must send the rest.
-				log.error("Failed to publish message.", e);
+				if (attempt >= maxPublishAttempts) {
+					log.error("Failed to publish " + batch.size() + " messages of type: " + type + " after " + attempt + " attempts.", e);
+					return;
+				}
+				log.warn("Failed to publish batch of type: " + type + " attempt: " + attempt + ". Will retry.", e);
+			}
+			try {
+				Thread.sleep(backoffMS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
 			}
+			backoffMS *= 2;
+		}
+	}
+
+	/**
+	 * Push a metric to CloudWatch.
+	 * 
+	 * @param name
+	 * @param value
+	 * @param unit
+	 */
+	private void recordMetric(String name, long value, String unit) {
+		if (consumer == null) {
+			return;
 		}
+		ProfileData data = new ProfileData();
+		data.setNamespace(this.getClass().getName());
+		data.setName(name);
+		data.setValue((double) value);
+		data.setUnit(unit);
+		data.setTimestamp(new Date());
+		consumer.addProfileData(data);
 	}
 	
 	/**
@@ -197,6 +333,7 @@ public class RepositoryMessagePublisherImpl implements RepositoryMessagePublishe
 			CreateTopicResult result = awsSNSClient.createTopic(new CreateTopicRequest(name));
 			String arn = result.getTopicArn();
 			info = new TopicInfo(name, arn);
+			// Creating a topic is idempotent so a concurrent create returns the same arn.
 			this.typeToTopicMap.put(type, info);
 		}
 		return info;
@@ -244,14 +381,19 @@ public class RepositoryMessagePublisherImpl implements RepositoryMessagePublishe
 					"Batch size is limited to the number of messages that can be written to a single SQS Messages body.  Current maximumn: "
 							+ ChangeMessageUtils.MAX_NUMBER_OF_CHANGE_MESSAGES_PER_SQS_MESSAGE);
 		}
-		// Write the batch to sent table.
-		this.transactionalMessanger.registerMessagesSent(type, batch);
 		// Lookup the topic arn.
 		String topicArn = getTopicInfoLazy(type).getArn();
 		ChangeMessages messages = new ChangeMessages();
 		messages.setList(batch);
 		// publish the batch to to the topic
 		publish(messages, topicArn);
+		/*
+		 * Only write the batch to the sent table after a successful publish. A
+		 * failed publish leaves the batch unsent for the sent message
+		 * synchronization worker. If the write fails after a publish the batch
+		 * will be sent again, which is safe since consumers are idempotent.
+		 */
+		this.transactionalMessanger.registerMessagesSent(type, batch);
 	}
 
 	private void publish(JSONEntity message, String topicArn) {
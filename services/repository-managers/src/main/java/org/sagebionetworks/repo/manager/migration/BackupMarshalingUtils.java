@@ -27,11 +27,23 @@ public class BackupMarshalingUtils {
 	public static <B> void writeBackupToWriter(List<B> list, String alias, Writer writer) {
 		if (list == null || list.size() < 1)
 			return;
-		XStream xstream = new XStream();
-		xstream.alias(alias, list.get(0).getClass());
+		XStream xstream = createXStream(alias, list.get(0).getClass());
 		xstream.toXML(list, writer);
 	}
 	
+	/**
+	 * Create the XStream used to marshal backup objects of the given type.
+	 * 
+	 * @param alias
+	 * @param clazz
+	 * @return
+	 */
+	public static XStream createXStream(String alias, Class<?> clazz) {
+		XStream xstream = new XStream();
+		xstream.alias(alias, clazz);
+		return xstream;
+	}
+	
 	/**
 	 * Read a backup list from a stream
 	 * @param clazz
@@ -41,8 +53,7 @@ public class BackupMarshalingUtils {
 	 */
 	@SuppressWarnings("unchecked")
 	public static <B> List<B> readBackupFromStream(Class<B> clazz, String alias, InputStream in){
-		XStream xstream = new XStream();
-		xstream.alias(alias, clazz);
+		XStream xstream = createXStream(alias, clazz);
 		try{
 			return (List<B>) xstream.fromXML(in);
 		}catch(StreamException e){
@@ -0,0 +1,150 @@
+package org.sagebionetworks.repo.manager.migration;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sagebionetworks.repo.manager.migration.BinaryBackupSchema.FieldType;
+import org.sagebionetworks.util.VarLongUtils;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Reads backup objects from a stream in the binary backup format one row at a
+ * time. See {@link BinaryBackupSchema} for the layout of the stream.
+ *
+ * Fields are matched by name, so fields in the stream that no longer exist in
+ * the backup class are skipped and fields of the backup class that are not in
+ * the stream are left unset.
+ *
+ * @param <B>
+ *            The backup class.
+ */
+public class BinaryBackupReader<B> {
+
+	private final DataInputStream in;
+	private final Constructor<? extends B> constructor;
+	private final XStream xstream;
+	private FieldType[] types;
+	// The field of the backup class for each field of the stream, null when skipped.
+	private Field[] targets;
+	private byte[] nullBitmap;
+	private boolean done = false;
+
+	/**
+	 * Creates a reader and reads the header from the stream. An empty stream
+	 * is treated as a backup with no rows.
+	 *
+	 * @param clazz
+	 *            The backup class.
+	 * @param alias
+	 *            The expected alias of the backup type.
+	 * @param stream
+	 *            The stream is not closed by the reader.
+	 * @throws IOException
+	 */
+	public BinaryBackupReader(Class<? extends B> clazz, String alias, InputStream stream) throws IOException {
+		if (clazz == null) throw new IllegalArgumentException("Class cannot be null");
+		if (alias == null) throw new IllegalArgumentException("Alias cannot be null");
+		if (stream == null) throw new IllegalArgumentException("Stream cannot be null");
+		this.in = new DataInputStream(new BufferedInputStream(stream));
+		this.xstream = BackupMarshalingUtils.createXStream(alias, clazz);
+		try {
+			this.constructor = clazz.getDeclaredConstructor();
+			this.constructor.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Backup class must have a no-argument constructor: " + clazz.getName());
+		}
+		int magic;
+		try {
+			magic = in.readInt();
+		} catch (EOFException e) {
+			// Ignore empty files.
+			done = true;
+			return;
+		}
+		if (magic != BinaryBackupSchema.MAGIC) {
+			throw new IOException("Stream is not a binary backup");
+		}
+		int version = in.readUnsignedShort();
+		if (version > BinaryBackupSchema.FORMAT_VERSION) {
+			throw new IOException("Unsupported binary backup version: " + version);
+		}
+		String streamAlias = BinaryBackupSchema.readString(in);
+		if (!alias.equals(streamAlias)) {
+			throw new IllegalArgumentException("Expected a backup of: " + alias + " but found: " + streamAlias);
+		}
+		readFields(clazz);
+	}
+
+	private void readFields(Class<?> clazz) throws IOException {
+		Map<String, Field> byName = new HashMap<String, Field>();
+		for (Field field : BinaryBackupSchema.getFields(clazz)) {
+			byName.put(field.getName(), field);
+		}
+		int count = (int) VarLongUtils.readVarLong(in);
+		types = new FieldType[count];
+		targets = new Field[count];
+		nullBitmap = new byte[(count + 7) / 8];
+		for (int i = 0; i < count; i++) {
+			String name = BinaryBackupSchema.readString(in);
+			types[i] = FieldType.forCode(in.readUnsignedByte());
+			Field field = byName.get(name);
+			if (field != null) {
+				if (FieldType.forClass(field.getType()) != types[i]) {
+					throw new IllegalArgumentException("The type of field: " + name + " of " + clazz.getName()
+							+ " does not match the backup");
+				}
+				targets[i] = field;
+			}
+		}
+	}
+
+	/**
+	 * Read the next row.
+	 *
+	 * @return The next row or null when there are no more rows.
+	 * @throws IOException
+	 */
+	public B read() throws IOException {
+		if (done) {
+			return null;
+		}
+		int marker = in.readUnsignedByte();
+		if (marker == BinaryBackupSchema.END_MARKER) {
+			done = true;
+			return null;
+		}
+		if (marker != BinaryBackupSchema.ROW_MARKER) {
+			throw new IOException("Unexpected marker: " + marker);
+		}
+		in.readFully(nullBitmap);
+		B backup;
+		try {
+			backup = constructor.newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+		for (int i = 0; i < types.length; i++) {
+			if ((nullBitmap[i / 8] & (1 << (i % 8))) != 0) {
+				continue;
+			}
+			Field target = targets[i];
+			Object value = BinaryBackupSchema.readValue(types[i], target == null ? null : target.getType(), xstream, in);
+			if (target != null) {
+				try {
+					target.set(backup, value);
+				} catch (IllegalAccessException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+		return backup;
+	}
+}
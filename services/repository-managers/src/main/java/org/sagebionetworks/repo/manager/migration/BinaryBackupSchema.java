@@ -0,0 +1,226 @@
+package org.sagebionetworks.repo.manager.migration;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sagebionetworks.util.VarLongUtils;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * The schema of a binary backup: the header constants, the fields of each
+ * backup class and the encoding of each field type.
+ *
+ * A binary backup starts with a header of the magic number, the format
+ * version, the alias of the backup type and the name and type code of each
+ * field. Each row is a row marker, a bitmap of the null fields and then the
+ * value of each non-null field in header order. The stream ends with an end
+ * marker. Since the field names are in the header, a reader skips fields that
+ * no longer exist in the backup class and leaves new fields unset. Fields
+ * without a binary encoding are written as XML by the same XStream
+ * configuration as the XML backup format (see
+ * {@link BackupMarshalingUtils#createXStream(String, Class)}).
+ *
+ */
+class BinaryBackupSchema {
+
+	static final int MAGIC = 0x53424B55;
+	static final int FORMAT_VERSION = 1;
+	static final int ROW_MARKER = 1;
+	static final int END_MARKER = 0;
+
+	private static final ConcurrentHashMap<Class<?>, List<Field>> FIELD_CACHE = new ConcurrentHashMap<Class<?>, List<Field>>();
+
+	/**
+	 * The type of each field. The code of a type is written to the header so
+	 * the codes must never change.
+	 */
+	enum FieldType {
+		LONG(1), INTEGER(2), DOUBLE(3), BOOLEAN(4), STRING(5), BYTES(6), DATE(7), ENUM(8), OBJECT(9);
+
+		final int code;
+
+		FieldType(int code) {
+			this.code = code;
+		}
+
+		static FieldType forCode(int code) throws IOException {
+			for (FieldType type : values()) {
+				if (type.code == code) {
+					return type;
+				}
+			}
+			throw new IOException("Unknown field type code: " + code);
+		}
+
+		/**
+		 * The type used to encode a field of the given class.
+		 *
+		 * @param clazz
+		 * @return
+		 */
+		static FieldType forClass(Class<?> clazz) {
+			if (clazz == Long.class || clazz == long.class) {
+				return LONG;
+			} else if (clazz == Integer.class || clazz == int.class) {
+				return INTEGER;
+			} else if (clazz == Double.class || clazz == double.class) {
+				return DOUBLE;
+			} else if (clazz == Boolean.class || clazz == boolean.class) {
+				return BOOLEAN;
+			} else if (clazz == String.class) {
+				return STRING;
+			} else if (clazz == byte[].class) {
+				return BYTES;
+			} else if (Date.class.isAssignableFrom(clazz)) {
+				return DATE;
+			} else if (clazz.isEnum()) {
+				return ENUM;
+			}
+			return OBJECT;
+		}
+	}
+
+	/**
+	 * The fields of a backup class including the fields of its super classes.
+	 * Static and transient fields are not backed up.
+	 *
+	 * @param clazz
+	 * @return
+	 */
+	static List<Field> getFields(Class<?> clazz) {
+		List<Field> fields = FIELD_CACHE.get(clazz);
+		if (fields == null) {
+			List<Field> list = new ArrayList<Field>();
+			for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+				for (Field field : current.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+						continue;
+					}
+					field.setAccessible(true);
+					list.add(field);
+				}
+			}
+			fields = Collections.unmodifiableList(list);
+			FIELD_CACHE.putIfAbsent(clazz, fields);
+		}
+		return fields;
+	}
+
+	/**
+	 * Write a single non-null value.
+	 *
+	 * @param type
+	 * @param value
+	 * @param xstream
+	 *            Used for the fields without a binary encoding.
+	 * @param out
+	 * @throws IOException
+	 */
+	static void writeValue(FieldType type, Object value, XStream xstream, DataOutputStream out) throws IOException {
+		switch (type) {
+		case LONG:
+			VarLongUtils.writeVarLong(out, (Long) value);
+			break;
+		case INTEGER:
+			VarLongUtils.writeVarLong(out, (Integer) value);
+			break;
+		case DOUBLE:
+			out.writeDouble((Double) value);
+			break;
+		case BOOLEAN:
+			out.writeBoolean((Boolean) value);
+			break;
+		case STRING:
+			writeString(out, (String) value);
+			break;
+		case BYTES:
+			byte[] bytes = (byte[]) value;
+			VarLongUtils.writeVarLong(out, bytes.length);
+			out.write(bytes);
+			break;
+		case DATE:
+			Date date = (Date) value;
+			VarLongUtils.writeVarLong(out, date.getTime());
+			// Zero for a date otherwise the nanos plus one for a timestamp.
+			VarLongUtils.writeVarLong(out, date instanceof Timestamp ? ((Timestamp) date).getNanos() + 1 : 0);
+			break;
+		case ENUM:
+			writeString(out, ((Enum<?>) value).name());
+			break;
+		case OBJECT:
+			writeString(out, xstream.toXML(value));
+			break;
+		}
+	}
+
+	/**
+	 * Read a single non-null value.
+	 *
+	 * @param type
+	 * @param target
+	 *            The class of the field the value is for. Only used for enums.
+	 * @param xstream
+	 *            Used for the fields without a binary encoding.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Object readValue(FieldType type, Class<?> target, XStream xstream, DataInputStream in) throws IOException {
+		switch (type) {
+		case LONG:
+			return VarLongUtils.readVarLong(in);
+		case INTEGER:
+			return (int) VarLongUtils.readVarLong(in);
+		case DOUBLE:
+			return in.readDouble();
+		case BOOLEAN:
+			return in.readBoolean();
+		case STRING:
+			return readString(in);
+		case BYTES:
+			byte[] bytes = new byte[(int) VarLongUtils.readVarLong(in)];
+			in.readFully(bytes);
+			return bytes;
+		case DATE:
+			long time = VarLongUtils.readVarLong(in);
+			int nanosPlusOne = (int) VarLongUtils.readVarLong(in);
+			if (nanosPlusOne == 0) {
+				return new Date(time);
+			}
+			Timestamp timestamp = new Timestamp(time);
+			timestamp.setNanos(nanosPlusOne - 1);
+			return timestamp;
+		case ENUM:
+			String name = readString(in);
+			return target == null ? name : Enum.valueOf((Class<Enum>) target, name);
+		case OBJECT:
+			return xstream.fromXML(readString(in));
+		}
+		throw new IOException("Unknown field type: " + type);
+	}
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		VarLongUtils.writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[(int) VarLongUtils.readVarLong(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,113 @@
+package org.sagebionetworks.repo.manager.migration;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+
+import org.sagebionetworks.repo.manager.migration.BinaryBackupSchema.FieldType;
+import org.sagebionetworks.util.VarLongUtils;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Writes backup objects to a stream in the binary backup format one row at a
+ * time. See {@link BinaryBackupSchema} for the layout of the stream.
+ *
+ * @param <B>
+ *            The backup class.
+ */
+public class BinaryBackupWriter<B> {
+
+	private final DataOutputStream out;
+	private final List<Field> fields;
+	private final FieldType[] types;
+	private final byte[] nullBitmap;
+	private final XStream xstream;
+	private long rowCount = 0;
+
+	/**
+	 * Creates a writer and writes the header to the stream.
+	 *
+	 * @param clazz
+	 *            The backup class.
+	 * @param alias
+	 *            The alias of the backup type.
+	 * @param stream
+	 *            The stream is flushed but not closed by {@link #finish()}.
+	 * @throws IOException
+	 */
+	public BinaryBackupWriter(Class<? extends B> clazz, String alias, OutputStream stream) throws IOException {
+		if (clazz == null) throw new IllegalArgumentException("Class cannot be null");
+		if (alias == null) throw new IllegalArgumentException("Alias cannot be null");
+		if (stream == null) throw new IllegalArgumentException("Stream cannot be null");
+		this.out = new DataOutputStream(new BufferedOutputStream(stream));
+		this.fields = BinaryBackupSchema.getFields(clazz);
+		this.types = new FieldType[fields.size()];
+		this.nullBitmap = new byte[(fields.size() + 7) / 8];
+		this.xstream = BackupMarshalingUtils.createXStream(alias, clazz);
+		out.writeInt(BinaryBackupSchema.MAGIC);
+		out.writeShort(BinaryBackupSchema.FORMAT_VERSION);
+		BinaryBackupSchema.writeString(out, alias);
+		VarLongUtils.writeVarLong(out, fields.size());
+		for (int i = 0; i < fields.size(); i++) {
+			Field field = fields.get(i);
+			types[i] = FieldType.forClass(field.getType());
+			BinaryBackupSchema.writeString(out, field.getName());
+			out.writeByte(types[i].code);
+		}
+	}
+
+	/**
+	 * Write a single row.
+	 *
+	 * @param backup
+	 * @throws IOException
+	 */
+	public void write(B backup) throws IOException {
+		if (backup == null) throw new IllegalArgumentException("Backup cannot be null");
+		Object[] values = new Object[fields.size()];
+		Arrays.fill(nullBitmap, (byte) 0);
+		for (int i = 0; i < values.length; i++) {
+			try {
+				values[i] = fields.get(i).get(backup);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+			if (values[i] == null) {
+				nullBitmap[i / 8] |= 1 << (i % 8);
+			}
+		}
+		out.writeByte(BinaryBackupSchema.ROW_MARKER);
+		out.write(nullBitmap);
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				BinaryBackupSchema.writeValue(types[i], values[i], xstream, out);
+			}
+		}
+		rowCount++;
+	}
+
+	/**
+	 * Write the end marker and flush the stream. The stream is not closed so
+	 * it can be an entry of a zip file.
+	 *
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		out.writeByte(BinaryBackupSchema.END_MARKER);
+		out.flush();
+	}
+
+	/**
+	 * The number of rows written.
+	 *
+	 * @return
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+}
@@ -1,6 +1,8 @@
 package org.sagebionetworks.repo.manager.migration;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.List;
 import java.util.Map;
@@ -66,6 +68,32 @@ public interface MigrationManager {
 	 * @throws Exception 
 	 */
 	public List<Long> createOrUpdateBatch(UserInfo user, MigrationType type, InputStream in) throws Exception;
+
+	/**
+	 * Write a batch of objects to backup using the given format. Rows are
+	 * read from the database and written to the stream in batches, so a
+	 * binary backup never holds the whole batch in memory.
+	 * 
+	 * @param user
+	 * @param type
+	 * @param rowIds
+	 * @param format
+	 * @param out The stream is flushed but not closed.
+	 * @throws IOException
+	 */
+	public void writeBackupBatch(UserInfo user, MigrationType type, List<Long> rowIds, BackupFormat format, OutputStream out) throws IOException;
+
+	/**
+	 * Create or update a batch read from a stream in the given format.
+	 * 
+	 * @param user
+	 * @param type
+	 * @param format
+	 * @param in
+	 * @return The IDs of the rows that were created or updated.
+	 * @throws Exception
+	 */
+	public List<Long> createOrUpdateBatch(UserInfo user, MigrationType type, BackupFormat format, InputStream in) throws Exception;
 	
 	/**
 	 * Delete objects by their IDs
@@ -1,6 +1,9 @@
 package org.sagebionetworks.repo.manager.migration;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -133,6 +136,43 @@ public class MigrationManagerImpl implements MigrationManager {
 		});
 	}
 
+	@WriteTransaction
+	@SuppressWarnings("unchecked")
+	@Override
+	public void writeBackupBatch(UserInfo user, MigrationType type, List<Long> rowIds, BackupFormat format,
+			OutputStream out) throws IOException {
+		validateUser(user);
+		if(type == null) throw new IllegalArgumentException("Type cannot be null");
+		if(format == null) throw new IllegalArgumentException("Format cannot be null");
+		if(BackupFormat.XML == format){
+			Writer writer = new OutputStreamWriter(out, "UTF-8");
+			writeBackupBatch(user, type, rowIds, writer);
+			writer.flush();
+			return;
+		}
+		MigratableDatabaseObject mdo = migratableTableDao.getObjectForType(type);
+		writeBinaryBackupBatch(mdo, rowIds, out);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<Long> createOrUpdateBatch(UserInfo user, final MigrationType type, BackupFormat format,
+			final InputStream in) throws Exception {
+		if(format == null) throw new IllegalArgumentException("Format cannot be null");
+		if(BackupFormat.XML == format){
+			return createOrUpdateBatch(user, type, in);
+		}
+		validateUser(user);
+		if(type == null) throw new IllegalArgumentException("Type cannot be null");
+		return migratableTableDao.runWithForeignKeyIgnored(new Callable<List<Long>>(){
+			@Override
+			public List<Long> call() throws Exception {
+				MigratableDatabaseObject mdo = migratableTableDao.getObjectForType(type);
+				return createOrUpdateBinaryBatch(mdo, type, in);
+			}
+		});
+	}
+
 	@WriteTransaction
 	@Override
 	public int deleteObjectsById(final UserInfo user, final MigrationType type, final List<Long> idList) throws Exception {
@@ -211,6 +251,29 @@ public class MigrationManagerImpl implements MigrationManager {
 		BackupMarshalingUtils.writeBackupToWriter(backupList, alias, writer);
 	}
 
+	/**
+	 * Write the backup in the binary format. Each batch read from the
+	 * database is translated and written one row at a time.
+	 * 
+	 * @param mdo
+	 * @param rowIds
+	 * @param out
+	 * @throws IOException
+	 */
+	protected <D extends DatabaseObject<D>, B> void writeBinaryBackupBatch(MigratableDatabaseObject<D, B> mdo,
+			List<Long> rowIds, OutputStream out) throws IOException {
+		MigratableTableTranslation<D, B> translator = mdo.getTranslator();
+		String alias = mdo.getTableMapping().getTableName();
+		BinaryBackupWriter<B> writer = new BinaryBackupWriter<B>(mdo.getBackupClass(), alias, out);
+		for(int start=0; start<rowIds.size(); start+=backupBatchMax){
+			List<Long> batch = rowIds.subList(start, Math.min(start+backupBatchMax, rowIds.size()));
+			for(D dbo: migratableTableDao.getBackupBatch(mdo.getDatabaseObjectClass(), batch)){
+				writer.write(translator.createBackupFromDatabaseObject(dbo));
+			}
+		}
+		writer.finish();
+	}
+
 	/**
 	 * Get all of the backup data for a list of IDs using batching.
 	 * @param mdo
@@ -267,6 +330,49 @@ public class MigrationManagerImpl implements MigrationManager {
 
 	}
 
+	/**
+	 * Read a binary backup one row at a time and write each batch of
+	 * backupBatchMax rows to the database as it is read.
+	 * 
+	 * @param mdo
+	 * @param type
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	private <D extends DatabaseObject<D>, B> List<Long> createOrUpdateBinaryBatch(MigratableDatabaseObject<D, B> mdo,
+			MigrationType type, InputStream in) throws IOException {
+		String alias = mdo.getTableMapping().getTableName();
+		BinaryBackupReader<B> reader = new BinaryBackupReader<B>(mdo.getBackupClass(), alias, in);
+		MigratableTableTranslation<D, B> translator = mdo.getTranslator();
+		List<Long> results = new LinkedList<Long>();
+		List<D> databaseList = new LinkedList<D>();
+		B backup;
+		while((backup = reader.read()) != null){
+			databaseList.add(translator.createDatabaseObjectFromBackup(backup));
+			if(databaseList.size() >= backupBatchMax){
+				results.addAll(createOrUpdateDatabaseBatch(type, databaseList));
+				databaseList = new LinkedList<D>();
+			}
+		}
+		if(!databaseList.isEmpty()){
+			results.addAll(createOrUpdateDatabaseBatch(type, databaseList));
+		}
+		return results;
+	}
+
+	/**
+	 * Write a batch to the database and let the listeners know about the change.
+	 * @param type
+	 * @param databaseList
+	 * @return
+	 */
+	private <D extends DatabaseObject<D>> List<Long> createOrUpdateDatabaseBatch(MigrationType type, List<D> databaseList){
+		List<Long> results = migratableTableDao.createOrUpdateBatch(databaseList);
+		fireCreateOrUpdateBatchEvent(type, databaseList);
+		return results;
+	}
+
 	/**
 	 * Fire a create or update event for a given migration type.
 	 * @param type
@@ -0,0 +1,39 @@
+package org.sagebionetworks.repo.manager.migration;
+
+import java.util.List;
+
+import org.sagebionetworks.repo.model.dao.NodeClosureDao;
+import org.sagebionetworks.repo.model.dbo.DatabaseObject;
+import org.sagebionetworks.repo.model.dbo.persistence.DBONode;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Keeps the node closure table in sync with nodes that are created or moved
+ * by migration. Nodes whose parent has not been migrated yet are left for the
+ * closure backfill worker. Deleted nodes are removed from the closure table by
+ * the database (cascade delete).
+ *
+ */
+public class NodeClosureMigrationListener implements MigrationTypeListener {
+
+	@Autowired
+	NodeClosureDao nodeClosureDao;
+
+	@Override
+	public <D extends DatabaseObject<?>> void afterCreateOrUpdate(MigrationType type, List<D> delta) {
+		if (!MigrationType.NODE.equals(type)) {
+			return;
+		}
+		for (D dbo : delta) {
+			DBONode node = (DBONode) dbo;
+			nodeClosureDao.synchronizeNode(node.getId(), node.getParentId());
+		}
+	}
+
+	@Override
+	public void beforeDeleteBatch(MigrationType type, List<Long> idsToDelete) {
+		// The closure rows of a deleted node are removed by the foreign key cascade.
+	}
+
+}
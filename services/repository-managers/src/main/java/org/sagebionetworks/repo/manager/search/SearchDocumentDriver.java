@@ -1,6 +1,7 @@
 package org.sagebionetworks.repo.manager.search;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.sagebionetworks.repo.model.AccessControlList;
 import org.sagebionetworks.repo.model.DatastoreException;
@@ -33,6 +34,19 @@ public interface SearchDocumentDriver {
 	 * @throws IOException TODO
 	 */
 	public Document formulateSearchDocument(String nodeId) throws DatastoreException, NotFoundException, IOException;
+
+	/**
+	 * Create the search documents for a batch of nodes. The nodes,
+	 * benefactors, annotations and paths of all nodes are each loaded with a
+	 * single query and each benefactor ACL is only loaded once. The wiki pages
+	 * are loaded for each node. Nodes that do not exist are skipped.
+	 * 
+	 * @param nodeIds
+	 * @return
+	 * @throws DatastoreException
+	 * @throws IOException
+	 */
+	public List<Document> formulateSearchDocuments(List<String> nodeIds) throws DatastoreException, IOException;
 	/**
 	 * Create a search document and return it.
 	 * 
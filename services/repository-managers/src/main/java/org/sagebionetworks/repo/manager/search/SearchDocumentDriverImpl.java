@@ -28,6 +28,7 @@ import org.sagebionetworks.repo.model.ObjectType;
 import org.sagebionetworks.repo.model.ResourceAccess;
 import org.sagebionetworks.repo.model.dao.WikiPageKey;
 import org.sagebionetworks.repo.model.dao.WikiPageKeyHelper;
+import org.sagebionetworks.repo.model.jdo.KeyFactory;
 import org.sagebionetworks.repo.model.search.Document;
 import org.sagebionetworks.repo.model.search.DocumentFields;
 import org.sagebionetworks.repo.model.search.DocumentTypeNames;
@@ -377,6 +378,51 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 		return formulateFromBackup(node);
 	}
 
+	@Override
+	public List<Document> formulateSearchDocuments(List<String> nodeIds)
+			throws DatastoreException, IOException {
+		if (nodeIds == null)
+			throw new IllegalArgumentException("NodeIds cannot be null");
+		List<Document> documents = new LinkedList<Document>();
+		if (nodeIds.isEmpty()) {
+			return documents;
+		}
+		// The nodes, benefactors, annotations and paths are each read with a single query.
+		List<Long> ids = KeyFactory.stringToKey(nodeIds);
+		Map<Long, Long> benefactors = nodeDao.getBenefactors(ids);
+		Map<Long, NamedAnnotations> annotations = nodeDao.getAnnotationsForCurrentVersions(ids);
+		Map<Long, List<EntityHeader>> paths = nodeDao.getEntityPaths(ids);
+		// Nodes of the same project usually share a benefactor.
+		Map<Long, AccessControlList> benefactorAcls = new HashMap<Long, AccessControlList>();
+		for (Node node : nodeDao.getNodes(ids)) {
+			Long id = KeyFactory.stringToKey(node.getId());
+			try {
+				Long benefactorId = benefactors.get(id);
+				NamedAnnotations annos = annotations.get(id);
+				List<EntityHeader> path = paths.get(id);
+				if (benefactorId == null || annos == null || path == null) {
+					throw new NotFoundException("Node deleted while reading: " + node.getId());
+				}
+				AccessControlList benefactorACL = benefactorAcls.get(benefactorId);
+				if (benefactorACL == null) {
+					benefactorACL = aclDAO.get(benefactorId.toString(), ObjectType.ENTITY);
+					benefactorAcls.put(benefactorId, benefactorACL);
+				}
+				EntityPath entityPath = new EntityPath();
+				entityPath.setPath(path);
+				// The wiki pages of each node are still read one node at a time.
+				String wikiPagesText = getAllWikiPageText(node.getId());
+				documents.add(formulateSearchDocument(node, annos, benefactorACL,
+						entityPath, wikiPagesText));
+			} catch (NotFoundException e) {
+				// There is nothing to do if it does not exist
+				log.debug("Node not found for id: " + node.getId() + " Message:"
+						+ e.getMessage());
+			}
+		}
+		return documents;
+	}
+
 	@Override
 	public boolean doesDocumentExist(String nodeId, String etag) {
 		if (nodeId == null)
@@ -347,7 +347,10 @@ public class TableEntityManagerImpl implements TableEntityManager, UploadRowProc
 	}
 	
 	/**
-	 * Check for row level conflicts with the given change set.
+	 * Check for row level conflicts with the given change set. Changes covered
+	 * by the row version index are checked with a single query. Only changes
+	 * that were appended before the table's index started are read from their
+	 * change sets.
 	 * 
 	 * @param tableIdString
 	 * @param delta
@@ -370,22 +373,41 @@ public class TableEntityManagerImpl implements TableEntityManager, UploadRowProc
 		}
 		final Set<Long> deltaRowIds = rowIdToRowVersionNumberFromUpdate.keySet();
 		if(!deltaRowIds.isEmpty()){
+			Long indexStart = tableRowTruthDao.getRowVersionIndexStart(tableIdString);
+			if(indexStart != null){
+				Long changedRowId = tableRowTruthDao.findRowChangedAfterVersion(tableIdString, deltaRowIds, Math.max(versionOfDelta, indexStart));
+				if(changedRowId != null){
+					throw createRowConflictException(changedRowId);
+				}
+				if(versionOfDelta >= indexStart){
+					// All changes since the version of the delta are in the index.
+					return;
+				}
+			}
 			// Need to check all changes that have been applied since the version of the delta?
 			List<TableRowChange> rowChanges = tableRowTruthDao.listRowSetsKeysForTableGreaterThanVersion(tableIdString, versionOfDelta);
 			// scan all changes greater than this row.
 			for (final TableRowChange rowChange : rowChanges) {
+				if(indexStart != null && rowChange.getRowVersion() > indexStart){
+					// already checked with the index.
+					break;
+				}
 				if(TableChangeType.ROW.equals(rowChange.getChangeType())){
 					SparseChangeSetDto change = tableRowTruthDao.getRowSet(rowChange);
 					for(SparseRowDto row: change.getRows()){
 						if (deltaRowIds.contains(row.getRowId())) {
-							throw new ConflictingUpdateException("Row id: " + row.getRowId()
-									+ " has been changed since last read.  Please get the latest value for this row and then attempt to update it again.");
+							throw createRowConflictException(row.getRowId());
 						}			
 					}
 				}
 			}
 		}
 	}
+	
+	private static ConflictingUpdateException createRowConflictException(Long rowId){
+		return new ConflictingUpdateException("Row id: " + rowId
+				+ " has been changed since last read.  Please get the latest value for this row and then attempt to update it again.");
+	}
 
 	@Override
 	public List<TableRowChange> listRowSetsKeysForTable(String tableId) {
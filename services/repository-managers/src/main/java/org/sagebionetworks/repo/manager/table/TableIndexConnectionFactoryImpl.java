@@ -21,7 +21,8 @@ public class TableIndexConnectionFactoryImpl implements
 		if(tableId == null){
 			throw new IllegalArgumentException(tableId);
 		}
-		TableIndexDAO dao = connectionFactory.getConnection(tableId);
+		// indices are always built on the owner.
+		TableIndexDAO dao = connectionFactory.getOwnerConnection(tableId);
 		if(dao == null){
 			throw new TableIndexConnectionUnavailableException("Cannot connect to table: "+tableId);
 		}
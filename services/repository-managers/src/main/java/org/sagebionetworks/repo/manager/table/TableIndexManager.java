@@ -174,6 +174,20 @@ public interface TableIndexManager {
 	public Long populateViewFromEntityReplication(String tableId, ProgressCallback callback, ViewType viewType,
 			Set<Long> allContainersInScope, List<ColumnModel> currentSchema);
 	
+	/**
+	 * Update an existing view table by applying only the rows that differ
+	 * from the entity replication tables. The view's schema must already
+	 * match the given schema.
+	 * @param callback
+	 * 
+	 * @param viewType
+	 * @param allContainersInScope
+	 * @param currentSchema
+	 * @return The new CRC32 for the view.
+	 */
+	public Long updateViewFromEntityReplication(String tableId, ProgressCallback callback, ViewType viewType,
+			Set<Long> allContainersInScope, List<ColumnModel> currentSchema);
+	
 	/**
 	 * Get the possible ColumnModel definitions based on annotation within a given scope.
 	 * @param scope Defined as the list of container ids for a view.
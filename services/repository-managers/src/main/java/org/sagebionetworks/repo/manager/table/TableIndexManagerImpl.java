@@ -290,6 +290,47 @@ public class TableIndexManagerImpl implements TableIndexManager {
 		return tableIndexDao.calculateCRC32ofTableView(tableId);
 	}
 	
+	@Override
+	public Long updateViewFromEntityReplication(final String tableId, final ProgressCallback callback, final ViewType viewType,
+			final Set<Long> allContainersInScope, final List<ColumnModel> currentSchema) {
+		ValidateArgument.required(callback, "callback");
+		try {
+			return updateViewFromEntityReplicationWithProgress(tableId,
+					viewType, allContainersInScope, currentSchema);
+		} catch (Exception e) {
+			if (e instanceof RuntimeException) {
+				throw ((RuntimeException) e);
+			} else {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Apply the rows that changed in the entity replication tables to an
+	 * existing view. After the update the CRC is calculated exactly as it is
+	 * after a full populate, so both produce the same index version.
+	 * 
+	 * @param viewType
+	 * @param allContainersInScope
+	 * @param currentSchema
+	 * @return The CRC32 of the concatenation of ROW_ID & ETAG of the table after the update.
+	 * @throws Exception 
+	 */
+	Long updateViewFromEntityReplicationWithProgress(final String tableId, ViewType viewType, Set<Long> allContainersInScope, List<ColumnModel> currentSchema) throws Exception{
+		ValidateArgument.required(viewType, "viewType");
+		ValidateArgument.required(allContainersInScope, "allContainersInScope");
+		ValidateArgument.required(currentSchema, "currentSchema");
+		try {
+			tableIndexDao.updateViewFromEntityReplication(tableId, viewType, allContainersInScope, currentSchema);
+		} catch (Exception e) {
+			// if the copy failed. Attempt to determine the cause.
+			determineCauseOfReplicationFailure(e, currentSchema,  allContainersInScope, viewType);
+		}
+		// calculate the new CRC32;
+		return tableIndexDao.calculateCRC32ofTableView(tableId);
+	}
+	
 	/**
 	 * Attempt to determine the cause of a replication failure.
 	 * 
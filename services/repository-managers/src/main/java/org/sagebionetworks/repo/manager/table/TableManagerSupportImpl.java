@@ -226,8 +226,8 @@ public class TableManagerSupportImpl implements TableManagerSupport {
 		String truthSchemaMD5Hex = getSchemaMD5Hex(tableId);
 		// get the truth version
 		long truthLastVersion = getTableVersion(tableId);
-		// compare the truth with the index.
-		return this.tableConnectionFactory.getConnection(tableId).doesIndexStateMatch(tableId, truthLastVersion, truthSchemaMD5Hex);
+		// compare the truth with the index built on the owner.
+		return this.tableConnectionFactory.getOwnerConnection(tableId).doesIndexStateMatch(tableId, truthLastVersion, truthSchemaMD5Hex);
 	}
 	
 	/*
@@ -581,8 +581,8 @@ public class TableManagerSupportImpl implements TableManagerSupport {
 	public void rebuildTable(UserInfo userInfo, String tableId) {
 		if (!userInfo.isAdmin())
 			throw new UnauthorizedException("Only an administrator may access this service.");
-		// purge
-		TableIndexDAO indexDao = tableConnectionFactory.getConnection(tableId);
+		// purge the index of the owner as that is where the table is rebuilt.
+		TableIndexDAO indexDao = tableConnectionFactory.getOwnerConnection(tableId);
 		if (indexDao != null) {
 			indexDao.deleteTable(tableId);
 			indexDao.deleteSecondaryTables(tableId);
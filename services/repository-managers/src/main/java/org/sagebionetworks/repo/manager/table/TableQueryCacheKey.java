@@ -0,0 +1,165 @@
+package org.sagebionetworks.repo.manager.table;
+
+import java.util.List;
+import java.util.Map;
+
+import org.sagebionetworks.repo.model.table.FacetColumnRequest;
+import org.sagebionetworks.table.cluster.SqlQuery;
+
+/**
+ * Identifies the results of a single table query against a specific version
+ * of a table's index. Since the version and schema MD5 of the index are part
+ * of the key, any change to the table results in a new key so cached results
+ * are never served for an old version of the table.
+ *
+ */
+public class TableQueryCacheKey {
+
+	private final String tableId;
+	private final long indexVersion;
+	private final String schemaMD5Hex;
+	private final String outputSQL;
+	private final Map<String, Object> parameters;
+	private final List<FacetColumnRequest> selectedFacets;
+	private final boolean includeEntityEtag;
+	private final boolean runQuery;
+	private final boolean runCount;
+	private final boolean returnFacets;
+
+	/**
+	 *
+	 * @param query
+	 *            The fully processed query including any row level filters.
+	 * @param indexVersion
+	 *            The current version of the table's index.
+	 * @param schemaMD5Hex
+	 *            The MD5 of the table's current schema.
+	 * @param runQuery
+	 * @param runCount
+	 * @param returnFacets
+	 */
+	public TableQueryCacheKey(SqlQuery query, long indexVersion, String schemaMD5Hex, boolean runQuery,
+			boolean runCount, boolean returnFacets) {
+		this.tableId = query.getTableId();
+		this.indexVersion = indexVersion;
+		this.schemaMD5Hex = schemaMD5Hex;
+		this.outputSQL = query.getOutputSQL();
+		this.parameters = query.getParameters();
+		this.selectedFacets = query.getSelectedFacets();
+		this.includeEntityEtag = query.includeEntityEtag();
+		this.runQuery = runQuery;
+		this.runCount = runCount;
+		this.returnFacets = returnFacets;
+	}
+
+	public String getTableId() {
+		return tableId;
+	}
+
+	public long getIndexVersion() {
+		return indexVersion;
+	}
+
+	public String getSchemaMD5Hex() {
+		return schemaMD5Hex;
+	}
+
+	public String getOutputSQL() {
+		return outputSQL;
+	}
+
+	/**
+	 * Approximate size of this key in bytes.
+	 *
+	 * @return
+	 */
+	public long estimateSizeBytes() {
+		long size = TableQueryResultCache.OBJECT_OVERHEAD_BYTES;
+		size += TableQueryResultCache.estimateSizeBytes(tableId);
+		size += TableQueryResultCache.estimateSizeBytes(schemaMD5Hex);
+		size += TableQueryResultCache.estimateSizeBytes(outputSQL);
+		if (parameters != null) {
+			for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+				size += TableQueryResultCache.estimateSizeBytes(entry.getKey());
+				size += TableQueryResultCache.estimateSizeBytes(String.valueOf(entry.getValue()));
+			}
+		}
+		if (selectedFacets != null) {
+			size += TableQueryResultCache.estimateSizeBytes(selectedFacets.toString());
+		}
+		return size;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (includeEntityEtag ? 1231 : 1237);
+		result = prime * result + (int) (indexVersion ^ (indexVersion >>> 32));
+		result = prime * result + ((outputSQL == null) ? 0 : outputSQL.hashCode());
+		result = prime * result + ((parameters == null) ? 0 : parameters.hashCode());
+		result = prime * result + (returnFacets ? 1231 : 1237);
+		result = prime * result + (runCount ? 1231 : 1237);
+		result = prime * result + (runQuery ? 1231 : 1237);
+		result = prime * result + ((schemaMD5Hex == null) ? 0 : schemaMD5Hex.hashCode());
+		result = prime * result + ((selectedFacets == null) ? 0 : selectedFacets.hashCode());
+		result = prime * result + ((tableId == null) ? 0 : tableId.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		TableQueryCacheKey other = (TableQueryCacheKey) obj;
+		if (includeEntityEtag != other.includeEntityEtag)
+			return false;
+		if (indexVersion != other.indexVersion)
+			return false;
+		if (outputSQL == null) {
+			if (other.outputSQL != null)
+				return false;
+		} else if (!outputSQL.equals(other.outputSQL))
+			return false;
+		if (parameters == null) {
+			if (other.parameters != null)
+				return false;
+		} else if (!parameters.equals(other.parameters))
+			return false;
+		if (returnFacets != other.returnFacets)
+			return false;
+		if (runCount != other.runCount)
+			return false;
+		if (runQuery != other.runQuery)
+			return false;
+		if (schemaMD5Hex == null) {
+			if (other.schemaMD5Hex != null)
+				return false;
+		} else if (!schemaMD5Hex.equals(other.schemaMD5Hex))
+			return false;
+		if (selectedFacets == null) {
+			if (other.selectedFacets != null)
+				return false;
+		} else if (!selectedFacets.equals(other.selectedFacets))
+			return false;
+		if (tableId == null) {
+			if (other.tableId != null)
+				return false;
+		} else if (!tableId.equals(other.tableId))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "TableQueryCacheKey [tableId=" + tableId + ", indexVersion=" + indexVersion + ", schemaMD5Hex="
+				+ schemaMD5Hex + ", outputSQL=" + outputSQL + ", parameters=" + parameters + ", selectedFacets="
+				+ selectedFacets + ", includeEntityEtag=" + includeEntityEtag + ", runQuery=" + runQuery
+				+ ", runCount=" + runCount + ", returnFacets=" + returnFacets + "]";
+	}
+
+}
@@ -1,12 +1,24 @@
 package org.sagebionetworks.repo.manager.table;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.common.util.progress.ProgressingCallable;
+import org.sagebionetworks.repo.manager.table.TableQueryResultCache.CachedQueryResult;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.UserInfo;
@@ -33,6 +45,7 @@ import org.sagebionetworks.table.cluster.ConnectionFactory;
 import org.sagebionetworks.table.cluster.SqlQuery;
 import org.sagebionetworks.table.cluster.SqlQueryBuilder;
 import org.sagebionetworks.table.cluster.TableIndexDAO;
+import org.sagebionetworks.table.cluster.TableIndexState;
 import org.sagebionetworks.table.cluster.utils.TableModelUtils;
 import org.sagebionetworks.table.query.ParseException;
 import org.sagebionetworks.table.query.TableQueryParser;
@@ -56,23 +69,65 @@ public class TableQueryManagerImpl implements TableQueryManager {
 	public static final long BUNDLE_MASK_QUERY_MAX_ROWS_PER_PAGE = 0x8;
 	public static final long BUNDLE_MASK_QUERY_COLUMN_MODELS = 0x10;
 	public static final long BUNDLE_MASK_QUERY_FACETS = 0x20;
-	
+
+	public static final long DEFAULT_QUERY_TIMEOUT_MS = READ_LOCK_TIMEOUT_SEC*1000;
+
+	public static final String METRIC_MAIN_QUERY_TIME = "MainQueryTimeMS";
+	public static final String METRIC_COUNT_QUERY_TIME = "CountQueryTimeMS";
+	public static final String METRIC_FACET_QUERY_TIME = "FacetQueryTimeMS";
+	public static final String METRIC_UNIT_MILLISECONDS = "Milliseconds";
+	public static final String METRIC_QUERY_CACHE_HIT = "QueryCacheHit";
+	public static final String METRIC_UNIT_NONE = "None";
+
 	@Autowired
 	TableManagerSupport tableManagerSupport;
 	@Autowired
 	ConnectionFactory tableConnectionFactory;
 	@Autowired
 	ColumnModelDAO columnModelDAO;
-	
+	@Autowired
+	Consumer consumer;
+
 	/**
 	 * Injected via spring
 	 */
 	long maxBytesPerRequest;
-	
+
+	/**
+	 * Injected via spring. Runs the count and facet queries of a request
+	 * concurrently with the main query. When null, all queries are run on the
+	 * caller's thread.
+	 */
+	ExecutorService queryExecutorService;
+
+	/**
+	 * Injected via spring. The maximum time to wait for all of the count and
+	 * facet queries of a request.
+	 */
+	long queryTimeoutMS = DEFAULT_QUERY_TIMEOUT_MS;
+
+	/**
+	 * Injected via spring. Caches the results of single page queries for the
+	 * current version of each table. When null, results are not cached.
+	 */
+	TableQueryResultCache queryResultCache;
+
 	public void setMaxBytesPerRequest(long maxBytesPerRequest) {
 		this.maxBytesPerRequest = maxBytesPerRequest;
 	}
 
+	public void setQueryExecutorService(ExecutorService queryExecutorService) {
+		this.queryExecutorService = queryExecutorService;
+	}
+
+	public void setQueryTimeoutMS(long queryTimeoutMS) {
+		this.queryTimeoutMS = queryTimeoutMS;
+	}
+
+	public void setQueryResultCache(TableQueryResultCache queryResultCache) {
+		this.queryResultCache = queryResultCache;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -289,66 +344,329 @@ public class TableQueryManagerImpl implements TableQueryManager {
 		bundle.setColumnModels(query.getTableSchema());
 		bundle.setSelectColumns(query.getSelectColumns());
 		
-		TableIndexDAO indexDao = tableConnectionFactory.getConnection(query.getTableId());
-		
+		final TableIndexDAO indexDao = tableConnectionFactory.getConnection(query.getTableId());
+
+		// Results are reused when the same query was already run against the current version of the table.
+		TableQueryCacheKey cacheKey = createCacheKey(query, rowHandler, runCount, returnFacets, indexDao);
+		if(cacheKey != null){
+			CachedQueryResult cached = queryResultCache.get(cacheKey);
+			recordCacheLookup(cached != null);
+			if(cached != null){
+				return buildBundleFromCache(bundle, query, rowHandler, cached);
+			}
+		}
+
 		FacetModel facetModel = new FacetModel(query.getSelectedFacets(), query, returnFacets);
-		
+
 		//determine whether or not to run with facet filters
-		SqlQuery queryToRun;
+		final SqlQuery queryToRun;
 		if(facetModel.hasFiltersApplied()){
 			queryToRun = facetModel.getFacetFilteredQuery();
 		}else{
 			queryToRun = query;
 		}
-		
-		// run the actual query if needed.
+
+		/*
+		 * The count and facet queries are started before the main query so all
+		 * queries run concurrently. The main query is run on this thread since
+		 * the row handler might stream the results.
+		 */
+		Future<Long> countFuture = null;
+		List<Future<FacetColumnResult>> facetFutures = null;
+		// All of the count and facet queries share a single deadline.
+		long deadlineMS = createQueryDeadline();
+		try{
+			if(runCount){
+				// count requested.
+				countFuture = submitQuery(METRIC_COUNT_QUERY_TIME, new Callable<Long>() {
+
+					@Override
+					public Long call() throws Exception {
+						return runCountQuery(queryToRun, indexDao);
+					}
+				});
+			}
+			if(returnFacets){
+				//use original query instead of queryToRun because need the where clause that was not modified by any facets
+				facetFutures = submitFacetQueries(facetModel, indexDao);
+			}
+
+			// run the actual query if needed.
+			QueryResult queryResult = null;
+			if(rowHandler != null){
+				// run the query
+				long start = System.currentTimeMillis();
+				RowSet rowSet = runQueryAsStream(progressCallback, queryToRun, rowHandler, indexDao);
+				recordQueryTime(METRIC_MAIN_QUERY_TIME, System.currentTimeMillis() - start);
+				queryResult = new QueryResult();
+				queryResult.setQueryResults(rowSet);
+			}
+
+			Long count = null;
+			if(countFuture != null){
+				count = waitForQuery(countFuture, deadlineMS);
+			}
+			List<FacetColumnResult> facetResults = null;
+			if(facetFutures != null){
+				facetResults = waitForQueries(facetFutures, deadlineMS);
+			}
+
+			bundle.setQueryResult(queryResult);
+			bundle.setQueryCount(count);
+			bundle.setFacets(facetResults);
+			if(cacheKey != null){
+				List<Row> rows = null;
+				if(rowHandler != null){
+					rows = ((SinglePageRowHandler)rowHandler).getRows();
+				}
+				queryResultCache.put(cacheKey, new CachedQueryResult(rows, count, facetResults));
+			}
+			return bundle;
+		}finally{
+			// Nothing should be left running if this request failed.
+			cancelQuery(countFuture);
+			if(facetFutures != null){
+				for(Future<FacetColumnResult> future: facetFutures){
+					cancelQuery(future);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create the key used to cache the results of the given query. Only
+	 * queries that capture a single page of results in memory are cached.
+	 * 
+	 * @param query
+	 * @param rowHandler
+	 * @param runCount
+	 * @param returnFacets
+	 * @param indexDao
+	 * @return Null if the results of this query should not be cached.
+	 */
+	TableQueryCacheKey createCacheKey(SqlQuery query, RowHandler rowHandler, boolean runCount, boolean returnFacets, TableIndexDAO indexDao){
+		if(queryResultCache == null){
+			return null;
+		}
+		if(rowHandler != null && !(rowHandler instanceof SinglePageRowHandler)){
+			// streamed results are not cached.
+			return null;
+		}
+		// A single lookup of the index's status row.
+		TableIndexState state = indexDao.getIndexState(query.getTableId());
+		if(state == null || state.getVersion() < 0 || state.getSchemaMD5Hex() == null){
+			// the index has not been built.
+			return null;
+		}
+		return new TableQueryCacheKey(query, state.getVersion(), state.getSchemaMD5Hex(), rowHandler != null, runCount, returnFacets);
+	}
+
+	/**
+	 * Populate the bundle and row handler from cached results.
+	 * 
+	 * @param bundle
+	 * @param query
+	 * @param rowHandler
+	 * @param cached
+	 * @return
+	 */
+	QueryResultBundle buildBundleFromCache(QueryResultBundle bundle, SqlQuery query, RowHandler rowHandler, CachedQueryResult cached){
 		QueryResult queryResult = null;
-		List<FacetColumnResult> facetResults = null;
 		if(rowHandler != null){
-			// run the query
-			RowSet rowSet = runQueryAsStream(progressCallback, queryToRun, rowHandler, indexDao);
+			for(Row row: cached.getRows()){
+				rowHandler.nextRow(row);
+			}
+			RowSet rowSet = new RowSet();
+			rowSet.setHeaders(query.getSelectColumns());
+			rowSet.setTableId(query.getTableId());
 			queryResult = new QueryResult();
 			queryResult.setQueryResults(rowSet);
 		}
-		
-		// run the count query if needed.
-		Long count = null;
-		if(runCount){
-			// count requested.
-			count = runCountQuery(queryToRun, indexDao);
-		}
-		
-		//run the facet counts if needed
-		if(returnFacets){
-			//use original query instead of queryToRun because need the where clause that was not modified by any facets
-			facetResults = runFacetQueries(facetModel, indexDao);
-		}
-		
-		//run 
 		bundle.setQueryResult(queryResult);
-		bundle.setQueryCount(count);
-		bundle.setFacets(facetResults);
+		bundle.setQueryCount(cached.getCount());
+		bundle.setFacets(cached.getFacets());
 		return bundle;
 	}
-	
+
+	/**
+	 * Push a query cache hit (1) or miss (0) to CloudWatch. The average of
+	 * this metric is the cache hit rate.
+	 * 
+	 * @param hit
+	 */
+	void recordCacheLookup(boolean hit){
+		if(consumer == null){
+			return;
+		}
+		ProfileData data = new ProfileData();
+		data.setNamespace(this.getClass().getName());
+		data.setName(METRIC_QUERY_CACHE_HIT);
+		data.setValue(hit ? 1.0 : 0.0);
+		data.setUnit(METRIC_UNIT_NONE);
+		data.setTimestamp(new Date());
+		consumer.addProfileData(data);
+	}
+
 	/**
-	 * Runs facet queries (enumeration count or range min/max) for all columns in queryFacetColumns. 
+	 * Runs facet queries (enumeration count or range min/max) for all columns in queryFacetColumns.
 	 * @param originalQuery the non-transformed query that was submitted by the user.
 	 * @param queryFacetColumns
 	 * @param indexDao
 	 * @return
 	 */
 	public List<FacetColumnResult> runFacetQueries(FacetModel facetModel, TableIndexDAO indexDao) {
+		long deadlineMS = createQueryDeadline();
+		return waitForQueries(submitFacetQueries(facetModel, indexDao), deadlineMS);
+	}
+
+	/**
+	 * Start a facet query (enumeration count or range min/max) for each column
+	 * in queryFacetColumns.
+	 *
+	 * @param facetModel
+	 * @param indexDao
+	 * @return One future for each facet in the same order as the facets.
+	 */
+	List<Future<FacetColumnResult>> submitFacetQueries(FacetModel facetModel, final TableIndexDAO indexDao) {
 		ValidateArgument.required(facetModel, "queryFacetColumns");
 		ValidateArgument.required(indexDao, "indexDao");
-		
-		
-		List<FacetColumnResult> facetResults = new ArrayList<>();
-		for(FacetTransformer facetQueryTransformer : facetModel.getFacetInformationQueries()){
-			RowSet rowSet = indexDao.query(null, facetQueryTransformer.getFacetSqlQuery());
-			facetResults.add(facetQueryTransformer.translateToResult(rowSet));
+
+		List<Future<FacetColumnResult>> futures = new ArrayList<>();
+		for(final FacetTransformer facetQueryTransformer : facetModel.getFacetInformationQueries()){
+			futures.add(submitQuery(METRIC_FACET_QUERY_TIME, new Callable<FacetColumnResult>() {
+
+				@Override
+				public FacetColumnResult call() throws Exception {
+					RowSet rowSet = indexDao.query(null, facetQueryTransformer.getFacetSqlQuery());
+					return facetQueryTransformer.translateToResult(rowSet);
+				}
+			}));
+		}
+		return futures;
+	}
+
+	/**
+	 * Start the given query on the query executor. If there is no executor the
+	 * query is run on the caller's thread.
+	 *
+	 * @param metricName
+	 *            The time taken by the query will be recorded with this name.
+	 * @param query
+	 * @return
+	 */
+	<T> Future<T> submitQuery(final String metricName, final Callable<T> query){
+		Callable<T> timedQuery = new Callable<T>() {
+
+			@Override
+			public T call() throws Exception {
+				long start = System.currentTimeMillis();
+				try{
+					return query.call();
+				}finally{
+					recordQueryTime(metricName, System.currentTimeMillis() - start);
+				}
+			}
+		};
+		if(queryExecutorService == null){
+			FutureTask<T> task = new FutureTask<T>(timedQuery);
+			task.run();
+			return task;
+		}
+		return queryExecutorService.submit(timedQuery);
+	}
+
+	/**
+	 * The time by which all of the count and facet queries of a request must
+	 * complete.
+	 *
+	 * @return
+	 */
+	long createQueryDeadline(){
+		return System.currentTimeMillis() + queryTimeoutMS;
+	}
+
+	/**
+	 * Wait for each of the given queries to complete.
+	 *
+	 * @param futures
+	 * @param deadlineMS
+	 *            All of the queries must complete by this time.
+	 * @return The results in the same order as the futures.
+	 */
+	<T> List<T> waitForQueries(List<Future<T>> futures, long deadlineMS){
+		List<T> results = new ArrayList<>(futures.size());
+		for(Future<T> future: futures){
+			results.add(waitForQuery(future, deadlineMS));
+		}
+		return results;
+	}
+
+	/**
+	 * Wait for a query to complete. A query that is still waiting for a thread
+	 * of the query executor is run on the caller's thread, so it cannot time
+	 * out before it starts. Any exception thrown by the query is re-thrown on
+	 * the caller's thread.
+	 *
+	 * @param future
+	 * @param deadlineMS
+	 *            The query must complete by this time.
+	 * @return
+	 * @throws IllegalStateException
+	 *             If the query does not complete by the deadline.
+	 */
+	<T> T waitForQuery(Future<T> future, long deadlineMS){
+		if(future instanceof RunnableFuture){
+			// Does nothing if the query has already started.
+			((RunnableFuture<T>) future).run();
+		}
+		try {
+			long remainingMS = Math.max(0L, deadlineMS - System.currentTimeMillis());
+			return future.get(remainingMS, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new IllegalStateException("Query did not complete within "+queryTimeoutMS+" MS");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error){
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Cancel a query if it is still running.
+	 *
+	 * @param future
+	 */
+	private static void cancelQuery(Future<?> future){
+		if(future != null && !future.isDone()){
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Push the time taken by a query to CloudWatch.
+	 *
+	 * @param metricName
+	 * @param elapsedMS
+	 */
+	void recordQueryTime(String metricName, long elapsedMS){
+		if(consumer == null){
+			return;
 		}
-		return facetResults;
+		ProfileData data = new ProfileData();
+		data.setNamespace(this.getClass().getName());
+		data.setName(metricName);
+		data.setValue((double) elapsedMS);
+		data.setUnit(METRIC_UNIT_MILLISECONDS);
+		data.setTimestamp(new Date());
+		consumer.addProfileData(data);
 	}
 
 	/**
@@ -0,0 +1,240 @@
+package org.sagebionetworks.repo.manager.table;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.sagebionetworks.repo.model.table.FacetColumnResult;
+import org.sagebionetworks.repo.model.table.Row;
+import org.sagebionetworks.schema.adapter.JSONObjectAdapterException;
+import org.sagebionetworks.schema.adapter.org.json.EntityFactory;
+import org.sagebionetworks.util.BoundedLruCache;
+
+/**
+ * A bounded, in-memory cache of table query results. Results are keyed by
+ * {@link TableQueryCacheKey}, which includes the version of the table's
+ * index, so results for a table are implicitly invalidated when the table
+ * changes. Entries for old versions are never read again and age out of the
+ * cache as new results are added.
+ * <p>
+ * The cache is bounded by the estimated size of the cached results in bytes.
+ * Rows are copied into and out of the cache, so callers never share mutable
+ * rows with the cache or with each other. Facets are copied once into the
+ * cache and the cached facets are returned on each read, so they must not be
+ * modified.
+ *
+ */
+public class TableQueryResultCache {
+
+	/**
+	 * Rough per-object overhead used when estimating the size of an entry.
+	 */
+	public static final long OBJECT_OVERHEAD_BYTES = 16L;
+
+	/**
+	 * The cached results of a single query. The rows are copied when the
+	 * result is created and each time they are read. The facets are only
+	 * copied when the result is created.
+	 *
+	 */
+	public static class CachedQueryResult {
+
+		private final List<Row> rows;
+		private final Long count;
+		private final List<FacetColumnResult> facets;
+
+		/**
+		 *
+		 * @param rows
+		 *            The rows of the page. Null if the query was not run.
+		 * @param count
+		 *            Null if the count was not requested.
+		 * @param facets
+		 *            Null if facets were not requested.
+		 */
+		public CachedQueryResult(List<Row> rows, Long count, List<FacetColumnResult> facets) {
+			this.rows = copyRows(rows);
+			this.count = count;
+			List<FacetColumnResult> facetsCopy = copyFacets(facets);
+			this.facets = facetsCopy == null ? null : Collections.unmodifiableList(facetsCopy);
+		}
+
+		/**
+		 * A copy of the cached rows.
+		 *
+		 * @return
+		 */
+		public List<Row> getRows() {
+			return copyRows(rows);
+		}
+
+		public Long getCount() {
+			return count;
+		}
+
+		/**
+		 * The cached facets, which must not be modified.
+		 *
+		 * @return
+		 */
+		public List<FacetColumnResult> getFacets() {
+			return facets;
+		}
+
+		/**
+		 * Approximate size of this result in bytes.
+		 *
+		 * @return
+		 */
+		public long estimateSizeBytes() {
+			long size = OBJECT_OVERHEAD_BYTES;
+			if (rows != null) {
+				for (Row row : rows) {
+					size += OBJECT_OVERHEAD_BYTES * 3;
+					size += TableQueryResultCache.estimateSizeBytes(row.getEtag());
+					if (row.getValues() != null) {
+						for (String value : row.getValues()) {
+							size += TableQueryResultCache.estimateSizeBytes(value);
+						}
+					}
+				}
+			}
+			if (facets != null) {
+				for (FacetColumnResult facet : facets) {
+					size += TableQueryResultCache.estimateSizeBytes(facet.toString());
+				}
+			}
+			return size;
+		}
+	}
+
+	private final BoundedLruCache<TableQueryCacheKey, CachedQueryResult> cache;
+
+	/**
+	 *
+	 * @param maxSizeBytes
+	 *            The maximum estimated size of all cached results.
+	 */
+	public TableQueryResultCache(long maxSizeBytes) {
+		this.cache = new BoundedLruCache<TableQueryCacheKey, CachedQueryResult>(maxSizeBytes,
+				new BoundedLruCache.Sizer<TableQueryCacheKey, CachedQueryResult>() {
+
+					@Override
+					public long sizeOf(TableQueryCacheKey key, CachedQueryResult value) {
+						return key.estimateSizeBytes() + value.estimateSizeBytes();
+					}
+				});
+	}
+
+	/**
+	 * Get the cached results for the given key.
+	 *
+	 * @param key
+	 * @return Null if the results are not in the cache.
+	 */
+	public CachedQueryResult get(TableQueryCacheKey key) {
+		return cache.get(key);
+	}
+
+	/**
+	 * Add the results for the given key to the cache.
+	 *
+	 * @param key
+	 * @param result
+	 */
+	public void put(TableQueryCacheKey key, CachedQueryResult result) {
+		cache.put(key, result);
+	}
+
+	/**
+	 * Remove all results from the cache.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	public long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	public long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	/**
+	 * The fraction of lookups that were served from the cache.
+	 *
+	 * @return
+	 */
+	public double getHitRatio() {
+		return cache.getHitRatio();
+	}
+
+	/**
+	 * The current estimated size of the cache in bytes.
+	 *
+	 * @return
+	 */
+	public long getCurrentSizeBytes() {
+		return cache.getCurrentSize();
+	}
+
+	/**
+	 * Copy each of the given rows.
+	 *
+	 * @param rows
+	 * @return
+	 */
+	public static List<Row> copyRows(List<Row> rows) {
+		if (rows == null) {
+			return null;
+		}
+		List<Row> copy = new ArrayList<Row>(rows.size());
+		for (Row row : rows) {
+			Row rowCopy = new Row();
+			rowCopy.setRowId(row.getRowId());
+			rowCopy.setVersionNumber(row.getVersionNumber());
+			rowCopy.setEtag(row.getEtag());
+			if (row.getValues() != null) {
+				rowCopy.setValues(new ArrayList<String>(row.getValues()));
+			}
+			copy.add(rowCopy);
+		}
+		return copy;
+	}
+
+	/**
+	 * Deep copy each of the given facets.
+	 *
+	 * @param facets
+	 * @return
+	 */
+	public static List<FacetColumnResult> copyFacets(List<FacetColumnResult> facets) {
+		if (facets == null) {
+			return null;
+		}
+		List<FacetColumnResult> copy = new ArrayList<FacetColumnResult>(facets.size());
+		try {
+			for (FacetColumnResult facet : facets) {
+				String json = EntityFactory.createJSONStringForEntity(facet);
+				copy.add(EntityFactory.createEntityFromJSONString(json, facet.getClass()));
+			}
+		} catch (JSONObjectAdapterException e) {
+			throw new RuntimeException(e);
+		}
+		return copy;
+	}
+
+	/**
+	 * Estimate the size of a string in bytes (two bytes per character).
+	 *
+	 * @param value
+	 * @return
+	 */
+	public static long estimateSizeBytes(String value) {
+		if (value == null) {
+			return 0L;
+		}
+		return OBJECT_OVERHEAD_BYTES + value.length() * 2L;
+	}
+}
@@ -19,9 +19,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Before;
@@ -863,6 +865,80 @@ public class AuthorizationManagerImplUnitTest {
 		assertEquals(0, results.size());
 	}
 
+	@Test
+	public void testGetAccessibleEntities(){
+		List<Long> entityIds = Lists.newArrayList(1L, 2L, 3L);
+		Map<Long, Long> benefactors = new HashMap<Long, Long>();
+		benefactors.put(1L, 11L);
+		benefactors.put(2L, 22L);
+		benefactors.put(3L, 11L);
+		when(mockNodeDao.getBenefactors(entityIds)).thenReturn(benefactors);
+		when(mockAclDAO.getAccessibleBenefactors(userInfo.getGroups(), Sets.newHashSet(11L, 22L), ObjectType.ENTITY, ACCESS_TYPE.READ)).thenReturn(Sets.newHashSet(11L));
+		// call under test
+		Set<Long> results = authorizationManager.getAccessibleEntities(userInfo, entityIds, ACCESS_TYPE.READ);
+		assertEquals(Sets.newHashSet(1L, 3L), results);
+		// one lookup for all entities.
+		verify(mockNodeDao, times(1)).getBenefactors(entityIds);
+		verify(mockAclDAO, times(1)).getAccessibleBenefactors(any(Set.class), any(Set.class), any(ObjectType.class), any(ACCESS_TYPE.class));
+		verify(mockEntityPermissionsManager, never()).hasAccess(anyString(), any(ACCESS_TYPE.class), any(UserInfo.class));
+	}
+	
+	@Test
+	public void testGetAccessibleEntitiesEmpty(){
+		// call under test
+		Set<Long> results = authorizationManager.getAccessibleEntities(userInfo, new LinkedList<Long>(), ACCESS_TYPE.READ);
+		assertTrue(results.isEmpty());
+		verifyZeroInteractions(mockNodeDao);
+		verifyZeroInteractions(mockAclDAO);
+	}
+	
+	@Test
+	public void testGetAccessibleEntitiesAdmin(){
+		List<Long> entityIds = Lists.newArrayList(1L, 2L);
+		Map<Long, Long> benefactors = new HashMap<Long, Long>();
+		benefactors.put(1L, 11L);
+		benefactors.put(2L, AuthorizationManagerImpl.TRASH_FOLDER_ID);
+		when(mockNodeDao.getBenefactors(entityIds)).thenReturn(benefactors);
+		// call under test
+		Set<Long> results = authorizationManager.getAccessibleEntities(adminUser, entityIds, ACCESS_TYPE.READ);
+		// entities in the trash are excluded even for an admin.
+		assertEquals(Sets.newHashSet(1L), results);
+		verifyZeroInteractions(mockAclDAO);
+	}
+	
+	@Test
+	public void testGetAccessibleEntitiesDeleteInTrash(){
+		List<Long> entityIds = Lists.newArrayList(2L);
+		Map<Long, Long> benefactors = new HashMap<Long, Long>();
+		benefactors.put(2L, AuthorizationManagerImpl.TRASH_FOLDER_ID);
+		when(mockNodeDao.getBenefactors(entityIds)).thenReturn(benefactors);
+		// call under test
+		Set<Long> results = authorizationManager.getAccessibleEntities(adminUser, entityIds, ACCESS_TYPE.DELETE);
+		assertEquals(Sets.newHashSet(2L), results);
+	}
+	
+	@Test
+	public void testGetAccessibleEntitiesAnonymousNotRead(){
+		List<Long> entityIds = Lists.newArrayList(1L);
+		// call under test
+		Set<Long> results = authorizationManager.getAccessibleEntities(anonymousUserInfo, entityIds, ACCESS_TYPE.DELETE);
+		assertTrue(results.isEmpty());
+		verifyZeroInteractions(mockNodeDao);
+	}
+	
+	@Test
+	public void testGetAccessibleEntitiesDownload(){
+		List<Long> entityIds = Lists.newArrayList(1L, 2L, 3L);
+		when(mockEntityPermissionsManager.hasAccess("syn1", ACCESS_TYPE.DOWNLOAD, userInfo)).thenReturn(AuthorizationManagerUtil.AUTHORIZED);
+		when(mockEntityPermissionsManager.hasAccess("syn2", ACCESS_TYPE.DOWNLOAD, userInfo)).thenReturn(AuthorizationManagerUtil.ACCESS_DENIED);
+		when(mockEntityPermissionsManager.hasAccess("syn3", ACCESS_TYPE.DOWNLOAD, userInfo)).thenThrow(new NotFoundException());
+		// call under test
+		Set<Long> results = authorizationManager.getAccessibleEntities(userInfo, entityIds, ACCESS_TYPE.DOWNLOAD);
+		// download has rules beyond the ACL so each entity is checked.
+		assertEquals(Sets.newHashSet(1L), results);
+		verify(mockNodeDao, never()).getBenefactors(any(Collection.class));
+	}
+
 	@Test
 	public void testCanSubscribeForumUnauthorized() {
 		when(mockEntityPermissionsManager.hasAccess(projectId, ACCESS_TYPE.READ, userInfo)).thenReturn(AuthorizationManagerUtil.ACCESS_DENIED);
@@ -0,0 +1,133 @@
+package org.sagebionetworks.repo.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.audit.utils.VirtualMachineIdProvider;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
+import org.sagebionetworks.util.CacheStatistics;
+import org.sagebionetworks.util.Clock;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+
+public class CacheMetricsPublisherTest {
+
+	@Mock
+	Consumer consumer;
+	@Mock
+	Clock clock;
+	@Mock
+	StackConfiguration stackConfig;
+	@Mock
+	CacheStatistics cache;
+
+	CacheMetricsPublisher publisher;
+	Map<String, Long> otherCounts;
+
+	@Before
+	public void before() {
+		MockitoAnnotations.initMocks(this);
+		publisher = new CacheMetricsPublisher(cache, "Test-Cache-");
+		ReflectionTestUtils.setField(publisher, "consumer", consumer);
+		ReflectionTestUtils.setField(publisher, "clock", clock);
+		ReflectionTestUtils.setField(publisher, "stackConfig", stackConfig);
+		publisher.setSizeMetricName("cachedBytes");
+		publisher.setSizeUnit(StandardUnit.Bytes);
+
+		when(clock.currentTimeMillis()).thenReturn(1L);
+		when(stackConfig.isProductionStack()).thenReturn(false);
+		otherCounts = new LinkedHashMap<String, Long>();
+		otherCounts.put("evictions", 5L);
+		when(cache.getOtherCounts()).thenReturn(otherCounts);
+	}
+
+	@Test
+	public void testTimerFiredNonProduction() {
+		when(cache.getHitCount()).thenReturn(3L);
+		when(cache.getMissCount()).thenReturn(1L);
+		when(cache.getCurrentSize()).thenReturn(1024L);
+		// call under test
+		publisher.onTimerFired();
+		ArgumentCaptor<ProfileData> profileCapture = ArgumentCaptor.forClass(ProfileData.class);
+		verify(consumer, times(5)).addProfileData(profileCapture.capture());
+		List<ProfileData> results = profileCapture.getAllValues();
+		ProfileData ratio = results.get(0);
+		assertEquals("Test-Cache-" + StackConfiguration.getStackInstance(), ratio.getNamespace());
+		assertEquals(CacheMetricsPublisher.HIT_RATIO, ratio.getName());
+		assertEquals(StandardUnit.Percent.name(), ratio.getUnit());
+		assertEquals(new Double(75), ratio.getValue());
+		assertEquals(Collections.singletonMap(CacheMetricsPublisher.INSTANCE, CacheMetricsPublisher.ALL_INSTANCES),
+				ratio.getDimension());
+		assertEquals(CacheMetricsPublisher.HITS, results.get(1).getName());
+		assertEquals(new Double(3), results.get(1).getValue());
+		assertEquals(CacheMetricsPublisher.MISSES, results.get(2).getName());
+		assertEquals(new Double(1), results.get(2).getValue());
+		assertEquals("evictions", results.get(3).getName());
+		assertEquals(StandardUnit.Count.name(), results.get(3).getUnit());
+		assertEquals(new Double(5), results.get(3).getValue());
+		assertEquals("cachedBytes", results.get(4).getName());
+		assertEquals(StandardUnit.Bytes.name(), results.get(4).getUnit());
+		assertEquals(new Double(1024), results.get(4).getValue());
+	}
+
+	@Test
+	public void testTimerFiredProduction() {
+		when(stackConfig.isProductionStack()).thenReturn(true);
+		when(cache.getHitCount()).thenReturn(1L);
+		when(cache.getMissCount()).thenReturn(1L);
+		// call under test
+		publisher.onTimerFired();
+		ArgumentCaptor<ProfileData> profileCapture = ArgumentCaptor.forClass(ProfileData.class);
+		// metrics for all and the instance.
+		verify(consumer, times(10)).addProfileData(profileCapture.capture());
+		ProfileData instance = profileCapture.getAllValues().get(5);
+		assertEquals(Collections.singletonMap(CacheMetricsPublisher.INSTANCE, VirtualMachineIdProvider.getVMID()),
+				instance.getDimension());
+	}
+
+	@Test
+	public void testTimerFiredNoSize() {
+		publisher.setSizeMetricName(null);
+		when(cache.getHitCount()).thenReturn(1L);
+		// call under test
+		publisher.onTimerFired();
+		verify(consumer, times(4)).addProfileData(any(ProfileData.class));
+		verify(cache, never()).getCurrentSize();
+	}
+
+	@Test
+	public void testTimerFiredDelta() {
+		when(cache.getHitCount()).thenReturn(10L, 10L, 11L);
+		when(cache.getMissCount()).thenReturn(10L, 10L, 14L);
+		publisher.onTimerFired();
+		reset(consumer);
+		// no reads since the last publish.
+		publisher.onTimerFired();
+		verify(consumer, never()).addProfileData(any(ProfileData.class));
+		// the ratio and counts only include the changes since the last publish.
+		otherCounts.put("evictions", 7L);
+		publisher.onTimerFired();
+		ArgumentCaptor<ProfileData> profileCapture = ArgumentCaptor.forClass(ProfileData.class);
+		verify(consumer, times(5)).addProfileData(profileCapture.capture());
+		assertEquals(new Double(20), profileCapture.getAllValues().get(0).getValue());
+		assertEquals(new Double(2), profileCapture.getAllValues().get(3).getValue());
+	}
+}
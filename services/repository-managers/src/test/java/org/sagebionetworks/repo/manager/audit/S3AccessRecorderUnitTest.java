@@ -0,0 +1,116 @@
+package org.sagebionetworks.repo.manager.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sagebionetworks.repo.model.audit.AccessRecord;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class S3AccessRecorderUnitTest {
+
+	@Mock
+	AccessRecordManager mockAccessRecordManager;
+
+	File spillDirectory;
+	S3AccessRecorder recorder;
+	List<AccessRecord> records;
+
+	@Before
+	public void before() throws IOException {
+		MockitoAnnotations.initMocks(this);
+		spillDirectory = Files.createTempDirectory("S3AccessRecorderUnitTest").toFile();
+		recorder = new S3AccessRecorder();
+		ReflectionTestUtils.setField(recorder, "accessRecordManager", mockAccessRecordManager);
+		recorder.setSpillDirectory(spillDirectory);
+		records = AuditTestUtils.createList(3, 100);
+	}
+
+	@After
+	public void after() throws Exception {
+		FileUtils.deleteDirectory(spillDirectory);
+	}
+
+	@Test
+	public void testQueueFull() throws IOException {
+		recorder.setMaxQueueSize(2);
+		for (AccessRecord record : records) {
+			recorder.save(record);
+		}
+		assertEquals(1, recorder.getDroppedCount());
+		when(mockAccessRecordManager.saveBatch(anyListOf(AccessRecord.class))).thenReturn("key");
+		assertEquals("key", recorder.timerFired());
+		ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+		verify(mockAccessRecordManager).saveBatch(captor.capture());
+		assertEquals(records.subList(0, 2), captor.getValue());
+		// the queue has room again.
+		recorder.save(records.get(2));
+		assertEquals(1, recorder.getDroppedCount());
+	}
+
+	@Test
+	public void testSpillAndReplay() throws IOException {
+		for (AccessRecord record : records) {
+			recorder.save(record);
+		}
+		when(mockAccessRecordManager.saveBatch(anyListOf(AccessRecord.class))).thenThrow(new RuntimeException("S3 is down"));
+		assertNull(recorder.timerFired());
+		assertEquals(3, recorder.getSpilledCount());
+		assertEquals(1, spillDirectory.listFiles().length);
+
+		// S3 is back
+		ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+		doReturn("key").when(mockAccessRecordManager).saveBatch(anyListOf(AccessRecord.class));
+		assertNull(recorder.timerFired());
+		verify(mockAccessRecordManager, times(2)).saveBatch(captor.capture());
+		assertEquals(records, captor.getValue());
+		assertEquals(0, spillDirectory.listFiles().length);
+	}
+
+	@Test
+	public void testSpillWhileS3Down() throws IOException {
+		recorder.spill(records.subList(0, 1));
+		when(mockAccessRecordManager.saveBatch(anyListOf(AccessRecord.class))).thenThrow(new RuntimeException("S3 is down"));
+		recorder.save(records.get(1));
+		// call under test
+		assertNull(recorder.timerFired());
+		// The current batch is spilled without trying to write it.
+		verify(mockAccessRecordManager, times(1)).saveBatch(anyListOf(AccessRecord.class));
+		assertEquals(2, spillDirectory.listFiles().length);
+	}
+
+	@Test
+	public void testMaxSpillFiles() throws IOException {
+		recorder.setMaxSpillFiles(2);
+		for (int i = 0; i < 3; i++) {
+			recorder.spill(records.subList(0, 1));
+		}
+		assertEquals(2, spillDirectory.listFiles().length);
+	}
+
+	@Test
+	public void testNotPushedToS3() throws IOException {
+		recorder.setShouldAccessRecordsBePushedToS3(false);
+		recorder.save(records.get(0));
+		assertNull(recorder.timerFired());
+		verify(mockAccessRecordManager, never()).saveBatch(anyListOf(AccessRecord.class));
+		assertEquals(0, spillDirectory.listFiles().length);
+	}
+}
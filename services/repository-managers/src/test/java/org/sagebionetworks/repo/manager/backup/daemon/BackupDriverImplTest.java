@@ -3,6 +3,7 @@ package org.sagebionetworks.repo.manager.backup.daemon;
 import static org.junit.Assert.assertEquals;
 
 import org.junit.Test;
+import org.sagebionetworks.repo.model.migration.BackupFormat;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 
 public class BackupDriverImplTest {
@@ -13,5 +14,14 @@ public class BackupDriverImplTest {
 		assertEquals("FILE_HANDLE.xml", name);
 		MigrationType type = BackupDriverImpl.getTypeFromFileName(name);
 		assertEquals(MigrationType.FILE_HANDLE, type);
+		assertEquals(BackupFormat.XML, BackupDriverImpl.getFormatFromFileName(name));
+	}
+
+	@Test
+	public void testBinaryFileNameRoundTrip(){
+		String name = BackupDriverImpl.getFileNameForType(MigrationType.FILE_HANDLE, BackupFormat.BINARY);
+		assertEquals("FILE_HANDLE.bin", name);
+		assertEquals(MigrationType.FILE_HANDLE, BackupDriverImpl.getTypeFromFileName(name));
+		assertEquals(BackupFormat.BINARY, BackupDriverImpl.getFormatFromFileName(name));
 	}
 }
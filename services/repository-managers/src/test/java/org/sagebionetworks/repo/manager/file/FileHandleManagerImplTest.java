@@ -89,6 +89,7 @@ import org.sagebionetworks.repo.model.project.S3StorageLocationSetting;
 import org.sagebionetworks.repo.model.project.UploadDestinationListSetting;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.sagebionetworks.schema.adapter.org.json.EntityFactory;
+import org.sagebionetworks.util.DefaultClock;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import com.amazonaws.AmazonClientException;
@@ -166,6 +167,8 @@ public class FileHandleManagerImplTest {
 		ReflectionTestUtils.setField(manager, "objectRecordQueue", mockObjectRecordQueue);
 		ReflectionTestUtils.setField(manager, "idGenerator", mockIdGenerator);
 		ReflectionTestUtils.setField(manager, "projectSettingsManager", mockProjectSettingsManager);
+		ReflectionTestUtils.setField(manager, "presignedUrlCache", new PresignedUrlCache(100,
+				FileHandleManagerImpl.PRESIGNED_URL_EXPIRE_TIME_MS, 0.5, new DefaultClock()));
 
 		// The user is not really a mock
 		mockUser = new UserInfo(false,"987");
@@ -457,6 +460,25 @@ public class FileHandleManagerImplTest {
 		assertTrue(url.startsWith("https://host.org/sftp/path/root/child?"));
 	}
 	
+	@Test
+	public void testGetURLForFileHandleReusesSignedUrl() throws Exception{
+		S3FileHandle s3FileHandle = new S3FileHandle();
+		s3FileHandle.setBucketName("bucket");
+		s3FileHandle.setKey("key");
+		s3FileHandle.setFileName("foo.txt");
+		when(mockS3Client.generatePresignedUrl(any(GeneratePresignedUrlRequest.class))).thenReturn(
+				new URL("https://host.org/one"), new URL("https://host.org/two"));
+		String url = manager.getURLForFileHandle(s3FileHandle);
+		assertEquals("https://host.org/one", url);
+		// call under test
+		assertEquals(url, manager.getURLForFileHandle(s3FileHandle));
+		verify(mockS3Client, times(1)).generatePresignedUrl(any(GeneratePresignedUrlRequest.class));
+		// a different file name needs a different content disposition.
+		s3FileHandle.setFileName("bar.txt");
+		assertEquals("https://host.org/two", manager.getURLForFileHandle(s3FileHandle));
+		verify(mockS3Client, times(2)).generatePresignedUrl(any(GeneratePresignedUrlRequest.class));
+	}
+
 	@Test (expected=IllegalArgumentException.class)
 	public void testProxyPresignedUrlWrongStorageType(){
 		Long locationId = 123L;
@@ -1,6 +1,8 @@
 package org.sagebionetworks.repo.manager.file;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.when;
 
 import org.junit.Before;
@@ -8,10 +10,14 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sagebionetworks.ids.IdGenerator;
+import org.sagebionetworks.ids.IdType;
 import org.sagebionetworks.repo.manager.ProjectSettingsManager;
 import org.sagebionetworks.repo.model.dao.FileHandleDao;
 import org.sagebionetworks.repo.model.file.CreateChunkedFileTokenRequest;
+import org.sagebionetworks.repo.model.file.S3FileHandle;
 import org.sagebionetworks.repo.model.project.S3StorageLocationSetting;
 import org.sagebionetworks.repo.model.project.StorageLocationSetting;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -73,4 +79,27 @@ public class MultipartManagerImplTest {
 
 	}
 
+	@Test
+	public void testCreateS3FileHandle() {
+		when(idGenerator.generateNewId(IdType.FILE_IDS)).thenReturn(456L);
+		when(fileHandleDao.createFile(any(S3FileHandle.class))).thenAnswer(new Answer<S3FileHandle>() {
+			@Override
+			public S3FileHandle answer(InvocationOnMock invocation) throws Throwable {
+				return (S3FileHandle) invocation.getArguments()[0];
+			}
+		});
+		// method under test
+		S3FileHandle result = manager.createS3FileHandle("777", "someBucket", "someKey", "Job1.zip", "application/zip", "md5", 123L);
+		assertEquals("456", result.getId());
+		assertEquals("someBucket", result.getBucketName());
+		assertEquals("someKey", result.getKey());
+		assertEquals("md5", result.getContentMd5());
+		assertEquals(new Long(123), result.getContentSize());
+		assertEquals("application/zip", result.getContentType());
+		assertEquals("777", result.getCreatedBy());
+		assertEquals("Job1.zip", result.getFileName());
+		assertNotNull(result.getEtag());
+		assertNotNull(result.getCreatedOn());
+	}
+
 }
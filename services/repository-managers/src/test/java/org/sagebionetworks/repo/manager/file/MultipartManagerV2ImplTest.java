@@ -681,6 +681,8 @@ public class MultipartManagerV2ImplTest {
 		assertEquals(addedParts, completeCpature.getValue().getAddedParts());
 		
 		verify(mockMultiparUploadDAO).setUploadComplete(uploadId, fileHandle.getId());
+		// parts are only checked against S3 when direct part upload is enabled.
+		verify(mockS3multipartUploadDAO, never()).listParts(anyString(), anyString(), anyString());
 	}
 	
 	@Test (expected=UnauthorizedException.class)
@@ -728,4 +730,76 @@ public class MultipartManagerV2ImplTest {
 		verify(mockS3multipartUploadDAO, never()).completeMultipartUpload(any(CompleteMultipartRequest.class));
 		verify(mockMultiparUploadDAO, never()).setUploadComplete(uploadId, fileHandle.getId());		
 	}
+	
+	@Test
+	public void testGetBatchPresignedUploadUrlsDirect() throws Exception {
+		manager.setDirectPartUpload(true);
+		when(mockS3multipartUploadDAO.createPreSignedUploadPartUrl(anyString(), anyString(), anyString(), anyInt(), anyString()))
+				.thenReturn(new URL("http", "amazon.com", "someBucket/someKey?partNumber=1"));
+		BatchPresignedUploadUrlRequest request = new BatchPresignedUploadUrlRequest();
+		request.setUploadId(uploadId);
+		request.setPartNumbers(Lists.newArrayList(1L));
+		request.setContentType("plain/text");
+		// call under test
+		BatchPresignedUploadUrlResponse response = manager.getBatchPresignedUploadUrls(userInfo, request);
+		assertEquals(1, response.getPartPresignedUrls().size());
+		assertEquals("http://amazon.comsomeBucket/someKey?partNumber=1", response.getPartPresignedUrls().get(0).getUploadPresignedUrl());
+		verify(mockS3multipartUploadDAO).createPreSignedUploadPartUrl(composite.getBucket(), composite.getKey(), uploadToken, 1, "plain/text");
+		verify(mockS3multipartUploadDAO, never()).createPreSignedPutUrl(anyString(), anyString(), anyString());
+	}
+	
+	@Test
+	public void testAddMultipartPartDirect(){
+		manager.setDirectPartUpload(true);
+		String partMD5Hex = "8356accbaa8bfc6ddc6c612224c6c9b3";
+		int partNumber = 2;
+		// call under test
+		AddPartResponse response = manager.addMultipartPart(userInfo, uploadId, partNumber, partMD5Hex);
+		assertEquals(AddPartState.ADD_SUCCESS, response.getAddPartState());
+		verify(mockMultiparUploadDAO).addPartToUpload(uploadId, partNumber, partMD5Hex);
+		// nothing is copied or deleted in S3.
+		verify(mockS3multipartUploadDAO, never()).addPart(any(AddPartRequest.class));
+		verify(mockS3multipartUploadDAO, never()).deleteObject(anyString(), anyString());
+	}
+	
+	@Test
+	public void testCompleteMultipartUploadDirect(){
+		manager.setDirectPartUpload(true);
+		when(mockS3multipartUploadDAO.listParts(composite.getBucket(), composite.getKey(), uploadToken)).thenReturn(
+				Lists.newArrayList(new PartMD5(1, "PARTMD5HEXONE"), new PartMD5(2, "partMD5HexTwo")));
+		//call under test
+		MultipartUploadStatus status = manager.completeMultipartUpload(userInfo, uploadId);
+		assertEquals(MultipartUploadState.COMPLETED, status.getState());
+		assertEquals(fileHandle.getId(), status.getResultFileHandleId());
+		verify(mockS3multipartUploadDAO).completeMultipartUpload(any(CompleteMultipartRequest.class));
+		verify(mockMultiparUploadDAO, never()).setPartToFailed(anyString(), anyInt(), anyString());
+	}
+	
+	@Test
+	public void testCompleteMultipartUploadDirectInvalidPart(){
+		manager.setDirectPartUpload(true);
+		composite.getMultipartUploadStatus().setState(MultipartUploadState.UPLOADING);
+		// part two was never uploaded to S3.
+		when(mockS3multipartUploadDAO.listParts(composite.getBucket(), composite.getKey(), uploadToken)).thenReturn(
+				Lists.newArrayList(new PartMD5(1, "partMD5HexOne")));
+		//call under test
+		MultipartUploadStatus status = manager.completeMultipartUpload(userInfo, uploadId);
+		assertEquals(MultipartUploadState.UPLOADING, status.getState());
+		assertNull(status.getResultFileHandleId());
+		assertEquals("00", status.getPartsState());
+		verify(mockMultiparUploadDAO).setPartToFailed(uploadId, 2, MultipartManagerV2Impl.PART_NOT_UPLOADED_MESSAGE);
+		verify(mockMultiparUploadDAO, never()).setPartToFailed(uploadId, 1, MultipartManagerV2Impl.PART_NOT_UPLOADED_MESSAGE);
+		verify(mockS3multipartUploadDAO, never()).completeMultipartUpload(any(CompleteMultipartRequest.class));
+		verify(mockFileHandleDao, never()).createFile(any(S3FileHandle.class));
+		verify(mockMultiparUploadDAO, never()).setUploadComplete(anyString(), anyString());
+	}
+	
+	@Test
+	public void testFindInvalidParts(){
+		List<PartMD5> added = Lists.newArrayList(new PartMD5(1, "aaa"), new PartMD5(2, "bbb"), new PartMD5(3, "ccc"));
+		List<PartMD5> uploaded = Lists.newArrayList(new PartMD5(1, "AAA"), new PartMD5(2, "other"));
+		// call under test
+		List<Integer> invalid = MultipartManagerV2Impl.findInvalidParts(added, uploaded);
+		assertEquals(Lists.newArrayList(2, 3), invalid);
+	}
 }
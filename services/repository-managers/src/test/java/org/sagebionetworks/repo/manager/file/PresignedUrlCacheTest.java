@@ -0,0 +1,81 @@
+package org.sagebionetworks.repo.manager.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sagebionetworks.util.Clock;
+
+public class PresignedUrlCacheTest {
+
+	@Mock
+	Clock mockClock;
+
+	PresignedUrlCache cache;
+	String url;
+
+	@Before
+	public void before() {
+		MockitoAnnotations.initMocks(this);
+		when(mockClock.currentTimeMillis()).thenReturn(0L);
+		// URLs are reused for the first 7.5 seconds of 30.
+		cache = new PresignedUrlCache(2, 30000L, 0.75, mockClock);
+		url = "https://bucket.s3.amazonaws.com/key?signature";
+	}
+
+	@Test
+	public void testMissThenHit() {
+		assertNull(cache.get("bucket", "key", "text/plain", "attachment; filename=foo.txt"));
+		cache.put("bucket", "key", "text/plain", "attachment; filename=foo.txt", url);
+		// call under test
+		assertEquals(url, cache.get("bucket", "key", "text/plain", "attachment; filename=foo.txt"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testKeyIncludesOverrides() {
+		cache.put("bucket", "key", "text/plain", "attachment; filename=foo.txt", url);
+		assertNull(cache.get("bucket", "key", null, "attachment; filename=foo.txt"));
+		assertNull(cache.get("bucket", "key", "text/plain", null));
+		assertNull(cache.get("bucket", "key", "text/plain", "attachment; filename=bar.txt"));
+		assertNull(cache.get("other", "key", "text/plain", "attachment; filename=foo.txt"));
+		cache.put("bucket", "key", null, null, url);
+		assertEquals(url, cache.get("bucket", "key", null, null));
+	}
+
+	@Test
+	public void testEvictedBeforeExpiration() {
+		cache.put("bucket", "key", null, null, url);
+		when(mockClock.currentTimeMillis()).thenReturn(7499L);
+		assertEquals(url, cache.get("bucket", "key", null, null));
+		// only three quarters of the lifetime remains.
+		when(mockClock.currentTimeMillis()).thenReturn(7500L);
+		// call under test
+		assertNull(cache.get("bucket", "key", null, null));
+	}
+
+	@Test
+	public void testMaxUrls() {
+		cache.put("bucket", "one", null, null, url);
+		cache.put("bucket", "two", null, null, url);
+		cache.put("bucket", "three", null, null, url);
+		// call under test
+		assertEquals(2, cache.size());
+		assertNull(cache.get("bucket", "one", null, null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFractionTooLarge() {
+		new PresignedUrlCache(2, 30000L, 1.0, mockClock);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFractionZero() {
+		new PresignedUrlCache(2, 30000L, 0.0, mockClock);
+	}
+}
@@ -2,14 +2,26 @@ package org.sagebionetworks.repo.manager.message;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.sagebionetworks.repo.model.ObjectType;
 import org.sagebionetworks.repo.model.message.ChangeMessage;
@@ -17,6 +29,10 @@ import org.sagebionetworks.repo.model.message.ChangeType;
 import org.sagebionetworks.repo.model.message.TransactionalMessenger;
 
 import com.amazonaws.services.sns.AmazonSNSClient;
+import com.amazonaws.services.sns.model.CreateTopicRequest;
+import com.amazonaws.services.sns.model.CreateTopicResult;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
 
 /**
  * Unit test for RepositoryMessagePublisherImpl.
@@ -43,6 +59,9 @@ public class RepositoryMessagePublisherImplTest {
 		message.setObjectId("syn456");
 		message.setObjectType(ObjectType.ENTITY);
 		messagePublisher = new RepositoryMessagePublisherImpl("prefix", "name", mockTransactionalMessanger, mockAwsSNSClient);
+		messagePublisher.setShouldMessagesBePublishedToTopic(true);
+		messagePublisher.setPublishRetryBackoffMS(1L);
+		when(mockAwsSNSClient.createTopic(any(CreateTopicRequest.class))).thenReturn(new CreateTopicResult().withTopicArn("arn"));
 	}
 	
 	@Test (expected=IllegalArgumentException.class)
@@ -79,5 +98,91 @@ public class RepositoryMessagePublisherImplTest {
 		// This should work
 		messagePublisher.fireChangeMessage(message);
 	}
-	
+
+	@Test
+	public void testTimerFiredGroupsByType(){
+		messagePublisher.fireChangeMessage(message);
+		messagePublisher.fireChangeMessage(createMessage(124L, ObjectType.ENTITY));
+		messagePublisher.fireChangeMessage(createMessage(125L, ObjectType.ACTIVITY));
+		// call under test
+		messagePublisher.timerFired();
+		ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+		verify(mockTransactionalMessanger).registerMessagesSent(eq(ObjectType.ENTITY), captor.capture());
+		assertEquals(2, captor.getValue().size());
+		verify(mockTransactionalMessanger).registerMessagesSent(eq(ObjectType.ACTIVITY), captor.capture());
+		assertEquals(1, captor.getValue().size());
+		// one publish per batch.
+		verify(mockAwsSNSClient, times(2)).publish(any(PublishRequest.class));
+	}
+
+	@Test
+	public void testTimerFiredPartitionsWithExecutor() throws Exception{
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try{
+			messagePublisher.setPublishExecutorService(executor);
+			int count = ChangeMessageUtils.MAX_NUMBER_OF_CHANGE_MESSAGES_PER_SQS_MESSAGE*2+1;
+			for(int i=0; i<count; i++){
+				messagePublisher.fireChangeMessage(createMessage((long)i, ObjectType.ENTITY));
+			}
+			// call under test
+			messagePublisher.timerFired();
+			// all batches are published before the timer returns.
+			verify(mockTransactionalMessanger, times(3)).registerMessagesSent(eq(ObjectType.ENTITY), anyListOf(ChangeMessage.class));
+			verify(mockAwsSNSClient, times(3)).publish(any(PublishRequest.class));
+		}finally{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testTimerFiredRetry(){
+		when(mockAwsSNSClient.publish(any(PublishRequest.class))).thenThrow(new RuntimeException("throttled")).thenReturn(new PublishResult());
+		messagePublisher.fireChangeMessage(message);
+		// call under test
+		messagePublisher.timerFired();
+		verify(mockAwsSNSClient, times(2)).publish(any(PublishRequest.class));
+	}
+
+	@Test
+	public void testTimerFiredRetryGiveUp(){
+		messagePublisher.setMaxPublishAttempts(2);
+		when(mockAwsSNSClient.publish(any(PublishRequest.class))).thenThrow(new RuntimeException("down"));
+		messagePublisher.fireChangeMessage(message);
+		messagePublisher.fireChangeMessage(createMessage(125L, ObjectType.ACTIVITY));
+		// call under test
+		messagePublisher.timerFired();
+		// each batch is attempted the max number of times.
+		verify(mockAwsSNSClient, times(4)).publish(any(PublishRequest.class));
+		// batches that were never published must remain unsent.
+		verify(mockTransactionalMessanger, never()).registerMessagesSent(any(ObjectType.class), anyListOf(ChangeMessage.class));
+	}
+
+	@Test
+	public void testPublishBatchRegisteredAfterPublish(){
+		List<ChangeMessage> batch = Arrays.asList(message);
+		// call under test
+		messagePublisher.publishBatchToTopic(ObjectType.ENTITY, batch);
+		InOrder inOrder = inOrder(mockAwsSNSClient, mockTransactionalMessanger);
+		inOrder.verify(mockAwsSNSClient).publish(any(PublishRequest.class));
+		inOrder.verify(mockTransactionalMessanger).registerMessagesSent(ObjectType.ENTITY, batch);
+	}
+
+	@Test
+	public void testTimerFiredNotPublished(){
+		messagePublisher.setShouldMessagesBePublishedToTopic(false);
+		messagePublisher.fireChangeMessage(message);
+		// call under test
+		messagePublisher.timerFired();
+		verify(mockAwsSNSClient, times(0)).publish(any(PublishRequest.class));
+	}
+
+	private static ChangeMessage createMessage(Long changeNumber, ObjectType type){
+		ChangeMessage change = new ChangeMessage();
+		change.setChangeNumber(changeNumber);
+		change.setTimestamp(new Date());
+		change.setChangeType(ChangeType.CREATE);
+		change.setObjectId("syn"+changeNumber);
+		change.setObjectType(type);
+		return change;
+	}
 }
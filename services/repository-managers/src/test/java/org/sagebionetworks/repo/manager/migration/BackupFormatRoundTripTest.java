@@ -0,0 +1,151 @@
+package org.sagebionetworks.repo.manager.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.sagebionetworks.repo.model.backup.FileHandleBackup;
+import org.sagebionetworks.repo.model.dbo.persistence.DBOAccessControlList;
+import org.sagebionetworks.repo.model.dbo.persistence.DBONode;
+import org.sagebionetworks.repo.model.dbo.persistence.DBORevision;
+
+/**
+ * Round trips the backup objects of the largest migration types through both
+ * the XML and binary backup formats. Both formats must restore objects equal
+ * to the originals, and the binary format must be smaller.
+ *
+ */
+public class BackupFormatRoundTripTest {
+
+	private static final int ROWS = 200;
+
+	Random random = new Random(123);
+
+	@Test
+	public void testNodes() throws Exception {
+		List<DBONode> list = new LinkedList<DBONode>();
+		for (long i = 0; i < ROWS; i++) {
+			DBONode node = new DBONode();
+			node.setId(1000000L + i);
+			node.setParentId(999999L);
+			node.setName("node name " + i);
+			node.setCurrentRevNumber(1L);
+			node.setDescription(randomBytes(64));
+			node.seteTag(UUID.randomUUID().toString());
+			node.setCreatedBy(273950L);
+			node.setCreatedOn(System.currentTimeMillis());
+			node.setType("file");
+			list.add(node);
+		}
+		compare("JDONODE", DBONode.class, list);
+	}
+
+	@Test
+	public void testRevisions() throws Exception {
+		List<DBORevision> list = new LinkedList<DBORevision>();
+		for (long i = 0; i < ROWS; i++) {
+			DBORevision rev = new DBORevision();
+			rev.setOwner(1000000L + i);
+			rev.setRevisionNumber(1L);
+			rev.setLabel("1");
+			rev.setComment("a comment for revision " + i);
+			rev.setModifiedBy(273950L);
+			rev.setModifiedOn(System.currentTimeMillis());
+			rev.setFileHandleId(5000000L + i);
+			rev.setAnnotations(randomBytes(512));
+			list.add(rev);
+		}
+		compare("JDOREVISION", DBORevision.class, list);
+	}
+
+	@Test
+	public void testFileHandles() throws Exception {
+		List<FileHandleBackup> list = new LinkedList<FileHandleBackup>();
+		for (long i = 0; i < ROWS; i++) {
+			FileHandleBackup fhb = new FileHandleBackup();
+			fhb.setId(5000000L + i);
+			fhb.setEtag(UUID.randomUUID().toString());
+			fhb.setCreatedBy(273950L);
+			fhb.setCreatedOn(System.currentTimeMillis());
+			fhb.setMetadataType("S3");
+			fhb.setContentType("text/plain");
+			fhb.setContentSize((long) random.nextInt(100000000));
+			fhb.setContentMD5("8743b52063cd84097a65d1633f5c74f5");
+			fhb.setBucketName("proddata.sagebase.org");
+			fhb.setKey("273950/" + UUID.randomUUID() + "/file" + i + ".txt");
+			fhb.setName("file" + i + ".txt");
+			fhb.setStorageLocationId(1L);
+			list.add(fhb);
+		}
+		compare("FILES", FileHandleBackup.class, list);
+	}
+
+	@Test
+	public void testAccessControlLists() throws Exception {
+		List<DBOAccessControlList> list = new LinkedList<DBOAccessControlList>();
+		for (long i = 0; i < ROWS; i++) {
+			DBOAccessControlList acl = new DBOAccessControlList();
+			acl.setId(i);
+			acl.setEtag(UUID.randomUUID().toString());
+			acl.setCreationDate(System.currentTimeMillis());
+			acl.setOwnerId(1000000L + i);
+			acl.setOwnerType("ENTITY");
+			list.add(acl);
+		}
+		compare("ACL", DBOAccessControlList.class, list);
+	}
+
+	private byte[] randomBytes(int size) {
+		byte[] bytes = new byte[size];
+		random.nextBytes(bytes);
+		return bytes;
+	}
+
+	private <B> void compare(String alias, Class<B> clazz, List<B> list) throws Exception {
+		byte[] xml = writeXml(alias, list);
+		List<B> xmlClone = BackupMarshalingUtils.readBackupFromStream(clazz, alias, new ByteArrayInputStream(xml));
+		assertEquals(list, xmlClone);
+
+		byte[] binary = writeBinary(alias, clazz, list);
+		List<B> binaryClone = readBinary(alias, clazz, binary);
+		assertEquals(list, binaryClone);
+		assertTrue("The binary format should be smaller than XML", binary.length < xml.length);
+	}
+
+	private <B> byte[] writeXml(String alias, List<B> list) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(out, "UTF-8");
+		BackupMarshalingUtils.writeBackupToWriter(list, alias, writer);
+		writer.flush();
+		return out.toByteArray();
+	}
+
+	private <B> byte[] writeBinary(String alias, Class<B> clazz, List<B> list) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryBackupWriter<B> writer = new BinaryBackupWriter<B>(clazz, alias, out);
+		for (B backup : list) {
+			writer.write(backup);
+		}
+		writer.finish();
+		return out.toByteArray();
+	}
+
+	private <B> List<B> readBinary(String alias, Class<B> clazz, byte[] bytes) throws Exception {
+		BinaryBackupReader<B> reader = new BinaryBackupReader<B>(clazz, alias, new ByteArrayInputStream(bytes));
+		List<B> results = new LinkedList<B>();
+		B backup;
+		while ((backup = reader.read()) != null) {
+			results.add(backup);
+		}
+		return results;
+	}
+}
@@ -0,0 +1,185 @@
+package org.sagebionetworks.repo.manager.migration;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+import org.sagebionetworks.repo.model.ObjectType;
+import org.sagebionetworks.repo.model.backup.FileHandleBackup;
+
+/**
+ * Round trip tests for BinaryBackupWriter and BinaryBackupReader.
+ *
+ */
+public class BinaryBackupReaderTest {
+
+	String alias = "files";
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		List<FileHandleBackup> list = new LinkedList<FileHandleBackup>();
+		for (int i = 0; i < 5; i++) {
+			FileHandleBackup fhb = new FileHandleBackup();
+			fhb.setId(new Long(i * i));
+			fhb.setKey("key" + i);
+			fhb.setBucketName("bucket" + i);
+			fhb.setCreatedOn(System.currentTimeMillis());
+			list.add(fhb);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryBackupWriter<FileHandleBackup> writer = new BinaryBackupWriter<FileHandleBackup>(FileHandleBackup.class, alias, out);
+		for (FileHandleBackup fhb : list) {
+			writer.write(fhb);
+		}
+		writer.finish();
+		assertEquals(5L, writer.getRowCount());
+		// call under test
+		List<FileHandleBackup> clone = readAll(FileHandleBackup.class, out.toByteArray());
+		assertEquals(list, clone);
+	}
+
+	@Test
+	public void testAllFieldTypes() throws Exception {
+		AllTypes all = new AllTypes();
+		all.boxedLong = Long.MIN_VALUE;
+		all.primitiveLong = Long.MAX_VALUE;
+		all.boxedInt = -1;
+		all.primitiveInt = 123;
+		all.boxedDouble = 1.5;
+		all.boxedBoolean = true;
+		all.primitiveBoolean = true;
+		all.string = "\u00e9t\u00e9 \u65e5\u672c";
+		all.bytes = new byte[] { 1, 2, 3 };
+		all.date = new Date(1234L);
+		Timestamp timestamp = new Timestamp(5678L);
+		timestamp.setNanos(678000123);
+		all.timestamp = timestamp;
+		all.type = ObjectType.ENTITY;
+		all.list = new LinkedList<String>(Arrays.asList("a", "b"));
+		all.transientField = "not backed up";
+		AllTypes clone = roundTrip(all);
+		assertEquals(all.boxedLong, clone.boxedLong);
+		assertEquals(all.primitiveLong, clone.primitiveLong);
+		assertEquals(all.boxedInt, clone.boxedInt);
+		assertEquals(all.primitiveInt, clone.primitiveInt);
+		assertEquals(all.boxedDouble, clone.boxedDouble);
+		assertEquals(all.boxedBoolean, clone.boxedBoolean);
+		assertEquals(all.primitiveBoolean, clone.primitiveBoolean);
+		assertEquals(all.string, clone.string);
+		assertArrayEquals(all.bytes, clone.bytes);
+		assertEquals(all.date, clone.date);
+		assertEquals(Date.class, clone.date.getClass());
+		assertEquals(all.timestamp, clone.timestamp);
+		assertEquals(all.type, clone.type);
+		assertEquals(all.list, clone.list);
+		assertNull(clone.transientField);
+	}
+
+	@Test
+	public void testNulls() throws Exception {
+		AllTypes all = new AllTypes();
+		AllTypes clone = roundTrip(all);
+		assertNull(clone.boxedLong);
+		assertNull(clone.string);
+		assertNull(clone.bytes);
+		assertNull(clone.timestamp);
+		assertNull(clone.type);
+		assertNull(clone.list);
+	}
+
+	/**
+	 * A field removed from the backup class is skipped and a new field is left unset.
+	 */
+	@Test
+	public void testSchemaChange() throws Exception {
+		OldVersion old = new OldVersion();
+		old.id = 9L;
+		old.name = "name";
+		old.removed = "removed";
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryBackupWriter<OldVersion> writer = new BinaryBackupWriter<OldVersion>(OldVersion.class, alias, out);
+		writer.write(old);
+		writer.finish();
+		// call under test
+		List<NewVersion> results = readAll(NewVersion.class, out.toByteArray());
+		assertEquals(1, results.size());
+		NewVersion result = results.get(0);
+		assertEquals(old.id, result.id);
+		assertEquals(old.name, result.name);
+		assertNull(result.added);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongAlias() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new BinaryBackupWriter<FileHandleBackup>(FileHandleBackup.class, alias, out).finish();
+		// call under test
+		new BinaryBackupReader<FileHandleBackup>(FileHandleBackup.class, "other", new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	@Test
+	public void testEmptyStream() throws Exception {
+		BinaryBackupReader<FileHandleBackup> reader = new BinaryBackupReader<FileHandleBackup>(FileHandleBackup.class, alias,
+				new ByteArrayInputStream(new byte[0]));
+		// call under test
+		assertNull(reader.read());
+	}
+
+	private AllTypes roundTrip(AllTypes all) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryBackupWriter<AllTypes> writer = new BinaryBackupWriter<AllTypes>(AllTypes.class, alias, out);
+		writer.write(all);
+		writer.finish();
+		List<AllTypes> results = readAll(AllTypes.class, out.toByteArray());
+		assertEquals(1, results.size());
+		return results.get(0);
+	}
+
+	private <B> List<B> readAll(Class<B> clazz, byte[] bytes) throws Exception {
+		BinaryBackupReader<B> reader = new BinaryBackupReader<B>(clazz, alias, new ByteArrayInputStream(bytes));
+		List<B> results = new LinkedList<B>();
+		B backup;
+		while ((backup = reader.read()) != null) {
+			results.add(backup);
+		}
+		return results;
+	}
+
+	public static class AllTypes {
+		Long boxedLong;
+		long primitiveLong;
+		Integer boxedInt;
+		int primitiveInt;
+		Double boxedDouble;
+		Boolean boxedBoolean;
+		boolean primitiveBoolean;
+		String string;
+		byte[] bytes;
+		Date date;
+		Timestamp timestamp;
+		ObjectType type;
+		List<String> list;
+		transient String transientField;
+	}
+
+	public static class OldVersion {
+		Long id;
+		String removed;
+		String name;
+	}
+
+	public static class NewVersion {
+		Long id;
+		String name;
+		String added;
+	}
+}
@@ -17,13 +17,17 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import static org.mockito.Mockito.*;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.sagebionetworks.repo.model.Reference;
 import org.sagebionetworks.repo.model.StackStatusDao;
 import org.sagebionetworks.repo.model.UserInfo;
@@ -37,6 +41,7 @@ import org.sagebionetworks.repo.model.dbo.migration.MigratableTableTranslation;
 import org.sagebionetworks.repo.model.dbo.persistence.DBORevision;
 import org.sagebionetworks.repo.model.dbo.persistence.DBOSubjectAccessRequirement;
 import org.sagebionetworks.repo.model.jdo.JDOSecondaryPropertyUtils;
+import org.sagebionetworks.repo.model.migration.BackupFormat;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.model.migration.MigrationTypeChecksum;
 import org.sagebionetworks.repo.model.status.StatusEnum;
@@ -151,6 +156,49 @@ public class MigrationManagerImplTest {
 		
 	}
 
+	/**
+	 * A binary backup is written and restored in batches of backupBatchMax rows.
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testBinaryBackupRoundTrip() throws Exception {
+		manager.setBackupBatchMax(2);
+		UserInfo admin = new UserInfo(true, "0");
+		List<DBOSubjectAccessRequirement> databaseList = new LinkedList<DBOSubjectAccessRequirement>();
+		for(long i=1; i<=3; i++){
+			DBOSubjectAccessRequirement sar = new DBOSubjectAccessRequirement();
+			sar.setAccessRequirementId(100+i);
+			sar.setSubjectId(i);
+			sar.setSubjectType("ENTITY");
+			databaseList.add(sar);
+		}
+		when(mockDao.getObjectForType(MigrationType.NODE_ACCESS_REQUIRMENT)).thenReturn((MigratableDatabaseObject) new DBOSubjectAccessRequirement());
+		when(mockDao.getBackupBatch(DBOSubjectAccessRequirement.class, Arrays.asList(1L, 2L))).thenReturn(databaseList.subList(0, 2));
+		when(mockDao.getBackupBatch(DBOSubjectAccessRequirement.class, Arrays.asList(3L))).thenReturn(databaseList.subList(2, 3));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// call under test
+		manager.writeBackupBatch(admin, MigrationType.NODE_ACCESS_REQUIRMENT, Arrays.asList(1L, 2L, 3L), BackupFormat.BINARY, out);
+
+		when(mockDao.runWithForeignKeyIgnored(any(Callable.class))).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				return ((Callable<Object>) invocation.getArguments()[0]).call();
+			}
+		});
+		when(mockDao.createOrUpdateBatch(any(List.class))).thenReturn(Arrays.asList(1L, 2L), Arrays.asList(3L));
+		// call under test
+		List<Long> ids = manager.createOrUpdateBatch(admin, MigrationType.NODE_ACCESS_REQUIRMENT, BackupFormat.BINARY, new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(Arrays.asList(1L, 2L, 3L), ids);
+		ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+		verify(mockDao, times(2)).createOrUpdateBatch(captor.capture());
+		List<Object> restored = new LinkedList<Object>();
+		for(List batch: captor.getAllValues()){
+			restored.addAll(batch);
+		}
+		assertEquals(databaseList, restored);
+	}
+
 	/**
 	 * This test is used during migrating the DBORevision from stack 99 to stack 100.
 	 * The old DBORevision contains reference and references.
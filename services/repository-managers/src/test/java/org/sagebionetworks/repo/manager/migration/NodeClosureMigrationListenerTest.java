@@ -0,0 +1,57 @@
+package org.sagebionetworks.repo.manager.migration;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.repo.model.dao.NodeClosureDao;
+import org.sagebionetworks.repo.model.dbo.persistence.DBONode;
+import org.sagebionetworks.repo.model.dbo.persistence.DBORevision;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NodeClosureMigrationListenerTest {
+
+	@Mock
+	NodeClosureDao mockNodeClosureDao;
+
+	NodeClosureMigrationListener listener;
+
+	@Before
+	public void before() {
+		listener = new NodeClosureMigrationListener();
+		ReflectionTestUtils.setField(listener, "nodeClosureDao", mockNodeClosureDao);
+	}
+
+	@Test
+	public void testAfterCreateOrUpdateNode() {
+		DBONode root = new DBONode();
+		root.setId(1L);
+		root.setParentId(null);
+		DBONode child = new DBONode();
+		child.setId(2L);
+		child.setParentId(1L);
+		List<DBONode> delta = Arrays.asList(root, child);
+		// call under test
+		listener.afterCreateOrUpdate(MigrationType.NODE, delta);
+		verify(mockNodeClosureDao).synchronizeNode(1L, null);
+		verify(mockNodeClosureDao).synchronizeNode(2L, 1L);
+	}
+
+	@Test
+	public void testAfterCreateOrUpdateOtherType() {
+		List<DBORevision> delta = Arrays.asList(new DBORevision());
+		// call under test
+		listener.afterCreateOrUpdate(MigrationType.NODE_REVISION, delta);
+		verify(mockNodeClosureDao, never()).synchronizeNode(anyLong(), anyLong());
+	}
+}
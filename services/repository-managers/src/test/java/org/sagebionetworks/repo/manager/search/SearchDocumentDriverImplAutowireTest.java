@@ -11,6 +11,7 @@ import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -304,6 +305,20 @@ public class SearchDocumentDriverImplAutowireTest {
 	/**
 	 * @throws Exception
 	 */
+	@Test
+	public void testFormulateSearchDocuments() throws Exception {
+		Document expected = searchDocumentDriver.formulateSearchDocument(project.getId());
+		// call under test
+		List<Document> results = searchDocumentDriver.formulateSearchDocuments(Arrays.asList(project.getId(), "syn999999999"));
+		// the node that does not exist is skipped.
+		assertEquals(1, results.size());
+		Document document = results.get(0);
+		assertEquals(expected.getId(), document.getId());
+		assertEquals(expected.getFields().getEtag(), document.getFields().getEtag());
+		assertEquals(expected.getFields().getAcl(), document.getFields().getAcl());
+		assertEquals(expected.getFields().getDescription(), document.getFields().getDescription());
+	}
+
 	@Test
 	public void testCleanOutControlCharacters() throws Exception {
 		// Cloud Search cannot handle control characters, strip them out of the
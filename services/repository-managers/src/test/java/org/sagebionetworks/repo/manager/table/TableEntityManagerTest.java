@@ -1311,6 +1311,89 @@ public class TableEntityManagerTest {
 		}
 	}
 	
+	/**
+	 * Create a change set that updates rows zero and one using the given etag.
+	 * @param etag
+	 * @return
+	 */
+	private SparseChangeSet createRowUpdate(String etag){
+		List<ColumnModel> columns = TableModelTestUtils.createOneOfEachType();
+		SparseChangeSet changeSet = new SparseChangeSet(tableId, columns);
+		changeSet.setEtag(etag);
+		SparseRow row = changeSet.addEmptyRow();
+		row.setRowId(0L);
+		row.setVersionNumber(2L);
+		row.setCellValue("1", "1.1");
+		row = changeSet.addEmptyRow();
+		row.setRowId(1L);
+		row.setVersionNumber(1L);
+		row.setCellValue("1", "2.1");
+		return changeSet;
+	}
+	
+	@Test
+	public void testCheckForRowLevelConflictIndexed() throws IOException{
+		String etag = "anEtag";
+		Long etagVersion = 25L;
+		when(mockTruthDao.getVersionForEtag(tableId, etag)).thenReturn(etagVersion);
+		when(mockTruthDao.getRowVersionIndexStart(tableId)).thenReturn(10L);
+		SparseChangeSet changeSet = createRowUpdate(etag);
+		// call under test
+		manager.checkForRowLevelConflict(tableId, changeSet);
+		verify(mockTruthDao).findRowChangedAfterVersion(tableId, Sets.newHashSet(0L, 1L), etagVersion);
+		// no change sets should be read when the index covers the version of the delta.
+		verify(mockTruthDao, never()).listRowSetsKeysForTableGreaterThanVersion(anyString(), anyLong());
+		verify(mockTruthDao, never()).getRowSet(any(TableRowChange.class));
+	}
+	
+	@Test
+	public void testCheckForRowLevelConflictIndexedWithConflict() throws IOException{
+		String etag = "anEtag";
+		Long etagVersion = 25L;
+		when(mockTruthDao.getVersionForEtag(tableId, etag)).thenReturn(etagVersion);
+		when(mockTruthDao.getRowVersionIndexStart(tableId)).thenReturn(10L);
+		when(mockTruthDao.findRowChangedAfterVersion(tableId, Sets.newHashSet(0L, 1L), etagVersion)).thenReturn(1L);
+		SparseChangeSet changeSet = createRowUpdate(etag);
+		try {
+			// call under test
+			manager.checkForRowLevelConflict(tableId, changeSet);
+			fail("Should have failed.");
+		} catch (ConflictingUpdateException e) {
+			assertTrue(e.getMessage().startsWith("Row id: 1 has been changed"));
+		}
+		verify(mockTruthDao, never()).listRowSetsKeysForTableGreaterThanVersion(anyString(), anyLong());
+	}
+	
+	@Test
+	public void testCheckForRowLevelConflictIndexStartAfterDelta() throws IOException{
+		String etag = "anEtag";
+		Long etagVersion = 25L;
+		Long indexStart = 30L;
+		when(mockTruthDao.getVersionForEtag(tableId, etag)).thenReturn(etagVersion);
+		when(mockTruthDao.getRowVersionIndexStart(tableId)).thenReturn(indexStart);
+		// a change from before the index started that does not conflict.
+		TableRowChange beforeIndex = new TableRowChange();
+		beforeIndex.setRowVersion(27L);
+		beforeIndex.setChangeType(TableChangeType.ROW);
+		SparseChangeSetDto beforeIndexUpdate = new SparseChangeSetDto();
+		SparseRowDto otherRow = new SparseRowDto();
+		otherRow.setRowId(5L);
+		beforeIndexUpdate.setRows(Lists.newArrayList(otherRow));
+		when(mockTruthDao.getRowSet(beforeIndex)).thenReturn(beforeIndexUpdate);
+		// a change that is covered by the index.
+		TableRowChange afterIndex = new TableRowChange();
+		afterIndex.setRowVersion(31L);
+		afterIndex.setChangeType(TableChangeType.ROW);
+		when(mockTruthDao.listRowSetsKeysForTableGreaterThanVersion(tableId, etagVersion)).thenReturn(Lists.newArrayList(beforeIndex, afterIndex));
+		SparseChangeSet changeSet = createRowUpdate(etag);
+		// call under test
+		manager.checkForRowLevelConflict(tableId, changeSet);
+		verify(mockTruthDao).findRowChangedAfterVersion(tableId, Sets.newHashSet(0L, 1L), indexStart);
+		verify(mockTruthDao).getRowSet(beforeIndex);
+		// the indexed change should not be read.
+		verify(mockTruthDao, never()).getRowSet(afterIndex);
+	}
+	
 	@Test
 	public void testGetSparseChangeSetNewKeyNull() throws NotFoundException, IOException{
 		Long versionNumber = 101L;
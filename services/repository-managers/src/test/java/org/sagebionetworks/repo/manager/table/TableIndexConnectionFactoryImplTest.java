@@ -39,7 +39,7 @@ public class TableIndexConnectionFactoryImplTest {
 		ReflectionTestUtils.setField(indexFactory, "connectionFactory", mockDaoConnectionFactory);
 		ReflectionTestUtils.setField(indexFactory, "tableManagerSupport", mockManagerSupport);
 		tableId = "syn456";
-		when(mockDaoConnectionFactory.getConnection(tableId)).thenReturn(mockTableIndexDAO);
+		when(mockDaoConnectionFactory.getOwnerConnection(tableId)).thenReturn(mockTableIndexDAO);
 	}
 	
 	@Test (expected=IllegalArgumentException.class)
@@ -55,7 +55,7 @@ public class TableIndexConnectionFactoryImplTest {
 	
 	@Test (expected=TableIndexConnectionUnavailableException.class)
 	public void testConnectToTableUnavailabl(){
-		when(mockDaoConnectionFactory.getConnection(tableId)).thenReturn(null);
+		when(mockDaoConnectionFactory.getOwnerConnection(tableId)).thenReturn(null);
 		indexFactory.connectToTableIndex(tableId);
 	}
 	
@@ -532,6 +532,39 @@ public class TableIndexManagerImplTest {
 		}
 	}
 	
+	@Test
+	public void testUpdateViewFromEntityReplication(){
+		ViewType viewType = ViewType.file;
+		Set<Long> scope = Sets.newHashSet(1L,2L);
+		List<ColumnModel> schema = createDefaultColumnsWithIds();
+		// call under test
+		Long resultCrc = manager.updateViewFromEntityReplication(tableId, mockCallback, viewType, scope, schema);
+		assertEquals(crc32, resultCrc);
+		verify(mockIndexDao).updateViewFromEntityReplication(tableId, viewType, scope, schema);
+		verify(mockIndexDao, never()).copyEntityReplicationToTable(tableId, viewType, scope, schema);
+		// the CRC is calculated the same as a full populate.
+		verify(mockIndexDao).calculateCRC32ofTableView(tableId);
+	}
+	
+	@Test
+	public void testUpdateViewFromEntityReplicationUnknownCause() throws Exception{
+		ViewType viewType = ViewType.file;
+		Set<Long> scope = Sets.newHashSet(1L,2L);
+		List<ColumnModel> schema = createDefaultColumnsWithIds();
+		// setup a failure
+		IllegalArgumentException error = new IllegalArgumentException("Something went wrong");
+		doThrow(error).when(mockIndexDao).updateViewFromEntityReplication(tableId, viewType, scope, schema);
+		try {
+			// call under test
+			manager.updateViewFromEntityReplication(tableId, mockCallback, viewType, scope, schema);
+			fail("Should have failed");
+		} catch (IllegalArgumentException expected) {
+			// when the cause cannot be determined the original exception is thrown.
+			assertEquals(error, expected);
+		}
+		verify(mockIndexDao, never()).calculateCRC32ofTableView(tableId);
+	}
+	
 	@Test
 	public void testGetPossibleAnnotationDefinitionsForContainerLastPage(){
 		// call under test
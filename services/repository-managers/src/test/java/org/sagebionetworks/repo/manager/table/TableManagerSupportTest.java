@@ -141,6 +141,7 @@ public class TableManagerSupportTest {
 		viewType = ViewType.file;
 		
 		when(mockTableConnectionFactory.getConnection(tableId)).thenReturn(mockTableIndexDAO);
+		when(mockTableConnectionFactory.getOwnerConnection(tableId)).thenReturn(mockTableIndexDAO);
 		
 		etag = "";
 		
@@ -343,6 +344,8 @@ public class TableManagerSupportTest {
 		when(mockTableIndexDAO.doesIndexStateMatch(tableId, currentVersion, schemaMD5Hex)).thenReturn(true);
 		
 		assertTrue(manager.isIndexSynchronizedWithTruth(tableId));
+		// the index built on the owner is checked.
+		verify(mockTableConnectionFactory).getOwnerConnection(tableId);
 	}
 	
 	
@@ -809,6 +812,7 @@ public class TableManagerSupportTest {
 		UserInfo mockAdmin = Mockito.mock(UserInfo.class);
 		when(mockAdmin.isAdmin()).thenReturn(true);
 		manager.rebuildTable(mockAdmin, tableId);
+		verify(mockTableConnectionFactory).getOwnerConnection(tableId);
 		verify(mockTableIndexDAO).deleteTable(tableId);
 		verify(mockTableIndexDAO).deleteSecondaryTables(tableId);
 		verify(mockTableStatusDAO).resetTableStatusToProcessing(tableId);
@@ -8,9 +8,11 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anySetOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.stub;
@@ -33,6 +35,12 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -45,6 +53,8 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.common.util.progress.ProgressingCallable;
 import org.sagebionetworks.repo.model.EntityType;
@@ -82,6 +92,7 @@ import org.sagebionetworks.table.cluster.ConnectionFactory;
 import org.sagebionetworks.table.cluster.SqlQuery;
 import org.sagebionetworks.table.cluster.SqlQueryBuilder;
 import org.sagebionetworks.table.cluster.TableIndexDAO;
+import org.sagebionetworks.table.cluster.TableIndexState;
 import org.sagebionetworks.table.cluster.utils.TableModelUtils;
 import org.sagebionetworks.table.query.ParseException;
 import org.sagebionetworks.table.query.TableQueryParser;
@@ -1457,7 +1468,263 @@ public class TableQueryManagerImplTest {
 		verifyNoMoreInteractions(mockTableIndexDAO, mockFacetModel,mockTransformer1, mockTransformer2);
 
 	}
-	
+
+	@Test
+	public void testRunFacetQueriesWithExecutor(){
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try{
+			manager.setQueryExecutorService(executor);
+			FacetModel mockFacetModel = Mockito.mock(FacetModel.class);
+			FacetTransformer mockTransformer1 = Mockito.mock(FacetTransformerValueCounts.class);
+			FacetTransformer mockTransformer2 = Mockito.mock(FacetTransformerRange.class);
+			SqlQuery mockSql1 = Mockito.mock(SqlQuery.class);
+			SqlQuery mockSql2 = Mockito.mock(SqlQuery.class);
+			RowSet rs1 = new RowSet();
+			RowSet rs2 = new RowSet();
+			FacetColumnResultValues result1 = new FacetColumnResultValues();
+			FacetColumnResultRange result2 = new FacetColumnResultRange();
+			when(mockTransformer1.getFacetSqlQuery()).thenReturn(mockSql1);
+			when(mockTransformer2.getFacetSqlQuery()).thenReturn(mockSql2);
+			when(mockTableIndexDAO.query(null, mockSql1)).thenReturn(rs1);
+			when(mockTableIndexDAO.query(null, mockSql2)).thenReturn(rs2);
+			when(mockTransformer1.translateToResult(rs1)).thenReturn(result1);
+			when(mockTransformer2.translateToResult(rs2)).thenReturn(result2);
+			when(mockFacetModel.getFacetInformationQueries()).thenReturn(Arrays.asList(mockTransformer1, mockTransformer2));
+
+			//call method
+			List<FacetColumnResult> results = manager.runFacetQueries(mockFacetModel, mockTableIndexDAO);
+			// results must be in the same order as the facets.
+			assertEquals(Arrays.asList(result1, result2), results);
+		}finally{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testSubmitQueryNoExecutor() throws Exception {
+		manager.setQueryExecutorService(null);
+		// call under test
+		Future<Long> future = manager.submitQuery(TableQueryManagerImpl.METRIC_COUNT_QUERY_TIME, new Callable<Long>() {
+
+			@Override
+			public Long call() throws Exception {
+				return 12L;
+			}
+		});
+		// the query should have been run on this thread.
+		assertTrue(future.isDone());
+		assertEquals(new Long(12), future.get());
+	}
+
+	@Test
+	public void testWaitForQueryRuntimeException(){
+		final IllegalArgumentException error = new IllegalArgumentException("bad query");
+		Future<Long> future = manager.submitQuery(TableQueryManagerImpl.METRIC_COUNT_QUERY_TIME, new Callable<Long>() {
+
+			@Override
+			public Long call() throws Exception {
+				throw error;
+			}
+		});
+		try {
+			// call under test
+			manager.waitForQuery(future, manager.createQueryDeadline());
+			fail();
+		} catch (IllegalArgumentException e) {
+			// the original exception should be thrown.
+			assertEquals(error, e);
+		}
+	}
+
+	@Test (expected=IllegalStateException.class)
+	public void testWaitForQueryTimeout(){
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		try{
+			manager.setQueryExecutorService(executor);
+			manager.setQueryTimeoutMS(10L);
+			final CountDownLatch started = new CountDownLatch(1);
+			final CountDownLatch latch = new CountDownLatch(1);
+			Future<Long> future = manager.submitQuery(TableQueryManagerImpl.METRIC_COUNT_QUERY_TIME, new Callable<Long>() {
+
+				@Override
+				public Long call() throws Exception {
+					started.countDown();
+					latch.await();
+					return 1L;
+				}
+			});
+			started.await();
+			// call under test
+			manager.waitForQuery(future, manager.createQueryDeadline());
+		}finally{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testWaitForQueriesSingleDeadline() throws Exception {
+		manager.setQueryTimeoutMS(10000L);
+		Future<Long> slowFuture = Mockito.mock(Future.class);
+		when(slowFuture.get(anyLong(), any(TimeUnit.class))).thenAnswer(new Answer<Long>() {
+
+			@Override
+			public Long answer(InvocationOnMock invocation) throws Throwable {
+				Thread.sleep(100L);
+				return 1L;
+			}
+		});
+		Future<Long> secondFuture = Mockito.mock(Future.class);
+		when(secondFuture.get(anyLong(), any(TimeUnit.class))).thenReturn(2L);
+		// call under test
+		List<Long> results = manager.waitForQueries(Arrays.asList(slowFuture, secondFuture), manager.createQueryDeadline());
+		assertEquals(Arrays.asList(1L, 2L), results);
+		// the second query only gets the time that remains.
+		ArgumentCaptor<Long> captor = ArgumentCaptor.forClass(Long.class);
+		verify(secondFuture).get(captor.capture(), eq(TimeUnit.MILLISECONDS));
+		assertTrue(captor.getValue() <= 10000L - 100L);
+	}
+
+	@Test
+	public void testWaitForQueryNotStarted(){
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		try{
+			manager.setQueryExecutorService(executor);
+			manager.setQueryTimeoutMS(10L);
+			// keep the only thread busy.
+			manager.submitQuery(TableQueryManagerImpl.METRIC_COUNT_QUERY_TIME, new Callable<Long>() {
+
+				@Override
+				public Long call() throws Exception {
+					latch.await();
+					return 1L;
+				}
+			});
+			Future<Long> queued = manager.submitQuery(TableQueryManagerImpl.METRIC_COUNT_QUERY_TIME, new Callable<Long>() {
+
+				@Override
+				public Long call() throws Exception {
+					return 2L;
+				}
+			});
+			// call under test
+			assertEquals(new Long(2), manager.waitForQuery(queued, manager.createQueryDeadline()));
+		}finally{
+			latch.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRecordQueryTime(){
+		Consumer mockConsumer = Mockito.mock(Consumer.class);
+		ReflectionTestUtils.setField(manager, "consumer", mockConsumer);
+		// call under test
+		manager.recordQueryTime(TableQueryManagerImpl.METRIC_FACET_QUERY_TIME, 123L);
+		ArgumentCaptor<ProfileData> captor = ArgumentCaptor.forClass(ProfileData.class);
+		verify(mockConsumer).addProfileData(captor.capture());
+		assertEquals(TableQueryManagerImpl.METRIC_FACET_QUERY_TIME, captor.getValue().getName());
+		assertEquals(new Double(123), captor.getValue().getValue());
+	}
+
+	@Test
+	public void testQueryAsStreamAfterAuthorizationCacheHit() throws Exception {
+		manager.setQueryResultCache(new TableQueryResultCache(10000000L));
+		when(mockTableIndexDAO.getIndexState(tableId)).thenReturn(new TableIndexState(3L, "md5"));
+		SqlQuery query = new SqlQueryBuilder("select * from " + tableId, models).build();
+		SinglePageRowHandler firstHandler = new SinglePageRowHandler();
+		// call under test
+		QueryResultBundle first = manager.queryAsStreamAfterAuthorization(mockProgressCallbackVoid, query, firstHandler, true, false);
+		SinglePageRowHandler secondHandler = new SinglePageRowHandler();
+		QueryResultBundle second = manager.queryAsStreamAfterAuthorization(mockProgressCallbackVoid, query, secondHandler, true, false);
+		// the index should only be queried once.
+		verify(mockTableIndexDAO, times(1)).queryAsStream(any(ProgressCallback.class), any(SqlQuery.class), any(RowHandler.class));
+		verify(mockTableIndexDAO, times(1)).countQuery(anyString(), anyMapOf(String.class, Object.class));
+		// the version and schema are read with one lookup per query.
+		verify(mockTableIndexDAO, times(2)).getIndexState(tableId);
+		verify(mockTableIndexDAO, never()).getMaxCurrentCompleteVersionForTable(anyString());
+		assertEquals(firstHandler.getRows(), secondHandler.getRows());
+		assertEquals(first.getQueryCount(), second.getQueryCount());
+		assertEquals(first.getQueryResult(), second.getQueryResult());
+		assertEquals(models, second.getColumnModels());
+	}
+
+	@Test
+	public void testQueryAsStreamAfterAuthorizationCacheReturnsCopies() throws Exception {
+		manager.setQueryResultCache(new TableQueryResultCache(10000000L));
+		when(mockTableIndexDAO.getIndexState(tableId)).thenReturn(new TableIndexState(3L, "md5"));
+		SqlQuery query = new SqlQueryBuilder("select * from " + tableId, models).build();
+		List<Row> expectedRows = TableQueryResultCache.copyRows(rows);
+		SinglePageRowHandler firstHandler = new SinglePageRowHandler();
+		manager.queryAsStreamAfterAuthorization(mockProgressCallbackVoid, query, firstHandler, false, false);
+		// changes made by the first caller must not be seen by the next caller.
+		firstHandler.getRows().get(0).getValues().set(0, "changed");
+		SinglePageRowHandler secondHandler = new SinglePageRowHandler();
+		// call under test
+		manager.queryAsStreamAfterAuthorization(mockProgressCallbackVoid, query, secondHandler, false, false);
+		assertEquals(expectedRows, secondHandler.getRows());
+		secondHandler.getRows().get(0).getValues().set(0, "changed again");
+		SinglePageRowHandler thirdHandler = new SinglePageRowHandler();
+		// call under test
+		manager.queryAsStreamAfterAuthorization(mockProgressCallbackVoid, query, thirdHandler, false, false);
+		assertEquals(expectedRows, thirdHandler.getRows());
+	}
+
+	@Test
+	public void testQueryAsStreamAfterAuthorizationCacheNewVersion() throws Exception {
+		manager.setQueryResultCache(new TableQueryResultCache(10000000L));
+		when(mockTableIndexDAO.getIndexState(tableId)).thenReturn(new TableIndexState(3L, "md5"), new TableIndexState(4L, "md5"));
+		SqlQuery query = new SqlQueryBuilder("select * from " + tableId, models).build();
+		// call under test
+		manager.queryAsStreamAfterAuthorization(mockProgressCallbackVoid, query, new SinglePageRowHandler(), false, false);
+		manager.queryAsStreamAfterAuthorization(mockProgressCallbackVoid, query, new SinglePageRowHandler(), false, false);
+		// a new version of the table must be queried again.
+		verify(mockTableIndexDAO, times(2)).queryAsStream(any(ProgressCallback.class), any(SqlQuery.class), any(RowHandler.class));
+	}
+
+	@Test
+	public void testQueryAsStreamAfterAuthorizationCacheIndexNotBuilt() throws Exception {
+		manager.setQueryResultCache(new TableQueryResultCache(10000000L));
+		when(mockTableIndexDAO.getIndexState(tableId)).thenReturn(null);
+		SqlQuery query = new SqlQueryBuilder("select * from " + tableId, models).build();
+		// call under test
+		manager.queryAsStreamAfterAuthorization(mockProgressCallbackVoid, query, new SinglePageRowHandler(), false, false);
+		manager.queryAsStreamAfterAuthorization(mockProgressCallbackVoid, query, new SinglePageRowHandler(), false, false);
+		verify(mockTableIndexDAO, times(2)).queryAsStream(any(ProgressCallback.class), any(SqlQuery.class), any(RowHandler.class));
+	}
+
+	@Test
+	public void testCreateCacheKeyStreamingHandler() throws Exception {
+		manager.setQueryResultCache(new TableQueryResultCache(10000000L));
+		when(mockTableIndexDAO.getIndexState(tableId)).thenReturn(new TableIndexState(3L, "md5"));
+		SqlQuery query = new SqlQueryBuilder("select * from " + tableId, models).build();
+		RowHandler streamingHandler = Mockito.mock(RowHandler.class);
+		// call under test
+		assertNull(manager.createCacheKey(query, streamingHandler, false, false, mockTableIndexDAO));
+		assertNotNull(manager.createCacheKey(query, new SinglePageRowHandler(), false, false, mockTableIndexDAO));
+		assertNotNull(manager.createCacheKey(query, null, true, false, mockTableIndexDAO));
+	}
+
+	@Test
+	public void testCreateCacheKeyNoCache() throws Exception {
+		SqlQuery query = new SqlQueryBuilder("select * from " + tableId, models).build();
+		// call under test
+		assertNull(manager.createCacheKey(query, new SinglePageRowHandler(), false, false, mockTableIndexDAO));
+		verify(mockTableIndexDAO, never()).getIndexState(anyString());
+	}
+
+	@Test
+	public void testRecordCacheLookup(){
+		Consumer mockConsumer = Mockito.mock(Consumer.class);
+		ReflectionTestUtils.setField(manager, "consumer", mockConsumer);
+		// call under test
+		manager.recordCacheLookup(true);
+		ArgumentCaptor<ProfileData> captor = ArgumentCaptor.forClass(ProfileData.class);
+		verify(mockConsumer).addProfileData(captor.capture());
+		assertEquals(TableQueryManagerImpl.METRIC_QUERY_CACHE_HIT, captor.getValue().getName());
+		assertEquals(new Double(1), captor.getValue().getValue());
+	}
+
 	private RowSet createRowSetForTest(List<String> headerNames, List<String>... rowValues){
 		RowSet rowSet = new RowSet();
 		List<SelectColumn> headerObjects = new ArrayList<>();
@@ -0,0 +1,66 @@
+package org.sagebionetworks.repo.manager.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.repo.manager.table.TableQueryResultCache.CachedQueryResult;
+import org.sagebionetworks.repo.model.table.FacetColumnResult;
+import org.sagebionetworks.repo.model.table.FacetColumnResultRange;
+import org.sagebionetworks.repo.model.table.Row;
+
+import com.google.common.collect.Lists;
+
+public class TableQueryResultCacheTest {
+
+	Row row;
+	FacetColumnResultRange facet;
+
+	@Before
+	public void before() {
+		row = new Row();
+		row.setRowId(1L);
+		row.setVersionNumber(2L);
+		row.setValues(Lists.newArrayList("a", "b"));
+		facet = new FacetColumnResultRange();
+		facet.setConcreteType(FacetColumnResultRange.class.getName());
+		facet.setColumnName("foo");
+		facet.setColumnMin("1");
+		facet.setColumnMax("9");
+	}
+
+	@Test
+	public void testRowsCopiedOnEachRead() {
+		CachedQueryResult result = new CachedQueryResult(Lists.newArrayList(row), 1L, null);
+		row.getValues().set(0, "changed");
+		// call under test
+		List<Row> rows = result.getRows();
+		assertEquals("a", rows.get(0).getValues().get(0));
+		assertNotSame(rows.get(0), result.getRows().get(0));
+		assertNull(result.getFacets());
+	}
+
+	@Test
+	public void testFacetsCopiedOnce() {
+		List<FacetColumnResult> facets = Lists.<FacetColumnResult> newArrayList(facet);
+		CachedQueryResult result = new CachedQueryResult(null, null, facets);
+		// call under test
+		List<FacetColumnResult> cached = result.getFacets();
+		assertEquals(facets, cached);
+		assertNotSame(facet, cached.get(0));
+		// reads do not copy the facets again.
+		assertSame(cached.get(0), result.getFacets().get(0));
+		try {
+			cached.clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+}
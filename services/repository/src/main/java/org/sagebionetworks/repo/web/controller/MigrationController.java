@@ -10,6 +10,7 @@ import org.sagebionetworks.repo.model.InvalidModelException;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.daemon.BackupRestoreStatus;
 import org.sagebionetworks.repo.model.daemon.RestoreSubmission;
+import org.sagebionetworks.repo.model.migration.BackupFormat;
 import org.sagebionetworks.repo.model.migration.MigrationRangeChecksum;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.model.migration.MigrationTypeNames;
@@ -160,6 +161,10 @@ public class MigrationController extends BaseController {
 	 * getStatus method.
 	 * 
 	 * @param userId
+	 * @param format
+	 *            The optional encoding of the backup file, either XML
+	 *            (default) or BINARY. A restore detects the encoding from
+	 *            the file.
 	 * @param header
 	 * @param request
 	 * @return
@@ -176,10 +181,12 @@ public class MigrationController extends BaseController {
 	BackupRestoreStatus startBackup(
 			@RequestParam(value = AuthorizationConstants.USER_ID_PARAM) Long userId,
 			@RequestParam(required = true) String type,
+			@RequestParam(required = false) String format,
 			@RequestBody IdList request) throws DatastoreException, NotFoundException {
 		if (request == null)
 			throw new IllegalArgumentException("Request cannot be null");
-		return serviceProvider.getMigrationService().startBackup(userId, MigrationType.valueOf(type), request.getList());
+		BackupFormat backupFormat = format == null ? BackupFormat.XML : BackupFormat.valueOf(format);
+		return serviceProvider.getMigrationService().startBackup(userId, MigrationType.valueOf(type), request.getList(), backupFormat);
 	}
 	
 	/**
@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.daemon.BackupRestoreStatus;
+import org.sagebionetworks.repo.model.migration.BackupFormat;
 import org.sagebionetworks.repo.model.migration.MigrationRangeChecksum;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.model.migration.MigrationTypeNames;
@@ -76,11 +77,12 @@ public interface MigrationService {
 	 * @param userId
 	 * @param type
 	 * @param list
+	 * @param format The encoding of the backup file.
 	 * @return
 	 * @throws NotFoundException 
 	 * @throws DatastoreException 
 	 */
-	BackupRestoreStatus startBackup(Long userId, MigrationType type,	List<Long> list) throws DatastoreException, NotFoundException;
+	BackupRestoreStatus startBackup(Long userId, MigrationType type,	List<Long> list, BackupFormat format) throws DatastoreException, NotFoundException;
 
 	/**
 	 * Start the restore of the provided file.
@@ -9,6 +9,7 @@ import org.sagebionetworks.repo.manager.migration.MigrationManager;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.daemon.BackupRestoreStatus;
+import org.sagebionetworks.repo.model.migration.BackupFormat;
 import org.sagebionetworks.repo.model.migration.MigrationRangeChecksum;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.model.migration.MigrationTypeNames;
@@ -87,10 +88,10 @@ public class MigrationServiceImpl implements MigrationService {
 	}
 
 	@Override
-	public BackupRestoreStatus startBackup(Long userId, MigrationType type, List<Long> list) throws DatastoreException, NotFoundException {
+	public BackupRestoreStatus startBackup(Long userId, MigrationType type, List<Long> list, BackupFormat format) throws DatastoreException, NotFoundException {
 		if(userId == null) throw new IllegalArgumentException("userId cannot be null");
 		UserInfo user = userManager.getUserInfo(userId);
-		return backupDaemonLauncher.startBackup(user, type, list);
+		return backupDaemonLauncher.startBackup(user, type, list, format);
 	}
 
 	@Override
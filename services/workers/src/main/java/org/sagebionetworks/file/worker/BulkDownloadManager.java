@@ -1,7 +1,8 @@
 package org.sagebionetworks.file.worker;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.zip.ZipOutputStream;
 
@@ -10,8 +11,6 @@ import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.file.FileHandleAssociation;
 import org.sagebionetworks.repo.model.file.S3FileHandle;
 
-import com.amazonaws.event.ProgressListener;
-
 /**
  * A data access object used to support bulk file download.  This abstraction contains 
  * 
@@ -30,34 +29,33 @@ public interface BulkDownloadManager {
 	public List<FileHandleAssociationAuthorizationStatus> canDownLoadFile(UserInfo user, List<FileHandleAssociation> associations);
 
 	/**
-	 * Create a temporary file on the local machine.
+	 * Start a multi-part upload of a new S3 file that is streamed as it is
+	 * written, so the file is never written to the local disk.
 	 * 
-	 * @param prefix
-	 * @param suffix
+	 * @param userInfo
+	 * @param fileName
+	 * @param contentType
 	 * @return
-	 * @throws IOException 
 	 */
-	public File createTempFile(String prefix, String suffix) throws IOException;
+	public StreamingMultipartUpload startStreamingUpload(UserInfo userInfo, String fileName, String contentType);
 	
 	/**
-	 * Create a ZipOutputStream using the given file.
-	 * @param outFile
+	 * Complete the given upload and create an S3FileHandle for the result.
+	 * 
+	 * @param userInfo
+	 * @param upload
+	 * @param fileName
 	 * @return
 	 * @throws IOException 
 	 */
-	public ZipOutputStream createZipOutputStream(File outFile) throws IOException;
-	
+	public S3FileHandle completeStreamingUpload(UserInfo userInfo, StreamingMultipartUpload upload, String fileName) throws IOException;
 	
 	/**
-	 * Multi-part upload a local file to S3.  This is used by workers.
-	 * 
-	 * @param userInfo
-	 * @param fileToUpload
-	 * @param contentType
-	 * @param listener
+	 * Create a ZipOutputStream that writes to the given stream.
+	 * @param out
 	 * @return
 	 */
-	S3FileHandle multipartUploadLocalFile(UserInfo userInfo, File fileToUpload,	String contentType, ProgressListener listener);
+	public ZipOutputStream createZipOutputStream(OutputStream out);
 	
 	/**
 	 * Get the S3FileHandle for the given FileHandle.id.
@@ -69,21 +67,33 @@ public interface BulkDownloadManager {
 	S3FileHandle getS3FileHandle(String fileHandleId);
 	
 	/**
-	 * Download the given FileHandle to the a local file.
+	 * Open a stream of the content of the given FileHandle directly from S3.
+	 * The caller must close the stream.
+	 * 
 	 * @param fileHandle
 	 * @return
-	 * @throws IOException 
 	 */
-	public File downloadToTempFile(S3FileHandle fileHandle) throws IOException;
+	public InputStream openObjectStream(S3FileHandle fileHandle);
+	
+	/**
+	 * Open a stream of the content of the given FileHandle directly from S3,
+	 * starting at the given byte. The caller must close the stream.
+	 * 
+	 * @param fileHandle
+	 * @param offset
+	 *            The index of the first byte to read.
+	 * @return
+	 */
+	public InputStream openObjectStream(S3FileHandle fileHandle, long offset);
 	
 	/**
-	 * Add the given file to 
+	 * Add the content of the given stream to the zip as a new entry.
 	 * @param zipOut
 	 * @param toAdd
 	 * @param entryName
 	 * @throws IOException 
 	 */
-	public void addFileToZip(ZipOutputStream zipOut, File toAdd, String entryName) throws IOException;
+	public void addStreamToZip(ZipOutputStream zipOut, InputStream toAdd, String entryName) throws IOException;
 	
 	
 }
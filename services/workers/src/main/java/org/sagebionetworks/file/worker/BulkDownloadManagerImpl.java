@@ -1,18 +1,21 @@
 package org.sagebionetworks.file.worker;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.sagebionetworks.repo.manager.file.FileHandleAssociationAuthorizationStatus;
 import org.sagebionetworks.repo.manager.file.FileHandleAuthorizationManager;
-import org.sagebionetworks.repo.manager.file.FileHandleManager;
+import org.sagebionetworks.repo.manager.file.MultipartManager;
+import org.sagebionetworks.repo.manager.file.MultipartUtils;
+import org.sagebionetworks.repo.manager.file.transfer.TransferUtils;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.dao.FileHandleDao;
 import org.sagebionetworks.repo.model.file.FileHandle;
@@ -20,9 +23,9 @@ import org.sagebionetworks.repo.model.file.FileHandleAssociation;
 import org.sagebionetworks.repo.model.file.S3FileHandle;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.amazonaws.event.ProgressListener;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 
 public class BulkDownloadManagerImpl implements BulkDownloadManager{
 	
@@ -35,7 +38,24 @@ public class BulkDownloadManagerImpl implements BulkDownloadManager{
 	@Autowired
 	FileHandleAuthorizationManager fileHandleAuthorizationManager;
 	@Autowired
-	FileHandleManager fileHandleManager;
+	MultipartManager multipartManager;
+	
+	/**
+	 * Injected via spring. Uploads the parts of streaming uploads. When null,
+	 * each part is uploaded on the thread writing the file.
+	 */
+	ExecutorService uploadExecutor;
+	
+	/**
+	 * Injected via spring. The size of each part of a streaming upload.
+	 */
+	int uploadPartSizeBytes = StreamingMultipartUpload.MIN_PART_SIZE_BYTES;
+	
+	/**
+	 * Injected via spring. The maximum number of parts of a single streaming
+	 * upload that are uploaded at a time.
+	 */
+	int maxUploadPartsInFlight = 2;
 
 	/*
 	 * (non-Javadoc)
@@ -47,28 +67,28 @@ public class BulkDownloadManagerImpl implements BulkDownloadManager{
 		return fileHandleAuthorizationManager.canDownLoadFile(user, associations);
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * @see org.sagebionetworks.file.worker.BulkDownloadDao#createTempFile(java.lang.String, java.lang.String)
-	 */
 	@Override
-	public File createTempFile(String prefix, String suffix) throws IOException {
-		return File.createTempFile(prefix, suffix);
+	public ZipOutputStream createZipOutputStream(OutputStream out) {
+		return new ZipOutputStream(out);
 	}
 
 	@Override
-	public ZipOutputStream createZipOutputStream(File outFile) throws IOException {
-		return new ZipOutputStream(new FileOutputStream(outFile));
+	public StreamingMultipartUpload startStreamingUpload(UserInfo userInfo, String fileName, String contentType) {
+		String bucket = MultipartUtils.getBucket(null);
+		String key = MultipartUtils.createNewKey(userInfo.getId().toString(), fileName, null);
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentType(contentType);
+		metadata.setContentDisposition(TransferUtils.getContentDispositionValue(fileName));
+		return new StreamingMultipartUpload(s3client, bucket, key, metadata, uploadPartSizeBytes, uploadExecutor,
+				maxUploadPartsInFlight);
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * @see org.sagebionetworks.file.worker.BulkDownloadDao#multipartUploadLocalFile(org.sagebionetworks.repo.model.UserInfo, java.io.File, java.lang.String, com.amazonaws.event.ProgressListener)
-	 */
 	@Override
-	public S3FileHandle multipartUploadLocalFile(UserInfo userInfo,
-			File fileToUpload, String contentType, ProgressListener listener) {
-		return fileHandleManager.multipartUploadLocalFile(userInfo, fileToUpload, contentType, listener);
+	public S3FileHandle completeStreamingUpload(UserInfo userInfo, StreamingMultipartUpload upload, String fileName)
+			throws IOException {
+		upload.complete();
+		return multipartManager.createS3FileHandle(userInfo.getId().toString(), upload.getBucket(), upload.getKey(),
+				fileName, upload.getMetadata().getContentType(), upload.getContentMD5Hex(), upload.getBytesWritten());
 	}
 
 	/*
@@ -85,35 +105,42 @@ public class BulkDownloadManagerImpl implements BulkDownloadManager{
 		return (S3FileHandle) handle;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * @see org.sagebionetworks.file.worker.BulkDownloadDao#downloadToTempFile(org.sagebionetworks.repo.model.file.S3FileHandle)
-	 */
 	@Override
-	public File downloadToTempFile(S3FileHandle fileHandle) throws IOException {
-		File tempFile = File.createTempFile("FileHandle"+fileHandle.getId(), ".tmp");
-		// download this file to the local machine
-		s3client.getObject(new GetObjectRequest(fileHandle.getBucketName(),
-				fileHandle.getKey()), tempFile);
-		return tempFile;
+	public InputStream openObjectStream(S3FileHandle fileHandle) {
+		return s3client.getObject(new GetObjectRequest(fileHandle.getBucketName(), fileHandle.getKey()))
+				.getObjectContent();
+	}
+
+	@Override
+	public InputStream openObjectStream(S3FileHandle fileHandle, long offset) {
+		GetObjectRequest request = new GetObjectRequest(fileHandle.getBucketName(), fileHandle.getKey());
+		request.setRange(offset);
+		return s3client.getObject(request).getObjectContent();
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * @see org.sagebionetworks.file.worker.BulkDownloadDao#addFileToZip(java.util.zip.ZipOutputStream, java.io.File, java.lang.String)
+	 * @see org.sagebionetworks.file.worker.BulkDownloadManager#addStreamToZip(java.util.zip.ZipOutputStream, java.io.InputStream, java.lang.String)
 	 */
 	@Override
-	public void addFileToZip(ZipOutputStream zipOut, File toAdd, String zipEntryName) throws IOException {
-		InputStream in = new FileInputStream(toAdd);
-		try{
-			ZipEntry entry = new ZipEntry(zipEntryName);
-			zipOut.putNextEntry(entry);
-			// Write the file the zip
-			IOUtils.copy(in, zipOut);
-			zipOut.closeEntry();
-		}finally{
-			IOUtils.closeQuietly(in);
-		}
+	public void addStreamToZip(ZipOutputStream zipOut, InputStream toAdd, String zipEntryName) throws IOException {
+		ZipEntry entry = new ZipEntry(zipEntryName);
+		zipOut.putNextEntry(entry);
+		// Write the file the zip
+		IOUtils.copy(toAdd, zipOut);
+		zipOut.closeEntry();
+	}
+
+	public void setUploadExecutor(ExecutorService uploadExecutor) {
+		this.uploadExecutor = uploadExecutor;
+	}
+
+	public void setUploadPartSizeBytes(int uploadPartSizeBytes) {
+		this.uploadPartSizeBytes = uploadPartSizeBytes;
+	}
+
+	public void setMaxUploadPartsInFlight(int maxUploadPartsInFlight) {
+		this.maxUploadPartsInFlight = maxUploadPartsInFlight;
 	}
 
 }
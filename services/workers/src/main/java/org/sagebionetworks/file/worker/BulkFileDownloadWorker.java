@@ -1,9 +1,11 @@
 package org.sagebionetworks.file.worker;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.IOUtils;
@@ -27,8 +29,6 @@ import org.sagebionetworks.workers.util.aws.message.MessageDrivenRunner;
 import org.sagebionetworks.workers.util.aws.message.RecoverableMessageException;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.amazonaws.event.ProgressEvent;
-import com.amazonaws.event.ProgressListener;
 import com.amazonaws.services.sqs.model.Message;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -71,6 +71,25 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 	@Autowired
 	BulkDownloadManager bulkDownloadManager; 
 
+	/**
+	 * Injected via spring. Fetches the files to be added to a zip ahead of the
+	 * file being written. When null, each file is streamed from S3 as it is
+	 * written.
+	 */
+	ExecutorService fileFetchExecutor;
+
+	/**
+	 * Injected via spring. The maximum number of files fetched ahead of the
+	 * file being written.
+	 */
+	int maxFilesToPrefetch = 8;
+
+	/**
+	 * Injected via spring. The maximum number of bytes held in memory for the
+	 * files fetched ahead of the file being written.
+	 */
+	long maxBytesToPrefetch = 64 * 1024 * 1024;
+
 	@Override
 	public void run(ProgressCallback progressCallback, Message message)
 			throws RecoverableMessageException, Exception {
@@ -94,49 +113,44 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 	}
 
 	/**
-	 * Build the result zip for each authorized file.
+	 * Build the result zip for each authorized file. The zip is streamed
+	 * directly to S3 as it is built, so no temporary files are written.
 	 * 
 	 * @param progressCallback
 	 * @param message
 	 * @param authResults
 	 * @throws IOException 
+	 * @throws InterruptedException 
 	 */
 	public BulkFileDownloadResponse buildZip(
 			final ProgressCallback progressCallback,
 			final Message message, AsynchronousJobStatus status,
-			BulkFileDownloadRequest request) throws IOException {
-		// The generated zip will be written to this temp file.
-		File tempResultFile = bulkDownloadManager.createTempFile("Job"
-				+ status.getJobId(), ".zip");
-		ZipOutputStream zipOut = bulkDownloadManager.createZipOutputStream(tempResultFile);
+			BulkFileDownloadRequest request) throws IOException, InterruptedException {
+		UserInfo user = userManger.getUserInfo(status.getStartedByUserId());
+		/*
+		 * The first step is to determine if the user is authorized to
+		 * download each requested file. The authorization check is
+		 * normalized around the associated object.
+		 */
+		List<FileHandleAssociationAuthorizationStatus> authResults = bulkDownloadManager
+				.canDownLoadFile(user, request.getRequestedFiles());
+		// The generated zip will be uploaded to S3 as it is written.
+		String zipFileName = "Job" + status.getJobId() + ".zip";
+		StreamingMultipartUpload upload = bulkDownloadManager.startStreamingUpload(user, zipFileName, APPLICATION_ZIP);
 		try {
-			UserInfo user = userManger.getUserInfo(status.getStartedByUserId());
-			/*
-			 * The first step is to determine if the user is authorized to
-			 * download each requested file. The authorization check is
-			 * normalized around the associated object.
-			 */
-			List<FileHandleAssociationAuthorizationStatus> authResults = bulkDownloadManager
-					.canDownLoadFile(user, request.getRequestedFiles());
+			ZipOutputStream zipOut = bulkDownloadManager.createZipOutputStream(upload);
 			// Track the files added to the zip.
 			Set<String> fileIdsInZip = Sets.newHashSet();
 			// Build the zip
 			List<FileDownloadSummary> results = addFilesToZip(progressCallback,
-					message, authResults, tempResultFile, zipOut, status, fileIdsInZip);
-			
-			IOUtils.closeQuietly(zipOut);
+					message, authResults, upload, zipOut, status, fileIdsInZip);
 			// Is there at least one file in the zip?
 			String resultFileHandleId = null;
 			if(fileIdsInZip.size() > 0){
-				// upload the result file to S3
+				// write the end of the zip and complete the upload.
+				zipOut.finish();
 				S3FileHandle resultHandle = bulkDownloadManager
-						.multipartUploadLocalFile(user, tempResultFile,
-								APPLICATION_ZIP, new ProgressListener() {
-									@Override
-									public void progressChanged(
-											ProgressEvent progressEvent) {
-									}
-								});
+						.completeStreamingUpload(user, upload, zipFileName);
 				resultFileHandleId = resultHandle.getId();
 			}
 
@@ -148,82 +162,151 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 			response.setResultZipFileHandleId(resultFileHandleId);
 			return response;
 		} finally {
-			IOUtils.closeQuietly(zipOut);
-			tempResultFile.delete();
+			// Discards the upload unless it was completed.
+			upload.abort();
 		}
 	}
 
 	/**
+	 * Add each authorized file to the zip. All of the files are validated
+	 * before any are written, so the files to be written can be fetched from
+	 * S3 ahead of the file currently being written. The files are written in
+	 * the requested order.
+	 * <p>
+	 * A failure to fetch a file only fails that file. A failed read while a
+	 * file is being written to the zip re-opens the file where the read
+	 * stopped. If the read still fails, the partial entry in the zip fails the
+	 * whole job.
 	 * 
 	 * @param progressCallback
 	 * @param message
 	 * @param authResults
-	 * @param tempResultFile
+	 * @param upload
 	 * @param zipOut
+	 * @throws IOException
+	 * @throws InterruptedException
 	 */
 	public List<FileDownloadSummary> addFilesToZip(
 			ProgressCallback progressCallback, Message message,
 			List<FileHandleAssociationAuthorizationStatus> authResults,
-			File tempResultFile, ZipOutputStream zipOut,
+			StreamingMultipartUpload upload, ZipOutputStream zipOut,
 			AsynchronousJobStatus status,
-			Set<String> fileIdsInZip) {
-		long currentProgress = 0L;
-		final long totalProgress = (long) authResults.size();
+			Set<String> fileIdsInZip) throws IOException, InterruptedException {
 		// This will be the final summary of results..
 		List<FileDownloadSummary> fileSummaries = Lists.newLinkedList();
-		// process each request in order.
+		// The handle to write for each summary, or null if the file was rejected.
+		List<S3FileHandle> handles = Lists.newArrayListWithCapacity(authResults.size());
+		List<S3FileHandle> toWrite = Lists.newLinkedList();
+		Set<String> acceptedFileHandleIds = Sets.newHashSet();
 		for (FileHandleAssociationAuthorizationStatus fhas : authResults) {
 			String fileHandleId = fhas.getAssociation().getFileHandleId();
-			// update the job progress
-			asynchJobStatusManager.updateJobProgress(status.getJobId(),
-					currentProgress, totalProgress, PROCESSING_FILE_HANDLE_ID
-							+ fhas.getAssociation().getFileHandleId());
 			FileDownloadSummary summary = new FileDownloadSummary();
 			summary.setFileHandleId(fileHandleId);
 			summary.setAssociateObjectId(fhas.getAssociation().getAssociateObjectId());
 			summary.setAssociateObjectType(fhas.getAssociation().getAssociateObjectType());
 			fileSummaries.add(summary);
+			S3FileHandle s3Handle = null;
 			try {
-				String zipEntryName = writeOneFileToZip(zipOut, tempResultFile.length(), fhas, fileIdsInZip);
-				// download this file from S3
-				fileIdsInZip.add(fileHandleId);
-				summary.setStatus(FileDownloadStatus.SUCCESS);
-				summary.setZipEntryName(zipEntryName);
-			} catch (BulkFileException e) {
-				// known error conditions.
-				summary.setStatus(FileDownloadStatus.FAILURE);
-				summary.setFailureMessage(e.getMessage());
-				summary.setFailureCode(e.getFailureCode());
-			} catch (NotFoundException e) {
-				// file did not exist
-				summary.setStatus(FileDownloadStatus.FAILURE);
-				summary.setFailureMessage(e.getMessage());
-				summary.setFailureCode(FileDownloadCode.NOT_FOUND);
+				s3Handle = validateFile(fhas, acceptedFileHandleIds);
+				acceptedFileHandleIds.add(fileHandleId);
+				toWrite.add(s3Handle);
 			} catch (Exception e) {
-				// all unknown errors.
-				summary.setStatus(FileDownloadStatus.FAILURE);
-				summary.setFailureMessage(e.getMessage());
-				summary.setFailureCode(FileDownloadCode.UNKNOWN_ERROR);
-				log.error("Failed on: " + fhas.getAssociation(), e);
+				setFailure(summary, fhas, e);
+			}
+			handles.add(s3Handle);
+		}
+
+		long currentProgress = 0L;
+		final long totalProgress = (long) authResults.size();
+		S3FilePrefetcher prefetcher = new S3FilePrefetcher(bulkDownloadManager, fileFetchExecutor,
+				maxFilesToPrefetch, maxBytesToPrefetch, toWrite);
+		try {
+			// process each request in order.
+			Iterator<S3FileHandle> handleIterator = handles.iterator();
+			Iterator<FileHandleAssociationAuthorizationStatus> authIterator = authResults.iterator();
+			for (FileDownloadSummary summary : fileSummaries) {
+				S3FileHandle s3Handle = handleIterator.next();
+				FileHandleAssociationAuthorizationStatus fhas = authIterator.next();
+				// update the job progress
+				asynchJobStatusManager.updateJobProgress(status.getJobId(),
+						currentProgress, totalProgress, PROCESSING_FILE_HANDLE_ID
+								+ summary.getFileHandleId());
+				currentProgress++;
+				if (s3Handle == null) {
+					// already failed.
+					continue;
+				}
+				// The zip must be less than the max.
+				if (upload.getBytesWritten() > MAX_TOTAL_FILE_SIZE_BYTES) {
+					prefetcher.skipFile(s3Handle);
+					setFailure(summary, fhas, new BulkFileException(
+							RESULT_FILE_HAS_REACHED_THE_MAXIMUM_SIZE,
+							FileDownloadCode.EXCEEDS_SIZE_LIMIT));
+					continue;
+				}
+				InputStream in;
+				try {
+					in = prefetcher.openFile(s3Handle);
+				} catch (IOException e) {
+					setFailure(summary, fhas, e);
+					continue;
+				} catch (RuntimeException e) {
+					setFailure(summary, fhas, e);
+					continue;
+				}
+				try {
+					// The entry name is the path plus file name.
+					String zipEntryName = createZipEntryName(s3Handle.getFileName(),
+							Long.parseLong(s3Handle.getId()));
+					// write the file to the zip.
+					bulkDownloadManager.addStreamToZip(zipOut, in, zipEntryName);
+					fileIdsInZip.add(s3Handle.getId());
+					summary.setStatus(FileDownloadStatus.SUCCESS);
+					summary.setZipEntryName(zipEntryName);
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
 			}
-			currentProgress++;
+		} finally {
+			prefetcher.close();
 		}
 		return fileSummaries;
 	}
 
 	/**
-	 * Write a single file to the given zip stream.
+	 * Record the failure of a single file.
+	 * 
+	 * @param summary
+	 * @param fhas
+	 * @param e
+	 */
+	private static void setFailure(FileDownloadSummary summary,
+			FileHandleAssociationAuthorizationStatus fhas, Exception e) {
+		summary.setStatus(FileDownloadStatus.FAILURE);
+		summary.setFailureMessage(e.getMessage());
+		if (e instanceof BulkFileException) {
+			// known error conditions.
+			summary.setFailureCode(((BulkFileException) e).getFailureCode());
+		} else if (e instanceof NotFoundException) {
+			// file did not exist
+			summary.setFailureCode(FileDownloadCode.NOT_FOUND);
+		} else {
+			// all unknown errors.
+			summary.setFailureCode(FileDownloadCode.UNKNOWN_ERROR);
+			log.error("Failed on: " + fhas.getAssociation(), e);
+		}
+	}
+
+	/**
+	 * Validate that a single file can be added to the zip.
 	 * 
-	 * @param zipOut
-	 * @param zipFileSize
 	 * @param fhas
 	 * @param fileIdsInZip
-	 * @throws IOException
-	 * @return The zip entry name used for this file.
+	 *            The files already accepted for the zip.
+	 * @return The file handle to write to the zip.
 	 */
-	public String writeOneFileToZip(ZipOutputStream zipOut, long zipFileSize,
-			FileHandleAssociationAuthorizationStatus fhas,
-			Set<String> fileIdsInZip) throws IOException {
+	public S3FileHandle validateFile(FileHandleAssociationAuthorizationStatus fhas,
+			Set<String> fileIdsInZip) {
 		String fileHandleId = fhas.getAssociation().getFileHandleId();
 		// Is the user authorized to download this file?
 		if (!fhas.getStatus().getAuthorized()) {
@@ -235,12 +318,6 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 			throw new BulkFileException(FILE_ALREADY_ADDED,
 					FileDownloadCode.DUPLICATE);
 		}
-		// Each file must be less than the max.
-		if (zipFileSize > MAX_TOTAL_FILE_SIZE_BYTES) {
-			throw new BulkFileException(
-					RESULT_FILE_HAS_REACHED_THE_MAXIMUM_SIZE,
-					FileDownloadCode.EXCEEDS_SIZE_LIMIT);
-		}
 		// Get this filehandle.
 		S3FileHandle s3Handle = bulkDownloadManager.getS3FileHandle(fileHandleId);
 		// Each file must be under the max.s
@@ -248,18 +325,7 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 			throw new BulkFileException(FILE_EXCEEDS_THE_MAXIMUM_SIZE_LIMIT,
 					FileDownloadCode.EXCEEDS_SIZE_LIMIT);
 		}
-		// This file will be downloaded to this temp.
-		File downloadTemp = bulkDownloadManager.downloadToTempFile(s3Handle);
-		try {
-			// The entry name is the path plus file name.
-			String zipEntryName = createZipEntryName(s3Handle.getFileName(),
-					Long.parseLong(s3Handle.getId()));
-			// write the file to the zip.
-			bulkDownloadManager.addFileToZip(zipOut, downloadTemp, zipEntryName);
-			return zipEntryName;
-		} finally {
-			downloadTemp.delete();
-		}
+		return s3Handle;
 	}
 
 	/**
@@ -276,4 +342,16 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 				fileName);
 	}
 
+	public void setFileFetchExecutor(ExecutorService fileFetchExecutor) {
+		this.fileFetchExecutor = fileFetchExecutor;
+	}
+
+	public void setMaxFilesToPrefetch(int maxFilesToPrefetch) {
+		this.maxFilesToPrefetch = maxFilesToPrefetch;
+	}
+
+	public void setMaxBytesToPrefetch(long maxBytesToPrefetch) {
+		this.maxBytesToPrefetch = maxBytesToPrefetch;
+	}
+
 }
@@ -0,0 +1,93 @@
+package org.sagebionetworks.file.worker;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.repo.model.file.S3FileHandle;
+import org.sagebionetworks.util.ValidateArgument;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * A stream of an S3 file that re-opens the file at the current position when
+ * a read fails. A file that is streamed into a zip entry cannot be restarted
+ * once the entry is started, so this keeps a transient S3 error from failing
+ * the entry, and with it the whole zip.
+ * <p>
+ * The file is opened when the stream is created, so a file that cannot be
+ * opened at all fails before anything is written.
+ *
+ */
+public class ResumableObjectInputStream extends InputStream {
+
+	static private Logger log = LogManager.getLogger(ResumableObjectInputStream.class);
+
+	private final BulkDownloadManager bulkDownloadManager;
+	private final S3FileHandle handle;
+	private final int maxResumes;
+	private InputStream in;
+	private long position;
+	private int resumes;
+
+	/**
+	 *
+	 * @param bulkDownloadManager
+	 *            Used to open the file from S3.
+	 * @param handle
+	 * @param maxResumes
+	 *            The maximum number of times the file is re-opened after a
+	 *            failed read.
+	 */
+	public ResumableObjectInputStream(BulkDownloadManager bulkDownloadManager, S3FileHandle handle, int maxResumes) {
+		ValidateArgument.required(bulkDownloadManager, "bulkDownloadManager");
+		ValidateArgument.required(handle, "handle");
+		this.bulkDownloadManager = bulkDownloadManager;
+		this.handle = handle;
+		this.maxResumes = maxResumes;
+		this.position = 0L;
+		this.resumes = 0;
+		this.in = bulkDownloadManager.openObjectStream(handle);
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] one = new byte[1];
+		int read = read(one, 0, 1);
+		return read < 0 ? -1 : (one[0] & 0xff);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		while (true) {
+			try {
+				if (in == null) {
+					in = bulkDownloadManager.openObjectStream(handle, position);
+				}
+				int read = in.read(b, off, len);
+				if (read > 0) {
+					position += read;
+				}
+				return read;
+			} catch (IOException | AmazonClientException e) {
+				IOUtils.closeQuietly(in);
+				in = null;
+				if (resumes >= maxResumes) {
+					throw e instanceof IOException ? (IOException) e : new IOException(e);
+				}
+				resumes++;
+				log.warn("Resuming file handle " + handle.getId() + " at byte " + position + " after: " + e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (in != null) {
+			in.close();
+			in = null;
+		}
+	}
+}
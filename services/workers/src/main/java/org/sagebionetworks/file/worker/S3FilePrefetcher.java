@@ -0,0 +1,208 @@
+package org.sagebionetworks.file.worker;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.sagebionetworks.repo.model.file.S3FileHandle;
+import org.sagebionetworks.util.ValidateArgument;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+/**
+ * Fetches the content of S3 files into memory ahead of the caller, so several
+ * files are downloaded concurrently while the caller writes the current file
+ * to a bulk download zip.
+ * <p>
+ * Files must be requested in the same order as they were provided. To bound
+ * the memory used, at most maxFilesAhead files are fetched or held at a time,
+ * and no more are fetched once the files being held reach maxBytesAhead bytes.
+ * A file larger than maxBytesAhead, or a file of unknown size, is never held
+ * in memory. Instead it is streamed from S3 on the caller's thread when it is
+ * requested.
+ * <p>
+ * Every file is read with a {@link ResumableObjectInputStream}, so a transient
+ * S3 error part way through a file re-opens the file where the read stopped.
+ *
+ */
+public class S3FilePrefetcher {
+
+	/**
+	 * The maximum number of times a file is re-opened after a failed read.
+	 */
+	public static final int MAX_RESUMES = 3;
+
+	/**
+	 * A file that will be requested. The future is null for a file that is
+	 * streamed when requested.
+	 */
+	private static class Fetch {
+		final S3FileHandle handle;
+		final Future<byte[]> future;
+		final long bytes;
+
+		Fetch(S3FileHandle handle, Future<byte[]> future, long bytes) {
+			this.handle = handle;
+			this.future = future;
+			this.bytes = bytes;
+		}
+	}
+
+	private final BulkDownloadManager bulkDownloadManager;
+	private final ExecutorService executor;
+	private final int maxFilesAhead;
+	private final long maxBytesAhead;
+	private final PeekingIterator<S3FileHandle> toFetch;
+	private final Deque<Fetch> fetches;
+	private long bytesAhead;
+
+	/**
+	 *
+	 * @param bulkDownloadManager
+	 *            Used to read each file from S3.
+	 * @param executor
+	 *            Runs the fetches. When null, every file is streamed when it is
+	 *            requested.
+	 * @param maxFilesAhead
+	 *            The maximum number of files that can be fetched or held at one
+	 *            time.
+	 * @param maxBytesAhead
+	 *            The maximum number of bytes that can be fetched or held at one
+	 *            time.
+	 * @param files
+	 *            The files that will be requested, in the order they will be
+	 *            requested.
+	 */
+	public S3FilePrefetcher(BulkDownloadManager bulkDownloadManager, ExecutorService executor, int maxFilesAhead,
+			long maxBytesAhead, List<S3FileHandle> files) {
+		ValidateArgument.required(bulkDownloadManager, "bulkDownloadManager");
+		ValidateArgument.requirement(maxFilesAhead > 0, "maxFilesAhead must be greater than zero");
+		ValidateArgument.required(files, "files");
+		this.bulkDownloadManager = bulkDownloadManager;
+		this.executor = executor;
+		this.maxFilesAhead = maxFilesAhead;
+		this.maxBytesAhead = maxBytesAhead;
+		this.toFetch = Iterators.peekingIterator(files.iterator());
+		this.fetches = new ArrayDeque<Fetch>(maxFilesAhead);
+		this.bytesAhead = 0L;
+		fillWindow();
+	}
+
+	/**
+	 * Open the content of the given file, waiting for it to be fetched if
+	 * needed. Fetching of the following files is started before this method
+	 * returns. The caller must close the returned stream.
+	 *
+	 * @param handle
+	 *            Must be the next file in the order provided.
+	 * @return
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public InputStream openFile(S3FileHandle handle) throws IOException, InterruptedException {
+		Fetch next = pollNext(handle);
+		if (next.future == null) {
+			fillWindow();
+			return new ResumableObjectInputStream(bulkDownloadManager, handle, MAX_RESUMES);
+		}
+		try {
+			byte[] content = next.future.get();
+			// start the next fetches while the caller writes this file.
+			fillWindow();
+			return new ByteArrayInputStream(content);
+		} catch (ExecutionException e) {
+			// the following files are still fetched.
+			fillWindow();
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Skip the given file without reading its content.
+	 *
+	 * @param handle
+	 *            Must be the next file in the order provided.
+	 */
+	public void skipFile(S3FileHandle handle) {
+		Fetch next = pollNext(handle);
+		if (next.future != null) {
+			next.future.cancel(true);
+		}
+		fillWindow();
+	}
+
+	/**
+	 * Cancel any fetches that have not started. This should be called when the
+	 * caller is finished, even if it failed.
+	 */
+	public void close() {
+		for (Fetch fetch : fetches) {
+			if (fetch.future != null) {
+				fetch.future.cancel(true);
+			}
+		}
+		fetches.clear();
+		bytesAhead = 0L;
+	}
+
+	private Fetch pollNext(S3FileHandle handle) {
+		ValidateArgument.required(handle, "handle");
+		Fetch next = fetches.pollFirst();
+		if (next == null || !next.handle.getId().equals(handle.getId())) {
+			throw new IllegalStateException("Files must be requested in the order provided. Expected: "
+					+ (next == null ? null : next.handle.getId()) + " but was: " + handle.getId());
+		}
+		bytesAhead -= next.bytes;
+		return next;
+	}
+
+	/**
+	 * Start fetching files until the window is full.
+	 */
+	private void fillWindow() {
+		while (toFetch.hasNext() && fetches.size() < maxFilesAhead) {
+			Long size = toFetch.peek().getContentSize();
+			if (executor == null || size == null || size > maxBytesAhead) {
+				// too large, or of unknown size, to hold in memory so it is streamed when requested.
+				fetches.addLast(new Fetch(toFetch.next(), null, 0L));
+				continue;
+			}
+			long bytes = size;
+			if (bytesAhead + bytes > maxBytesAhead) {
+				// Wait for the caller to consume the files being held.
+				return;
+			}
+			final S3FileHandle handle = toFetch.next();
+			Future<byte[]> future = executor.submit(new Callable<byte[]>() {
+
+				@Override
+				public byte[] call() throws Exception {
+					InputStream in = new ResumableObjectInputStream(bulkDownloadManager, handle, MAX_RESUMES);
+					try {
+						return IOUtils.toByteArray(in);
+					} finally {
+						IOUtils.closeQuietly(in);
+					}
+				}
+			});
+			fetches.addLast(new Fetch(handle, future, bytes));
+			bytesAhead += bytes;
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package org.sagebionetworks.file.worker;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.util.ValidateArgument;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.util.BinaryUtils;
+
+/**
+ * An output stream that uploads what is written to it to S3 as a multi-part
+ * upload, so a large file can be generated and uploaded without first writing
+ * it to the local disk. Each part is uploaded as soon as it is full while the
+ * caller keeps writing the following parts.
+ * <p>
+ * To bound the memory used, at most maxPartsInFlight parts are uploaded at a
+ * time. A caller that fills a part while that many parts are being uploaded
+ * waits for the oldest upload to finish. The multi-part upload is only started
+ * once the first part is full or the upload is completed.
+ * <p>
+ * {@link #close()} does nothing, so the stream can be wrapped by streams that
+ * close it. The caller must either {@link #complete()} or {@link #abort()} the
+ * upload.
+ *
+ */
+public class StreamingMultipartUpload extends OutputStream {
+
+	/**
+	 * S3 requires all but the last part to be at least 5 MB.
+	 */
+	public static final int MIN_PART_SIZE_BYTES = 5 * 1024 * 1024;
+
+	static private Logger log = LogManager.getLogger(StreamingMultipartUpload.class);
+
+	private final AmazonS3Client s3Client;
+	private final String bucket;
+	private final String key;
+	private final ObjectMetadata metadata;
+	private final int partSizeBytes;
+	private final ExecutorService executor;
+	private final int maxPartsInFlight;
+	private final MessageDigest md5;
+	private final Deque<Future<PartETag>> inFlight;
+	private final List<PartETag> partETags;
+	private String uploadId;
+	private byte[] buffer;
+	private int bufferCount;
+	private int partNumber;
+	private long bytesWritten;
+	private boolean finished;
+	private String contentMD5Hex;
+
+	/**
+	 *
+	 * @param s3Client
+	 * @param bucket
+	 * @param key
+	 * @param metadata
+	 *            The metadata of the resulting S3 object.
+	 * @param partSizeBytes
+	 *            The size of each part except the last.
+	 * @param executor
+	 *            Uploads the parts. When null, each part is uploaded on the
+	 *            caller's thread.
+	 * @param maxPartsInFlight
+	 *            The maximum number of parts uploaded at a time.
+	 */
+	public StreamingMultipartUpload(AmazonS3Client s3Client, String bucket, String key, ObjectMetadata metadata,
+			int partSizeBytes, ExecutorService executor, int maxPartsInFlight) {
+		ValidateArgument.required(s3Client, "s3Client");
+		ValidateArgument.required(bucket, "bucket");
+		ValidateArgument.required(key, "key");
+		ValidateArgument.required(metadata, "metadata");
+		ValidateArgument.requirement(partSizeBytes >= MIN_PART_SIZE_BYTES, "partSizeBytes must be at least "
+				+ MIN_PART_SIZE_BYTES);
+		ValidateArgument.requirement(maxPartsInFlight > 0, "maxPartsInFlight must be greater than zero");
+		this.s3Client = s3Client;
+		this.bucket = bucket;
+		this.key = key;
+		this.metadata = metadata;
+		this.partSizeBytes = partSizeBytes;
+		this.executor = executor;
+		this.maxPartsInFlight = maxPartsInFlight;
+		try {
+			this.md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		this.inFlight = new ArrayDeque<Future<PartETag>>(maxPartsInFlight);
+		this.partETags = new LinkedList<PartETag>();
+		this.buffer = new byte[partSizeBytes];
+		this.bufferCount = 0;
+		this.partNumber = 0;
+		this.bytesWritten = 0L;
+		this.finished = false;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (finished) {
+			throw new IOException("The upload has already been completed or aborted");
+		}
+		md5.update(b, off, len);
+		bytesWritten += len;
+		while (len > 0) {
+			int toCopy = Math.min(len, partSizeBytes - bufferCount);
+			System.arraycopy(b, off, buffer, bufferCount, toCopy);
+			bufferCount += toCopy;
+			off += toCopy;
+			len -= toCopy;
+			if (bufferCount == partSizeBytes) {
+				uploadBuffer();
+			}
+		}
+	}
+
+	/**
+	 * Does nothing. Call {@link #complete()} or {@link #abort()}.
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Upload the last part and complete the multi-part upload. If this fails
+	 * the caller must still {@link #abort()} the upload.
+	 *
+	 * @throws IOException
+	 */
+	public void complete() throws IOException {
+		if (finished) {
+			throw new IOException("The upload has already been completed or aborted");
+		}
+		// An empty object is still uploaded as a single empty part.
+		if (bufferCount > 0 || partNumber == 0) {
+			uploadBuffer();
+		}
+		while (!inFlight.isEmpty()) {
+			partETags.add(waitForPart(inFlight.pollFirst()));
+		}
+		s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+		// the upload can still be aborted if anything above failed.
+		finished = true;
+		buffer = null;
+		contentMD5Hex = BinaryUtils.toHex(md5.digest());
+	}
+
+	/**
+	 * Abort the upload, discarding any parts that were uploaded. This does not
+	 * throw so it can be called while handling another failure.
+	 */
+	public void abort() {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		buffer = null;
+		for (Future<PartETag> future : inFlight) {
+			future.cancel(true);
+		}
+		inFlight.clear();
+		if (uploadId != null) {
+			try {
+				s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+			} catch (Exception e) {
+				log.error("Failed to abort the multi-part upload of: " + key, e);
+			}
+		}
+	}
+
+	/**
+	 * Upload the current buffer as the next part.
+	 *
+	 * @throws IOException
+	 */
+	private void uploadBuffer() throws IOException {
+		if (uploadId == null) {
+			uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key, metadata))
+					.getUploadId();
+		}
+		partNumber++;
+		final UploadPartRequest request = new UploadPartRequest().withBucketName(bucket).withKey(key)
+				.withUploadId(uploadId).withPartNumber(partNumber)
+				.withInputStream(new ByteArrayInputStream(buffer, 0, bufferCount)).withPartSize(bufferCount);
+		if (executor == null) {
+			partETags.add(s3Client.uploadPart(request).getPartETag());
+			bufferCount = 0;
+			return;
+		}
+		// wait for the oldest part if too many parts are being uploaded.
+		while (inFlight.size() >= maxPartsInFlight) {
+			partETags.add(waitForPart(inFlight.pollFirst()));
+		}
+		inFlight.addLast(executor.submit(new Callable<PartETag>() {
+
+			@Override
+			public PartETag call() throws Exception {
+				return s3Client.uploadPart(request).getPartETag();
+			}
+		}));
+		// the buffer now belongs to the upload.
+		buffer = new byte[partSizeBytes];
+		bufferCount = 0;
+	}
+
+	private PartETag waitForPart(Future<PartETag> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	public String getBucket() {
+		return bucket;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public ObjectMetadata getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * The total number of bytes written to this stream.
+	 *
+	 * @return
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * The hex MD5 of all bytes written. Only available once the upload is
+	 * complete.
+	 *
+	 * @return
+	 */
+	public String getContentMD5Hex() {
+		if (contentMD5Hex == null) {
+			throw new IllegalStateException("The upload is not complete");
+		}
+		return contentMD5Hex;
+	}
+}
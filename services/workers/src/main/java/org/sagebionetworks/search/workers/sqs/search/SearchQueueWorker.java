@@ -1,15 +1,18 @@
 package org.sagebionetworks.search.workers.sqs.search;
 
-import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import org.apache.http.client.ClientProtocolException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.sagebionetworks.asynchronous.workers.changes.ChangeMessageDrivenRunner;
+import org.sagebionetworks.asynchronous.workers.changes.BatchChangeMessageDrivenRunner;
 import org.sagebionetworks.cloudwatch.WorkerLogger;
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.repo.manager.search.SearchDocumentDriver;
-import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.ObjectType;
 import org.sagebionetworks.repo.model.dao.WikiPageKey;
 import org.sagebionetworks.repo.model.message.ChangeMessage;
@@ -17,8 +20,6 @@ import org.sagebionetworks.repo.model.message.ChangeType;
 import org.sagebionetworks.repo.model.search.Document;
 import org.sagebionetworks.repo.model.v2.dao.V2WikiPageDao;
 import org.sagebionetworks.repo.web.NotFoundException;
-import org.sagebionetworks.repo.web.ServiceUnavailableException;
-import org.sagebionetworks.search.CloudSearchClientException;
 import org.sagebionetworks.search.SearchDao;
 import org.sagebionetworks.workers.util.aws.message.RecoverableMessageException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,10 +27,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 /**
  * This worker updates the search index based on messages received
  * 
+ * Each batch of changes is reduced to the last change of each entity. The
+ * search index is checked for all of the entities with one query, and the
+ * documents that need to change are built and uploaded as one batch.
+ * 
  * @author John
  * 
  */
-public class SearchQueueWorker implements ChangeMessageDrivenRunner {
+public class SearchQueueWorker implements BatchChangeMessageDrivenRunner {
 
 	static private Logger log = LogManager.getLogger(SearchQueueWorker.class);
 
@@ -46,23 +51,60 @@ public class SearchQueueWorker implements ChangeMessageDrivenRunner {
 	private WorkerLogger workerLogger;
 
 	@Override
-	public void run(ProgressCallback progressCallback, ChangeMessage change)
+	public void run(ProgressCallback progressCallback, List<ChangeMessage> messages)
 			throws RecoverableMessageException, Exception {
 		// If the feature is disabled then we simply swallow all messages
 		if (!searchDao.isSearchEnabled()) {
 			return;
 		}
+		// Maps each entity to create or update to the etag of its last change.
+		Map<String, String> createOrUpdate = new LinkedHashMap<String, String>();
+		Set<String> deletes = new LinkedHashSet<String>();
+		for (ChangeMessage change : messages) {
+			groupChange(change, createOrUpdate, deletes);
+		}
+		try {
+			if (!deletes.isEmpty()) {
+				searchDao.deleteDocuments(deletes);
+			}
+			if (!createOrUpdate.isEmpty()) {
+				processCreateUpdate(createOrUpdate);
+			}
+		} catch (Throwable e) {
+			workerLogger.logWorkerFailure(SearchQueueWorker.class.getName(), e, true);
+			throw new RecoverableMessageException();
+		}
+	}
+
+	/**
+	 * Add a single change to either the creates/updates or the deletes. A
+	 * later change of an entity replaces an earlier change. A change with an
+	 * unknown change type is logged and skipped so it cannot stop the rest of
+	 * the batch from being indexed.
+	 * 
+	 * @param change
+	 * @param createOrUpdate
+	 * @param deletes
+	 */
+	void groupChange(ChangeMessage change, Map<String, String> createOrUpdate, Set<String> deletes) {
 		// We only care about entity messages as this time
 		if (ObjectType.ENTITY == change.getObjectType()) {
 			// Is this a create or update
 			if (ChangeType.CREATE == change.getChangeType()
 					|| ChangeType.UPDATE == change.getChangeType()) {
-				processCreateUpdate(change);
+				deletes.remove(change.getObjectId());
+				// A null etag from a wiki change means the entity must be rebuilt.
+				if (!createOrUpdate.containsKey(change.getObjectId())
+						|| createOrUpdate.get(change.getObjectId()) != null) {
+					createOrUpdate.put(change.getObjectId(), change.getObjectEtag());
+				}
 			} else if (ChangeType.DELETE == change.getChangeType()) {
-				processDelete(change);
+				createOrUpdate.remove(change.getObjectId());
+				deletes.add(change.getObjectId());
 			} else {
-				throw new IllegalArgumentException("Unknown change type: "
-						+ change.getChangeType());
+				log.warn("Skipping change with unknown change type: "
+						+ change.getChangeType() + " for entity: "
+						+ change.getObjectId());
 			}
 		}
 		// Is this a wikipage?
@@ -72,15 +114,10 @@ public class SearchQueueWorker implements ChangeMessageDrivenRunner {
 				WikiPageKey key = wikPageDao
 						.lookupWikiKey(change.getObjectId());
 				// If the owner of the wiki is a an entity then pass along the
-				// message.
-				if (ObjectType.ENTITY == key.getOwnerObjectType()) {
-					// We need the current document etag
-					ChangeMessage newMessage = new ChangeMessage();
-					newMessage.setChangeType(ChangeType.UPDATE);
-					newMessage.setObjectId(key.getOwnerObjectId());
-					newMessage.setObjectType(ObjectType.ENTITY);
-					newMessage.setObjectEtag(null);
-					processCreateUpdate(newMessage);
+				// change without an etag.
+				if (ObjectType.ENTITY == key.getOwnerObjectType()
+						&& !deletes.contains(key.getOwnerObjectId())) {
+					createOrUpdate.put(key.getOwnerObjectId(), null);
 				}
 			} catch (NotFoundException e) {
 				// Nothing to do if the wiki does not exist
@@ -91,63 +128,43 @@ public class SearchQueueWorker implements ChangeMessageDrivenRunner {
 	}
 
 	/**
-	 * A single delete
+	 * Create or update the search documents of the given entities.
 	 * 
-	 * @param message
-	 * @throws RecoverableMessageException
+	 * @param idToEtag
+	 *            Maps each entity id to the etag of its change. A null etag
+	 *            means the document is rebuilt from the current entity.
+	 * @throws Exception
 	 */
-	private void processDelete(ChangeMessage message)
-			throws RecoverableMessageException {
-		try {
-			searchDao.deleteDocument(message.getObjectId());
-		} catch (Throwable e) {
-			workerLogger.logWorkerFailure(SearchQueueWorker.class, message, e,
-					true);
-			throw new RecoverableMessageException();
+	void processCreateUpdate(Map<String, String> idToEtag) throws Exception {
+		// We want to ignore changes that are already in the search index.
+		Map<String, String> withEtags = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, String> entry : idToEtag.entrySet()) {
+			if (entry.getValue() != null) {
+				withEtags.put(entry.getKey(), entry.getValue());
+			}
 		}
-	}
-
-	public void processCreateUpdate(ChangeMessage change)
-			throws RecoverableMessageException {
-		try {
-			Document newDoc = getDocFromMessage(change);
-			if (newDoc != null) {
-				searchDao.createOrUpdateSearchDocument(newDoc);
+		Set<String> alreadyIndexed = withEtags.isEmpty() ? new LinkedHashSet<String>()
+				: searchDao.getIdsOfDocumentsThatExist(withEtags);
+		List<String> toBuild = new LinkedList<String>();
+		for (String id : idToEtag.keySet()) {
+			if (!alreadyIndexed.contains(id)) {
+				toBuild.add(id);
 			}
-		} catch (Throwable e) {
-			workerLogger.logWorkerFailure(SearchQueueWorker.class, change, e,
-					true);
-			throw new RecoverableMessageException();
 		}
-	}
-
-	private Document getDocFromMessage(ChangeMessage changeMessage)
-			throws ClientProtocolException, DatastoreException, IOException,
-			ServiceUnavailableException, CloudSearchClientException {
-		// We want to ignore this message if a document with this ID and Etag
-		// already exists in the search index.
-		if (!searchDao.doesDocumentExist(changeMessage.getObjectId(),
-				changeMessage.getObjectEtag())) {
-			// We want to ignore this message if a document with this ID and
-			// Etag are not in the repository as it is an
-			// old message.
-			if (changeMessage.getObjectEtag() == null
-					|| searchDocumentDriver.doesDocumentExist(
-							changeMessage.getObjectId(),
-							changeMessage.getObjectEtag())) {
-				try {
-					return searchDocumentDriver
-							.formulateSearchDocument(changeMessage
-									.getObjectId());
-				} catch (NotFoundException e) {
-					// There is nothing to do if it does not exist
-					log.debug("Node not found for id: "
-							+ changeMessage.getObjectId() + " Message:"
-							+ e.getMessage());
-				}
+		if (toBuild.isEmpty()) {
+			return;
+		}
+		List<Document> documents = new LinkedList<Document>();
+		for (Document document : searchDocumentDriver.formulateSearchDocuments(toBuild)) {
+			String etag = idToEtag.get(document.getId());
+			// We want to ignore old changes of entities that have since changed again.
+			if (etag == null || document.getFields() == null || etag.equals(document.getFields().getEtag())) {
+				documents.add(document);
 			}
 		}
-		return null;
+		if (!documents.isEmpty()) {
+			searchDao.createOrUpdateSearchDocument(documents);
+		}
 	}
 
 }
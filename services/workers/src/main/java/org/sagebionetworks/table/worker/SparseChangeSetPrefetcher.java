@@ -0,0 +1,158 @@
+package org.sagebionetworks.table.worker;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.sagebionetworks.repo.manager.table.TableEntityManager;
+import org.sagebionetworks.repo.model.table.TableRowChange;
+import org.sagebionetworks.table.model.SparseChangeSet;
+import org.sagebionetworks.util.ValidateArgument;
+
+/**
+ * Fetches the row change sets of a table from S3 ahead of the caller so the
+ * download and parsing of the next change sets overlaps with the application
+ * of the current change set to the index.
+ * <p>
+ * Change sets must be requested in the same order as they were provided. To
+ * bound the memory used, at most maxChangeSetsAhead change sets are fetched
+ * or held at a time, and no more are fetched once the change sets being held
+ * reach maxRowsAhead rows. The next change set is always fetched so a single
+ * change set larger than maxRowsAhead can still be applied.
+ *
+ */
+public class SparseChangeSetPrefetcher {
+
+	/**
+	 * A change set that has been requested from the executor.
+	 */
+	private static class Fetch {
+		final TableRowChange change;
+		final Future<SparseChangeSet> future;
+
+		Fetch(TableRowChange change, Future<SparseChangeSet> future) {
+			this.change = change;
+			this.future = future;
+		}
+	}
+
+	private final TableEntityManager tableEntityManager;
+	private final ExecutorService executor;
+	private final int maxChangeSetsAhead;
+	private final long maxRowsAhead;
+	private final Iterator<TableRowChange> toFetch;
+	private final Deque<Fetch> fetches;
+	private long rowsAhead;
+
+	/**
+	 *
+	 * @param tableEntityManager
+	 *            Used to fetch each change set.
+	 * @param executor
+	 *            Runs the fetches.
+	 * @param maxChangeSetsAhead
+	 *            The maximum number of change sets that can be fetched or held
+	 *            at one time.
+	 * @param maxRowsAhead
+	 *            The maximum number of rows that can be fetched or held at one
+	 *            time.
+	 * @param changes
+	 *            The row changes that will be requested, in the order they will
+	 *            be requested.
+	 */
+	public SparseChangeSetPrefetcher(TableEntityManager tableEntityManager, ExecutorService executor,
+			int maxChangeSetsAhead, long maxRowsAhead, List<TableRowChange> changes) {
+		ValidateArgument.required(tableEntityManager, "tableEntityManager");
+		ValidateArgument.required(executor, "executor");
+		ValidateArgument.requirement(maxChangeSetsAhead > 0, "maxChangeSetsAhead must be greater than zero");
+		ValidateArgument.required(changes, "changes");
+		this.tableEntityManager = tableEntityManager;
+		this.executor = executor;
+		this.maxChangeSetsAhead = maxChangeSetsAhead;
+		this.maxRowsAhead = maxRowsAhead;
+		this.toFetch = changes.iterator();
+		this.fetches = new ArrayDeque<Fetch>(maxChangeSetsAhead);
+		this.rowsAhead = 0L;
+		fillWindow();
+	}
+
+	/**
+	 * Get the change set for the given change, waiting for it to be fetched if
+	 * needed. Fetching of the following change sets is started before this
+	 * method returns.
+	 *
+	 * @param change
+	 *            Must be the next change in the order provided.
+	 * @return
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public SparseChangeSet getChangeSet(TableRowChange change) throws IOException, InterruptedException {
+		ValidateArgument.required(change, "change");
+		Fetch next = fetches.pollFirst();
+		if (next == null || !next.change.equals(change)) {
+			throw new IllegalStateException("Change sets must be requested in the order provided. Expected version: "
+					+ (next == null ? null : next.change.getRowVersion()) + " but was: " + change.getRowVersion());
+		}
+		rowsAhead -= rowCount(next.change);
+		try {
+			SparseChangeSet changeSet = next.future.get();
+			// start the next fetches while the caller applies this change set.
+			fillWindow();
+			return changeSet;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Cancel any fetches that have not started. This should be called when the
+	 * caller is finished, even if it failed.
+	 */
+	public void close() {
+		for (Fetch fetch : fetches) {
+			fetch.future.cancel(false);
+		}
+		fetches.clear();
+		rowsAhead = 0L;
+	}
+
+	/**
+	 * Start fetching change sets until the window is full.
+	 */
+	private void fillWindow() {
+		while (toFetch.hasNext() && fetches.size() < maxChangeSetsAhead) {
+			if (!fetches.isEmpty() && rowsAhead >= maxRowsAhead) {
+				// Wait for the caller to consume the change sets being held.
+				return;
+			}
+			final TableRowChange change = toFetch.next();
+			Future<SparseChangeSet> future = executor.submit(new Callable<SparseChangeSet>() {
+
+				@Override
+				public SparseChangeSet call() throws Exception {
+					return tableEntityManager.getSparseChangeSet(change);
+				}
+			});
+			fetches.addLast(new Fetch(change, future));
+			rowsAhead += rowCount(change);
+		}
+	}
+
+	private static long rowCount(TableRowChange change) {
+		return change.getRowCount() == null ? 0L : change.getRowCount();
+	}
+}
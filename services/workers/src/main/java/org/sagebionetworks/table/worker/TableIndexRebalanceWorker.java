@@ -0,0 +1,76 @@
+package org.sagebionetworks.table.worker;
+
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.common.util.progress.ProgressCallback;
+import org.sagebionetworks.common.util.progress.ProgressingRunner;
+import org.sagebionetworks.repo.manager.table.TableManagerSupport;
+import org.sagebionetworks.table.cluster.ConnectionFactory;
+import org.sagebionetworks.table.cluster.MisplacedTableIndex;
+import org.sagebionetworks.table.cluster.TableIndexDAO;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * When a database is added to or removed from the table cluster some tables
+ * will be assigned to a new database. This worker finds each table index that
+ * is stored on a database that no longer owns the table and:
+ * <ul>
+ * <li>Triggers a rebuild of the index on the owning database if the owner is
+ * not yet synchronized with the truth.</li>
+ * <li>Drops the stale copy once the owner is synchronized (or the table no
+ * longer exists).</li>
+ * </ul>
+ * The rebuild itself is done in the background by the normal table workers.
+ * Reads continue to use the stale copy until the owner has built the index.
+ * 
+ * @author jmhill
+ *
+ */
+public class TableIndexRebalanceWorker implements ProgressingRunner {
+
+	static private Logger log = LogManager.getLogger(TableIndexRebalanceWorker.class);
+
+	@Autowired
+	ConnectionFactory connectionFactory;
+	@Autowired
+	TableManagerSupport tableManagerSupport;
+
+	@Override
+	public void run(ProgressCallback progressCallback) throws Exception {
+		List<MisplacedTableIndex> misplaced = connectionFactory.getMisplacedTableIndices();
+		if(!misplaced.isEmpty()){
+			log.info("Found "+misplaced.size()+" misplaced table indices");
+		}
+		for(MisplacedTableIndex index: misplaced){
+			try{
+				rebalanceTable(index);
+			}catch(Exception e){
+				// try again on the next run.
+				log.error("Failed to rebalance table: "+index.getTableId(), e);
+			}
+		}
+	}
+
+	/**
+	 * Rebalance a single table.
+	 * 
+	 * @param index
+	 */
+	void rebalanceTable(MisplacedTableIndex index){
+		String tableId = index.getTableId();
+		if(!tableManagerSupport.isTableAvailable(tableId)
+				|| tableManagerSupport.isIndexSynchronizedWithTruth(tableId)){
+			// The new owner has caught up so the stale copy is no longer needed.
+			TableIndexDAO staleConnection = index.getStaleConnection();
+			staleConnection.deleteTable(tableId);
+			staleConnection.deleteSecondaryTables(tableId);
+			log.info("Dropped stale index for table: "+tableId);
+		}else{
+			// Will trigger a rebuild on the owner if one is not already running.
+			tableManagerSupport.getTableStatusOrCreateIfNotExists(tableId);
+		}
+	}
+
+}
@@ -25,8 +25,10 @@ import org.sagebionetworks.workers.util.semaphore.LockUnavilableException;
 import org.springframework.beans.factory.annotation.Autowired;
 
 /**
- * This worker will completely re-build a table view
- * on any change to a the view schema or scope.
+ * This worker will completely re-build a table view on any change to the view
+ * schema. Any other change, such as a change to the scope or to an entity
+ * within the scope, is applied to the existing view by updating only the rows
+ * that differ from the entity replication tables.
  *
  */
 public class TableViewWorker implements ChangeMessageDrivenRunner {
@@ -124,8 +126,6 @@ public class TableViewWorker implements ChangeMessageDrivenRunner {
 			// Look-up the type for this table.
 			ViewType viewType = tableManagerSupport.getViewType(tableId);
 
-			// Since this worker re-builds the index, start by deleting it.
-			indexManager.deleteTableIndex(tableId);
 			// Need the MD5 for the original schema.
 			List<ColumnModel> originalSchema = tableManagerSupport.getColumnModelsForTable(tableId);
 			String originalSchemaMD5Hex = TableModelUtils.createSchemaMD5HexCM(originalSchema);
@@ -135,14 +135,23 @@ public class TableViewWorker implements ChangeMessageDrivenRunner {
 			// Get the containers for this view.
 			Set<Long> allContainersInScope  = tableManagerSupport.getAllContainerIdsForViewScope(tableId, viewType);
 
-			// create the table in the index.
-			boolean isTableView = true;
-			indexManager.setIndexSchema(tableId, isTableView, callback, expandedSchema);
-			tableManagerSupport.attemptToUpdateTableProgress(tableId, token, "Copying data to view...", 0L, 1L);
-			// populate the view by coping data from the entity replication tables.
-			Long viewCRC = indexManager.populateViewFromEntityReplication(tableId, callback, viewType, allContainersInScope, expandedSchema);
-			// now that table is created and populated the indices on the table can be optimized.
-			indexManager.optimizeTableIndices(tableId);
+			Long viewCRC;
+			if(isIncrementalUpdatePossible(tableId, indexManager, originalSchema, originalSchemaMD5Hex)){
+				tableManagerSupport.attemptToUpdateTableProgress(tableId, token, "Updating changed rows of view...", 0L, 1L);
+				// only the rows that differ from the entity replication tables are changed.
+				viewCRC = indexManager.updateViewFromEntityReplication(tableId, callback, viewType, allContainersInScope, expandedSchema);
+			}else{
+				// Since the schema changed the index is re-built, start by deleting it.
+				indexManager.deleteTableIndex(tableId);
+				// create the table in the index.
+				boolean isTableView = true;
+				indexManager.setIndexSchema(tableId, isTableView, callback, expandedSchema);
+				tableManagerSupport.attemptToUpdateTableProgress(tableId, token, "Copying data to view...", 0L, 1L);
+				// populate the view by coping data from the entity replication tables.
+				viewCRC = indexManager.populateViewFromEntityReplication(tableId, callback, viewType, allContainersInScope, expandedSchema);
+				// now that table is created and populated the indices on the table can be optimized.
+				indexManager.optimizeTableIndices(tableId);
+			}
 			// both the CRC and schema MD5 are used to determine if the view is up-to-date.
 			indexManager.setIndexVersionAndSchemaMD5Hex(tableId, viewCRC, originalSchemaMD5Hex);
 			// Attempt to set the table to complete.
@@ -153,6 +162,26 @@ public class TableViewWorker implements ChangeMessageDrivenRunner {
 			throw e;
 		}
 
-	}	
+	}
+	
+	/**
+	 * Can the existing index be updated in place rather than re-built? The
+	 * schema MD5 of the index is only set to the MD5 of the original schema
+	 * once the view was built with that schema, so a match means only the
+	 * rows can differ.
+	 * 
+	 * @param tableId
+	 * @param indexManager
+	 * @param originalSchema
+	 * @param originalSchemaMD5Hex
+	 * @return
+	 */
+	boolean isIncrementalUpdatePossible(String tableId, TableIndexManager indexManager, List<ColumnModel> originalSchema, String originalSchemaMD5Hex){
+		if(originalSchema.isEmpty()){
+			// An empty schema has the same MD5 as an index that does not exist.
+			return false;
+		}
+		return originalSchemaMD5Hex.equals(indexManager.getCurrentSchemaMD5Hex(tableId));
+	}
 	
 }
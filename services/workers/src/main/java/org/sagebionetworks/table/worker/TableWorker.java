@@ -3,7 +3,11 @@ package org.sagebionetworks.table.worker;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -61,6 +65,23 @@ public class TableWorker implements ChangeMessageDrivenRunner, LockTimeoutAware
 	TableIndexConnectionFactory connectionFactory;
 	
 	Integer lockTimeoutSec;
+	
+	/**
+	 * Injected via spring. Fetches upcoming row change sets while the current
+	 * change set is applied to the index. When null, each change set is fetched
+	 * on the worker's thread just before it is applied.
+	 */
+	ExecutorService changeSetPrefetchExecutor;
+	
+	/**
+	 * Injected via spring. The maximum number of change sets to fetch ahead.
+	 */
+	int maxChangeSetsToPrefetch = 4;
+	
+	/**
+	 * Injected via spring. The maximum number of rows to fetch ahead.
+	 */
+	long maxRowsToPrefetch = 100000L;
 
 	@Override
 	public void run(ProgressCallback progressCallback, ChangeMessage change)
@@ -233,15 +254,31 @@ public class TableWorker implements ChangeMessageDrivenRunner, LockTimeoutAware
 		for (TableRowChange changSet : changes) {
 				totalProgress += changSet.getRowCount();
 		}
+		// Only changes sets not already applied to the index are applied.
+		Set<Long> versionsToApply = new HashSet<Long>();
+		List<TableRowChange> rowChangesToApply = new LinkedList<TableRowChange>();
+		for(TableRowChange changeSet: changes){
+			if(!indexManager.isVersionAppliedToIndex(tableId, changeSet.getRowVersion())){
+				versionsToApply.add(changeSet.getRowVersion());
+				if(TableChangeType.ROW.equals(changeSet.getChangeType())){
+					rowChangesToApply.add(changeSet);
+				}
+			}
+		}
+		// Row change sets are fetched ahead while each change set is applied.
+		SparseChangeSetPrefetcher prefetcher = null;
+		if(changeSetPrefetchExecutor != null && !rowChangesToApply.isEmpty()){
+			prefetcher = new SparseChangeSetPrefetcher(tableEntityManager, changeSetPrefetchExecutor,
+					maxChangeSetsToPrefetch, maxRowsToPrefetch, rowChangesToApply);
+		}
 		// Apply each change set not already indexed
 		long currentProgress = 0;
 		String lastEtag = null;
-		if(changes != null){
+		try{
 			for(TableRowChange changeSet: changes){
 				currentProgress += changeSet.getRowCount();
 				lastEtag = changeSet.getEtag();
-				// Only apply changes sets not already applied to the index.
-				if(!indexManager.isVersionAppliedToIndex(tableId, changeSet.getRowVersion())){
+				if(versionsToApply.contains(changeSet.getRowVersion())){
 					// update the progress between actual change.
 					tableManagerSupport.attemptToUpdateTableProgress(tableId,
 							resetToken, "Applying version: " + changeSet.getRowVersion(), currentProgress,
@@ -249,8 +286,13 @@ public class TableWorker implements ChangeMessageDrivenRunner, LockTimeoutAware
 					// Each type of change is applied 
 					switch(changeSet.getChangeType()){
 					case ROW:
-						applyRowChange(progressCallback, indexManager, tableId,
-								changeSet);
+						if(prefetcher != null){
+							applySparseChangeSet(progressCallback, indexManager, tableId,
+									prefetcher.getChangeSet(changeSet), changeSet.getRowVersion());
+						}else{
+							applyRowChange(progressCallback, indexManager, tableId,
+									changeSet);
+						}
 						break;
 					case COLUMN:
 						applyColumnChange(progressCallback, indexManager, tableId,
@@ -261,6 +303,13 @@ public class TableWorker implements ChangeMessageDrivenRunner, LockTimeoutAware
 					}
 				}
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while fetching change sets for table: "+tableId, e);
+		} finally {
+			if(prefetcher != null){
+				prefetcher.close();
+			}
 		}
 		// After all changes are applied to the index ensure the final schema is set
 		List<ColumnModel> currentSchema = tableManagerSupport.getColumnModelsForTable(tableId);
@@ -315,11 +364,26 @@ public class TableWorker implements ChangeMessageDrivenRunner, LockTimeoutAware
 		}
 		// Get the change set.
 		SparseChangeSet sparseChangeSet = tableEntityManager.getSparseChangeSet(change);
+		applySparseChangeSet(progressCallback, indexManager, tableId, sparseChangeSet, change.getRowVersion());
+	}
+	
+	/**
+	 * Apply a row change set that has already been fetched to a table.
+	 * 
+	 * @param progressCallback
+	 * @param indexManager
+	 * @param tableId
+	 * @param sparseChangeSet
+	 * @param rowVersion
+	 */
+	void applySparseChangeSet(ProgressCallback progressCallback,
+			final TableIndexManager indexManager, String tableId,
+			SparseChangeSet sparseChangeSet, long rowVersion) {
 		// match the schema to the change set.
 		boolean isTableView = false;
 		indexManager.setIndexSchema(tableId, isTableView, progressCallback, sparseChangeSet.getSchema());
 		// attempt to apply this change set to the table.
-		indexManager.applyChangeSetToIndex(tableId, sparseChangeSet, change.getRowVersion());
+		indexManager.applyChangeSetToIndex(tableId, sparseChangeSet, rowVersion);
 	}
 
 
@@ -329,4 +393,16 @@ public class TableWorker implements ChangeMessageDrivenRunner, LockTimeoutAware
 		this.lockTimeoutSec = lockTimeoutSec.intValue();
 	}
 
+	public void setChangeSetPrefetchExecutor(ExecutorService changeSetPrefetchExecutor) {
+		this.changeSetPrefetchExecutor = changeSetPrefetchExecutor;
+	}
+
+	public void setMaxChangeSetsToPrefetch(int maxChangeSetsToPrefetch) {
+		this.maxChangeSetsToPrefetch = maxChangeSetsToPrefetch;
+	}
+
+	public void setMaxRowsToPrefetch(long maxRowsToPrefetch) {
+		this.maxRowsToPrefetch = maxRowsToPrefetch;
+	}
+
 }
@@ -0,0 +1,49 @@
+package org.sagebionetworks.worker.entity;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.common.util.progress.ProgressCallback;
+import org.sagebionetworks.common.util.progress.ProgressingRunner;
+import org.sagebionetworks.repo.model.dao.NodeClosureDao;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Adds nodes that are missing from the node closure table with a single pass
+ * over all nodes. Nodes are missing from the closure table after the table is
+ * first created and when a node is migrated before its parent.
+ * 
+ * Each run is limited so the worker does not hold its lock indefinitely. The
+ * position of the pass is stored in the database so the next run continues
+ * where the last run stopped, and once the pass is complete each run is a
+ * single read until a change rewinds the backfill.
+ *
+ */
+public class NodeClosureBackfillWorker implements ProgressingRunner {
+
+	static private Logger log = LogManager.getLogger(NodeClosureBackfillWorker.class);
+
+	public static final int BATCH_SIZE = 1000;
+	public static final int MAX_BATCHES_PER_RUN = 100;
+
+	@Autowired
+	NodeClosureDao nodeClosureDao;
+
+	@Override
+	public void run(ProgressCallback progressCallback) throws Exception {
+		if(nodeClosureDao.isBackfillComplete()){
+			return;
+		}
+		long total = 0;
+		for(int i=0; i<MAX_BATCHES_PER_RUN; i++){
+			int count = nodeClosureDao.backfillNextPage(BATCH_SIZE);
+			if(count < 1){
+				break;
+			}
+			total += count;
+		}
+		if(total > 0){
+			log.info("Checked "+total+" nodes for the closure table");
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.sagebionetworks.worker.entity;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.common.util.progress.ProgressCallback;
+import org.sagebionetworks.common.util.progress.ProgressingRunner;
+import org.sagebionetworks.repo.model.NodeDAO;
+import org.sagebionetworks.repo.model.dao.BackfillProgressDao;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Re-encodes the legacy zipped XML annotations and reference blobs of each
+ * revision in the compact binary format, one page of nodes at a time.
+ * 
+ * The worker does nothing until the binary format is enabled in the stack
+ * configuration, since machines of older stacks cannot read it. The progress
+ * is stored with the {@link BackfillProgressDao} so each run continues where
+ * the last run stopped on any machine, and the worker stops for good once a
+ * full pass over the nodes is complete. Each run is limited so the worker
+ * does not hold its lock indefinitely.
+ *
+ */
+public class RevisionBlobReencodeWorker implements ProgressingRunner {
+
+	static private Logger log = LogManager.getLogger(RevisionBlobReencodeWorker.class);
+
+	/**
+	 * The name of the backfill in the backfill progress table.
+	 */
+	public static final String BACKFILL_NAME = "REVISION_BLOB_REENCODE";
+	public static final int BATCH_SIZE = 100;
+	public static final int MAX_BATCHES_PER_RUN = 100;
+
+	@Autowired
+	NodeDAO nodeDao;
+	@Autowired
+	BackfillProgressDao backfillProgressDao;
+	@Autowired
+	StackConfiguration configuration;
+
+	@Override
+	public void run(ProgressCallback progressCallback) throws Exception {
+		if(!configuration.getRevisionBlobBinaryEnabled()){
+			return;
+		}
+		if(backfillProgressDao.isComplete(BACKFILL_NAME)){
+			return;
+		}
+		long lastNodeId = backfillProgressDao.getLastId(BACKFILL_NAME);
+		for(int i=0; i<MAX_BATCHES_PER_RUN; i++){
+			long last = nodeDao.reencodeLegacyRevisionBlobs(lastNodeId, BATCH_SIZE);
+			if(last < 0){
+				if(backfillProgressDao.setComplete(BACKFILL_NAME, lastNodeId)){
+					log.info("Finished re-encoding revision blobs");
+				}
+				return;
+			}
+			if(!backfillProgressDao.setLastId(BACKFILL_NAME, lastNodeId, last)){
+				// The progress was changed by another caller so the next run starts from there.
+				return;
+			}
+			lastNodeId = last;
+		}
+		log.info("Re-encoded revision blobs up to node: "+lastNodeId);
+	}
+
+}
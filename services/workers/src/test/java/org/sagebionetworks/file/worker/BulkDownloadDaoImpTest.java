@@ -2,10 +2,10 @@ package org.sagebionetworks.file.worker;
 
 import static org.junit.Assert.*;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -13,12 +13,16 @@ import java.util.zip.ZipOutputStream;
 import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import static org.mockito.Mockito.*;
 
 import org.sagebionetworks.repo.manager.file.FileHandleAuthorizationManager;
-import org.sagebionetworks.repo.manager.file.FileHandleManager;
+import org.sagebionetworks.repo.manager.file.MultipartManager;
+import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.dao.FileHandleDao;
 import org.sagebionetworks.repo.model.file.ExternalFileHandle;
 import org.sagebionetworks.repo.model.file.S3FileHandle;
@@ -26,13 +30,15 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
 
 public class BulkDownloadDaoImpTest {
 	
 	FileHandleDao mockFileHandleDao;
 	AmazonS3Client mockS3client;
 	FileHandleAuthorizationManager mockFileHandleAuthorizationManager;
-	FileHandleManager mockFileHandleManager;
+	MultipartManager mockMultipartManager;
 	
 	BulkDownloadManager bulkDownloadDao;
 	
@@ -42,73 +48,125 @@ public class BulkDownloadDaoImpTest {
 		mockFileHandleDao = Mockito.mock(FileHandleDao.class);
 		mockS3client = Mockito.mock(AmazonS3Client.class);
 		mockFileHandleAuthorizationManager = Mockito.mock(FileHandleAuthorizationManager.class);
-		mockFileHandleManager = Mockito.mock(FileHandleManager.class);
+		mockMultipartManager = Mockito.mock(MultipartManager.class);
 		
 		bulkDownloadDao = new BulkDownloadManagerImpl();
 		ReflectionTestUtils.setField(bulkDownloadDao, "fileHandleDao", mockFileHandleDao);
 		ReflectionTestUtils.setField(bulkDownloadDao, "s3client", mockS3client);
 		ReflectionTestUtils.setField(bulkDownloadDao, "fileHandleAuthorizationManager", mockFileHandleAuthorizationManager);
-		ReflectionTestUtils.setField(bulkDownloadDao, "fileHandleManager", mockFileHandleManager);
+		ReflectionTestUtils.setField(bulkDownloadDao, "multipartManager", mockMultipartManager);
 	}
 	
 	@Test
 	public void testZipRoundTrip() throws IOException{
-		File one = null;
-		File two = null;
-		File zip = null;
-		FileOutputStream oneOut = null;
-		FileOutputStream twoOut = null;
-		ZipOutputStream zipOut = null;
-		ZipInputStream zipIn = null;
-		try{
-			String oneContents = "data for one";
-			String twoContents = "data for two";
-			// create one.
-			one = bulkDownloadDao.createTempFile("One", ".txt");
-			oneOut = new FileOutputStream(one);
-			IOUtils.write(oneContents, oneOut);
-			oneOut.close();
-			// create two
-			two = bulkDownloadDao.createTempFile("two", ".txt");
-			twoOut = new FileOutputStream(two);
-			IOUtils.write(twoContents, twoOut);
-			// The output zip
-			zip = bulkDownloadDao.createTempFile("Zip", ".zip");
-			zipOut = bulkDownloadDao.createZipOutputStream(zip);
-			
-			// add the files to the zip.
-			String entryNameOne = "p1/One.txt";
-			bulkDownloadDao.addFileToZip(zipOut, one, entryNameOne);
-			String entryNameTwo = "p2/Two.txt";
-			bulkDownloadDao.addFileToZip(zipOut, two, entryNameTwo);
-			zipOut.close();
-			
-			// unzip 
-			zipIn = new ZipInputStream(new FileInputStream(zip));
-			ZipEntry entry = zipIn.getNextEntry();
-			assertEquals(entryNameOne, entry.getName());
-			assertEquals(oneContents, IOUtils.toString(zipIn));
-			zipIn.closeEntry();
-			entry = zipIn.getNextEntry();
-			assertEquals(entryNameTwo, entry.getName());
-			assertEquals(twoContents, IOUtils.toString(zipIn));
-			zipIn.closeEntry();
-			
-		}finally{
-			IOUtils.closeQuietly(oneOut);
-			IOUtils.closeQuietly(twoOut);
-			IOUtils.closeQuietly(zipOut);
-			IOUtils.closeQuietly(zipIn);
-			if(one != null){
-				one.delete();
-			}
-			if(two != null){
-				two.delete();
-			}
-			if(zip != null){
-				zip.delete();
-			}
+		String oneContents = "data for one";
+		String twoContents = "data for two";
+		// The output zip
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		ZipOutputStream zipOut = bulkDownloadDao.createZipOutputStream(zip);
+		
+		// add the files to the zip.
+		String entryNameOne = "p1/One.txt";
+		bulkDownloadDao.addStreamToZip(zipOut, new ByteArrayInputStream(oneContents.getBytes("UTF-8")), entryNameOne);
+		String entryNameTwo = "p2/Two.txt";
+		bulkDownloadDao.addStreamToZip(zipOut, new ByteArrayInputStream(twoContents.getBytes("UTF-8")), entryNameTwo);
+		zipOut.close();
+		
+		// unzip 
+		ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()));
+		ZipEntry entry = zipIn.getNextEntry();
+		assertEquals(entryNameOne, entry.getName());
+		assertEquals(oneContents, IOUtils.toString(zipIn));
+		zipIn.closeEntry();
+		entry = zipIn.getNextEntry();
+		assertEquals(entryNameTwo, entry.getName());
+		assertEquals(twoContents, IOUtils.toString(zipIn));
+		zipIn.closeEntry();
+		assertNull(zipIn.getNextEntry());
+	}
+	
+	@Test
+	public void testStartStreamingUpload(){
+		UserInfo user = new UserInfo(false, 777L);
+		// call under test
+		StreamingMultipartUpload upload = bulkDownloadDao.startStreamingUpload(user, "Job1.zip", "application/zip");
+		assertNotNull(upload.getBucket());
+		assertTrue(upload.getKey().startsWith("777/"));
+		assertTrue(upload.getKey().endsWith("/Job1.zip"));
+		assertEquals("application/zip", upload.getMetadata().getContentType());
+		assertNotNull(upload.getMetadata().getContentDisposition());
+		assertEquals(0L, upload.getBytesWritten());
+		// nothing is started until the upload is complete.
+		verifyZeroInteractions(mockS3client);
+	}
+	
+	@Test
+	public void testCompleteStreamingUpload() throws IOException{
+		UserInfo user = new UserInfo(false, 777L);
+		StreamingMultipartUpload mockUpload = Mockito.mock(StreamingMultipartUpload.class);
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentType("application/zip");
+		when(mockUpload.getBucket()).thenReturn("someBucket");
+		when(mockUpload.getKey()).thenReturn("someKey");
+		when(mockUpload.getMetadata()).thenReturn(metadata);
+		when(mockUpload.getContentMD5Hex()).thenReturn("md5");
+		when(mockUpload.getBytesWritten()).thenReturn(123L);
+		S3FileHandle created = new S3FileHandle();
+		created.setId("456");
+		when(mockMultipartManager.createS3FileHandle("777", "someBucket", "someKey", "Job1.zip", "application/zip", "md5", 123L)).thenReturn(created);
+		// call under test
+		S3FileHandle result = bulkDownloadDao.completeStreamingUpload(user, mockUpload, "Job1.zip");
+		verify(mockUpload).complete();
+		assertEquals(created, result);
+	}
+	
+	@Test
+	public void testCompleteStreamingUploadFailed() throws IOException{
+		UserInfo user = new UserInfo(false, 777L);
+		StreamingMultipartUpload mockUpload = Mockito.mock(StreamingMultipartUpload.class);
+		doThrow(new IOException("failed")).when(mockUpload).complete();
+		try {
+			// call under test
+			bulkDownloadDao.completeStreamingUpload(user, mockUpload, "Job1.zip");
+			fail();
+		} catch (IOException e) {
+			// expected
 		}
+		// no file handle for a failed upload.
+		verify(mockMultipartManager, never()).createS3FileHandle(anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), anyLong());
+	}
+	
+	@Test
+	public void testOpenObjectStream(){
+		S3FileHandle s3Handle = new S3FileHandle();
+		s3Handle.setKey("someKey");
+		s3Handle.setBucketName("someBucket");
+		S3Object object = new S3Object();
+		object.setObjectContent(new ByteArrayInputStream(new byte[0]));
+		when(mockS3client.getObject(any(GetObjectRequest.class))).thenReturn(object);
+		// call under test
+		InputStream in = bulkDownloadDao.openObjectStream(s3Handle);
+		assertNotNull(in);
+		ArgumentCaptor<GetObjectRequest> captor = ArgumentCaptor.forClass(GetObjectRequest.class);
+		verify(mockS3client).getObject(captor.capture());
+		assertEquals("someBucket", captor.getValue().getBucketName());
+		assertEquals("someKey", captor.getValue().getKey());
+	}
+	
+	@Test
+	public void testOpenObjectStreamAtOffset(){
+		S3FileHandle s3Handle = new S3FileHandle();
+		s3Handle.setKey("someKey");
+		s3Handle.setBucketName("someBucket");
+		S3Object object = new S3Object();
+		object.setObjectContent(new ByteArrayInputStream(new byte[0]));
+		when(mockS3client.getObject(any(GetObjectRequest.class))).thenReturn(object);
+		// call under test
+		InputStream in = bulkDownloadDao.openObjectStream(s3Handle, 100L);
+		assertNotNull(in);
+		ArgumentCaptor<GetObjectRequest> captor = ArgumentCaptor.forClass(GetObjectRequest.class);
+		verify(mockS3client).getObject(captor.capture());
+		assertEquals(100L, captor.getValue().getRange()[0]);
 	}
 	
 	@Test
@@ -131,24 +189,4 @@ public class BulkDownloadDaoImpTest {
 		bulkDownloadDao.getS3FileHandle(fileHandleId);
 	}
 	
-	@Test
-	public void testDownloadToTempFile() throws IOException{
-		String fileHandleId = "123";
-		S3FileHandle s3Handle = new S3FileHandle();
-		s3Handle.setId(fileHandleId);
-		s3Handle.setKey("someKey");
-		s3Handle.setBucketName("someBucket");
-		
-		File result = null;
-		try{
-			result = bulkDownloadDao.downloadToTempFile(s3Handle);
-			assertNotNull(result);
-			verify(mockS3client).getObject(any(GetObjectRequest.class), any(File.class));
-		}finally{
-			if(result != null){
-				result.delete();
-			}
-		}
-	}
-	
 }
@@ -5,8 +5,6 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Arrays;
@@ -181,17 +179,15 @@ public class BulkFileDownloadWorkerIntegrationTest {
 	 * Helper to check the resulting zip file.
 	 * @param fileOneContents
 	 * @param fileTwoContents
-	 * @param tempZip
 	 * @throws FileNotFoundException
 	 * @throws IOException
 	 */
 	private void validateZipContents(String fileOneContents,
 			String fileTwoContents) throws FileNotFoundException,
 			IOException {
-		File tempZip = bulkDownloadManager.downloadToTempFile(resulFileHandle);
 		ZipInputStream zipIn = null;
 		try{
-			zipIn = new ZipInputStream(new FileInputStream(tempZip));
+			zipIn = new ZipInputStream(bulkDownloadManager.openObjectStream(resulFileHandle));
 			// Read the first entry
 			ZipEntry entry = zipIn.getNextEntry();
 			assertNotNull(entry);
@@ -210,7 +206,6 @@ public class BulkFileDownloadWorkerIntegrationTest {
 			zipIn.closeEntry();
 		}finally{
 			IOUtils.closeQuietly(zipIn);
-			tempZip.delete();
 		}
 	}
 	
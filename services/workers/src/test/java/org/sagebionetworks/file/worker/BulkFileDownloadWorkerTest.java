@@ -1,16 +1,21 @@
 package org.sagebionetworks.file.worker;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.sagebionetworks.repo.manager.AuthorizationManagerUtil.AUTHORIZED;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipOutputStream;
 
 import org.junit.Before;
@@ -38,7 +43,6 @@ import org.sagebionetworks.repo.model.file.S3FileHandle;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.springframework.test.util.ReflectionTestUtils;
 
-import com.amazonaws.event.ProgressListener;
 import com.amazonaws.services.sqs.model.Message;
 import com.google.common.collect.Lists;
 
@@ -63,9 +67,9 @@ public class BulkFileDownloadWorkerTest {
 	S3FileHandle fileHandle1;
 	S3FileHandle fileHandle2;
 
-	List<File> mockTempFilesCreated;
+	StreamingMultipartUpload mockUpload;
 	List<ZipOutputStream> mockZipOutCreated;
-	List<File> mockDownloadedFiles;
+	List<TrackedInputStream> streamsOpened;
 
 	S3FileHandle resultHandle;
 
@@ -129,28 +133,22 @@ public class BulkFileDownloadWorkerTest {
 		when(mockBulkDownloadManager.getS3FileHandle(fha2.getFileHandleId()))
 				.thenReturn(fileHandle2);
 
-		// Create and track a mock file for each temp requested.
-		mockTempFilesCreated = Lists.newLinkedList();
-		doAnswer(new Answer<File>() {
-			@Override
-			public File answer(InvocationOnMock invocation) throws Throwable {
-				File mockFile = Mockito.mock(File.class);
-				mockTempFilesCreated.add(mockFile);
-				return mockFile;
-			}
-		}).when(mockBulkDownloadManager).createTempFile(anyString(), anyString());
+		// The zip is streamed to this upload.
+		mockUpload = Mockito.mock(StreamingMultipartUpload.class);
+		when(mockBulkDownloadManager.startStreamingUpload(any(UserInfo.class), anyString(), anyString()))
+				.thenReturn(mockUpload);
 
-		// Create and track a mock downloaded files.
-		mockDownloadedFiles = Lists.newLinkedList();
-		doAnswer(new Answer<File>() {
+		// Create and track a stream for each file opened.
+		streamsOpened = Lists.newLinkedList();
+		doAnswer(new Answer<InputStream>() {
 			@Override
-			public File answer(InvocationOnMock invocation) throws Throwable {
-				File mockFile = Mockito.mock(File.class);
-				mockDownloadedFiles.add(mockFile);
-				return mockFile;
+			public InputStream answer(InvocationOnMock invocation) throws Throwable {
+				TrackedInputStream in = new TrackedInputStream();
+				streamsOpened.add(in);
+				return in;
 			}
 		}).when(mockBulkDownloadManager)
-				.downloadToTempFile(any(S3FileHandle.class));
+				.openObjectStream(any(S3FileHandle.class));
 
 		// create and track the ZipOutputStreams
 		mockZipOutCreated = Lists.newLinkedList();
@@ -162,15 +160,14 @@ public class BulkFileDownloadWorkerTest {
 				mockZipOutCreated.add(out);
 				return out;
 			}
-		}).when(mockBulkDownloadManager).createZipOutputStream(any(File.class));
+		}).when(mockBulkDownloadManager).createZipOutputStream(any(OutputStream.class));
 
 		// setup the result handle
 		resultHandle = new S3FileHandle();
 		resultHandle.setId("1111");
 		when(
-				mockBulkDownloadManager.multipartUploadLocalFile(
-						any(UserInfo.class), any(File.class), anyString(),
-						any(ProgressListener.class))).thenReturn(resultHandle);
+				mockBulkDownloadManager.completeStreamingUpload(
+						any(UserInfo.class), any(StreamingMultipartUpload.class), anyString())).thenReturn(resultHandle);
 		when(mockAsynchJobStatusManager.lookupJobStatus(jobStatus.getJobId())).thenReturn(jobStatus);
 	}
 
@@ -192,23 +189,22 @@ public class BulkFileDownloadWorkerTest {
 		verify(mockAsynchJobStatusManager, times(1)).updateJobProgress(
 				anyString(), anyLong(), anyLong(), anyString());
 
-		// temp file for the zip should be created
-		assertEquals(1, mockTempFilesCreated.size());
-		// ZipOutputStream should be created for the zip.
+		// The zip should be streamed to the upload.
+		verify(mockBulkDownloadManager).startStreamingUpload(user, "Job9999.zip", BulkFileDownloadWorker.APPLICATION_ZIP);
+		verify(mockBulkDownloadManager).createZipOutputStream(mockUpload);
 		assertEquals(1, mockZipOutCreated.size());
 		// one file should have been downloaded
-		assertEquals(1, mockDownloadedFiles.size());
-		verifyAllStreamsClosedAndFilesDeleted();
+		assertEquals(1, streamsOpened.size());
+		verifyAllStreamsClosed();
 		
-		// The zip should get uploaded
-		verify(mockBulkDownloadManager, times(1)).multipartUploadLocalFile(
-				any(UserInfo.class), any(File.class), anyString(),
-				any(ProgressListener.class));
+		// The zip should be finished then uploaded
+		verify(mockZipOutCreated.get(0)).finish();
+		verify(mockBulkDownloadManager, times(1)).completeStreamingUpload(user, mockUpload, "Job9999.zip");
 		
 		ArgumentCaptor<String> entryCapture = ArgumentCaptor
 				.forClass(String.class);
-		verify(mockBulkDownloadManager).addFileToZip(any(ZipOutputStream.class),
-				any(File.class), entryCapture.capture());
+		verify(mockBulkDownloadManager).addStreamToZip(any(ZipOutputStream.class),
+				any(InputStream.class), entryCapture.capture());
 		assertEquals("1/1/foo.txt", entryCapture.getValue());
 
 		// expect the job to be completed with the response body.
@@ -244,11 +240,12 @@ public class BulkFileDownloadWorkerTest {
 		// call under test.
 		worker.run(mockProgress, message);
 		
-		verifyAllStreamsClosedAndFilesDeleted();
+		verifyAllStreamsClosed();
 		// The zip should not get uploaded
-		verify(mockBulkDownloadManager, never()).multipartUploadLocalFile(
-				any(UserInfo.class), any(File.class), anyString(),
-				any(ProgressListener.class));
+		verify(mockBulkDownloadManager, never()).completeStreamingUpload(
+				any(UserInfo.class), any(StreamingMultipartUpload.class), anyString());
+		// nothing was fetched.
+		verify(mockBulkDownloadManager, never()).openObjectStream(any(S3FileHandle.class));
 		// expect the job to be completed with the response body.
 		FileDownloadSummary summary = new FileDownloadSummary();
 		summary.setFileHandleId(fha1.getFileHandleId());
@@ -293,11 +290,10 @@ public class BulkFileDownloadWorkerTest {
 		verify(mockAsynchJobStatusManager, times(2)).updateJobProgress(
 				anyString(), anyLong(), anyLong(), anyString());
 		
-		verifyAllStreamsClosedAndFilesDeleted();
+		verifyAllStreamsClosed();
 		// The zip should get uploaded
-		verify(mockBulkDownloadManager, times(1)).multipartUploadLocalFile(
-				any(UserInfo.class), any(File.class), anyString(),
-				any(ProgressListener.class));
+		verify(mockBulkDownloadManager, times(1)).completeStreamingUpload(
+				any(UserInfo.class), any(StreamingMultipartUpload.class), anyString());
 		// expect the job to be completed with the response body.
 		// 1
 		FileDownloadSummary summary1 = new FileDownloadSummary();
@@ -335,7 +331,7 @@ public class BulkFileDownloadWorkerTest {
 		// call under test
 		worker.run(mockProgress, message);
 
-		verifyAllStreamsClosedAndFilesDeleted();
+		verifyAllStreamsClosed();
 
 		// expect the job to be completed with the response body.
 		FileDownloadSummary summary = new FileDownloadSummary();
@@ -366,7 +362,7 @@ public class BulkFileDownloadWorkerTest {
 		// call under test
 		worker.run(mockProgress, message);
 
-		verifyAllStreamsClosedAndFilesDeleted();
+		verifyAllStreamsClosed();
 
 		// expect the job to be completed with the response body.
 		FileDownloadSummary summary = new FileDownloadSummary();
@@ -395,7 +391,7 @@ public class BulkFileDownloadWorkerTest {
 		// call under test
 		worker.run(mockProgress, message);
 
-		verifyAllStreamsClosedAndFilesDeleted();
+		verifyAllStreamsClosed();
 
 		// expect the job to be completed with the response body.
 		FileDownloadSummary summary = new FileDownloadSummary();
@@ -420,13 +416,14 @@ public class BulkFileDownloadWorkerTest {
 	 */
 	@Test
 	public void testRunZipFull() throws Exception {
-		// temp file for the zip should be created
-		File mockZip = Mockito.mock(File.class);
-		when(mockBulkDownloadManager.createTempFile(anyString(), anyString())).thenReturn(mockZip);
-		when(mockZip.length()).thenReturn(BulkFileDownloadWorker.MAX_TOTAL_FILE_SIZE_BYTES+1);
+		// the zip written so far is already over the limit.
+		when(mockUpload.getBytesWritten()).thenReturn(BulkFileDownloadWorker.MAX_TOTAL_FILE_SIZE_BYTES+1);
 		fileHandle1.setContentSize(1L);
 		// call under test
 		worker.run(mockProgress, message);
+		// the file should not be downloaded
+		verify(mockBulkDownloadManager, never()).openObjectStream(any(S3FileHandle.class));
+		verifyAllStreamsClosed();
 		// expect the job to be completed with the response body.
 		FileDownloadSummary summary = new FileDownloadSummary();
 		summary.setFileHandleId(fha1.getFileHandleId());
@@ -468,11 +465,10 @@ public class BulkFileDownloadWorkerTest {
 		// call under test.
 		worker.run(mockProgress, message);
 
-		verifyAllStreamsClosedAndFilesDeleted();
+		verifyAllStreamsClosed();
 		// The zip should get uploaded
-		verify(mockBulkDownloadManager, times(1)).multipartUploadLocalFile(
-				any(UserInfo.class), any(File.class), anyString(),
-				any(ProgressListener.class));
+		verify(mockBulkDownloadManager, times(1)).completeStreamingUpload(
+				any(UserInfo.class), any(StreamingMultipartUpload.class), anyString());
 		// expect the job to be completed with the response body.
 		// 1
 		FileDownloadSummary summary1 = new FileDownloadSummary();
@@ -512,28 +508,133 @@ public class BulkFileDownloadWorkerTest {
 		// call under test.
 		worker.run(mockProgress, message);
 
-		verifyAllStreamsClosedAndFilesDeleted();
+		// nothing should be uploaded.
+		verify(mockBulkDownloadManager, never()).startStreamingUpload(any(UserInfo.class), anyString(), anyString());
 		
 		verify(mockAsynchJobStatusManager).setJobFailed(jobStatus.getJobId(),
 				exception);
 	}
 	
 	/**
-	 * Helper to verify that all streams get closed and all files are deleted.
+	 * Failure to download a single file should only fail that file.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunDownloadFailed() throws Exception {
+		String error = "download failed";
+		doThrow(new RuntimeException(error)).when(mockBulkDownloadManager).openObjectStream(fileHandle1);
+
+		// call under test
+		worker.run(mockProgress, message);
+
+		verifyAllStreamsClosed();
+		verify(mockBulkDownloadManager, never()).addStreamToZip(any(ZipOutputStream.class),
+				any(InputStream.class), anyString());
+		verify(mockBulkDownloadManager, never()).completeStreamingUpload(
+				any(UserInfo.class), any(StreamingMultipartUpload.class), anyString());
+
+		// expect the job to be completed with the response body.
+		FileDownloadSummary summary = new FileDownloadSummary();
+		summary.setFileHandleId(fha1.getFileHandleId());
+		summary.setAssociateObjectId(fha1.getAssociateObjectId());
+		summary.setAssociateObjectType(fha1.getAssociateObjectType());
+		summary.setStatus(FileDownloadStatus.FAILURE);
+		summary.setFailureCode(FileDownloadCode.UNKNOWN_ERROR);
+		summary.setFailureMessage(error);
+		// response
+		BulkFileDownloadResponse expectedResponse = new BulkFileDownloadResponse();
+		expectedResponse.setResultZipFileHandleId(null);
+		expectedResponse.setFileSummary(Arrays.asList(summary));
+		expectedResponse.setUserId(""+user.getId());
+		verify(mockAsynchJobStatusManager).setComplete(jobStatus.getJobId(),
+				expectedResponse);
+	}
+
+	/**
+	 * A failure while writing an entry leaves a partial entry in the zip so
+	 * the job should fail and the upload should be aborted.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWriteToZipFailed() throws Exception {
+		IOException exception = new IOException("upload failed");
+		doThrow(exception).when(mockBulkDownloadManager).addStreamToZip(any(ZipOutputStream.class),
+				any(InputStream.class), anyString());
+
+		// call under test
+		worker.run(mockProgress, message);
+
+		verifyAllStreamsClosed();
+		verify(mockBulkDownloadManager, never()).completeStreamingUpload(
+				any(UserInfo.class), any(StreamingMultipartUpload.class), anyString());
+		verify(mockAsynchJobStatusManager).setJobFailed(jobStatus.getJobId(),
+				exception);
+	}
+
+	/**
+	 * Files are fetched ahead but still written to the zip in the requested
+	 * order.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunWithPrefetch() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			worker.setFileFetchExecutor(executor);
+			requestBody.setRequestedFiles(Arrays.asList(fha1, fha2));
+			message = MessageUtils.buildMessage(jobStatus);
+			when(
+					mockBulkDownloadManager.canDownLoadFile(user,
+							Arrays.asList(fha1, fha2))).thenReturn(
+					Arrays.asList(
+							new FileHandleAssociationAuthorizationStatus(fha1,
+									AUTHORIZED),
+							new FileHandleAssociationAuthorizationStatus(fha2,
+									AUTHORIZED)));
+			// call under test.
+			worker.run(mockProgress, message);
+
+			verifyAllStreamsClosed();
+			assertEquals(2, streamsOpened.size());
+			ArgumentCaptor<String> entryCapture = ArgumentCaptor
+					.forClass(String.class);
+			verify(mockBulkDownloadManager, times(2)).addStreamToZip(any(ZipOutputStream.class),
+					any(InputStream.class), entryCapture.capture());
+			assertEquals(Arrays.asList("1/1/foo.txt", "2/2/bar.txt"), entryCapture.getAllValues());
+			verify(mockBulkDownloadManager, times(1)).completeStreamingUpload(user, mockUpload, "Job9999.zip");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Helper to verify that all streams get closed and the upload is either
+	 * completed or aborted.
 	 * @throws IOException
 	 */
-	private void verifyAllStreamsClosedAndFilesDeleted() throws IOException {
-		// All created temp files should have been deleted.
-		for (File mockFile : mockTempFilesCreated) {
-			verify(mockFile).delete();
+	private void verifyAllStreamsClosed() throws IOException {
+		// All opened files should have been closed.
+		for (TrackedInputStream in : streamsOpened) {
+			assertTrue(in.closed);
 		}
-		// All created output stream should have been closed.
-		for (ZipOutputStream mockOut : mockZipOutCreated) {
-			verify(mockOut, atLeast(1)).close();
+		// The upload is always released. Abort does nothing for a completed upload.
+		verify(mockUpload).abort();
+	}
+
+	/**
+	 * Stream that records if it was closed.
+	 */
+	private static class TrackedInputStream extends ByteArrayInputStream {
+		boolean closed = false;
+
+		TrackedInputStream() {
+			super(new byte[] { 1, 2, 3 });
 		}
-		// All created temp files should have been deleted.
-		for (File mockFile : mockDownloadedFiles) {
-			verify(mockFile).delete();
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			super.close();
 		}
 	}
 }
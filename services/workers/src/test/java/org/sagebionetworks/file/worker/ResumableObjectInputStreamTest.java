@@ -0,0 +1,119 @@
+package org.sagebionetworks.file.worker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sagebionetworks.repo.model.file.S3FileHandle;
+
+import com.amazonaws.AmazonClientException;
+
+public class ResumableObjectInputStreamTest {
+
+	@Mock
+	BulkDownloadManager mockBulkDownloadManager;
+
+	S3FileHandle handle;
+	byte[] content;
+
+	@Before
+	public void before() {
+		MockitoAnnotations.initMocks(this);
+		handle = new S3FileHandle();
+		handle.setId("123");
+		content = new byte[] { 1, 2, 3, 4, 5, 6 };
+		// each range read is served from the content.
+		when(mockBulkDownloadManager.openObjectStream(eq(handle), anyLong())).thenAnswer(new Answer<InputStream>() {
+			@Override
+			public InputStream answer(InvocationOnMock invocation) throws Throwable {
+				long offset = (Long) invocation.getArguments()[1];
+				return new ByteArrayInputStream(Arrays.copyOfRange(content, (int) offset, content.length));
+			}
+		});
+	}
+
+	@Test
+	public void testNoFailures() throws IOException {
+		when(mockBulkDownloadManager.openObjectStream(handle)).thenReturn(new ByteArrayInputStream(content));
+		// call under test
+		assertArrayEquals(content, IOUtils.toByteArray(new ResumableObjectInputStream(mockBulkDownloadManager, handle, 3)));
+		verify(mockBulkDownloadManager, never()).openObjectStream(eq(handle), anyLong());
+	}
+
+	@Test
+	public void testResumeAfterFailedRead() throws IOException {
+		when(mockBulkDownloadManager.openObjectStream(handle)).thenReturn(new FailingInputStream(content, 4));
+		// call under test
+		assertArrayEquals(content, IOUtils.toByteArray(new ResumableObjectInputStream(mockBulkDownloadManager, handle, 3)));
+		// the file is re-opened where the read stopped.
+		verify(mockBulkDownloadManager).openObjectStream(handle, 4L);
+	}
+
+	@Test
+	public void testResumeAfterFailedOpen() throws IOException {
+		when(mockBulkDownloadManager.openObjectStream(handle)).thenReturn(new FailingInputStream(content, 2));
+		when(mockBulkDownloadManager.openObjectStream(handle, 2L)).thenThrow(new AmazonClientException("transient"))
+				.thenReturn(new ByteArrayInputStream(Arrays.copyOfRange(content, 2, content.length)));
+		// call under test
+		assertArrayEquals(content, IOUtils.toByteArray(new ResumableObjectInputStream(mockBulkDownloadManager, handle, 3)));
+		verify(mockBulkDownloadManager, times(2)).openObjectStream(handle, 2L);
+	}
+
+	@Test
+	public void testGiveUp() throws IOException {
+		when(mockBulkDownloadManager.openObjectStream(handle)).thenReturn(new FailingInputStream(content, 1));
+		when(mockBulkDownloadManager.openObjectStream(handle, 1L)).thenReturn(new FailingInputStream(content, 0),
+				new FailingInputStream(content, 0));
+		InputStream in = new ResumableObjectInputStream(mockBulkDownloadManager, handle, 2);
+		try {
+			// call under test
+			IOUtils.toByteArray(in);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		verify(mockBulkDownloadManager, times(2)).openObjectStream(handle, 1L);
+	}
+
+	/**
+	 * Returns the given number of bytes and then fails.
+	 */
+	private static class FailingInputStream extends InputStream {
+
+		private final byte[] content;
+		private int remaining;
+		private int position;
+
+		FailingInputStream(byte[] content, int bytesBeforeFailure) {
+			this.content = content;
+			this.remaining = bytesBeforeFailure;
+			this.position = 0;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				throw new IOException("Connection reset");
+			}
+			remaining--;
+			return content[position++];
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package org.sagebionetworks.file.worker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sagebionetworks.repo.model.file.S3FileHandle;
+
+public class S3FilePrefetcherTest {
+
+	@Mock
+	BulkDownloadManager mockBulkDownloadManager;
+
+	ExecutorService executor;
+	List<S3FileHandle> files;
+
+	@Before
+	public void before() throws Exception {
+		MockitoAnnotations.initMocks(this);
+		executor = Executors.newFixedThreadPool(4);
+		files = new ArrayList<S3FileHandle>();
+		for (long i = 0; i < 5; i++) {
+			S3FileHandle handle = new S3FileHandle();
+			handle.setId("" + i);
+			handle.setContentSize(10L);
+			files.add(handle);
+			final byte[] content = new byte[] { (byte) i };
+			when(mockBulkDownloadManager.openObjectStream(handle)).thenAnswer(new Answer<InputStream>() {
+				@Override
+				public InputStream answer(InvocationOnMock invocation) throws Throwable {
+					return new ByteArrayInputStream(content);
+				}
+			});
+		}
+	}
+
+	@After
+	public void after() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testInOrder() throws Exception {
+		S3FilePrefetcher prefetcher = new S3FilePrefetcher(mockBulkDownloadManager, executor, 2, 1000L, files);
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				// call under test
+				InputStream in = prefetcher.openFile(files.get(i));
+				assertArrayEquals(new byte[] { (byte) i }, IOUtils.toByteArray(in));
+			}
+		} finally {
+			prefetcher.close();
+		}
+	}
+
+	@Test
+	public void testNoExecutorStreams() throws Exception {
+		S3FilePrefetcher prefetcher = new S3FilePrefetcher(mockBulkDownloadManager, null, 2, 1000L, files);
+		try {
+			verify(mockBulkDownloadManager, never()).openObjectStream(files.get(0));
+			// call under test
+			InputStream in = prefetcher.openFile(files.get(0));
+			assertArrayEquals(new byte[] { 0 }, IOUtils.toByteArray(in));
+			verify(mockBulkDownloadManager, times(1)).openObjectStream(files.get(0));
+		} finally {
+			prefetcher.close();
+		}
+	}
+
+	@Test
+	public void testOutOfOrder() throws Exception {
+		S3FilePrefetcher prefetcher = new S3FilePrefetcher(mockBulkDownloadManager, executor, 2, 1000L, files);
+		try {
+			prefetcher.openFile(files.get(1));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		} finally {
+			prefetcher.close();
+		}
+	}
+
+	@Test
+	public void testWindowBoundedByCount() throws Exception {
+		ExecutorService mockExecutor = mock(ExecutorService.class);
+		when(mockExecutor.submit(Matchers.<Callable<byte[]>> any())).thenReturn(mock(Future.class));
+		// call under test
+		new S3FilePrefetcher(mockBulkDownloadManager, mockExecutor, 3, 1000L, files);
+		verify(mockExecutor, times(3)).submit(Matchers.<Callable<byte[]>> any());
+	}
+
+	@Test
+	public void testWindowBoundedByBytes() throws Exception {
+		ExecutorService mockExecutor = mock(ExecutorService.class);
+		when(mockExecutor.submit(Matchers.<Callable<byte[]>> any())).thenReturn(mock(Future.class));
+		// each file is ten bytes so only two fit under 25 bytes.
+		new S3FilePrefetcher(mockBulkDownloadManager, mockExecutor, 5, 25L, files);
+		verify(mockExecutor, times(2)).submit(Matchers.<Callable<byte[]>> any());
+	}
+
+	@Test
+	public void testLargeFileStreamed() throws Exception {
+		// files larger than the byte limit are never held in memory.
+		S3FilePrefetcher prefetcher = new S3FilePrefetcher(mockBulkDownloadManager, executor, 5, 1L, files);
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				InputStream in = prefetcher.openFile(files.get(i));
+				assertArrayEquals(new byte[] { (byte) i }, IOUtils.toByteArray(in));
+			}
+		} finally {
+			prefetcher.close();
+		}
+	}
+
+	@Test
+	public void testUnknownSizeStreamed() throws Exception {
+		files.get(0).setContentSize(null);
+		ExecutorService mockExecutor = mock(ExecutorService.class);
+		when(mockExecutor.submit(Matchers.<Callable<byte[]>> any())).thenReturn(mock(Future.class));
+		S3FilePrefetcher prefetcher = new S3FilePrefetcher(mockBulkDownloadManager, mockExecutor, 2, 1000L, files);
+		// only the second file is fetched ahead.
+		verify(mockExecutor, times(1)).submit(Matchers.<Callable<byte[]>> any());
+		// call under test
+		InputStream in = prefetcher.openFile(files.get(0));
+		assertArrayEquals(new byte[] { 0 }, IOUtils.toByteArray(in));
+		prefetcher.close();
+	}
+
+	@Test
+	public void testSkipFile() throws Exception {
+		ExecutorService mockExecutor = mock(ExecutorService.class);
+		Future<?> mockFuture = mock(Future.class);
+		when(mockExecutor.submit(Matchers.<Callable<byte[]>> any())).thenReturn((Future) mockFuture);
+		S3FilePrefetcher prefetcher = new S3FilePrefetcher(mockBulkDownloadManager, mockExecutor, 1, 1000L, files);
+		// call under test
+		prefetcher.skipFile(files.get(0));
+		verify(mockFuture, times(1)).cancel(true);
+		// the next file is fetched in its place.
+		verify(mockExecutor, times(2)).submit(Matchers.<Callable<byte[]>> any());
+		prefetcher.close();
+	}
+
+	@Test
+	public void testFetchFailureUnwrapped() throws Exception {
+		when(mockBulkDownloadManager.openObjectStream(files.get(0))).thenThrow(new RuntimeException("wrapped"));
+		S3FilePrefetcher prefetcher = new S3FilePrefetcher(mockBulkDownloadManager, executor, 2, 1000L, files);
+		try {
+			prefetcher.openFile(files.get(0));
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("wrapped", e.getMessage());
+		}
+		// the following files are still available.
+		InputStream in = prefetcher.openFile(files.get(1));
+		assertArrayEquals(new byte[] { 1 }, IOUtils.toByteArray(in));
+		prefetcher.close();
+	}
+
+	@Test
+	public void testCloseCancels() throws Exception {
+		ExecutorService mockExecutor = mock(ExecutorService.class);
+		Future<?> mockFuture = mock(Future.class);
+		when(mockExecutor.submit(Matchers.<Callable<byte[]>> any())).thenReturn((Future) mockFuture);
+		S3FilePrefetcher prefetcher = new S3FilePrefetcher(mockBulkDownloadManager, mockExecutor, 2, 1000L, files);
+		// call under test
+		prefetcher.close();
+		verify(mockFuture, times(2)).cancel(true);
+		verify(mockBulkDownloadManager, never()).openObjectStream(files.get(0));
+	}
+}
@@ -0,0 +1,178 @@
+package org.sagebionetworks.file.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.BinaryUtils;
+
+public class StreamingMultipartUploadTest {
+
+	@Mock
+	AmazonS3Client mockS3Client;
+
+	ExecutorService executor;
+	ObjectMetadata metadata;
+	int partSize;
+
+	@Before
+	public void before() {
+		MockitoAnnotations.initMocks(this);
+		executor = Executors.newFixedThreadPool(2);
+		metadata = new ObjectMetadata();
+		partSize = StreamingMultipartUpload.MIN_PART_SIZE_BYTES;
+		InitiateMultipartUploadResult initResult = new InitiateMultipartUploadResult();
+		initResult.setUploadId("uploadId");
+		when(mockS3Client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initResult);
+		when(mockS3Client.uploadPart(any(UploadPartRequest.class))).thenAnswer(new Answer<UploadPartResult>() {
+			@Override
+			public UploadPartResult answer(InvocationOnMock invocation) throws Throwable {
+				UploadPartRequest request = (UploadPartRequest) invocation.getArguments()[0];
+				UploadPartResult result = new UploadPartResult();
+				result.setPartNumber(request.getPartNumber());
+				result.setETag("etag" + request.getPartNumber());
+				return result;
+			}
+		});
+	}
+
+	@After
+	public void after() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testMultipleParts() throws Exception {
+		StreamingMultipartUpload upload = new StreamingMultipartUpload(mockS3Client, "bucket", "key", metadata,
+				partSize, executor, 1);
+		byte[] data = new byte[partSize * 2 + 10];
+		data[0] = 1;
+		data[data.length - 1] = 2;
+		// call under test
+		upload.write(data, 0, 7);
+		upload.write(data, 7, data.length - 7);
+		upload.complete();
+
+		ArgumentCaptor<UploadPartRequest> partCaptor = ArgumentCaptor.forClass(UploadPartRequest.class);
+		verify(mockS3Client, times(3)).uploadPart(partCaptor.capture());
+		long totalSize = 0;
+		for (UploadPartRequest request : partCaptor.getAllValues()) {
+			totalSize += request.getPartSize();
+		}
+		assertEquals(data.length, totalSize);
+		ArgumentCaptor<CompleteMultipartUploadRequest> completeCaptor = ArgumentCaptor
+				.forClass(CompleteMultipartUploadRequest.class);
+		verify(mockS3Client).completeMultipartUpload(completeCaptor.capture());
+		assertEquals("uploadId", completeCaptor.getValue().getUploadId());
+		assertEquals(3, completeCaptor.getValue().getPartETags().size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i + 1, completeCaptor.getValue().getPartETags().get(i).getPartNumber());
+		}
+		assertEquals(data.length, upload.getBytesWritten());
+		assertEquals(BinaryUtils.toHex(MessageDigest.getInstance("MD5").digest(data)), upload.getContentMD5Hex());
+		// abort after complete does nothing.
+		upload.abort();
+		verify(mockS3Client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+	}
+
+	@Test
+	public void testSynchronous() throws Exception {
+		StreamingMultipartUpload upload = new StreamingMultipartUpload(mockS3Client, "bucket", "key", metadata,
+				partSize, null, 1);
+		upload.write(new byte[partSize + 1]);
+		// the first part is uploaded as soon as it is full.
+		verify(mockS3Client, times(1)).uploadPart(any(UploadPartRequest.class));
+		upload.complete();
+		verify(mockS3Client, times(2)).uploadPart(any(UploadPartRequest.class));
+		verify(mockS3Client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		StreamingMultipartUpload upload = new StreamingMultipartUpload(mockS3Client, "bucket", "key", metadata,
+				partSize, executor, 1);
+		// call under test
+		upload.complete();
+		// an empty object is a single empty part.
+		verify(mockS3Client, times(1)).uploadPart(any(UploadPartRequest.class));
+		verify(mockS3Client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+		assertEquals(0L, upload.getBytesWritten());
+	}
+
+	@Test
+	public void testAbortBeforeStarted() throws Exception {
+		StreamingMultipartUpload upload = new StreamingMultipartUpload(mockS3Client, "bucket", "key", metadata,
+				partSize, executor, 1);
+		upload.write(new byte[10]);
+		// call under test
+		upload.abort();
+		verify(mockS3Client, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+		verify(mockS3Client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+	}
+
+	@Test
+	public void testAbortAfterFailedPart() throws Exception {
+		when(mockS3Client.uploadPart(any(UploadPartRequest.class))).thenThrow(new IllegalStateException("failed"));
+		StreamingMultipartUpload upload = new StreamingMultipartUpload(mockS3Client, "bucket", "key", metadata,
+				partSize, executor, 1);
+		upload.write(new byte[partSize]);
+		try {
+			upload.complete();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		// call under test
+		upload.abort();
+		ArgumentCaptor<AbortMultipartUploadRequest> captor = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+		verify(mockS3Client).abortMultipartUpload(captor.capture());
+		assertEquals("uploadId", captor.getValue().getUploadId());
+		verify(mockS3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteAfterAbort() throws Exception {
+		StreamingMultipartUpload upload = new StreamingMultipartUpload(mockS3Client, "bucket", "key", metadata,
+				partSize, executor, 1);
+		upload.abort();
+		upload.write(1);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testMD5BeforeComplete() throws Exception {
+		StreamingMultipartUpload upload = new StreamingMultipartUpload(mockS3Client, "bucket", "key", metadata,
+				partSize, executor, 1);
+		upload.getContentMD5Hex();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPartTooSmall() throws Exception {
+		new StreamingMultipartUpload(mockS3Client, "bucket", "key", metadata, partSize - 1, executor, 1);
+	}
+}
@@ -1,35 +1,43 @@
 package org.sagebionetworks.search.workers.sqs.search;
 
 import static org.junit.Assert.*;
-import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import org.apache.http.client.ClientProtocolException;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
-import org.sagebionetworks.asynchronous.workers.sqs.MessageUtils;
 import org.sagebionetworks.cloudwatch.WorkerLogger;
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.repo.manager.search.SearchDocumentDriver;
 import org.sagebionetworks.repo.model.ObjectType;
+import org.sagebionetworks.repo.model.dao.WikiPageKey;
+import org.sagebionetworks.repo.model.dao.WikiPageKeyHelper;
 import org.sagebionetworks.repo.model.message.ChangeMessage;
 import org.sagebionetworks.repo.model.message.ChangeType;
 import org.sagebionetworks.repo.model.search.Document;
+import org.sagebionetworks.repo.model.search.DocumentFields;
 import org.sagebionetworks.repo.model.v2.dao.V2WikiPageDao;
 import org.sagebionetworks.search.SearchDao;
 import org.sagebionetworks.workers.util.aws.message.RecoverableMessageException;
 import org.springframework.test.util.ReflectionTestUtils;
 
-import com.amazonaws.services.sqs.model.Message;
-
 public class SearchQueueWorkerTest {
 	
 	private ProgressCallback mockCallback;
@@ -40,9 +48,11 @@ public class SearchQueueWorkerTest {
 	private SearchQueueWorker worker;
 	private ChangeMessage message;
 	private ChangeMessage message2;
+	private Document docOne;
+	private Document docTwo;
 	
 	@Before
-	public void before(){
+	public void before() throws Exception{
 		mockCallback = Mockito.mock(ProgressCallback.class);
 		mockSearchDao = Mockito.mock(SearchDao.class);
 		mockDocumentProvider = Mockito.mock(SearchDocumentDriver.class);
@@ -66,46 +76,87 @@ public class SearchQueueWorkerTest {
 		message2.setObjectEtag("etag2");
 		message2.setObjectId("two");
 		message2.setObjectType(ObjectType.ENTITY);
+
+		docOne = createDocument("one", "etag1");
+		docTwo = createDocument("two", "etag2");
+		// Nothing is in the search index by default.
+		when(mockSearchDao.getIdsOfDocumentsThatExist(anyMapOf(String.class, String.class))).thenReturn(new HashSet<String>());
+	}
+
+	private static Document createDocument(String id, String etag){
+		Document doc = new Document();
+		doc.setId(id);
+		doc.setFields(new DocumentFields());
+		doc.getFields().setEtag(etag);
+		return doc;
+	}
+	
+	@Test
+	public void testSearchDisabled() throws Exception{
+		when(mockSearchDao.isSearchEnabled()).thenReturn(false);
+		// call under test
+		worker.run(mockCallback, Arrays.asList(message));
+		verify(mockSearchDao, never()).getIdsOfDocumentsThatExist(anyMapOf(String.class, String.class));
+		verify(mockSearchDao, never()).createOrUpdateSearchDocument(anyListOf(Document.class));
 	}
 	
 	@Test
 	public void testDelete() throws Exception{
 		// create a few delete messages.
 		message.setChangeType(ChangeType.DELETE);
+		message2.setChangeType(ChangeType.DELETE);
 		// call under test
-		worker.run(mockCallback, message);
-		// Delete should be called
-		verify(mockSearchDao, times(1)).deleteDocument("one");
+		worker.run(mockCallback, Arrays.asList(message, message2));
+		// Delete should be called once for the batch
+		verify(mockSearchDao, times(1)).deleteDocuments(new LinkedHashSet<String>(Arrays.asList("one", "two")));
 		// create should not be called
 		verify(mockSearchDao, never()).createOrUpdateSearchDocument(anyListOf(Document.class));
 	}
 	
 	@Test
 	public void testCreate() throws Exception{
-		Document docOne = new Document();
-		docOne.setId("one");
-		when(mockDocumentProvider.formulateSearchDocument("one")).thenReturn(docOne);
-		Document docTwo = new Document();
-		docTwo.setId("two");
-		when(mockDocumentProvider.formulateSearchDocument("two")).thenReturn(docTwo);
-		
-		// Create only occurs if the document exists in the repository
-		when(mockDocumentProvider.doesDocumentExist("one", "etag1")).thenReturn(true);
-		when(mockDocumentProvider.doesDocumentExist("two", "etag2")).thenReturn(true);
-		
-		// Create only occurs if it is not already in the search index
-		when(mockSearchDao.doesDocumentExist("one", "etag1")).thenReturn(false);
-		when(mockSearchDao.doesDocumentExist("two", "etag2")).thenReturn(false);
-		
+		when(mockDocumentProvider.formulateSearchDocuments(Arrays.asList("one", "two"))).thenReturn(Arrays.asList(docOne, docTwo));
 		// call under test
-		worker.run(mockCallback, message);
-		worker.run(mockCallback, message2);
-	
-		// Delete should be called
+		worker.run(mockCallback, Arrays.asList(message, message2));
+		// One query for the whole batch
+		Map<String, String> expectedCheck = new LinkedHashMap<String, String>();
+		expectedCheck.put("one", "etag1");
+		expectedCheck.put("two", "etag2");
+		verify(mockSearchDao, times(1)).getIdsOfDocumentsThatExist(expectedCheck);
+		// Delete should not be called
 		verify(mockSearchDao, never()).deleteDocuments(anySetOf(String.class));
-		// create should be called once
-		verify(mockSearchDao, times(1)).createOrUpdateSearchDocument(docOne);
-		verify(mockSearchDao, times(1)).createOrUpdateSearchDocument(docTwo);
+		// create should be called once for the batch
+		verify(mockSearchDao, times(1)).createOrUpdateSearchDocument(Arrays.asList(docOne, docTwo));
+	}
+	
+	/**
+	 * Multiple changes of the same entity in a batch are only processed once.
+	 */
+	@Test
+	public void testDedupeByEntity() throws Exception{
+		ChangeMessage update = new ChangeMessage();
+		update.setChangeType(ChangeType.UPDATE);
+		update.setObjectEtag("etag1b");
+		update.setObjectId("one");
+		update.setObjectType(ObjectType.ENTITY);
+		Document updated = createDocument("one", "etag1b");
+		when(mockDocumentProvider.formulateSearchDocuments(Arrays.asList("one"))).thenReturn(Arrays.asList(updated));
+		// call under test
+		worker.run(mockCallback, Arrays.asList(message, update));
+		verify(mockSearchDao).getIdsOfDocumentsThatExist(Collections.singletonMap("one", "etag1b"));
+		verify(mockSearchDao, times(1)).createOrUpdateSearchDocument(Arrays.asList(updated));
+	}
+	
+	@Test
+	public void testCreateThenDelete() throws Exception{
+		ChangeMessage delete = new ChangeMessage();
+		delete.setChangeType(ChangeType.DELETE);
+		delete.setObjectId("one");
+		delete.setObjectType(ObjectType.ENTITY);
+		// call under test
+		worker.run(mockCallback, Arrays.asList(message, delete));
+		verify(mockSearchDao).deleteDocuments(Collections.singleton("one"));
+		verify(mockDocumentProvider, never()).formulateSearchDocuments(anyListOf(String.class));
 	}
 	
 	/**
@@ -114,72 +165,83 @@ public class SearchQueueWorkerTest {
 	 */
 	@Test
 	public void testCreateAlreadyInSearchIndex() throws Exception{
-		// Create only occurs if the document exists in the repository
-		when(mockDocumentProvider.doesDocumentExist("one", "etag1")).thenReturn(true);
-		// Create only occurs if it is not already in the search index
-		when(mockSearchDao.doesDocumentExist("one", "etag1")).thenReturn(true);
-
+		when(mockSearchDao.getIdsOfDocumentsThatExist(anyMapOf(String.class, String.class))).thenReturn(Collections.singleton("one"));
+		when(mockDocumentProvider.formulateSearchDocuments(Arrays.asList("two"))).thenReturn(Arrays.asList(docTwo));
 		// call under test
-		worker.run(mockCallback, message);
-		
-		// Delete should be called
-		verify(mockSearchDao, never()).deleteDocuments(anySetOf(String.class));
-		// create should not be called
-		verify(mockSearchDao, never()).createOrUpdateSearchDocument(any(Document.class));
-		// We should not call doesDocumentExist() on the repository when it already exists in the search index.
-		verify(mockDocumentProvider, never()).doesDocumentExist("one", "etag1");
+		worker.run(mockCallback, Arrays.asList(message, message2));
+		// Only the document that is not in the index is built.
+		verify(mockDocumentProvider).formulateSearchDocuments(Arrays.asList("two"));
+		verify(mockSearchDao, times(1)).createOrUpdateSearchDocument(Arrays.asList(docTwo));
+	}
+	
+	@Test
+	public void testCreateAllInSearchIndex() throws Exception{
+		when(mockSearchDao.getIdsOfDocumentsThatExist(anyMapOf(String.class, String.class))).thenReturn(Collections.singleton("one"));
+		// call under test
+		worker.run(mockCallback, Arrays.asList(message));
+		verify(mockDocumentProvider, never()).formulateSearchDocuments(anyListOf(String.class));
+		verify(mockSearchDao, never()).createOrUpdateSearchDocument(anyListOf(Document.class));
 	}
 	
 	/**
-	 * When the document already exits in the search index with the same etag, we can ignore it.
+	 * When the etag of the change is no longer the etag of the entity, the change is old and ignored.
 	 * @throws Exception
 	 */
 	@Test
 	public void testCreateDoesNotExistInReposiroty() throws Exception{
-		// Create only occurs if the document exists in the repository
-		when(mockDocumentProvider.doesDocumentExist("one", "etag1")).thenReturn(false);
-		// Create only occurs if it is not already in the search index
-		when(mockSearchDao.doesDocumentExist("one", "etag1")).thenReturn(false);
-
+		when(mockDocumentProvider.formulateSearchDocuments(Arrays.asList("one"))).thenReturn(Arrays.asList(createDocument("one", "newerEtag")));
 		// call under test
-		worker.run(mockCallback, message);
-		
-		// Delete should be called
-		verify(mockSearchDao, never()).deleteDocuments(anySetOf(String.class));
+		worker.run(mockCallback, Arrays.asList(message));
 		// create should not be called
 		verify(mockSearchDao, never()).createOrUpdateSearchDocument(anyListOf(Document.class));
-		// We should not call doesDocumentExist() one time.
-		verify(mockDocumentProvider, times(1)).doesDocumentExist("one", "etag1");
+	}
+	
+	@Test
+	public void testWikiChange() throws Exception{
+		ChangeMessage wikiChange = new ChangeMessage();
+		wikiChange.setChangeType(ChangeType.UPDATE);
+		wikiChange.setObjectId("123");
+		wikiChange.setObjectType(ObjectType.WIKI);
+		WikiPageKey key = WikiPageKeyHelper.createWikiPageKey("one", ObjectType.ENTITY, "123");
+		when(mockWikiPageDao.lookupWikiKey("123")).thenReturn(key);
+		Document current = createDocument("one", "currentEtag");
+		when(mockDocumentProvider.formulateSearchDocuments(Arrays.asList("one"))).thenReturn(Arrays.asList(current));
+		// call under test
+		worker.run(mockCallback, Arrays.asList(message, wikiChange));
+		// A wiki change has no etag so it is not checked against the index and is always rebuilt.
+		verify(mockSearchDao, never()).getIdsOfDocumentsThatExist(anyMapOf(String.class, String.class));
+		verify(mockSearchDao, times(1)).createOrUpdateSearchDocument(Arrays.asList(current));
+	}
+	
+	@Test
+	public void testUnknownChangeType() throws Exception{
+		message.setChangeType(null);
+		when(mockDocumentProvider.formulateSearchDocuments(Arrays.asList("two"))).thenReturn(Arrays.asList(docTwo));
+		// call under test
+		worker.run(mockCallback, Arrays.asList(message, message2));
+		// the unknown change is skipped and the rest of the batch is still indexed.
+		verify(mockSearchDao, never()).deleteDocuments(anySetOf(String.class));
+		verify(mockSearchDao, times(1)).createOrUpdateSearchDocument(Arrays.asList(docTwo));
 	}
 	
 	/**
 	 * When we get an exception from SearchDao delete, log it using the workerLogger
 	 * @throws Exception 
-	 * @throws IOException 
-	 * @throws ClientProtocolException 
 	 */
 	@Test
 	public void testLogDeleteException() throws Exception {
 		message.setChangeType(ChangeType.DELETE);
-		message2.setChangeType(ChangeType.DELETE);
-		// Expected exception in for batch and retry
-		Exception eBatch = new RuntimeException("Batch exception");
 		Exception eRetry = new RuntimeException("Retry exception");
 		// Generate an exception when calling the searchDao
-		Mockito.doThrow(eRetry).when(mockSearchDao).deleteDocument("one");
-		
+		Mockito.doThrow(eRetry).when(mockSearchDao).deleteDocuments(anySetOf(String.class));
 		// call under test
 		try {
-			worker.run(mockCallback, message);
+			worker.run(mockCallback, Arrays.asList(message));
 			fail();
 		} catch (RecoverableMessageException e) {
 			// expected
 		}
-		worker.run(mockCallback, message2);
-		
-		// Verify that error logged for "one" and "two" went through
-		verify(mockWorkerLogger, times(1)).logWorkerFailure(SearchQueueWorker.class, message, eRetry, true);
-		verify(mockSearchDao, times(1)).deleteDocument("two");
+		verify(mockWorkerLogger, times(1)).logWorkerFailure(SearchQueueWorker.class.getName(), eRetry, true);
 	}
 	
 	/**
@@ -187,36 +249,18 @@ public class SearchQueueWorkerTest {
 	 */
 	@Test
 	public void testLogCreateUpdateException() throws Exception {
-		// These docs should exist in repository
-		when(mockDocumentProvider.doesDocumentExist("one", "etag1")).thenReturn(true);
-		when(mockDocumentProvider.doesDocumentExist("two", "etag2")).thenReturn(true);
-		// These docs should not already exist in CloudSearch
-		when(mockSearchDao.doesDocumentExist("one", "etag1")).thenReturn(false);
-		when(mockSearchDao.doesDocumentExist("two", "etag2")).thenReturn(false);
-		// Expected search documents
-		Document docOne = new Document();
-		docOne.setId("one");
-		Document docTwo = new Document();
-		docTwo.setId("two");
-		when(mockDocumentProvider.formulateSearchDocument("one")).thenReturn(docOne);
-		when(mockDocumentProvider.formulateSearchDocument("two")).thenReturn(docTwo);
-
-		
+		List<Document> docs = Arrays.asList(docOne, docTwo);
+		when(mockDocumentProvider.formulateSearchDocuments(Arrays.asList("one", "two"))).thenReturn(docs);
 		// Generate an exception when calling the searchDao
 		Exception eRetry = new RuntimeException("Retry exception");
-		Mockito.doThrow(eRetry).when(mockSearchDao).createOrUpdateSearchDocument(docOne);
-		
+		Mockito.doThrow(eRetry).when(mockSearchDao).createOrUpdateSearchDocument(docs);
 		// call under test
 		try {
-			worker.run(mockCallback, message);
+			worker.run(mockCallback, Arrays.asList(message, message2));
 			fail();
 		} catch (RecoverableMessageException e) {
 			// expected
 		}
-		worker.run(mockCallback, message2);
-		
-		// Verify that error logged for "one" and "two" went through
-		verify(mockWorkerLogger, times(1)).logWorkerFailure(SearchQueueWorker.class, message, eRetry, true);
-		verify(mockSearchDao, times(1)).createOrUpdateSearchDocument(docTwo);
+		verify(mockWorkerLogger, times(1)).logWorkerFailure(SearchQueueWorker.class.getName(), eRetry, true);
 	}
 }
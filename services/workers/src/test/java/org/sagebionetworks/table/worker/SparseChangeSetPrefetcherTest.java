@@ -0,0 +1,152 @@
+package org.sagebionetworks.table.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sagebionetworks.repo.manager.table.TableEntityManager;
+import org.sagebionetworks.repo.model.table.TableChangeType;
+import org.sagebionetworks.repo.model.table.TableRowChange;
+import org.sagebionetworks.table.model.SparseChangeSet;
+
+public class SparseChangeSetPrefetcherTest {
+
+	@Mock
+	TableEntityManager mockTableEntityManager;
+
+	ExecutorService executor;
+	List<TableRowChange> changes;
+	List<SparseChangeSet> changeSets;
+
+	@Before
+	public void before() throws Exception {
+		MockitoAnnotations.initMocks(this);
+		executor = Executors.newFixedThreadPool(4);
+		changes = new ArrayList<TableRowChange>();
+		changeSets = new ArrayList<SparseChangeSet>();
+		for (long i = 0; i < 5; i++) {
+			TableRowChange change = new TableRowChange();
+			change.setTableId("syn123");
+			change.setRowVersion(i);
+			change.setRowCount(10L);
+			change.setChangeType(TableChangeType.ROW);
+			changes.add(change);
+			SparseChangeSet changeSet = mock(SparseChangeSet.class);
+			changeSets.add(changeSet);
+			when(mockTableEntityManager.getSparseChangeSet(change)).thenReturn(changeSet);
+		}
+	}
+
+	@After
+	public void after() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testInOrder() throws Exception {
+		SparseChangeSetPrefetcher prefetcher = new SparseChangeSetPrefetcher(mockTableEntityManager, executor, 2, 1000L,
+				changes);
+		try {
+			for (int i = 0; i < changes.size(); i++) {
+				// call under test
+				assertSame(changeSets.get(i), prefetcher.getChangeSet(changes.get(i)));
+			}
+		} finally {
+			prefetcher.close();
+		}
+	}
+
+	@Test
+	public void testOutOfOrder() throws Exception {
+		SparseChangeSetPrefetcher prefetcher = new SparseChangeSetPrefetcher(mockTableEntityManager, executor, 2, 1000L,
+				changes);
+		try {
+			prefetcher.getChangeSet(changes.get(1));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		} finally {
+			prefetcher.close();
+		}
+	}
+
+	@Test
+	public void testWindowBoundedByCount() throws Exception {
+		ExecutorService mockExecutor = mock(ExecutorService.class);
+		when(mockExecutor.submit(Matchers.<Callable<SparseChangeSet>> any())).thenReturn(mock(Future.class));
+		// call under test
+		new SparseChangeSetPrefetcher(mockTableEntityManager, mockExecutor, 3, 1000L, changes);
+		verify(mockExecutor, times(3)).submit(Matchers.<Callable<SparseChangeSet>> any());
+	}
+
+	@Test
+	public void testWindowBoundedByRows() throws Exception {
+		ExecutorService mockExecutor = mock(ExecutorService.class);
+		when(mockExecutor.submit(Matchers.<Callable<SparseChangeSet>> any())).thenReturn(mock(Future.class));
+		// each change has ten rows so only two fit under 15 rows.
+		new SparseChangeSetPrefetcher(mockTableEntityManager, mockExecutor, 5, 15L, changes);
+		verify(mockExecutor, times(2)).submit(Matchers.<Callable<SparseChangeSet>> any());
+	}
+
+	@Test
+	public void testLargeChangeSetStillFetched() throws Exception {
+		// a single change set larger than the row limit must still be fetched.
+		SparseChangeSetPrefetcher prefetcher = new SparseChangeSetPrefetcher(mockTableEntityManager, executor, 5, 1L,
+				changes);
+		try {
+			for (int i = 0; i < changes.size(); i++) {
+				assertSame(changeSets.get(i), prefetcher.getChangeSet(changes.get(i)));
+			}
+		} finally {
+			prefetcher.close();
+		}
+	}
+
+	@Test
+	public void testIOExceptionUnwrapped() throws Exception {
+		IOException error = new IOException("failed");
+		when(mockTableEntityManager.getSparseChangeSet(changes.get(0))).thenThrow(error);
+		SparseChangeSetPrefetcher prefetcher = new SparseChangeSetPrefetcher(mockTableEntityManager, executor, 2, 1000L,
+				changes);
+		try {
+			prefetcher.getChangeSet(changes.get(0));
+			fail();
+		} catch (IOException e) {
+			assertEquals(error, e);
+		} finally {
+			prefetcher.close();
+		}
+	}
+
+	@Test
+	public void testCloseCancels() throws Exception {
+		ExecutorService mockExecutor = mock(ExecutorService.class);
+		Future<?> mockFuture = mock(Future.class);
+		when(mockExecutor.submit(Matchers.<Callable<SparseChangeSet>> any())).thenReturn((Future) mockFuture);
+		SparseChangeSetPrefetcher prefetcher = new SparseChangeSetPrefetcher(mockTableEntityManager, mockExecutor, 2,
+				1000L, changes);
+		// call under test
+		prefetcher.close();
+		verify(mockFuture, times(2)).cancel(false);
+		verify(mockTableEntityManager, never()).getSparseChangeSet(changes.get(0));
+	}
+}
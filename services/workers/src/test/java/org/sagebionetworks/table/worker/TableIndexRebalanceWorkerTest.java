@@ -0,0 +1,98 @@
+package org.sagebionetworks.table.worker;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.common.util.progress.ProgressCallback;
+import org.sagebionetworks.repo.manager.table.TableManagerSupport;
+import org.sagebionetworks.table.cluster.ConnectionFactory;
+import org.sagebionetworks.table.cluster.MisplacedTableIndex;
+import org.sagebionetworks.table.cluster.TableIndexDAO;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TableIndexRebalanceWorkerTest {
+
+	@Mock
+	ConnectionFactory mockConnectionFactory;
+	@Mock
+	TableManagerSupport mockTableManagerSupport;
+	@Mock
+	TableIndexDAO mockStaleConnection;
+	@Mock
+	ProgressCallback mockProgressCallback;
+
+	TableIndexRebalanceWorker worker;
+	String tableId;
+	MisplacedTableIndex misplaced;
+
+	@Before
+	public void before() {
+		worker = new TableIndexRebalanceWorker();
+		ReflectionTestUtils.setField(worker, "connectionFactory", mockConnectionFactory);
+		ReflectionTestUtils.setField(worker, "tableManagerSupport", mockTableManagerSupport);
+		tableId = "123";
+		misplaced = new MisplacedTableIndex(tableId, mockStaleConnection);
+		when(mockConnectionFactory.getMisplacedTableIndices()).thenReturn(Arrays.asList(misplaced));
+		when(mockTableManagerSupport.isTableAvailable(tableId)).thenReturn(true);
+	}
+
+	@Test
+	public void testRunNothingMisplaced() throws Exception {
+		when(mockConnectionFactory.getMisplacedTableIndices()).thenReturn(new LinkedList<MisplacedTableIndex>());
+		// call under test
+		worker.run(mockProgressCallback);
+		verify(mockTableManagerSupport, never()).getTableStatusOrCreateIfNotExists(tableId);
+	}
+
+	@Test
+	public void testRunOwnerNotSynchronized() throws Exception {
+		when(mockTableManagerSupport.isIndexSynchronizedWithTruth(tableId)).thenReturn(false);
+		// call under test
+		worker.run(mockProgressCallback);
+		// a rebuild should be triggered on the owner
+		verify(mockTableManagerSupport).getTableStatusOrCreateIfNotExists(tableId);
+		verify(mockStaleConnection, never()).deleteTable(tableId);
+	}
+
+	@Test
+	public void testRunOwnerSynchronized() throws Exception {
+		when(mockTableManagerSupport.isIndexSynchronizedWithTruth(tableId)).thenReturn(true);
+		// call under test
+		worker.run(mockProgressCallback);
+		// the stale copy should be dropped
+		verify(mockStaleConnection).deleteTable(tableId);
+		verify(mockStaleConnection).deleteSecondaryTables(tableId);
+		verify(mockTableManagerSupport, never()).getTableStatusOrCreateIfNotExists(tableId);
+	}
+
+	@Test
+	public void testRunTableDeleted() throws Exception {
+		when(mockTableManagerSupport.isTableAvailable(tableId)).thenReturn(false);
+		// call under test
+		worker.run(mockProgressCallback);
+		verify(mockStaleConnection).deleteTable(tableId);
+		verify(mockStaleConnection).deleteSecondaryTables(tableId);
+	}
+
+	@Test
+	public void testRunFailureContinues() throws Exception {
+		MisplacedTableIndex other = new MisplacedTableIndex("456", mockStaleConnection);
+		when(mockConnectionFactory.getMisplacedTableIndices()).thenReturn(Arrays.asList(misplaced, other));
+		when(mockTableManagerSupport.isTableAvailable(tableId)).thenThrow(new IllegalStateException("Something went wrong"));
+		when(mockTableManagerSupport.isTableAvailable("456")).thenReturn(false);
+		// call under test
+		worker.run(mockProgressCallback);
+		// the second table should still be processed.
+		verify(mockStaleConnection).deleteTable("456");
+	}
+}
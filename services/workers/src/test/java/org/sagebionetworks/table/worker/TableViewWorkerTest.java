@@ -2,6 +2,8 @@ package org.sagebionetworks.table.worker;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
@@ -263,4 +265,50 @@ public class TableViewWorkerTest {
 		verify(tableManagerSupport).attemptToSetTableStatusToFailed(tableId, token, exception);
 	}
 
+	/**
+	 * When the index was built with the current schema only the changed rows
+	 * should be applied.
+	 */
+	@Test
+	public void testCreateOrUpdateIndexHoldingLockIncremental() throws RecoverableMessageException{
+		when(indexManager.getCurrentSchemaMD5Hex(tableId)).thenReturn(schemaMD5Hex);
+		when(indexManager.updateViewFromEntityReplication(tableId, innerCallback, ViewType.file, viewScope,expandedSchema)).thenReturn(viewCRC);
+		// call under test
+		worker.createOrUpdateIndexHoldingLock(tableId, indexManager, innerCallback, change);
+		
+		verify(indexManager, never()).deleteTableIndex(tableId);
+		verify(indexManager, never()).setIndexSchema(anyString(), anyBoolean(), any(ProgressCallback.class), anyListOf(ColumnModel.class));
+		verify(indexManager, never()).populateViewFromEntityReplication(tableId, innerCallback, ViewType.file, viewScope,expandedSchema);
+		verify(indexManager, never()).optimizeTableIndices(tableId);
+		verify(tableManagerSupport, times(1)).attemptToUpdateTableProgress(tableId, token, "Updating changed rows of view...", 0L, 1L);
+		verify(indexManager).updateViewFromEntityReplication(tableId, innerCallback, ViewType.file, viewScope,expandedSchema);
+		verify(indexManager).setIndexVersionAndSchemaMD5Hex(tableId, viewCRC, schemaMD5Hex);
+		verify(tableManagerSupport).attemptToSetTableStatusToAvailable(tableId, token, TableViewWorker.DEFAULT_ETAG);
+	}
+	
+	/**
+	 * A schema change requires the view to be re-built.
+	 */
+	@Test
+	public void testCreateOrUpdateIndexHoldingLockSchemaChanged() throws RecoverableMessageException{
+		when(indexManager.getCurrentSchemaMD5Hex(tableId)).thenReturn("previousSchemaMD5");
+		// call under test
+		worker.createOrUpdateIndexHoldingLock(tableId, indexManager, innerCallback, change);
+		
+		verify(indexManager).deleteTableIndex(tableId);
+		verify(indexManager, times(1)).populateViewFromEntityReplication(tableId, innerCallback, ViewType.file, viewScope,expandedSchema);
+		verify(indexManager, never()).updateViewFromEntityReplication(tableId, innerCallback, ViewType.file, viewScope,expandedSchema);
+		verify(indexManager).setIndexVersionAndSchemaMD5Hex(tableId, viewCRC, schemaMD5Hex);
+	}
+	
+	@Test
+	public void testIsIncrementalUpdatePossibleEmptySchema(){
+		List<ColumnModel> emptySchema = new LinkedList<>();
+		String emptyMD5 = TableModelUtils.createSchemaMD5HexCM(emptySchema);
+		// an index that does not exist reports the empty schema MD5.
+		when(indexManager.getCurrentSchemaMD5Hex(tableId)).thenReturn(emptyMD5);
+		// call under test
+		assertFalse(worker.isIncrementalUpdatePossible(tableId, indexManager, emptySchema, emptyMD5));
+	}
+
 }
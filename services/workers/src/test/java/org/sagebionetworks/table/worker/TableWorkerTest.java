@@ -9,6 +9,8 @@ import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.stub;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -19,9 +21,12 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
@@ -266,6 +271,46 @@ public class TableWorkerTest {
 		verify(mockTableIndexManager).applyChangeSetToIndex(tableId, sparseRowset2, 1L);
 	}
 	
+	@Test
+	public void testHappyCaseWithPrefetch() throws Exception{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try{
+			worker.setChangeSetPrefetchExecutor(executor);
+			worker.setMaxChangeSetsToPrefetch(1);
+			two.setObjectType(ObjectType.TABLE);
+			two.setChangeType(ChangeType.UPDATE);
+			two.setObjectEtag(resetToken);
+			// call under test
+			worker.run(mockProgressCallback, two);
+			verify(mockTableManagerSupport, times(1)).attemptToSetTableStatusToAvailable(tableId, resetToken, "etag2");
+			// change sets must be applied in order.
+			InOrder inOrder = inOrder(mockTableIndexManager);
+			inOrder.verify(mockTableIndexManager).applyChangeSetToIndex(tableId, sparseRowset1, 0L);
+			inOrder.verify(mockTableIndexManager).applyChangeSetToIndex(tableId, sparseRowset2, 1L);
+		}finally{
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testPrefetchFailure() throws Exception{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try{
+			worker.setChangeSetPrefetchExecutor(executor);
+			IOException error = new IOException("S3 failed");
+			when(mockTableEntityManager.getSparseChangeSet(any(TableRowChange.class))).thenThrow(error);
+			two.setObjectType(ObjectType.TABLE);
+			two.setChangeType(ChangeType.UPDATE);
+			two.setObjectEtag(resetToken);
+			// call under test
+			worker.run(mockProgressCallback, two);
+			verify(mockTableManagerSupport).attemptToSetTableStatusToFailed(tableId, resetToken, error);
+			verify(mockTableIndexManager, never()).applyChangeSetToIndex(anyString(), any(SparseChangeSet.class), anyLong());
+		}finally{
+			executor.shutdownNow();
+		}
+	}
+	
 	/**
 	 * When everything works well, the message should be removed from the queue and the table status should be set to
 	 * AVAILABLE.
@@ -0,0 +1,66 @@
+package org.sagebionetworks.worker.entity;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.common.util.progress.ProgressCallback;
+import org.sagebionetworks.repo.model.dao.NodeClosureDao;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NodeClosureBackfillWorkerTest {
+
+	@Mock
+	NodeClosureDao mockNodeClosureDao;
+	@Mock
+	ProgressCallback mockProgressCallback;
+
+	NodeClosureBackfillWorker worker;
+
+	@Before
+	public void before() {
+		worker = new NodeClosureBackfillWorker();
+		ReflectionTestUtils.setField(worker, "nodeClosureDao", mockNodeClosureDao);
+		when(mockNodeClosureDao.isBackfillComplete()).thenReturn(false);
+	}
+
+	@Test
+	public void testRunUntilDone() throws Exception {
+		when(mockNodeClosureDao.backfillNextPage(NodeClosureBackfillWorker.BATCH_SIZE)).thenReturn(1000, 12, 0);
+		// call under test
+		worker.run(mockProgressCallback);
+		verify(mockNodeClosureDao, times(3)).backfillNextPage(NodeClosureBackfillWorker.BATCH_SIZE);
+	}
+
+	@Test
+	public void testRunNothingMissing() throws Exception {
+		when(mockNodeClosureDao.backfillNextPage(NodeClosureBackfillWorker.BATCH_SIZE)).thenReturn(0);
+		// call under test
+		worker.run(mockProgressCallback);
+		verify(mockNodeClosureDao, times(1)).backfillNextPage(NodeClosureBackfillWorker.BATCH_SIZE);
+	}
+
+	@Test
+	public void testRunLimited() throws Exception {
+		when(mockNodeClosureDao.backfillNextPage(NodeClosureBackfillWorker.BATCH_SIZE)).thenReturn(1000);
+		// call under test
+		worker.run(mockProgressCallback);
+		verify(mockNodeClosureDao, times(NodeClosureBackfillWorker.MAX_BATCHES_PER_RUN)).backfillNextPage(NodeClosureBackfillWorker.BATCH_SIZE);
+	}
+
+	@Test
+	public void testRunComplete() throws Exception {
+		when(mockNodeClosureDao.isBackfillComplete()).thenReturn(true);
+		// call under test
+		worker.run(mockProgressCallback);
+		verify(mockNodeClosureDao, never()).backfillNextPage(anyInt());
+	}
+}
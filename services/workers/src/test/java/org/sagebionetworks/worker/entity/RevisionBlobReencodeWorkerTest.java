@@ -0,0 +1,119 @@
+package org.sagebionetworks.worker.entity;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.common.util.progress.ProgressCallback;
+import org.sagebionetworks.repo.model.NodeDAO;
+import org.sagebionetworks.repo.model.dao.BackfillProgressDao;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RevisionBlobReencodeWorkerTest {
+
+	@Mock
+	NodeDAO mockNodeDao;
+	@Mock
+	BackfillProgressDao mockBackfillProgressDao;
+	@Mock
+	StackConfiguration mockConfiguration;
+	@Mock
+	ProgressCallback mockProgressCallback;
+
+	RevisionBlobReencodeWorker worker;
+
+	long batchSize = RevisionBlobReencodeWorker.BATCH_SIZE;
+	String name = RevisionBlobReencodeWorker.BACKFILL_NAME;
+
+	@Before
+	public void before() {
+		worker = new RevisionBlobReencodeWorker();
+		ReflectionTestUtils.setField(worker, "nodeDao", mockNodeDao);
+		ReflectionTestUtils.setField(worker, "backfillProgressDao", mockBackfillProgressDao);
+		ReflectionTestUtils.setField(worker, "configuration", mockConfiguration);
+		when(mockConfiguration.getRevisionBlobBinaryEnabled()).thenReturn(true);
+		when(mockBackfillProgressDao.getLastId(name)).thenReturn(-1L);
+		when(mockBackfillProgressDao.setLastId(anyString(), anyLong(), anyLong())).thenReturn(true);
+		when(mockBackfillProgressDao.setComplete(anyString(), anyLong())).thenReturn(true);
+	}
+
+	@Test
+	public void testRunUntilDone() throws Exception {
+		when(mockNodeDao.reencodeLegacyRevisionBlobs(-1L, batchSize)).thenReturn(150L);
+		when(mockNodeDao.reencodeLegacyRevisionBlobs(150L, batchSize)).thenReturn(333L);
+		when(mockNodeDao.reencodeLegacyRevisionBlobs(333L, batchSize)).thenReturn(-1L);
+		// call under test
+		worker.run(mockProgressCallback);
+		verify(mockNodeDao, times(3)).reencodeLegacyRevisionBlobs(anyLong(), anyLong());
+		verify(mockBackfillProgressDao).setLastId(name, -1L, 150L);
+		verify(mockBackfillProgressDao).setLastId(name, 150L, 333L);
+		verify(mockBackfillProgressDao).setComplete(name, 333L);
+	}
+
+	@Test
+	public void testRunComplete() throws Exception {
+		when(mockBackfillProgressDao.isComplete(name)).thenReturn(true);
+		// call under test
+		worker.run(mockProgressCallback);
+		verify(mockNodeDao, never()).reencodeLegacyRevisionBlobs(anyLong(), anyLong());
+	}
+
+	@Test
+	public void testRunBinaryDisabled() throws Exception {
+		when(mockConfiguration.getRevisionBlobBinaryEnabled()).thenReturn(false);
+		// call under test
+		worker.run(mockProgressCallback);
+		verify(mockNodeDao, never()).reencodeLegacyRevisionBlobs(anyLong(), anyLong());
+		verify(mockBackfillProgressDao, never()).getLastId(anyString());
+	}
+
+	@Test
+	public void testRunContinuesFromStoredProgress() throws Exception {
+		when(mockBackfillProgressDao.getLastId(name)).thenReturn(500L);
+		when(mockNodeDao.reencodeLegacyRevisionBlobs(500L, batchSize)).thenReturn(-1L);
+		// call under test
+		worker.run(mockProgressCallback);
+		verify(mockNodeDao).reencodeLegacyRevisionBlobs(500L, batchSize);
+		verify(mockBackfillProgressDao).setComplete(name, 500L);
+	}
+
+	@Test
+	public void testRunProgressChanged() throws Exception {
+		when(mockNodeDao.reencodeLegacyRevisionBlobs(-1L, batchSize)).thenReturn(150L);
+		// another caller changed the progress.
+		when(mockBackfillProgressDao.setLastId(name, -1L, 150L)).thenReturn(false);
+		// call under test
+		worker.run(mockProgressCallback);
+		verify(mockNodeDao, times(1)).reencodeLegacyRevisionBlobs(anyLong(), anyLong());
+		verify(mockBackfillProgressDao, never()).setComplete(anyString(), anyLong());
+	}
+
+	@Test
+	public void testRunLimited() throws Exception {
+		// each batch processes the next node.
+		when(mockNodeDao.reencodeLegacyRevisionBlobs(anyLong(), anyLong())).thenAnswer(new Answer<Long>() {
+			@Override
+			public Long answer(InvocationOnMock invocation) throws Throwable {
+				return (Long) invocation.getArguments()[0] + 1;
+			}
+		});
+		// call under test
+		worker.run(mockProgressCallback);
+		verify(mockNodeDao, times(RevisionBlobReencodeWorker.MAX_BATCHES_PER_RUN)).reencodeLegacyRevisionBlobs(anyLong(), anyLong());
+		long lastNodeId = RevisionBlobReencodeWorker.MAX_BATCHES_PER_RUN - 1;
+		verify(mockBackfillProgressDao).setLastId(name, lastNodeId - 1, lastNodeId);
+		verify(mockBackfillProgressDao, never()).setComplete(anyString(), anyLong());
+	}
+}